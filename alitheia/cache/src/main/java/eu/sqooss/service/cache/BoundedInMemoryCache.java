@@ -0,0 +1,435 @@
+package eu.sqooss.service.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.osgi.framework.BundleContext;
+
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.util.StripedCounter;
+
+/**
+ * Memory based implementation of the cache service with a fixed capacity in
+ * bytes. When the capacity is reached, the least recently used entries are
+ * evicted. The cache is split in a number of independently locked
+ * segments, each one holding a part of the capacity, so that concurrent
+ * accesses to different keys rarely contend.
+ *
+ * Values can optionally be stored outside the Java heap, in one direct
+ * buffer per segment managed in fixed size blocks. This keeps large caches
+ * out of the garbage collector's way, at the cost of copying values in and
+ * out of the buffer.
+ *
+ * Accepts the following system properties:
+ *
+ *  <dl>
+ *      <dt>
+ *          eu.sqooss.service.cache.mem.size
+ *      </dt>
+ *      <dd>
+ *          The cache capacity in bytes. Suffixes k, m and g are accepted.
+ *          Defaults to 1/8 of the maximum heap size.
+ *      </dd>
+ *      <dt>
+ *          eu.sqooss.service.cache.mem.offheap
+ *      </dt>
+ *      <dd>
+ *          If true, values are stored in direct buffers. The JVM's
+ *          direct memory limit (-XX:MaxDirectMemorySize) must be larger
+ *          than the cache size.
+ *      </dd>
+ * </dl>
+ */
+public class BoundedInMemoryCache extends CacheServiceImpl {
+
+    public static final String CACHE_SIZE = "eu.sqooss.service.cache.mem.size";
+    public static final String CACHE_OFFHEAP = "eu.sqooss.service.cache.mem.offheap";
+
+    /** Number of segments, must be a power of 2 */
+    private static final int SEGMENTS = 16;
+    /** Size of the allocation unit of off-heap segments */
+    static final int BLOCK_SIZE = 4096;
+    /** Approximate memory used by a map entry, excluding key and value */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final Segment[] segments;
+    private final long capacity;
+    private final boolean offHeap;
+
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+    private final StripedCounter evictions = new StripedCounter();
+    private final StripedCounter rejections = new StripedCounter();
+    private final StripedCounter bytes = new StripedCounter();
+    private final StripedCounter entries = new StripedCounter();
+
+    /** Reported once the service's logger is set */
+    private String sizeWarning = null;
+
+    public BoundedInMemoryCache() {
+        this(sizeProperty(), "true".equals(System.getProperty(CACHE_OFFHEAP)));
+        String size = System.getProperty(CACHE_SIZE);
+        if (size != null && parseSize(size) < 0)
+            sizeWarning = "Invalid cache size " + size + ", using "
+                + defaultSize();
+    }
+
+    /**
+     * @param capacity Maximum number of bytes to hold.
+     * @param offHeap Whether to store the values in direct buffers.
+     */
+    public BoundedInMemoryCache(long capacity, boolean offHeap) {
+        this.offHeap = offHeap;
+        long segmentCapacity = Math.max(capacity / SEGMENTS, BLOCK_SIZE);
+        if (offHeap) {
+            /* A direct buffer cannot be larger than 2GB */
+            segmentCapacity = Math.min(segmentCapacity / BLOCK_SIZE,
+                    Integer.MAX_VALUE / BLOCK_SIZE) * BLOCK_SIZE;
+        }
+        this.capacity = segmentCapacity * SEGMENTS;
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(segmentCapacity);
+    }
+
+    @Override
+    public byte[] get(String key) {
+        byte[] result = segment(key).get(key);
+        if (result == null)
+            misses.increment();
+        else
+            hits.increment();
+        return result;
+    }
+
+    @Override
+    public void set(String key, byte[] data) {
+        segment(key).set(key, data, false, false);
+    }
+
+    /**
+     * Adds a value that is also stored elsewhere, unless the key is already
+     * cached. The entry is dropped without calling
+     * {@link #evicted(String, byte[])} when it is evicted.
+     *
+     * @return false if the key was already cached or the value is too large
+     */
+    protected boolean promote(String key, byte[] data) {
+        return segment(key).set(key, data, true, true);
+    }
+
+    /**
+     * @return Whether a value of the given length can be stored for the key
+     * without being rejected as too large.
+     */
+    public boolean fits(String key, long length) {
+        return length <= Integer.MAX_VALUE && segment(key).fits(key, (int) length);
+    }
+
+    /**
+     * Removes a key from the cache.
+     */
+    public void remove(String key) {
+        segment(key).remove(key);
+    }
+
+    /** @return The maximum number of bytes the cache holds */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /** @return Whether values are stored outside the Java heap */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** @return Number of entries removed to make room for new ones */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /** @return Number of values not stored because they were too large */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /** @return Number of bytes currently used, including overheads */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /** @return Number of entries currently cached */
+    public long getEntries() {
+        return entries.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "BoundedInMemoryCache[capacity=" + capacity + ", offheap="
+                + offHeap + ", entries=" + getEntries() + ", bytes="
+                + getBytes() + ", hits=" + getHits() + ", misses="
+                + getMisses() + ", evictions=" + getEvictions() + "]";
+    }
+
+    /**
+     * Removes all entries, calling {@link #evicted(String, byte[])} for
+     * those added with {@link #set(String, byte[])}.
+     */
+    protected void evictAll() {
+        for (Segment s : segments)
+            s.evictAll();
+    }
+
+    /**
+     * Called when an entry added with {@link #set(String, byte[])} has been
+     * evicted. The default implementation does nothing. Called while a
+     * segment of the cache is locked, so implementations should return
+     * quickly.
+     *
+     * @param key The evicted key
+     * @param data The evicted value
+     */
+    protected void evicted(String key, byte[] data) {
+    }
+
+    private Segment segment(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Reports an invalid size property, which is found before the service
+     * passes its logger in.
+     */
+    @Override
+    public void setInitParams(BundleContext bc, Logger l) {
+        super.setInitParams(bc, l);
+        if (sizeWarning != null) {
+            error(sizeWarning);
+            sizeWarning = null;
+        }
+    }
+
+    private static long sizeProperty() {
+        long size = parseSize(System.getProperty(CACHE_SIZE));
+        return (size < 0) ? defaultSize() : size;
+    }
+
+    private static long defaultSize() {
+        return Runtime.getRuntime().maxMemory() / 8;
+    }
+
+    /**
+     * @return The number of bytes of a size with an optional k, m or g
+     * suffix, or -1 if it is not set or not a valid size.
+     */
+    private static long parseSize(String size) {
+        if (size == null)
+            return -1;
+
+        size = size.trim().toLowerCase();
+        long mult = 1;
+        if (size.endsWith("k")) {
+            mult = 1024;
+        } else if (size.endsWith("m")) {
+            mult = 1024 * 1024;
+        } else if (size.endsWith("g")) {
+            mult = 1024 * 1024 * 1024;
+        }
+        if (mult > 1)
+            size = size.substring(0, size.length() - 1);
+        try {
+            long bytes = Long.parseLong(size) * mult;
+            return (bytes < 0) ? -1 : bytes;
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+    /**
+     * A cached value, either on the heap or in the blocks of an off-heap
+     * segment.
+     */
+    private static class Entry {
+        byte[] data;
+        int[] blocks;
+        int length;
+        long weight;
+        /** Added by promote(), no need to report its eviction */
+        boolean clean;
+    }
+
+    /**
+     * A part of the cache, with its own LRU list and lock.
+     */
+    private class Segment {
+        private final LinkedHashMap<String, Entry> map =
+            new LinkedHashMap<String, Entry>(64, 0.75f, true);
+        private final long capacity;
+        private final BlockStore store;
+        private long used = 0;
+
+        Segment(long capacity) {
+            this.capacity = capacity;
+            this.store = offHeap ? new BlockStore((int) (capacity / BLOCK_SIZE)) : null;
+        }
+
+        synchronized byte[] get(String key) {
+            Entry e = map.get(key);
+            if (e == null)
+                return null;
+            /* Return a copy, callers must not change the cached value */
+            if (store == null)
+                return e.data.clone();
+            return store.read(e.blocks, e.length);
+        }
+
+        boolean fits(String key, int length) {
+            return weight(key, length) <= capacity;
+        }
+
+        boolean set(String key, byte[] data, boolean clean, boolean ifAbsent) {
+            long weight = weight(key, data.length);
+            if (weight > capacity) {
+                rejections.increment();
+                if (!ifAbsent)
+                    remove(key);
+                return false;
+            }
+
+            Entry e = new Entry();
+            e.length = data.length;
+            e.weight = weight;
+            e.clean = clean;
+            if (store == null) {
+                e.data = new byte[data.length];
+                System.arraycopy(data, 0, e.data, 0, data.length);
+            }
+
+            synchronized (this) {
+                if (ifAbsent && map.containsKey(key))
+                    return false;
+                release(map.remove(key));
+                Iterator<Map.Entry<String, Entry>> i = map.entrySet().iterator();
+                while (used + weight > capacity && i.hasNext()) {
+                    Map.Entry<String, Entry> eldest = i.next();
+                    i.remove();
+                    evict(eldest.getKey(), eldest.getValue());
+                }
+                if (store != null)
+                    e.blocks = store.write(data);
+                map.put(key, e);
+                used += weight;
+                bytes.add(weight);
+                entries.increment();
+            }
+            return true;
+        }
+
+        synchronized void remove(String key) {
+            release(map.remove(key));
+        }
+
+        synchronized void evictAll() {
+            Iterator<Map.Entry<String, Entry>> i = map.entrySet().iterator();
+            while (i.hasNext()) {
+                Map.Entry<String, Entry> eldest = i.next();
+                i.remove();
+                evict(eldest.getKey(), eldest.getValue());
+            }
+        }
+
+        private void evict(String key, Entry e) {
+            evictions.increment();
+            if (!e.clean) {
+                if (store != null)
+                    evicted(key, store.read(e.blocks, e.length));
+                else
+                    evicted(key, e.data);
+            }
+            release(e);
+        }
+
+        private void release(Entry e) {
+            if (e == null)
+                return;
+            if (store != null)
+                store.free(e.blocks);
+            used -= e.weight;
+            bytes.add(-e.weight);
+            entries.decrement();
+        }
+
+        private long weight(String key, int length) {
+            if (store != null) {
+                /* Keys and entries live on the heap, count only blocks */
+                return (long) ((length + BLOCK_SIZE - 1) / BLOCK_SIZE) * BLOCK_SIZE;
+            }
+            return length + 2 * key.length() + ENTRY_OVERHEAD;
+        }
+    }
+
+    /**
+     * Fixed size block allocator on top of a single direct buffer. Not
+     * thread safe, the owning segment synchronises access.
+     */
+    static class BlockStore {
+        private final ByteBuffer slab;
+        private final int[] free;
+        private int freeCount;
+
+        BlockStore(int blocks) {
+            slab = ByteBuffer.allocateDirect(blocks * BLOCK_SIZE);
+            free = new int[blocks];
+            for (int i = 0; i < blocks; i++)
+                free[i] = blocks - 1 - i;
+            freeCount = blocks;
+        }
+
+        /**
+         * Copies data to newly allocated blocks. The caller must have made
+         * sure that enough blocks are free.
+         */
+        int[] write(byte[] data) {
+            int n = (data.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            int[] blocks = new int[n];
+            int off = 0;
+            for (int i = 0; i < n; i++) {
+                blocks[i] = free[--freeCount];
+                int len = Math.min(BLOCK_SIZE, data.length - off);
+                slab.position(blocks[i] * BLOCK_SIZE);
+                slab.put(data, off, len);
+                off += len;
+            }
+            return blocks;
+        }
+
+        byte[] read(int[] blocks, int length) {
+            byte[] result = new byte[length];
+            int off = 0;
+            for (int i = 0; i < blocks.length; i++) {
+                int len = Math.min(BLOCK_SIZE, length - off);
+                slab.position(blocks[i] * BLOCK_SIZE);
+                slab.get(result, off, len);
+                off += len;
+            }
+            return result;
+        }
+
+        void free(int[] blocks) {
+            for (int b : blocks)
+                free[freeCount++] = b;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package eu.sqooss.service.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+
+/**
+ * Write channel for caches that store values as byte arrays. Collects the
+ * value in memory and passes it to {@link CacheService#set(String, byte[])}
+ * when closed.
+ */
+class BufferingWriteChannel implements CacheWriteChannel {
+
+    private final CacheService cache;
+    private final String key;
+    private byte[] buf;
+    private int count = 0;
+    private boolean open = true;
+
+    /**
+     * @param size Expected size of the value, or -1 if unknown
+     */
+    BufferingWriteChannel(CacheService cache, String key, long size) {
+        this.cache = cache;
+        this.key = key;
+        this.buf = new byte[(size >= 0 && size < Integer.MAX_VALUE) ? (int) size
+                : CacheServiceImpl.CHUNK_SIZE];
+    }
+
+    public int write(ByteBuffer src) throws ClosedChannelException {
+        if (!open)
+            throw new ClosedChannelException();
+        int n = src.remaining();
+        if (count + n > buf.length) {
+            byte[] newbuf = new byte[Math.max(buf.length * 2, count + n)];
+            System.arraycopy(buf, 0, newbuf, 0, count);
+            buf = newbuf;
+        }
+        src.get(buf, count, n);
+        count += n;
+        return n;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public void close() {
+        if (!open)
+            return;
+        open = false;
+        if (count == buf.length) {
+            cache.set(key, buf);
+        } else {
+            byte[] value = new byte[count];
+            System.arraycopy(buf, 0, value, 0, count);
+            cache.set(key, value);
+        }
+        buf = null;
+    }
+
+    public void abort() {
+        open = false;
+        buf = null;
+    }
+}
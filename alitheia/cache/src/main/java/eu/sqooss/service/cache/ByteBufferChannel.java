@@ -0,0 +1,44 @@
+package eu.sqooss.service.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A channel reading from a byte buffer, without copying the buffer's
+ * contents other than to the buffers passed to {@link #read(ByteBuffer)}.
+ */
+class ByteBufferChannel implements ReadableByteChannel {
+
+    private final ByteBuffer buf;
+    private boolean open = true;
+
+    /**
+     * @param buf The buffer to read from, between its position and limit.
+     * The buffer should not be used by anyone else afterwards.
+     */
+    ByteBufferChannel(ByteBuffer buf) {
+        this.buf = buf;
+    }
+
+    public int read(ByteBuffer dst) throws ClosedChannelException {
+        if (!open)
+            throw new ClosedChannelException();
+        if (!buf.hasRemaining())
+            return -1;
+        int n = Math.min(dst.remaining(), buf.remaining());
+        ByteBuffer chunk = buf.duplicate();
+        chunk.limit(chunk.position() + n);
+        dst.put(chunk);
+        buf.position(buf.position() + n);
+        return n;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public void close() {
+        open = false;
+    }
+}
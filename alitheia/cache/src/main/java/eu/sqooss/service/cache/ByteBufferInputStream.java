@@ -0,0 +1,70 @@
+package eu.sqooss.service.cache;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream reading from a byte buffer, without copying the buffer's
+ * contents. Reading from a stream wrapping a mapped buffer reads directly
+ * from the mapped file.
+ */
+class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buf;
+    private int mark = -1;
+
+    /**
+     * @param buf The buffer to read from, between its position and limit.
+     * The buffer should not be used by anyone else afterwards.
+     */
+    ByteBufferInputStream(ByteBuffer buf) {
+        this.buf = buf;
+    }
+
+    @Override
+    public int read() {
+        if (!buf.hasRemaining())
+            return -1;
+        return buf.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0)
+            return 0;
+        if (!buf.hasRemaining())
+            return -1;
+        len = Math.min(len, buf.remaining());
+        buf.get(b, off, len);
+        return len;
+    }
+
+    @Override
+    public long skip(long n) {
+        if (n <= 0)
+            return 0;
+        int skipped = (int) Math.min(n, buf.remaining());
+        buf.position(buf.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buf.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        mark = buf.position();
+    }
+
+    @Override
+    public synchronized void reset() {
+        buf.position(mark < 0 ? 0 : mark);
+    }
+}
@@ -1,6 +1,7 @@
 package eu.sqooss.service.cache;
 
 import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
 
 import eu.sqooss.core.AlitheiaCoreService;
 
@@ -29,6 +30,18 @@ public interface CacheService extends AlitheiaCoreService {
      */
     InputStream getStream(String key);
 
+    /**
+     * Get the contents of key as a channel. Backing stores that keep their
+     * values outside the Java heap read the value as the channel is read,
+     * instead of copying all of it to memory first.
+     *
+     * The client is responsible to close the returned channel.
+     *
+     * @return A channel to read the value from, or null if the key is not
+     * cached.
+     */
+    ReadableByteChannel getChannel(String key);
+
     /**
      * Set the contents of a key as an in-memory byte array. After the call, the
      * array can be deleted as the contents are guaranteed to be safely copied.
@@ -36,10 +49,22 @@ public interface CacheService extends AlitheiaCoreService {
     void set(String key, byte[] data);
 
     /**
-     * Set the contents of key from the provided input stream. This method is
-     * for convenience only, and it is slow as it performs lots of unecessary
-     * copying. Use the much faster {@link #set(String, byte[])} instead when
-     * you know the size of the data you want to put on the cache.
+     * Set the contents of key from the provided input stream. The stream is
+     * copied to the cache through {@link #setChannel(String, long)}, so it
+     * is not read into memory as a whole unless the backing store keeps its
+     * values in memory. The stream is not closed.
      */
     void setStream(String key, InputStream oos);
+
+    /**
+     * Open a channel to write the contents of a key to. Backing stores that
+     * keep their values outside the Java heap write the value as it is
+     * written to the channel, so the memory used does not depend on the
+     * size of the value. The value is stored when the channel is closed;
+     * call {@link CacheWriteChannel#abort()} instead to discard it.
+     *
+     * @param size The number of bytes that will be written, or -1 if
+     * unknown. Used to preallocate space.
+     */
+    CacheWriteChannel setChannel(String key, long size);
 }
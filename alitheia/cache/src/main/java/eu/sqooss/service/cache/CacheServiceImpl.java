@@ -1,9 +1,10 @@
 package eu.sqooss.service.cache;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,7 +14,10 @@ import eu.sqooss.service.logging.Logger;
 
 public class CacheServiceImpl implements CacheService {
 
-    public static final String CACHE_IMPL = "eu.sqooss.service.cache.OnDiskCache";
+    public static final String CACHE_IMPL = "eu.sqooss.service.cache.impl";
+
+    /** Size of the chunks in which streamed values are copied */
+    static final int CHUNK_SIZE = 64 * 1024;
     
     private static List<Class<? extends CacheService>> impls;
     
@@ -21,6 +25,9 @@ public class CacheServiceImpl implements CacheService {
         impls = new ArrayList<Class<? extends CacheService>>();
         impls.add(OnDiskCache.class);
         impls.add(InMemoryCache.class);
+        impls.add(BoundedInMemoryCache.class);
+        impls.add(LogStructuredCache.class);
+        impls.add(TieredCache.class);
     }
   
     private CacheService c;
@@ -36,7 +43,10 @@ public class CacheServiceImpl implements CacheService {
     
     @Override
     public InputStream getStream(String key) {
-        byte[] buff = c.get(key);
+        if (c != null)
+            return c.getStream(key);
+
+        byte[] buff = get(key);
         
         if (buff == null)
             return null;
@@ -45,6 +55,19 @@ public class CacheServiceImpl implements CacheService {
         return bais;
     }
 
+    @Override
+    public ReadableByteChannel getChannel(String key) {
+        if (c != null)
+            return c.getChannel(key);
+
+        byte[] buff = get(key);
+
+        if (buff == null)
+            return null;
+
+        return new ByteBufferChannel(ByteBuffer.wrap(buff));
+    }
+
     @Override
     public void set(String key, byte[] data) {
         c.set(key, data);
@@ -52,23 +75,41 @@ public class CacheServiceImpl implements CacheService {
 
     @Override
     public void setStream(String key, InputStream in) {
+        if (c != null) {
+            c.setStream(key, in);
+            return;
+        }
+
+        CacheWriteChannel out = setChannel(key, -1);
         try {
             int nRead;
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            byte[] data = new byte[4096];
+            byte[] data = new byte[CHUNK_SIZE];
 
             while ((nRead = in.read(data, 0, data.length)) != -1) {
-              buffer.write(data, 0, nRead);
+                ByteBuffer buf = ByteBuffer.wrap(data, 0, nRead);
+                while (buf.hasRemaining())
+                    out.write(buf);
             }
-
-            buffer.flush();            
-            set(key, buffer.toByteArray());
-            
+            out.close();
         } catch (IOException e) {
-            log.error("Error");
+            out.abort();
+            error("Cannot store key " + key + " An exception occured: "
+                    + e.getMessage());
         }
     }
 
+    /**
+     * Buffers the value in memory. Implementations that can write values
+     * to their backing store incrementally should override this.
+     */
+    @Override
+    public CacheWriteChannel setChannel(String key, long size) {
+        if (c != null)
+            return c.setChannel(key, size);
+
+        return new BufferingWriteChannel(this, key, size);
+    }
+
     @Override
     public boolean startUp() {
         String impl = System.getProperty(CACHE_IMPL);
@@ -79,6 +120,7 @@ public class CacheServiceImpl implements CacheService {
         try {
             Class clazz = Thread.currentThread().getContextClassLoader().loadClass(impl);
             c = (CacheService) clazz.newInstance();
+            c.setInitParams(bc, log);
         } catch (ClassNotFoundException e) {
             log.error("Cannot load cache implementation:" + impl);
         } catch (InstantiationException e) {
@@ -91,6 +133,8 @@ public class CacheServiceImpl implements CacheService {
 
     @Override
     public void shutDown() {
+        if (c != null)
+            c.shutDown();
         c = null;
     }
 
@@ -98,5 +142,12 @@ public class CacheServiceImpl implements CacheService {
     public void setInitParams(BundleContext bc, Logger l) {
        this.bc = bc;
        this.log = l;
-    }   
+    }
+
+    protected void error(String message) {
+        if (log != null)
+            log.error(message);
+        else
+            System.err.println(message);
+    }
 }
@@ -0,0 +1,19 @@
+package eu.sqooss.service.cache;
+
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A channel that writes a value to the cache. The value is stored when the
+ * channel is closed and is not visible to readers before that.
+ *
+ * @see CacheService#setChannel(String, long)
+ */
+public interface CacheWriteChannel extends WritableByteChannel {
+
+    /**
+     * Discards what has been written so far and closes the channel. The
+     * key keeps its previous value, if any. Does nothing if the channel
+     * is already closed.
+     */
+    void abort();
+}
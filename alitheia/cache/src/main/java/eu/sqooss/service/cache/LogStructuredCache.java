@@ -0,0 +1,742 @@
+package eu.sqooss.service.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.osgi.framework.BundleContext;
+
+import eu.sqooss.service.logging.Logger;
+
+/**
+ * Disk based implementation of the cache service that appends all values to
+ * a few large segment files, instead of creating one file per key.
+ * <p>
+ * Each record in a segment consists of a header (magic number, CRC, key
+ * length, value length), the key and the value. An in-memory index maps
+ * keys to the location of their latest record. The index is not persisted;
+ * it is rebuilt at startup by scanning the segments in order, later records
+ * overriding earlier ones. Only the last segment, which may contain a
+ * partially written record after a crash, is checked against the CRCs
+ * during the scan; records in older segments are checked the first time
+ * they are read.
+ * <p>
+ * Overwritten records stay in their segment as garbage. A background
+ * thread rewrites the live records of segments that are mostly garbage to
+ * the end of the log and deletes the segment files.
+ * <p>
+ * Segments are mapped read only in memory, so reads do not need any system
+ * calls, and {@link #getStream(String)} and {@link #getChannel(String)}
+ * read directly from the mapping. Appends are serialised; a single
+ * directory must not be shared by more than one cache instance.
+ * <p>
+ * Accepts the following system properties:
+ *
+ *  <dl>
+ *      <dt>
+ *          eu.sqooss.service.cache.dir
+ *      </dt>
+ *      <dd>
+ *          The directory to store the segment files to
+ *      </dd>
+ *      <dt>
+ *          eu.sqooss.service.cache.segment.size
+ *      </dt>
+ *      <dd>
+ *          The size of each segment file in bytes. Values larger than a
+ *          segment get a segment of their own. Defaults to 64MB.
+ *      </dd>
+ * </dl>
+ */
+public class LogStructuredCache extends CacheServiceImpl {
+
+    public static final String SEGMENT_SIZE = "eu.sqooss.service.cache.segment.size";
+
+    static final int MAGIC = 0x53514c43;
+    /** Magic number, CRC, key length and value length */
+    static final int HEADER_SIZE = 16;
+    /** The CRC covers everything after this offset in a record */
+    private static final int CRC_START = 8;
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String LOCK_FILE = "segments.lock";
+    private static final String SPILL_PREFIX = "spill-";
+    private static final String SPILL_SUFFIX = ".tmp";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File dir;
+    private final int segmentSize;
+    private final ConcurrentHashMap<String, Location> index =
+        new ConcurrentHashMap<String, Location>(1024);
+
+    /**
+     * Guards appends and the list of segments. Index updates that go with
+     * an append are done while holding it, so that the order of the records
+     * in the log is the order in which the index was updated.
+     */
+    private final Object writeLock = new Object();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+    private Segment active;
+    private boolean closed = false;
+    private boolean recovered = false;
+
+    private final LinkedBlockingQueue<Segment> compactQueue =
+        new LinkedBlockingQueue<Segment>();
+    private final Compactor compactor;
+
+    private RandomAccessFile lockFile;
+    private FileLock dirLock;
+
+    private volatile Logger log;
+
+    public LogStructuredCache() throws Exception {
+        this(dirProperty(), Integer.getInteger(SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE));
+    }
+
+    public LogStructuredCache(String cachedir) throws Exception {
+        this(cachedir, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public LogStructuredCache(String cachedir, int segmentSize) throws Exception {
+        this.dir = new File(cachedir);
+        this.segmentSize = segmentSize;
+
+        if (!dir.exists())
+            dir.mkdirs();
+
+        lockFile = new RandomAccessFile(new File(dir, LOCK_FILE), "rw");
+        dirLock = lockFile.getChannel().tryLock();
+        if (dirLock == null) {
+            lockFile.close();
+            throw new IOException("Cache directory " + dir.getAbsolutePath()
+                    + " is used by another process");
+        }
+
+        recover();
+        compactor = new Compactor();
+        compactor.start();
+    }
+
+    @Override
+    public byte[] get(String key) {
+        Location loc = index.get(key);
+        if (loc == null || !verify(key, loc))
+            return null;
+        byte[] result = new byte[loc.length];
+        loc.segment.slice(loc.dataOffset, loc.length).get(result);
+        return result;
+    }
+
+    /**
+     * Returns a stream reading the value directly from the mapped segment.
+     * The stream remains valid even if the key is overwritten or the
+     * segment is compacted while it is being read.
+     */
+    @Override
+    public InputStream getStream(String key) {
+        Location loc = index.get(key);
+        if (loc == null || !verify(key, loc))
+            return null;
+        return new ByteBufferInputStream(loc.segment.slice(loc.dataOffset, loc.length));
+    }
+
+    /**
+     * Returns a channel reading the value directly from the mapped segment.
+     */
+    @Override
+    public ReadableByteChannel getChannel(String key) {
+        Location loc = index.get(key);
+        if (loc == null || !verify(key, loc))
+            return null;
+        return new ByteBufferChannel(loc.segment.slice(loc.dataOffset, loc.length));
+    }
+
+    @Override
+    public void set(String key, byte[] data) {
+        byte[] k = key.getBytes(UTF8);
+        if ((long) HEADER_SIZE + k.length + data.length > Integer.MAX_VALUE) {
+            warn("Cannot store key " + key + " Value is too large");
+            return;
+        }
+
+        ByteBuffer header = header(k, data.length);
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), CRC_START, header.capacity() - CRC_START);
+        crc.update(data);
+        header.putInt(4, (int) crc.getValue());
+
+        store(key, new ByteBuffer[] {header, ByteBuffer.wrap(data)}, null,
+                k.length, data.length);
+    }
+
+    /**
+     * Returns a channel that writes the value to a temporary file in the
+     * cache directory, in the chunks it is given. When the channel is
+     * closed, the file is copied to the end of the log by the kernel, so
+     * a slow writer does not block appends by other threads.
+     *
+     * @param size If positive, the temporary file is preallocated
+     */
+    @Override
+    public CacheWriteChannel setChannel(String key, long size) {
+        try {
+            return new SpillChannel(key, size);
+        } catch (IOException e) {
+            warn("Cannot create temporary file in " + dir.getAbsolutePath()
+                    + ": " + e.getMessage());
+            return new BufferingWriteChannel(this, key, size);
+        }
+    }
+
+    /**
+     * Stops the compaction thread and closes the segment files.
+     */
+    @Override
+    public void shutDown() {
+        synchronized (writeLock) {
+            if (closed)
+                return;
+            closed = true;
+        }
+        try {
+            compactor.join();
+        } catch (InterruptedException e) {
+            // ignored
+        }
+        synchronized (writeLock) {
+            for (Segment s : segments.values())
+                s.close();
+            segments.clear();
+            active = null;
+        }
+        try {
+            dirLock.release();
+            lockFile.close();
+        } catch (IOException e) {
+            warn("Cannot release lock on " + dir.getAbsolutePath() + ": "
+                    + e.getMessage());
+        }
+    }
+
+    /** @return The number of segment files in use */
+    public int getSegmentCount() {
+        synchronized (writeLock) {
+            return segments.size();
+        }
+    }
+
+    /**
+     * Rebuilds the index from the segment files found in the cache dir.
+     */
+    private void recover() throws IOException {
+        List<Integer> ids = new ArrayList<Integer>();
+        String[] files = dir.list();
+        if (files != null) {
+            for (String f : files) {
+                if (f.startsWith(SPILL_PREFIX) && f.endsWith(SPILL_SUFFIX)) {
+                    /* Left over by a writer that did not finish */
+                    new File(dir, f).delete();
+                    continue;
+                }
+                if (!f.startsWith(SEGMENT_PREFIX) || !f.endsWith(SEGMENT_SUFFIX))
+                    continue;
+                try {
+                    ids.add(Integer.parseInt(f.substring(SEGMENT_PREFIX.length(),
+                            f.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException nfe) {
+                    warn("Ignoring file " + f + " in cache directory");
+                }
+            }
+        }
+        Collections.sort(ids);
+
+        for (int i = 0; i < ids.size(); i++) {
+            Segment s = new Segment(ids.get(i), 0);
+            segments.put(s.id, s);
+            scan(s, i == ids.size() - 1);
+        }
+
+        if (segments.isEmpty()) {
+            active = new Segment(0, segmentSize);
+            segments.put(active.id, active);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+        recovered = true;
+        for (Segment s : segments.values())
+            checkGarbage(s);
+    }
+
+    /**
+     * Adds the records of a segment to the index.
+     *
+     * @param last If true, the segment is the one that was being appended
+     * to. Its records are checked against their CRC and anything after the
+     * first invalid record is discarded.
+     */
+    private void scan(Segment s, boolean last) throws IOException {
+        ByteBuffer buf = s.map.duplicate();
+        int pos = 0;
+        while (pos <= s.capacity - HEADER_SIZE) {
+            if (buf.getInt(pos) != MAGIC)
+                break;
+            int klen = buf.getInt(pos + 8);
+            int dlen = buf.getInt(pos + 12);
+            if (klen < 0 || dlen < 0
+                    || (long) pos + HEADER_SIZE + klen + dlen > s.capacity)
+                break;
+            Location loc = new Location(s, pos, pos + HEADER_SIZE + klen, dlen);
+            if (last) {
+                if (!checkCrc(loc))
+                    break;
+                loc.verified = true;
+            }
+            replaced(index.put(decode(buf, pos + HEADER_SIZE, klen), loc));
+            pos = loc.end();
+        }
+        s.size = pos;
+
+        if (last && pos < s.capacity) {
+            /* Zero whatever a crash left after the last complete record */
+            s.channel.truncate(pos);
+            s.file.setLength(s.capacity);
+        }
+    }
+
+    /**
+     * @return A record header without the CRC, ready to be written
+     */
+    private static ByteBuffer header(byte[] key, int dlen) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + key.length);
+        header.putInt(MAGIC);
+        header.putInt(0);
+        header.putInt(key.length);
+        header.putInt(dlen);
+        header.put(key);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Appends a record and points the key to it.
+     *
+     * @param tail If not null, the value is read from this channel after
+     * the buffers in record have been written
+     */
+    private void store(String key, ByteBuffer[] record, FileChannel tail,
+            int klen, int dlen) {
+        synchronized (writeLock) {
+            if (closed) {
+                warn("Cannot store key " + key + " The cache is closed");
+                return;
+            }
+            try {
+                Location loc = append(record, tail, klen, dlen);
+                replaced(index.put(key, loc));
+            } catch (IOException e) {
+                warn("Cannot store key " + key + " An exception occured: "
+                        + e.getMessage());
+                /* Do not return the previous value from now on */
+                replaced(index.remove(key));
+            }
+        }
+    }
+
+    private Location append(ByteBuffer[] record, int klen, int dlen)
+            throws IOException {
+        return append(record, null, klen, dlen);
+    }
+
+    /**
+     * Appends a record to the active segment. Must be called while holding
+     * the write lock.
+     *
+     * @param tail If not null, the rest of the record is transferred from
+     * this channel, starting at its current position
+     */
+    private Location append(ByteBuffer[] record, FileChannel tail, int klen,
+            int dlen) throws IOException {
+        int len = HEADER_SIZE + klen + dlen;
+        if (active.size > active.capacity - len) {
+            Segment old = active;
+            active = new Segment(old.id + 1, Math.max(segmentSize, len));
+            segments.put(active.id, active);
+            checkGarbage(old);
+        }
+
+        int pos = active.size;
+        long filepos = pos;
+        for (ByteBuffer b : record) {
+            while (b.hasRemaining())
+                filepos += active.channel.write(b, filepos);
+        }
+        long end = pos + len;
+        while (tail != null && filepos < end) {
+            long n = active.channel.transferFrom(tail, filepos, end - filepos);
+            if (n <= 0)
+                throw new IOException("Unexpected end of value");
+            filepos += n;
+        }
+        active.size = pos + len;
+
+        Location loc = new Location(active, pos, pos + HEADER_SIZE + klen, dlen);
+        loc.verified = true;
+        return loc;
+    }
+
+    /**
+     * Accounts for a record that is no longer referenced by the index.
+     */
+    private void replaced(Location prev) {
+        if (prev == null)
+            return;
+        prev.segment.garbage.addAndGet(prev.end() - prev.offset);
+        checkGarbage(prev.segment);
+    }
+
+    /**
+     * Queues a segment for compaction if at least half of it is garbage.
+     */
+    private void checkGarbage(Segment s) {
+        if (!recovered || s == active || s.compacting)
+            return;
+        if (s.garbage.get() * 2 >= s.size) {
+            s.compacting = true;
+            compactQueue.add(s);
+        }
+    }
+
+    /**
+     * Copies the live records of a segment to the end of the log and
+     * deletes the segment.
+     */
+    private void compact(Segment s) throws IOException {
+        ByteBuffer buf = s.map.duplicate();
+        int pos = 0;
+        while (pos < s.size) {
+            int klen = buf.getInt(pos + 8);
+            int dlen = buf.getInt(pos + 12);
+            String key = decode(buf, pos + HEADER_SIZE, klen);
+            Location loc = index.get(key);
+            int end = pos + HEADER_SIZE + klen + dlen;
+
+            if (loc != null && loc.segment == s && loc.offset == pos
+                    && verify(key, loc)) {
+                synchronized (writeLock) {
+                    if (closed)
+                        return;
+                    if (index.get(key) == loc) {
+                        ByteBuffer record = s.slice(pos, end - pos);
+                        index.put(key, append(new ByteBuffer[] {record}, klen, dlen));
+                    }
+                }
+            }
+            pos = end;
+        }
+
+        synchronized (writeLock) {
+            segments.remove(s.id);
+        }
+        /*
+         * Readers may still hold locations in this segment. The mapping
+         * stays valid after the file is closed and deleted and is released
+         * when the last reference to it is garbage collected.
+         */
+        s.close();
+        if (!s.path.delete())
+            warn("Cannot delete cache segment " + s.path);
+    }
+
+    /**
+     * Checks the CRC of a record that has not been checked since it was
+     * loaded from disk. Corrupt records are dropped from the index.
+     */
+    private boolean verify(String key, Location loc) {
+        if (loc.verified)
+            return true;
+        if (checkCrc(loc)) {
+            loc.verified = true;
+            return true;
+        }
+        warn("Cache record for key " + key + " in " + loc.segment.path
+                + " is corrupt, dropping it");
+        synchronized (writeLock) {
+            if (index.remove(key, loc))
+                replaced(loc);
+        }
+        return false;
+    }
+
+    private static boolean checkCrc(Location loc) {
+        ByteBuffer buf = loc.segment.slice(loc.offset + CRC_START,
+                loc.end() - loc.offset - CRC_START);
+        byte[] chunk = new byte[Math.min(buf.remaining(), 8192)];
+        CRC32 crc = new CRC32();
+        while (buf.hasRemaining()) {
+            int n = Math.min(chunk.length, buf.remaining());
+            buf.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+        }
+        return loc.segment.map.getInt(loc.offset + 4) == (int) crc.getValue();
+    }
+
+    private static String decode(ByteBuffer buf, int offset, int length) {
+        byte[] b = new byte[length];
+        ByteBuffer dup = buf.duplicate();
+        dup.position(offset);
+        dup.get(b);
+        return new String(b, UTF8);
+    }
+
+    private static String dirProperty() {
+        String dirpath = System.getProperty(OnDiskCache.CACHE_DIR);
+
+        if (dirpath == null) {
+            dirpath = System.getProperty("java.io.tmpdir");
+            if (dirpath == null)
+                dirpath = "tmp";
+        }
+        return dirpath;
+    }
+
+    /**
+     * Keeps the service's logger. Warnings of the recovery in the
+     * constructor go to System.err, as they come before the logger.
+     */
+    @Override
+    public void setInitParams(BundleContext bc, Logger l) {
+        super.setInitParams(bc, l);
+        this.log = l;
+    }
+
+    private void warn(String message) {
+        Logger l = log;
+        if (l != null)
+            l.warn(message);
+        else
+            System.err.println(message);
+    }
+
+    /**
+     * Where the latest record for a key lives.
+     */
+    private static class Location {
+        final Segment segment;
+        final int offset;
+        final int dataOffset;
+        final int length;
+        /** Whether the CRC of the record is known to be correct */
+        volatile boolean verified = false;
+
+        Location(Segment segment, int offset, int dataOffset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.dataOffset = dataOffset;
+            this.length = length;
+        }
+
+        int end() {
+            return dataOffset + length;
+        }
+    }
+
+    /**
+     * A segment file and its read only mapping. Segment files are created
+     * with their full size, so that the mapping does not have to grow as
+     * records are appended.
+     */
+    private class Segment {
+        final int id;
+        final File path;
+        final RandomAccessFile file;
+        final FileChannel channel;
+        final MappedByteBuffer map;
+        final int capacity;
+        /** End of the last record, guarded by the write lock */
+        int size = 0;
+        /** Bytes taken by overwritten records */
+        final AtomicLong garbage = new AtomicLong();
+        /** Guarded by the write lock */
+        boolean compacting = false;
+
+        /**
+         * Opens or creates a segment file.
+         *
+         * @param capacity Minimum size of the file
+         */
+        Segment(int id, int capacity) throws IOException {
+            this.id = id;
+            this.path = new File(dir, String.format("%s%08d%s",
+                    SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+            this.file = new RandomAccessFile(path, "rw");
+            if (file.length() < capacity)
+                file.setLength(capacity);
+            this.capacity = (int) Math.min(file.length(), Integer.MAX_VALUE);
+            this.channel = file.getChannel();
+            this.map = channel.map(MapMode.READ_ONLY, 0, this.capacity);
+        }
+
+        /** @return A buffer sharing the contents of the mapping */
+        ByteBuffer slice(int offset, int length) {
+            ByteBuffer b = map.duplicate();
+            b.limit(offset + length);
+            b.position(offset);
+            return b.slice();
+        }
+
+        void close() {
+            try {
+                if (this == active)
+                    channel.force(false);
+                file.close();
+            } catch (IOException e) {
+                warn("Cannot close cache segment " + path + ": "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Collects a value in a temporary file and appends it to the log when
+     * closed.
+     */
+    private class SpillChannel implements CacheWriteChannel {
+        private final String key;
+        private final File path;
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private long count = 0;
+        private boolean open = true;
+
+        SpillChannel(String key, long size) throws IOException {
+            this.key = key;
+            this.path = File.createTempFile(SPILL_PREFIX, SPILL_SUFFIX, dir);
+            this.file = new RandomAccessFile(path, "rw");
+            if (size > 0)
+                file.setLength(size);
+            this.channel = file.getChannel();
+        }
+
+        public int write(ByteBuffer src) throws IOException {
+            if (!open)
+                throw new ClosedChannelException();
+            int n = 0;
+            while (src.hasRemaining())
+                n += channel.write(src, count + n);
+            count += n;
+            return n;
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        public void close() throws IOException {
+            if (!open)
+                return;
+            open = false;
+            try {
+                byte[] k = key.getBytes(UTF8);
+                if (HEADER_SIZE + k.length + count > Integer.MAX_VALUE) {
+                    warn("Cannot store key " + key + " Value is too large");
+                    return;
+                }
+
+                /* Second pass over the value for the CRC, which also covers its length */
+                ByteBuffer header = header(k, (int) count);
+                CRC32 crc = new CRC32();
+                crc.update(header.array(), CRC_START, header.capacity() - CRC_START);
+                ByteBuffer chunk = ByteBuffer.allocate(CacheServiceImpl.CHUNK_SIZE);
+                long pos = 0;
+                while (pos < count) {
+                    chunk.clear();
+                    chunk.limit((int) Math.min(chunk.capacity(), count - pos));
+                    int n = channel.read(chunk, pos);
+                    if (n < 0)
+                        throw new IOException("Unexpected end of file " + path);
+                    crc.update(chunk.array(), 0, n);
+                    pos += n;
+                }
+                header.putInt(4, (int) crc.getValue());
+
+                channel.position(0);
+                store(key, new ByteBuffer[] {header}, channel, k.length, (int) count);
+            } finally {
+                discard();
+            }
+        }
+
+        public void abort() {
+            if (!open)
+                return;
+            open = false;
+            discard();
+        }
+
+        private void discard() {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // ignored
+            }
+            if (!path.delete())
+                warn("Cannot delete temporary file " + path);
+        }
+    }
+
+    /**
+     * Compacts the segments queued by {@link #checkGarbage(Segment)}, one at
+     * a time. Polls so that it notices when the cache is shut down; it is
+     * not interrupted as that would close the channel it writes to.
+     */
+    private class Compactor extends Thread {
+
+        Compactor() {
+            super("Cache segment compactor");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                synchronized (writeLock) {
+                    if (closed)
+                        return;
+                }
+                Segment s;
+                try {
+                    s = compactQueue.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (s == null)
+                    continue;
+                try {
+                    compact(s);
+                } catch (IOException e) {
+                    warn("Cannot compact cache segment " + s.path + ": "
+                            + e.getMessage());
+                }
+            }
+        }
+    }
+}
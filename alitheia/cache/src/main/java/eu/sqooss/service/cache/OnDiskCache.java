@@ -6,6 +6,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
@@ -14,9 +15,12 @@ import java.nio.channels.FileLock;
 import java.nio.channels.FileLockInterruptionException;
 import java.nio.channels.NonWritableChannelException;
 import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.ReadableByteChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+import org.osgi.framework.BundleContext;
+
 import eu.sqooss.service.logging.Logger;
 
 /**
@@ -167,6 +171,72 @@ public class OnDiskCache extends CacheServiceImpl {
         }
     }
 
+    @Override
+    public ReadableByteChannel getChannel(String key) {
+        try {
+            String fname = dir.getAbsolutePath() + File.separatorChar + md5(key);
+            return new FileInputStream(fname).getChannel();
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a channel writing to a temporary file, which replaces the
+     * key's file when the channel is closed.
+     */
+    @Override
+    public CacheWriteChannel setChannel(final String key, long size) {
+        try {
+            final File target = new File(dir, md5(key));
+            final File tmp = File.createTempFile(target.getName(), ".tmp", dir);
+            final RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+            if (size > 0)
+                raf.setLength(size);
+
+            return new CacheWriteChannel() {
+                private long count = 0;
+
+                public int write(ByteBuffer src) throws IOException {
+                    int n = raf.getChannel().write(src);
+                    count += n;
+                    return n;
+                }
+
+                public boolean isOpen() {
+                    return raf.getChannel().isOpen();
+                }
+
+                public void close() throws IOException {
+                    if (!isOpen())
+                        return;
+                    raf.setLength(count);
+                    raf.close();
+                    if (!tmp.renameTo(target)) {
+                        tmp.delete();
+                        warn("Cannot store key " + key + " Cannot rename "
+                                + tmp + " to " + target);
+                    }
+                }
+
+                public void abort() {
+                    try {
+                        raf.close();
+                    } catch (IOException e) {
+                        // ignored
+                    }
+                    tmp.delete();
+                }
+            };
+        } catch (Exception e) {
+            warn("Cannot store key " + key + " An exception occured: "
+                    + e.getMessage());
+            return super.setChannel(key, size);
+        }
+    }
+
     private String md5(String...args) throws NoSuchAlgorithmException {
         MessageDigest m = MessageDigest.getInstance("MD5");
         
@@ -175,6 +245,12 @@ public class OnDiskCache extends CacheServiceImpl {
         return new BigInteger(1, m.digest()).toString(16);
     }
     
+    @Override
+    public void setInitParams(BundleContext bc, Logger l) {
+        super.setInitParams(bc, l);
+        this.log = l;
+    }
+
     private void warn(String message) {
         if (log != null)
             log.warn(message);
@@ -0,0 +1,365 @@
+package eu.sqooss.service.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.framework.BundleContext;
+
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.util.StripedCounter;
+
+/**
+ * Cache service implementation that keeps recently used values in a
+ * {@link BoundedInMemoryCache} in front of a disk based cache.
+ * <p>
+ * New values are only stored in memory. Values too large for the memory
+ * tier are written to the disk cache directly. When they are evicted from
+ * memory, they are queued to be written to the disk cache by a background
+ * thread, so callers never wait for the disk unless the queue grows
+ * beyond a limit. Values found on the disk are copied back to memory.
+ * Values that were read from the disk are not written back when evicted.
+ * On shut down, all values still in memory are written to the disk cache.
+ * <p>
+ * A value read while the same key is being overwritten by another thread
+ * may be either the old or the new value.
+ * <p>
+ * Accepts the system properties of {@link BoundedInMemoryCache}, which
+ * configure the memory tier, the properties of the disk cache and:
+ *
+ *  <dl>
+ *      <dt>
+ *          eu.sqooss.service.cache.tiered.disk
+ *      </dt>
+ *      <dd>
+ *          The class name of the disk cache implementation. Defaults to
+ *          eu.sqooss.service.cache.LogStructuredCache.
+ *      </dd>
+ * </dl>
+ */
+public class TieredCache extends CacheServiceImpl {
+
+    public static final String DISK_IMPL = "eu.sqooss.service.cache.tiered.disk";
+
+    private final MemoryTier memory;
+    private final CacheService disk;
+
+    /** Evicted values waiting to be written to disk */
+    private final ConcurrentHashMap<String, byte[]> pending =
+        new ConcurrentHashMap<String, byte[]>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    /** Callers of set() block while more than this is pending */
+    private final long maxPending;
+    /**
+     * Held while a key's queued value is written to disk and while a
+     * value bypassing the queue replaces it, so that an older queued value
+     * never overwrites a newer one on the disk.
+     */
+    private final Object[] keyLocks = new Object[64];
+    /** Used by the writer to wait for work and by callers to wait for the writer */
+    private final Object writerLock = new Object();
+    private final Writer writer;
+    private volatile boolean closed = false;
+
+    private final StripedCounter memoryHits = new StripedCounter();
+    private final StripedCounter pendingHits = new StripedCounter();
+    private final StripedCounter diskHits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+    private final StripedCounter writes = new StripedCounter();
+
+    public TieredCache() throws Exception {
+        this(new MemoryTier(), diskProperty());
+    }
+
+    /**
+     * @param capacity Capacity of the memory tier in bytes.
+     * @param offHeap Whether the memory tier stores values in direct buffers.
+     * @param disk The cache to write evicted values to.
+     */
+    public TieredCache(long capacity, boolean offHeap, CacheService disk) {
+        this(new MemoryTier(capacity, offHeap), disk);
+    }
+
+    private TieredCache(MemoryTier memory, CacheService disk) {
+        this.memory = memory;
+        this.disk = disk;
+        this.maxPending = Math.max(memory.getCapacity() / 4, 1024 * 1024);
+        for (int i = 0; i < keyLocks.length; i++)
+            keyLocks[i] = new Object();
+        memory.owner = this;
+        writer = new Writer();
+        writer.start();
+    }
+
+    @Override
+    public byte[] get(String key) {
+        byte[] result = memory.get(key);
+        if (result != null) {
+            memoryHits.increment();
+            return result;
+        }
+
+        result = pending.get(key);
+        if (result != null) {
+            pendingHits.increment();
+            memory.promote(key, result);
+            return result.clone();
+        }
+
+        result = disk.get(key);
+        if (result != null) {
+            diskHits.increment();
+            if (memory.fits(key, result.length))
+                memory.promote(key, result);
+            return result;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Returns values in memory as they are and reads other values from the
+     * disk tier's channel, without promoting them.
+     */
+    @Override
+    public ReadableByteChannel getChannel(String key) {
+        byte[] result = memory.get(key);
+        if (result != null) {
+            memoryHits.increment();
+            return new ByteBufferChannel(ByteBuffer.wrap(result));
+        }
+
+        result = pending.get(key);
+        if (result != null) {
+            pendingHits.increment();
+            return new ByteBufferChannel(ByteBuffer.wrap(result));
+        }
+
+        ReadableByteChannel c = disk.getChannel(key);
+        if (c != null)
+            diskHits.increment();
+        else
+            misses.increment();
+        return c;
+    }
+
+    /**
+     * Values of known size that fit in a segment of the memory tier are
+     * buffered and stored in memory. Larger values, or values of unknown
+     * size, are written to the disk tier directly.
+     */
+    @Override
+    public CacheWriteChannel setChannel(String key, long size) {
+        if (size >= 0 && memory.fits(key, size))
+            return new BufferingWriteChannel(this, key, size);
+
+        synchronized (keyLock(key)) {
+            forget(key);
+        }
+        return disk.setChannel(key, size);
+    }
+
+    /**
+     * Stores the value in memory, or on the disk tier if it is too large
+     * for a segment of the memory tier.
+     */
+    @Override
+    public void set(String key, byte[] data) {
+        if (!memory.fits(key, data.length)) {
+            synchronized (keyLock(key)) {
+                forget(key);
+                disk.set(key, data);
+            }
+            writes.increment();
+            return;
+        }
+
+        memory.set(key, data);
+
+        if (pendingBytes.get() > maxPending) {
+            synchronized (writerLock) {
+                while (pendingBytes.get() > maxPending && !closed) {
+                    try {
+                        writerLock.wait(100);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Passes the service's logger on to both tiers */
+    @Override
+    public void setInitParams(BundleContext bc, Logger l) {
+        super.setInitParams(bc, l);
+        memory.setInitParams(bc, l);
+        disk.setInitParams(bc, l);
+    }
+
+    /**
+     * Writes all values in memory to the disk cache and shuts it down.
+     */
+    @Override
+    public void shutDown() {
+        if (closed)
+            return;
+        memory.evictAll();
+        closed = true;
+        synchronized (writerLock) {
+            writerLock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            // ignored
+        }
+        disk.shutDown();
+    }
+
+    /** @return The memory tier, for its statistics */
+    public BoundedInMemoryCache getMemoryTier() {
+        return memory;
+    }
+
+    /** @return The disk tier */
+    public CacheService getDiskTier() {
+        return disk;
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    /** @return Number of values found in the queue of values to write */
+    public long getPendingHits() {
+        return pendingHits.sum();
+    }
+
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** @return Number of values written to the disk tier */
+    public long getDiskWrites() {
+        return writes.sum();
+    }
+
+    /** @return Bytes waiting to be written to the disk tier */
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TieredCache[memory=" + memory + ", disk="
+                + disk.getClass().getSimpleName() + ", memoryhits="
+                + getMemoryHits() + ", diskhits=" + getDiskHits()
+                + ", misses=" + getMisses() + ", diskwrites="
+                + getDiskWrites() + "]";
+    }
+
+    /**
+     * Drops the copies of a key in memory and in the write queue. Must be
+     * called with the key's lock held.
+     */
+    private void forget(String key) {
+        memory.remove(key);
+        byte[] prev = pending.remove(key);
+        if (prev != null)
+            pendingBytes.addAndGet(-prev.length);
+    }
+
+    private Object keyLock(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return keyLocks[h & (keyLocks.length - 1)];
+    }
+
+    private void demote(String key, byte[] data) {
+        byte[] prev = pending.put(key, data);
+        pendingBytes.addAndGet(data.length - (prev == null ? 0 : prev.length));
+        synchronized (writerLock) {
+            writerLock.notify();
+        }
+    }
+
+    private static CacheService diskProperty() throws Exception {
+        String impl = System.getProperty(DISK_IMPL);
+        if (impl == null)
+            impl = LogStructuredCache.class.getName();
+        Class<?> clazz = Thread.currentThread().getContextClassLoader().loadClass(impl);
+        return (CacheService) clazz.newInstance();
+    }
+
+    /**
+     * The memory tier, passing evicted values to the write queue.
+     */
+    private static class MemoryTier extends BoundedInMemoryCache {
+        TieredCache owner;
+
+        MemoryTier() {
+            super();
+        }
+
+        MemoryTier(long capacity, boolean offHeap) {
+            super(capacity, offHeap);
+        }
+
+        @Override
+        protected void evicted(String key, byte[] data) {
+            owner.demote(key, data);
+        }
+    }
+
+    /**
+     * Writes the queued values to the disk cache in batches.
+     */
+    private class Writer extends Thread {
+
+        Writer() {
+            super("Cache write-behind");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                synchronized (writerLock) {
+                    while (pending.isEmpty() && !closed) {
+                        try {
+                            writerLock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+                if (pending.isEmpty() && closed)
+                    return;
+
+                for (String key : pending.keySet()) {
+                    synchronized (keyLock(key)) {
+                        /* May have been replaced by a value written directly */
+                        byte[] data = pending.get(key);
+                        if (data == null)
+                            continue;
+                        disk.set(key, data);
+                        writes.increment();
+                        /* Keep it if it was evicted again meanwhile */
+                        if (pending.remove(key, data))
+                            pendingBytes.addAndGet(-data.length);
+                    }
+                }
+
+                synchronized (writerLock) {
+                    writerLock.notifyAll();
+                }
+            }
+        }
+    }
+}
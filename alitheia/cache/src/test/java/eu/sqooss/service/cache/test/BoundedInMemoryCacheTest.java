@@ -0,0 +1,136 @@
+package eu.sqooss.service.cache.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import eu.sqooss.service.cache.BoundedInMemoryCache;
+
+public class BoundedInMemoryCacheTest {
+
+    @Test
+    public void testInvalidSizeLogged() {
+        System.setProperty(BoundedInMemoryCache.CACHE_SIZE, "lots");
+        try {
+            BoundedInMemoryCache cache = new BoundedInMemoryCache();
+            /* The default size, rounded down to whole segments */
+            assertEquals(Runtime.getRuntime().maxMemory() / 8,
+                    cache.getCapacity(), 16);
+
+            RecordingLogger log = new RecordingLogger();
+            cache.setInitParams(null, log);
+            assertEquals(1, log.messages.size());
+            assertTrue(log.messages.get(0).startsWith("Invalid cache size lots"));
+
+            /* Reported once */
+            cache.setInitParams(null, log);
+            assertEquals(1, log.messages.size());
+        } finally {
+            System.clearProperty(BoundedInMemoryCache.CACHE_SIZE);
+        }
+    }
+
+    @Test
+    public void testSizeProperty() {
+        System.setProperty(BoundedInMemoryCache.CACHE_SIZE, "2m");
+        try {
+            BoundedInMemoryCache cache = new BoundedInMemoryCache();
+            assertEquals(2 * 1024 * 1024, cache.getCapacity());
+            RecordingLogger log = new RecordingLogger();
+            cache.setInitParams(null, log);
+            assertTrue(log.messages.isEmpty());
+        } finally {
+            System.clearProperty(BoundedInMemoryCache.CACHE_SIZE);
+        }
+    }
+
+    @Test
+    public void testGetSet() {
+        for (boolean offHeap : new boolean[] {false, true}) {
+            BoundedInMemoryCache cache = new BoundedInMemoryCache(1024 * 1024, offHeap);
+            byte[] val = new byte[10000];
+            for (int i = 0; i < val.length; i++)
+                val[i] = (byte) i;
+            cache.set("foo", val);
+            assertArrayEquals(val, cache.get("foo"));
+            assertNull(cache.get("bar"));
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getMisses());
+            
+            cache.set("foo", "short".getBytes());
+            assertEquals("short", new String(cache.get("foo")));
+            assertEquals(1, cache.getEntries());
+        }
+    }
+    
+    @Test
+    public void testValueCopied() {
+        for (boolean offHeap : new boolean[] {false, true}) {
+            BoundedInMemoryCache cache = new BoundedInMemoryCache(1024 * 1024, offHeap);
+            byte[] val = "value".getBytes();
+            cache.set("foo", val);
+            val[0] = 'V';
+            byte[] got = cache.get("foo");
+            assertEquals("value", new String(got));
+            got[0] = 'V';
+            assertEquals("value", new String(cache.get("foo")));
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        for (boolean offHeap : new boolean[] {false, true}) {
+            BoundedInMemoryCache cache = new BoundedInMemoryCache(1024 * 1024, offHeap);
+            byte[] val = new byte[8192];
+            for (int i = 0; i < 1000; i++)
+                cache.set("foo" + i, val);
+            
+            assertTrue(cache.getEvictions() > 0);
+            assertTrue(cache.getBytes() <= cache.getCapacity());
+            assertEquals(1000 - cache.getEvictions(), cache.getEntries());
+            /* The most recently added entry is never the first to go */
+            assertArrayEquals(val, cache.get("foo999"));
+        }
+    }
+
+    @Test
+    public void testTooLarge() {
+        BoundedInMemoryCache cache = new BoundedInMemoryCache(1024 * 1024, false);
+        cache.set("foo", new byte[2 * 1024 * 1024]);
+        assertNull(cache.get("foo"));
+        assertEquals(1, cache.getRejections());
+    }
+
+    @Test
+    public void testStress() throws InterruptedException {
+        final BoundedInMemoryCache cache = new BoundedInMemoryCache(64 * 1024, true);
+        List<Thread> threads = new ArrayList<Thread>();
+        
+        for (int i = 0; i < 8; i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        cache.set("foo" + i, ("bar" + i).getBytes());
+                        int random = (int)(Math.random() * (double)i);
+                        byte[] b = cache.get("foo" + random);
+                        if (b != null)
+                            assertEquals("bar" + random, new String(b));
+                    }
+                }
+            };
+            threads.add(t);
+            t.start();
+        }
+
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(cache.getBytes() <= cache.getCapacity());
+    }
+}
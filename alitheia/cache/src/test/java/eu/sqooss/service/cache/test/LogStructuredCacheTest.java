@@ -0,0 +1,160 @@
+package eu.sqooss.service.cache.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import eu.sqooss.service.cache.CacheWriteChannel;
+import eu.sqooss.service.cache.LogStructuredCache;
+
+public class LogStructuredCacheTest {
+
+    static String path = "tmp/segments";
+
+    private String newDir(String name) {
+        File dir = new File(path, name);
+        if (dir.exists()) {
+            for (File f : dir.listFiles())
+                f.delete();
+        }
+        return dir.getPath();
+    }
+
+    @Test
+    public void testGetSet() throws Exception {
+        LogStructuredCache cache = new LogStructuredCache(newDir("getset"));
+        cache.set("foo", "this is val1".getBytes());
+        assertEquals("this is val1", new String(cache.get("foo")));
+        cache.set("foo", "val2".getBytes());
+        assertEquals("val2", new String(cache.get("foo")));
+        assertNull(cache.get("bar"));
+
+        InputStream in = cache.getStream("foo");
+        byte[] b = new byte[10];
+        assertEquals(4, in.read(b));
+        assertEquals("val2", new String(b, 0, 4));
+        assertEquals(-1, in.read());
+        in.close();
+        cache.shutDown();
+    }
+
+    @Test
+    public void testChannels() throws Exception {
+        String dir = newDir("channels");
+        LogStructuredCache cache = new LogStructuredCache(dir, 64 * 1024);
+        byte[] val = new byte[1024 * 1024];
+        for (int i = 0; i < val.length; i++)
+            val[i] = (byte) i;
+
+        CacheWriteChannel out = cache.setChannel("foo", val.length);
+        for (int i = 0; i < val.length; i += 4096)
+            out.write(ByteBuffer.wrap(val, i, 4096));
+        assertNull(cache.get("foo"));
+        out.close();
+
+        out = cache.setChannel("foo", -1);
+        out.write(ByteBuffer.wrap("garbage".getBytes()));
+        out.abort();
+
+        cache.setStream("bar", new ByteArrayInputStream(val, 0, 1000));
+        cache.shutDown();
+
+        cache = new LogStructuredCache(dir, 64 * 1024);
+        ReadableByteChannel in = cache.getChannel("foo");
+        ByteBuffer read = ByteBuffer.allocate(val.length);
+        while (in.read(read) > 0);
+        in.close();
+        assertTrue(ByteBuffer.wrap(val).equals(read.flip()));
+        assertEquals(1000, cache.get("bar").length);
+        for (String f : new File(dir).list())
+            assertTrue(!f.startsWith("spill-"));
+        cache.shutDown();
+    }
+
+    @Test
+    public void testWarningsLogged() throws Exception {
+        LogStructuredCache cache = new LogStructuredCache(newDir("warnings"));
+        RecordingLogger log = new RecordingLogger();
+        cache.setInitParams(null, log);
+        cache.shutDown();
+
+        cache.set("foo", "bar".getBytes());
+        assertEquals(1, log.messages.size());
+        assertTrue(log.messages.get(0).startsWith("Cannot store key foo"));
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        String dir = newDir("restart");
+        LogStructuredCache cache = new LogStructuredCache(dir, 64 * 1024);
+        for (int i = 0; i < 1000; i++)
+            cache.set("foo" + i, ("bar" + i).getBytes());
+        cache.set("foo0", "baz".getBytes());
+        cache.shutDown();
+
+        cache = new LogStructuredCache(dir, 64 * 1024);
+        assertEquals("baz", new String(cache.get("foo0")));
+        for (int i = 1; i < 1000; i++)
+            assertEquals("bar" + i, new String(cache.get("foo" + i)));
+        cache.shutDown();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        String dir = newDir("compaction");
+        LogStructuredCache cache = new LogStructuredCache(dir, 64 * 1024);
+        byte[] val = new byte[1000];
+        for (int i = 0; i < 10000; i++)
+            cache.set("foo" + (i % 20), val);
+        cache.set("foo0", "bar".getBytes());
+
+        for (int i = 0; i < 50 && cache.getSegmentCount() > 3; i++)
+            Thread.sleep(100);
+        assertTrue(cache.getSegmentCount() <= 3);
+        assertEquals("bar", new String(cache.get("foo0")));
+        assertEquals(1000, cache.get("foo19").length);
+        cache.shutDown();
+
+        cache = new LogStructuredCache(dir, 64 * 1024);
+        assertEquals("bar", new String(cache.get("foo0")));
+        assertEquals(1000, cache.get("foo19").length);
+        cache.shutDown();
+    }
+
+    @Test
+    public void testStress() throws Exception {
+        final LogStructuredCache cache =
+            new LogStructuredCache(newDir("stress"), 64 * 1024);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < 8; i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 5000; i++) {
+                        cache.set("foo" + i, ("bar" + i).getBytes());
+                        int random = (int)(Math.random() * (double)i);
+                        assertEquals("bar" + random,
+                                new String(cache.get("foo" + random)));
+                    }
+                }
+            };
+            threads.add(t);
+            t.start();
+        }
+
+        for (Thread t : threads) {
+            t.join();
+        }
+        cache.shutDown();
+    }
+}
@@ -0,0 +1,41 @@
+package eu.sqooss.service.cache.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import eu.sqooss.service.logging.Logger;
+
+/**
+ * Keeps the warnings and errors passed to it, for tests that check what
+ * a cache reports.
+ */
+class RecordingLogger implements Logger {
+
+    final List<String> messages =
+        Collections.synchronizedList(new ArrayList<String>());
+
+    public void debug(String message) {}
+
+    public void info(String message) {}
+
+    public void warn(String message) {
+        messages.add(message);
+    }
+
+    public void warn(String message, Exception e) {
+        messages.add(message);
+    }
+
+    public void error(String message) {
+        messages.add(message);
+    }
+
+    public void error(String message, Exception e) {
+        messages.add(message);
+    }
+
+    public String getName() {
+        return "sqooss.cache";
+    }
+}
@@ -0,0 +1,118 @@
+package eu.sqooss.service.cache.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import eu.sqooss.service.cache.CacheWriteChannel;
+import eu.sqooss.service.cache.InMemoryCache;
+import eu.sqooss.service.cache.LogStructuredCache;
+import eu.sqooss.service.cache.TieredCache;
+
+public class TieredCacheTest {
+
+    static String path = "tmp/tiered";
+
+    @Test
+    public void testGetSet() {
+        TieredCache cache = new TieredCache(1024 * 1024, false, new InMemoryCache());
+        cache.set("foo", "this is val1".getBytes());
+        assertEquals("this is val1", new String(cache.get("foo")));
+        assertNull(cache.get("bar"));
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(1, cache.getMisses());
+        /* Nothing evicted, nothing written */
+        assertEquals(0, cache.getDiskWrites());
+        cache.shutDown();
+        assertEquals(1, cache.getDiskWrites());
+    }
+
+    @Test
+    public void testLargerThanSegment() throws Exception {
+        InMemoryCache disk = new InMemoryCache();
+        TieredCache cache = new TieredCache(64 * 1024, false, disk);
+        byte[] big = new byte[16 * 1024];
+        for (int i = 0; i < big.length; i++)
+            big[i] = (byte) i;
+        assertFalse(cache.getMemoryTier().fits("foo", big.length));
+
+        /* The older value in memory must not come back */
+        cache.set("foo", "small".getBytes());
+        cache.set("foo", big);
+        assertArrayEquals(big, cache.get("foo"));
+        assertEquals(0, cache.getMemoryTier().getRejections());
+
+        cache.set("bar", "small".getBytes());
+        CacheWriteChannel c = cache.setChannel("bar", big.length);
+        c.write(ByteBuffer.wrap(big));
+        c.close();
+        assertArrayEquals(big, cache.get("bar"));
+
+        cache.shutDown();
+        assertArrayEquals(big, disk.get("foo"));
+        assertArrayEquals(big, disk.get("bar"));
+    }
+
+    @Test
+    public void testDemotion() throws Exception {
+        File dir = new File(path);
+        if (dir.exists()) {
+            for (File f : dir.listFiles())
+                f.delete();
+        }
+
+        TieredCache cache = new TieredCache(64 * 1024, false,
+                new LogStructuredCache(path));
+        for (int i = 0; i < 1000; i++)
+            cache.set("foo" + i, ("bar" + i).getBytes());
+        for (int i = 0; i < 1000; i++)
+            assertEquals("bar" + i, new String(cache.get("foo" + i)));
+        assertTrue(cache.getMemoryTier().getEvictions() > 0);
+        assertTrue(cache.getDiskHits() + cache.getPendingHits() > 0);
+
+        /* Read from disk, promoted to memory */
+        cache.get("foo0");
+        assertEquals("bar0", new String(cache.get("foo0")));
+        cache.shutDown();
+
+        LogStructuredCache disk = new LogStructuredCache(path);
+        for (int i = 0; i < 1000; i++)
+            assertEquals("bar" + i, new String(disk.get("foo" + i)));
+        disk.shutDown();
+    }
+
+    @Test
+    public void testStress() throws InterruptedException {
+        final TieredCache cache = new TieredCache(64 * 1024, true, new InMemoryCache());
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < 8; i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        cache.set("foo" + i, ("bar" + i).getBytes());
+                        int random = (int)(Math.random() * (double)i);
+                        assertEquals("bar" + random,
+                                new String(cache.get("foo" + random)));
+                    }
+                }
+            };
+            threads.add(t);
+            t.start();
+        }
+
+        for (Thread t : threads) {
+            t.join();
+        }
+        cache.shutDown();
+    }
+}
@@ -39,6 +39,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.osgi.framework.BundleContext;
 
@@ -85,8 +86,11 @@ public class AlitheiaCore {
     /** The Core is singleton-line because it has a special instance */
     private static AlitheiaCore instance = null;
     
-    /** Holds initialised service instances */
-    private HashMap<Class<? extends AlitheiaCoreService>, Object> instances;
+    /**
+     * Holds initialised service instances. Read by getService() from any
+     * thread while bundles register and unregister services.
+     */
+    private ConcurrentHashMap<Class<? extends AlitheiaCoreService>, Object> instances;
     
     /* Service Configuration */
     private static Vector<Class<? extends AlitheiaCoreService>> services;
@@ -139,7 +143,7 @@ public class AlitheiaCore {
         instance = this;
         err("Instance Created");
         
-        instances = new HashMap<Class<? extends AlitheiaCoreService>, Object>();
+        instances = new ConcurrentHashMap<Class<? extends AlitheiaCoreService>, Object>();
         init();
     }
 
@@ -156,11 +160,23 @@ public class AlitheiaCore {
         return instance;
     }
     
-    /*Create a temp instance to use for testing.*/
+    /**
+     * Create a temp instance to use for testing. It only holds a log
+     * manager that writes to the console and the DB service; other
+     * services need an OSGi framework to start.
+     */
     public static AlitheiaCore testInstance() {
-        instance = new AlitheiaCore(null);
+        AlitheiaCore core = new AlitheiaCore();
+        core.logger = new LogManagerImpl(true);
+        core.instances.put(LogManager.class, core.logger);
+        core.instances.put(DBService.class, DBServiceImpl.getInstance());
+        instance = core;
         return instance;
     }
+
+    private AlitheiaCore() {
+        instances = new ConcurrentHashMap<Class<? extends AlitheiaCoreService>, Object>();
+    }
     
     /**
      * Register an external implementation of an AlitheiaCore service. It
@@ -274,6 +290,16 @@ public class AlitheiaCore {
     	}
 	}
 
+    /**
+     * Returns the instance of a service, including services registered by
+     * other bundles through {@link #registerService(Class, Class)}.
+     * 
+     * @return The service's instance, or null if it is not running.
+     */
+    public <T extends AlitheiaCoreService> T getService(Class<T> service) {
+        return service.cast(instances.get(service));
+    }
+
     /**
      * Returns the locally stored Logger component's instance.
      * 
@@ -43,29 +43,37 @@ import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import org.hibernate.Cache;
 import org.hibernate.HibernateException;
 import org.hibernate.LockMode;
 import org.hibernate.QueryException;
 import org.hibernate.JDBCException;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.AnnotationConfiguration;
 import org.hibernate.cfg.Configuration;	
+import org.hibernate.engine.SessionFactoryImplementor;
 import org.osgi.framework.BundleContext;
 
 import eu.sqooss.core.AlitheiaCoreService;
 import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.util.LongSortedSet;
 import eu.sqooss.service.util.URIUtills;
 
 /**
@@ -119,9 +127,13 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
     private static final String DB_USERNAME = "eu.sqooss.db.user";
     private static final String DB_PASSWORD = "eu.sqooss.db.passwd";
     private static final String DB_CONPOOL = "eu.sqooss.db.conpool";
+    /** Rows fetched at a time by the cursor of doHQLIds() */
+    private static final int SCROLL_FETCH_SIZE = 1000;
     
     private Logger logger = null;
     private SessionFactory sessionFactory = null;
+    /** Names of the entity classes with a second-level cache region */
+    private Set<String> cachedEntities = new HashSet<String>();
     private BundleContext bc = null;
     private AtomicBoolean isInitialised = new AtomicBoolean(false);
     private Properties conProp = new Properties();
@@ -275,6 +287,14 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
             
             if (sessionFactory == null)
                 return false;
+
+            /* Ask the persisters, org.hibernate.mapping is split between
+             * the Hibernate bundle and the embedded annotations jar */
+            SessionFactoryImplementor sfi = (SessionFactoryImplementor) sessionFactory;
+            for (Object name : sessionFactory.getAllClassMetadata().keySet()) {
+                if (sfi.getEntityPersister((String) name).hasCache())
+                    cachedEntities.add((String) name);
+            }
         } catch (Throwable e) {
             logger.error("Failed to initialize Hibernate: " + e.getMessage());
             e.printStackTrace();
@@ -346,7 +366,11 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
         }
         try {
             // We use "foo" as the name of the object
-            return (List<T>) doHQL( "from " + daoClass.getName() + " as foo " + whereClause, parameterMap, useLock );
+            String hql = "from " + daoClass.getName() + " as foo " + whereClause;
+            // Lookups of cached entities go through the query cache
+            if (!useLock && cachedEntities.contains(daoClass.getName()))
+                return (List<T>) doHQL(hql, parameterMap, null, false, -1, -1, true);
+            return (List<T>) doHQL(hql, parameterMap, useLock);
         } catch (QueryException e) {
             logger.warn("findObjectsByProperties(): invalid properties map. Restarting session...");
             // Automatically restart a session
@@ -482,6 +506,13 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
     public List<?> doHQL(String hql, Map<String, Object> params,
             Map<String, Collection> collectionParams, boolean lockForUpdate, int start, int limit) 
         throws QueryException {
+        return doHQL(hql, params, collectionParams, lockForUpdate, start, limit, false);
+    }
+
+    private List<?> doHQL(String hql, Map<String, Object> params,
+            Map<String, Collection> collectionParams, boolean lockForUpdate, 
+            int start, int limit, boolean cacheable) 
+        throws QueryException {
         if ( !checkSession() ) {
             return Collections.emptyList();
         }
@@ -505,6 +536,9 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
                 query.setFirstResult(start);
                 query.setMaxResults(limit);
             }
+            if (cacheable) {
+                query.setCacheable(true);
+            }
             return query.list();
         } catch ( QueryException e ) {
             logExceptionAndTerminateSession(e);
@@ -523,6 +557,72 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
         
     }
 
+    /* (non-Javadoc)
+     * @see eu.sqooss.service.db.DBService#evictCaches()
+     */
+    public void evictCaches() {
+        if (sessionFactory == null)
+            return;
+        try {
+            Cache c = sessionFactory.getCache();
+            c.evictEntityRegions();
+            c.evictCollectionRegions();
+            c.evictQueryRegions();
+            c.evictDefaultQueryRegion();
+        } catch (HibernateException e) {
+            logger.warn("evictCaches() - error while evicting caches: " 
+                    + e.getMessage());
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see eu.sqooss.service.db.DBService#doHQLIds(java.lang.String, java.util.Map)
+     */
+    public LongSortedSet doHQLIds(String hql, Map<String, Object> params)
+        throws QueryException {
+        if ( !checkSession() ) {
+            return new LongSortedSet(new long[0]);
+        }
+        ScrollableResults rows = null;
+        try {
+            Session s = sessionFactory.getCurrentSession();
+            Query query = s.createQuery(hql);
+            if (params != null) {
+                for ( String param : params.keySet() ) {
+                    query.setParameter(param, params.get(param));
+                }
+            }
+            query.setReadOnly(true);
+            query.setFetchSize(SCROLL_FETCH_SIZE);
+            rows = query.scroll(ScrollMode.FORWARD_ONLY);
+            long[] ids = new long[1024];
+            int n = 0;
+            while (rows.next()) {
+                if (n == ids.length)
+                    ids = Arrays.copyOf(ids, n * 2);
+                ids[n++] = ((Number) rows.get(0)).longValue();
+            }
+            return new LongSortedSet(ids, n);
+        } catch ( QueryException e ) {
+            logExceptionAndTerminateSession(e);
+            throw e;
+        } catch( HibernateException e ) {
+            logExceptionAndTerminateSession(e);
+            return new LongSortedSet(new long[0]);
+        } catch (ClassCastException e) {
+            QueryException ebis = new QueryException("Query does not return ids: "
+                                                    + e.getMessage(), e);
+            logExceptionAndTerminateSession(ebis);
+            throw ebis;
+        } finally {
+            if (rows != null) {
+                try {
+                    rows.close();
+                } catch (HibernateException e) {}
+            }
+        }
+    }
+
     /* (non-Javadoc)
      * @see eu.sqooss.service.db.DBService#addRecord(eu.sqooss.service.db.DAObject)
      */
@@ -751,7 +851,11 @@ public class DBServiceImpl implements DBService, AlitheiaCoreService {
             Query query = s.createQuery(hql);
             if (params != null) {
                 for (String param : params.keySet()) {
-                    query.setParameter(param, params.get(param));
+                    Object value = params.get(param);
+                    if (value instanceof Collection)
+                        query.setParameterList(param, (Collection) value);
+                    else
+                        query.setParameter(param, value);
                 }
             }
             
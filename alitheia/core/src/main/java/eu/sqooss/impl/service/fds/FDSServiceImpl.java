@@ -55,10 +55,12 @@ import eu.sqooss.service.db.ProjectVersion;
 import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.fds.CheckoutException;
 import eu.sqooss.service.fds.FDSService;
+import eu.sqooss.service.fds.FileTreeIndex;
 import eu.sqooss.service.fds.InMemoryCheckout;
 import eu.sqooss.service.fds.OnDiskCheckout;
 import eu.sqooss.service.fds.Timeline;
 import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.scheduler.SchedulerException;
 import eu.sqooss.service.tds.InvalidAccessorException;
 import eu.sqooss.service.tds.InvalidProjectRevisionException;
 import eu.sqooss.service.tds.InvalidRepositoryException;
@@ -100,6 +102,30 @@ public class FDSServiceImpl implements FDSService, Runnable {
      */
     private ConcurrentHashMap<OnDiskCheckout, Integer> checkoutHandles;
 
+    /**
+     * Contents of recently read files, keyed by project file. Null if
+     * disabled.
+     */
+    private FileContentCache contentCache = null;
+
+    /**
+     * If true, the first cache miss for a file of a project version loads
+     * all files changed in that version.
+     */
+    private boolean preloadOnMiss = false;
+
+    /**
+     * File tree indexes, by project id. Indexes are added when first
+     * requested and built by a {@link FileTreeIndexJob}. Null if disabled.
+     */
+    private ConcurrentHashMap<Long, FileTreeIndex> indexes = null;
+
+    /** Default per project file contents cache size, in bytes */
+    private static final long CONTENT_CACHE_SIZE = 16 * 1024 * 1024;
+
+    /** Default file contents cache size for all projects, in bytes */
+    private static final long CONTENT_CACHE_TOTAL = 128 * 1024 * 1024;
+
     private BundleContext bc;
     
     /*
@@ -464,18 +490,25 @@ public class FDSServiceImpl implements FDSService, Runnable {
         return null;
     }
 
-    /** {@inheritDoc} */
-    public InputStream getFileContents(ProjectFile pf) {
-
-        Revision projectRevision = projectFileRevision(pf);
-        if (projectRevision == null) {
-            return null;
-        }
+    /**
+     * Key of a project file in the file contents cache. The revision and
+     * path identify the contents within a project.
+     */
+    private static String contentKey(ProjectFile pf) {
+        return pf.getProjectVersion().getRevisionId() + "|" + pf.getFileName();
+    }
 
-        SCMAccessor scm = projectFileAccessor(pf);
+    /**
+     * Read the contents of a project file from the repository.
+     *
+     * @return The contents or null if they could not be read.
+     */
+    private byte[] readFileContents(SCMAccessor scm, ProjectFile pf,
+            Revision projectRevision) {
         ByteArrayOutputStream buff = new ByteArrayOutputStream();
         try {
             scm.getFile(pf.getFileName(), projectRevision, buff);
+            return buff.toByteArray();
         } catch (InvalidProjectRevisionException e) {
             logger.error("The repository for " + pf.toString()
                     + " is invalid: " + e.getMessage());
@@ -487,10 +520,88 @@ public class FDSServiceImpl implements FDSService, Runnable {
             logger.error("File " + pf.toString() + " not found in the given "
                     + "repository: " + e.getMessage());
         }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    public InputStream getFileContents(ProjectFile pf) {
+
+        if (pf.isDeleted()) {
+            return null;
+        }
+
+        long projectId = pf.getProjectVersion().getProject().getId();
+        if (contentCache != null) {
+            byte[] cached = contentCache.get(projectId, contentKey(pf));
+            if (cached == null && preloadOnMiss) {
+                preloadFileContents(pf.getProjectVersion());
+                cached = contentCache.get(projectId, contentKey(pf));
+            }
+            if (cached != null) {
+                return new ByteArrayInputStream(cached);
+            }
+        }
+
+        Revision projectRevision = projectFileRevision(pf);
+        if (projectRevision == null) {
+            return null;
+        }
+
+        SCMAccessor scm = projectFileAccessor(pf);
+        byte[] contents = readFileContents(scm, pf, projectRevision);
+        if (contents == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        if (contentCache != null) {
+            contentCache.put(projectId, contentKey(pf), contents);
+        }
+        return new ByteArrayInputStream(contents);
+    }
+
+    /** {@inheritDoc} */
+    public void preloadFileContents(ProjectVersion pv) {
+        if (contentCache == null) {
+            return;
+        }
 
-        ByteArrayInputStream contents = new ByteArrayInputStream(buff
-                .toByteArray());
-        return contents;
+        long projectId = pv.getProject().getId();
+        if (!contentCache.markWarmed(projectId, pv.getId())) {
+            return;
+        }
+
+        SCMAccessor scm = null;
+        try {
+            scm = tds.getAccessor(projectId).getSCMAccessor();
+        } catch (InvalidAccessorException e) {
+            logger.error("Invalid SCM accessor for project "
+                    + pv.getProject().getName() + " " + e.getMessage());
+            return;
+        }
+        Revision r = scm.newRevision(pv.getRevisionId());
+
+        int loaded = 0;
+        for (ProjectFile pf : pv.getVersionFiles()) {
+            if (pf.isDeleted() || pf.getIsDirectory()) {
+                continue;
+            }
+            String key = contentKey(pf);
+            if (contentCache.get(projectId, key) != null) {
+                continue;
+            }
+            byte[] contents = readFileContents(scm, pf, r);
+            if (contents == null) {
+                continue;
+            }
+            /* Do not push out what was loaded before */
+            if (contents.length > contentCache.available(projectId)) {
+                break;
+            }
+            if (contentCache.put(projectId, key, contents)) {
+                loaded++;
+            }
+        }
+        logger.debug("Preloaded " + loaded + " files for " + pv);
     }
 
     /** {@inheritDoc} */
@@ -661,6 +772,55 @@ public class FDSServiceImpl implements FDSService, Runnable {
         c = null;
     }
 
+    /** {@inheritDoc} */
+    public FileTreeIndex getFileTreeIndex(StoredProject sp) {
+        if (indexes == null)
+            return null;
+
+        FileTreeIndex index = indexes.get(sp.getId());
+        if (index != null)
+            return index.isBuilt() ? index : null;
+
+        index = new FileTreeIndex(sp.getId());
+        if (indexes.putIfAbsent(sp.getId(), index) == null) {
+            try {
+                AlitheiaCore.getInstance().getScheduler().enqueue(
+                        new FileTreeIndexJob(index, indexes, logger));
+            } catch (SchedulerException e) {
+                logger.warn("Cannot schedule file tree index build for "
+                        + sp + ": " + e.getMessage());
+                indexes.remove(sp.getId(), index);
+            }
+        }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    public void updateFileTreeIndex(StoredProject sp) {
+        if (indexes == null)
+            return;
+
+        FileTreeIndex index = indexes.get(sp.getId());
+        /* Indexes being built will read the new files themselves */
+        if (index == null || !index.isBuilt())
+            return;
+        
+        DBService dbs = AlitheiaCore.getInstance().getDBService();
+        if (!index.update(dbs)) {
+            logger.warn("Failed to update " + index + ", discarding it");
+            indexes.remove(sp.getId(), index);
+            /* The failed query ended the caller's session */
+            if (!dbs.isDBSessionActive())
+                dbs.startDBSession();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void dropFileTreeIndex(StoredProject sp) {
+        if (indexes != null)
+            indexes.remove(sp.getId());
+    }
+
     public Timeline getTimeline(StoredProject c) {
         return new TimelineImpl(c);
     }
@@ -677,6 +837,10 @@ public class FDSServiceImpl implements FDSService, Runnable {
 
     @Override
     public void shutDown() {
+        if (contentCache != null) {
+            logger.info("File contents cache: " + contentCache);
+        }
+
         String s = bc.getProperty("eu.sqooss.fds.cleanupOnExit");
 
         if (s != null && s.equals("true")) {
@@ -704,6 +868,39 @@ public class FDSServiceImpl implements FDSService, Runnable {
         fdsCheckoutRoot = new File(s);
         randomCheckout = new Random();
 
+        long cacheSize = CONTENT_CACHE_SIZE;
+        s = bc.getProperty("eu.sqooss.fds.cache.size");
+        if (s != null) {
+            try {
+                cacheSize = Long.parseLong(s);
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid eu.sqooss.fds.cache.size " + s
+                        + ", using " + cacheSize);
+            }
+        }
+        long cacheTotal = CONTENT_CACHE_TOTAL;
+        s = bc.getProperty("eu.sqooss.fds.cache.total");
+        if (s != null) {
+            try {
+                cacheTotal = Long.parseLong(s);
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid eu.sqooss.fds.cache.total " + s
+                        + ", using " + cacheTotal);
+            }
+        }
+        if (cacheSize > 0 && cacheTotal > 0) {
+            contentCache = new FileContentCache(cacheSize, cacheTotal);
+            logger.info("Caching up to " + cacheSize
+                    + " bytes of file contents per project and "
+                    + cacheTotal + " bytes in total");
+        }
+        preloadOnMiss = "true".equals(bc.getProperty("eu.sqooss.fds.cache.preload"));
+
+        if (!"false".equals(bc.getProperty("eu.sqooss.fds.index"))) {
+            indexes = new ConcurrentHashMap<Long, FileTreeIndex>();
+            logger.info("File tree indexes enabled");
+        }
+
         return true;
     }
 }
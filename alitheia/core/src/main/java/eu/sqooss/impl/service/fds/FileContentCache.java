@@ -0,0 +1,254 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.fds;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.sqooss.service.util.StripedCounter;
+
+/**
+ * Keeps the contents of recently read project files in memory. Each
+ * project gets its own byte budget, so that a project with many large
+ * files does not push the files of other projects out of the cache.
+ * Within a project, the least recently used files are evicted first.
+ * <p>
+ * A second, global budget limits the bytes cached for all projects
+ * together. When it is exceeded, files are evicted from the projects
+ * using the most bytes, least recently used first.
+ * <p>
+ * Cached arrays are shared with the callers of {@link #get(long, String)}
+ * and must not be modified.
+ */
+class FileContentCache {
+
+    private final long projectBudget;
+    private final long totalBudget;
+    private final AtomicLong totalBytes = new AtomicLong();
+    /** Serialises evictions across projects */
+    private final Object trimLock = new Object();
+    private final ConcurrentHashMap<Long, ProjectCache> projects =
+        new ConcurrentHashMap<Long, ProjectCache>();
+
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+
+    /**
+     * @param projectBudget Maximum number of bytes to cache per project.
+     * @param totalBudget Maximum number of bytes to cache for all projects.
+     */
+    FileContentCache(long projectBudget, long totalBudget) {
+        this.projectBudget = Math.min(projectBudget, totalBudget);
+        this.totalBudget = totalBudget;
+    }
+
+    /**
+     * @return The cached contents or null if the key is not cached
+     */
+    byte[] get(long project, String key) {
+        ProjectCache c = projects.get(project);
+        byte[] result = (c == null) ? null : c.get(key);
+        if (result == null)
+            misses.increment();
+        else
+            hits.increment();
+        return result;
+    }
+
+    /**
+     * Caches the contents of a file. Files larger than a quarter of the
+     * project's budget are not cached.
+     *
+     * @return false if the contents were too large to cache
+     */
+    boolean put(long project, String key, byte[] contents) {
+        if (contents.length > projectBudget / 4)
+            return false;
+        project(project).put(key, contents);
+        if (totalBytes.get() > totalBudget)
+            trim();
+        return true;
+    }
+
+    /**
+     * @return The number of bytes that can still be added to a project's
+     * cache without evicting anything.
+     */
+    long available(long project) {
+        return Math.min(projectBudget - project(project).bytes(),
+                totalBudget - totalBytes.get());
+    }
+
+    /**
+     * Marks a version as pre-loaded.
+     *
+     * @return false if the version was the last one marked for its project.
+     */
+    boolean markWarmed(long project, long version) {
+        return project(project).markWarmed(version);
+    }
+
+    /** Drops all cached files of a project */
+    void clear(long project) {
+        ProjectCache c = projects.remove(project);
+        if (c != null)
+            c.clear();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    /** @return The number of bytes cached for all projects */
+    long getBytes() {
+        return totalBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FileContentCache[projects=" + projects.size() + ", bytes="
+                + getBytes() + ", hits=" + getHits() + ", misses="
+                + getMisses() + "]";
+    }
+
+    /**
+     * Evicts files from the largest projects until the global budget is
+     * met. Only one project is locked at a time.
+     */
+    private void trim() {
+        synchronized (trimLock) {
+            while (totalBytes.get() > totalBudget) {
+                ProjectCache largest = null;
+                long largestBytes = 0;
+                for (ProjectCache c : projects.values()) {
+                    long b = c.bytes();
+                    if (b > largestBytes) {
+                        largest = c;
+                        largestBytes = b;
+                    }
+                }
+                if (largest == null || !largest.evictEldest())
+                    return;
+            }
+        }
+    }
+
+    private ProjectCache project(long project) {
+        ProjectCache c = projects.get(project);
+        if (c == null) {
+            c = new ProjectCache();
+            ProjectCache prev = projects.putIfAbsent(project, c);
+            if (prev != null)
+                c = prev;
+        }
+        return c;
+    }
+
+    /**
+     * The cached files of a single project, in access order.
+     */
+    private class ProjectCache {
+        private final LinkedHashMap<String, byte[]> files =
+            new LinkedHashMap<String, byte[]>(64, 0.75f, true);
+        private long bytes = 0;
+        private long warmed = -1;
+        /** Removed from the cache, must not count new files any more */
+        private boolean cleared = false;
+
+        synchronized byte[] get(String key) {
+            return files.get(key);
+        }
+
+        synchronized void put(String key, byte[] contents) {
+            if (cleared)
+                return;
+            byte[] prev = files.remove(key);
+            if (prev != null)
+                release(prev.length);
+
+            Iterator<Map.Entry<String, byte[]>> i = files.entrySet().iterator();
+            while (bytes + contents.length > projectBudget && i.hasNext()) {
+                release(i.next().getValue().length);
+                i.remove();
+            }
+            files.put(key, contents);
+            bytes += contents.length;
+            totalBytes.addAndGet(contents.length);
+        }
+
+        /**
+         * Removes the least recently used file.
+         * @return false if the project has no cached files.
+         */
+        synchronized boolean evictEldest() {
+            Iterator<Map.Entry<String, byte[]>> i = files.entrySet().iterator();
+            if (!i.hasNext())
+                return false;
+            release(i.next().getValue().length);
+            i.remove();
+            return true;
+        }
+
+        synchronized void clear() {
+            cleared = true;
+            files.clear();
+            release(bytes);
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+
+        private void release(long length) {
+            bytes -= length;
+            totalBytes.addAndGet(-length);
+        }
+
+        synchronized boolean markWarmed(long version) {
+            if (warmed == version)
+                return false;
+            warmed = version;
+            return true;
+        }
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
@@ -0,0 +1,100 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.fds;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.fds.FileTreeIndex;
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.scheduler.Job;
+
+/**
+ * Builds the file tree index of a project from the database. If the build
+ * fails, the index is removed so that the next request for it starts
+ * another build.
+ */
+class FileTreeIndexJob extends Job {
+
+    private FileTreeIndex index;
+    private ConcurrentHashMap<Long, FileTreeIndex> indexes;
+    private Logger logger;
+
+    FileTreeIndexJob(FileTreeIndex index,
+            ConcurrentHashMap<Long, FileTreeIndex> indexes, Logger l) {
+        this.index = index;
+        this.indexes = indexes;
+        this.logger = l;
+    }
+
+    @Override
+    public long priority() {
+        return 0x2;
+    }
+
+    @Override
+    protected void run() throws Exception {
+        DBService dbs = AlitheiaCore.getInstance().getDBService();
+        if (!dbs.isDBSessionActive())
+            dbs.startDBSession();
+
+        long start = System.currentTimeMillis();
+        boolean success = false;
+        try {
+            success = index.update(dbs);
+        } finally {
+            if (!success) {
+                indexes.remove(index.getProjectId(), index);
+                if (dbs.isDBSessionActive())
+                    dbs.rollbackDBSession();
+            }
+        }
+        if (!success) {
+            logger.warn("Failed to build file tree index for project "
+                    + index.getProjectId());
+            return;
+        }
+        dbs.commitDBSession();
+        logger.info("Built " + index + " in "
+                + (System.currentTimeMillis() - start) + " msec");
+    }
+
+    @Override
+    public String toString() {
+        return "FileTreeIndexJob - Project:{" + index.getProjectId() + "}";
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
@@ -34,14 +34,18 @@
 package eu.sqooss.impl.service.metricactivator;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import eu.sqooss.service.abstractmetric.IncrementalVersionMetric;
 import eu.sqooss.service.abstractmetric.InvocationOrder;
 import org.osgi.framework.BundleContext;
 
 import eu.sqooss.core.AlitheiaCore;
 import eu.sqooss.service.abstractmetric.AbstractMetric;
 import eu.sqooss.service.abstractmetric.AlitheiaPlugin;
+import eu.sqooss.service.abstractmetric.MetricMismatchException;
+import eu.sqooss.service.abstractmetric.Result;
 import eu.sqooss.service.abstractmetric.SchedulerHints;
 import eu.sqooss.service.cluster.ClusterNodeActionException;
 import eu.sqooss.service.cluster.ClusterNodeService;
@@ -66,9 +70,12 @@ import eu.sqooss.service.metricactivator.MetricActivator;
 import eu.sqooss.service.pa.PluginAdmin;
 import eu.sqooss.service.pa.PluginInfo;
 import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.JobGroup;
+import eu.sqooss.service.scheduler.JobGroupListener;
 import eu.sqooss.service.scheduler.Scheduler;
 import eu.sqooss.service.scheduler.SchedulerException;
 import eu.sqooss.service.util.GraphTS;
+import eu.sqooss.service.util.LongSortedSet;
 
 public class MetricActivatorImpl  implements MetricActivator {
 
@@ -81,6 +88,10 @@ public class MetricActivatorImpl  implements MetricActivator {
     private DBService db;
     private Scheduler sched;
     private boolean fastSync = false;
+    /** Number of DAOs processed by each job during a sync */
+    private int batchSize = 1;
+    /** Number of jobs a sync puts in the queue at a time */
+    private static final int FEED_JOBS = 1000;
 
     private AtomicLong priority;
     
@@ -299,24 +310,25 @@ public class MetricActivatorImpl  implements MetricActivator {
 
             List<Metric> metrics = pa.getPlugin(mi).getAllSupportedMetrics();
             
-            Map<MetricType.Type, TreeSet<Long>> objectIds = new HashMap<MetricType.Type, TreeSet<Long>>();
+            Map<MetricType.Type, SortedSet<Long>> objectIds = new HashMap<MetricType.Type, SortedSet<Long>>();
 
             for (Metric m : metrics) {
             	Map<MetricType.Type, SortedSet<Long>> IDs = 
             		pa.getImplementingPlugin(m.getMnemonic()).getObjectIdsToSync(sp, m);
             	for (MetricType.Type t : IDs.keySet()) {
-            		
-            		if (objectIds.get(t) == null) {
-                    	objectIds.put(t, new TreeSet<Long>());	
-                    }
-                    
-                    objectIds.get(t).addAll(IDs.get(t));
+            	    SortedSet<Long> ids = objectIds.get(t);
+            	    if (ids == null) {
+            	        objectIds.put(t, IDs.get(t));
+            	    } else {
+            	        objectIds.put(t, LongSortedSet.union(ids, IDs.get(t)));
+            	    }
             	}
             }
             
             AbstractMetric metric = 
                 (AbstractMetric) bc.getService(mi.getServiceRef());
             HashSet<Job> jobs = new HashSet<Job>();
+            MetricJobFeeder feeder = new MetricJobFeeder(metric);
             
             /*Check what is the default activation ordering as suggested by the metric*/
             Class<? extends DAObject>[] activOrder;
@@ -343,27 +355,47 @@ public class MetricActivatorImpl  implements MetricActivator {
             		continue;
 
                 //We assume that resource IDs increase monotonically
-                TreeSet<Long> ids = objectIds.get(actType);
-                TreeSet<Long> tmp = null;
-                if (invOrder.equals(InvocationOrder.NEWFIRST)) {
-                    tmp = new TreeSet<Long>(new DecreasingLongComparator());
-                } else if (invOrder.equals(InvocationOrder.RANDOM)) {
-                    tmp = new TreeSet<Long>(new RandomizedComparator());
-                }
+                SortedSet<Long> ids = objectIds.get(actType);
+                if (ids.isEmpty())
+                    continue;
 
-                if (tmp != null) {
-                    tmp.addAll(ids);
-                    ids = tmp;
+                /* Versions are processed in sequence by a single job, once
+                 * the file level results they are derived from are in */
+                if (actType == MetricType.Type.PROJECT_VERSION
+                        && metric instanceof IncrementalVersionMetric) {
+                    jobs.add(new VersionSequenceJob(metric, sp.getId(), 
+                            new TreeSet<Long>(ids), logger, 
+                            priority.incrementAndGet()));
+                    continue;
                 }
 
-                for (Long l : ids) {
-            		jobs.add(new MetricActivatorJob(metric, l, logger, 
-            			metricTypesToActivators.get(actType),
-            			priority.incrementAndGet(),
-            			fastSync));
-            	}
+                long[] order = LongSortedSet.toArray(ids);
+                if (invOrder.equals(InvocationOrder.NEWFIRST)) {
+                    for (int i = 0, j = order.length - 1; i < j; i++, j--) {
+                        long tmp = order[i];
+                        order[i] = order[j];
+                        order[j] = tmp;
+                    }
+                } else if (invOrder.equals(InvocationOrder.RANDOM)) {
+                    Random r = new Random();
+                    for (int i = order.length - 1; i > 0; i--) {
+                        int j = r.nextInt(i + 1);
+                        long tmp = order[i];
+                        order[i] = order[j];
+                        order[j] = tmp;
+                    }
+                }
+                feeder.add(metricTypesToActivators.get(actType), order);
+            }
+            objectIds = null;
+            
+            if (feeder.isEmpty()) {
+                if (!jobs.isEmpty())
+                    sched.enqueueNoDependencies(jobs);
+            } else {
+                feeder.runAfter(jobs);
+                sched.enqueue(feeder);
             }
-            sched.enqueueNoDependencies(jobs);
             dbs.commitDBSession();
         }
         
@@ -373,26 +405,182 @@ public class MetricActivatorImpl  implements MetricActivator {
         }
     }
 
-    class DecreasingLongComparator implements Comparator<Long> {
+    /**
+     * Creates the jobs of a metric sync a part at a time. Each run enqueues
+     * up to {@link #FEED_JOBS} jobs, followed by a feeder for the remaining
+     * ids with a priority after those jobs. The queue thus holds a limited
+     * number of jobs per sync, and the ids still waiting for a job are
+     * kept in arrays of primitive longs. Jobs that need the results of the
+     * sync are queued when all jobs created by the feeders are done.
+     */
+    private class MetricJobFeeder extends Job implements JobGroupListener {
+
+        private AbstractMetric metric;
+        private List<Class<? extends DAObject>> types;
+        /** Ids per activation type, in invocation order */
+        private List<long[]> ids;
+        private int type = 0;
+        private int pos = 0;
+        private long prio;
+        /** Jobs to queue when the sync is done, shared by all feeders */
+        private Set<Job> after;
+        /** Batches of jobs not yet done, plus one while ids are left */
+        private AtomicInteger pending;
+
+        MetricJobFeeder(AbstractMetric metric) {
+            this.metric = metric;
+            this.types = new ArrayList<Class<? extends DAObject>>();
+            this.ids = new ArrayList<long[]>();
+            this.prio = priority.incrementAndGet();
+            this.after = new HashSet<Job>();
+            this.pending = new AtomicInteger(1);
+        }
+
+        /** Continues where another feeder stopped */
+        private MetricJobFeeder(MetricJobFeeder f) {
+            this.metric = f.metric;
+            this.types = f.types;
+            this.ids = f.ids;
+            this.type = f.type;
+            this.pos = f.pos;
+            this.prio = priority.incrementAndGet();
+            this.after = f.after;
+            this.pending = f.pending;
+        }
+
+        void add(Class<? extends DAObject> activator, long[] order) {
+            types.add(activator);
+            ids.add(order);
+        }
+
+        boolean isEmpty() {
+            return ids.isEmpty();
+        }
+
+        /** Queues jobs when all jobs of the sync are done */
+        void runAfter(Set<Job> jobs) {
+            after.addAll(jobs);
+        }
+
         @Override
-        public int compare(Long a, Long b) {
-            if (a > b)
-                return -1;
-            else if (a < b)
-                return 1;
-            return 0;
+        public long priority() {
+            return prio;
         }
-    }
 
-    class RandomizedComparator implements Comparator<Long> {
-        Random r = new Random();
         @Override
-        public int compare(Long a, Long b) {
-            if(r.nextBoolean())
-                return -1;
+        protected void run() throws Exception {
+            Set<Job> jobs = new HashSet<Job>();
+            int step = Math.max(batchSize, 1);
+
+            while (jobs.size() < FEED_JOBS && type < ids.size()) {
+                long[] order = ids.get(type);
+                if (pos >= order.length) {
+                    ids.set(type, null);
+                    type++;
+                    pos = 0;
+                    continue;
+                }
+                Class<? extends DAObject> activator = types.get(type);
+                int end = Math.min(pos + step, order.length);
+
+                if (step == 1) {
+                    /* Check a chunk of DAOs at once, instead of letting
+                     * each job look up its own results */
+                    end = Math.min(pos + FEED_JOBS - jobs.size(), order.length);
+                    List<Long> chunk = new ArrayList<Long>(end - pos);
+                    for (int i = pos; i < end; i++)
+                        chunk.add(order[i]);
+                    Set<Long> done = calculated(metric, activator, chunk,
+                            fastSync, db, logger);
+                    for (int i = pos; i < end; i++) {
+                        if (done.contains(order[i]))
+                            continue;
+                        jobs.add(new MetricActivatorJob(metric, order[i], logger,
+                                activator, priority.incrementAndGet(), fastSync));
+                    }
+                } else {
+                    List<Long> batch = new ArrayList<Long>(end - pos);
+                    for (int i = pos; i < end; i++)
+                        batch.add(order[i]);
+                    jobs.add(new MetricBatchJob(metric, batch, logger,
+                            activator, priority.incrementAndGet(), fastSync));
+                }
+                pos = end;
+            }
+
+            JobGroup group = new JobGroup(toString());
+            for (Job j : jobs)
+                group.add(j);
+            pending.incrementAndGet();
+            sched.enqueueGroup(group);
+            group.addListener(this);
+
+            if (type < ids.size())
+                sched.enqueue(new MetricJobFeeder(this));
             else
-                return 1;
+                done();
         }
+
+        public void groupDone(JobGroup g) {
+            done();
+        }
+
+        private void done() {
+            if (pending.decrementAndGet() > 0 || after.isEmpty())
+                return;
+            try {
+                sched.enqueueNoDependencies(after);
+            } catch (SchedulerException e) {
+                logger.error("Could not queue the jobs following " + this);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "MetricJobFeeder: Metric:{" + metric.getName() + "}";
+        }
+    }
+
+    /**
+     * Finds the DAOs that already have results for all the metrics a
+     * {@link MetricActivatorJob} would check, with the plug-in's bulk
+     * result lookup.
+     *
+     * @param metric The plug-in to check the results of
+     * @param activator The type of the DAOs
+     * @param ids The ids of the DAOs to check
+     * @param fastSync Whether only the first metric is checked, as
+     *      {@link MetricActivatorJob} does in fast sync mode
+     * @return The ids of the DAOs that need not be measured again
+     */
+    static Set<Long> calculated(AbstractMetric metric,
+            Class<? extends DAObject> activator, List<Long> ids,
+            boolean fastSync, DBService db, Logger logger) {
+        Set<Long> done = new HashSet<Long>();
+        boolean session = db.isDBSessionActive();
+        if (!session)
+            db.startDBSession();
+        try {
+            List<Metric> metrics = metric.getSupportedMetrics(activator);
+            /* See MetricActivatorJob */
+            if (fastSync && !metrics.isEmpty())
+                metrics = metrics.subList(0, 1);
+            if (metrics.isEmpty())
+                return done;
+
+            Map<Long, List<Result>> existing =
+                metric.getResultsIfAlreadyCalculated(activator, ids, metrics);
+            for (Map.Entry<Long, List<Result>> e : existing.entrySet()) {
+                if (e.getValue().size() >= metrics.size())
+                    done.add(e.getKey());
+            }
+        } catch (MetricMismatchException e) {
+            logger.warn("Metric " + metric.getName() + " failed");
+        } finally {
+            if (!session)
+                db.rollbackDBSession();
+        }
+        return done;
     }
 
 	@Override
@@ -433,6 +621,16 @@ public class MetricActivatorImpl  implements MetricActivator {
         
         if (sync != null && sync.equalsIgnoreCase("fast"))
             this.fastSync = true;
+
+        String batch = bc.getProperty("eu.sqooss.metricactivator.batchsize");
+        if (batch != null) {
+            try {
+                this.batchSize = Integer.parseInt(batch.trim());
+            } catch (NumberFormatException nfe) {
+                logger.warn("Not correct value for property " +
+                		"eu.sqooss.metricactivator.batchsize: " + batch);
+            }
+        }
 	
         return true;
 	}
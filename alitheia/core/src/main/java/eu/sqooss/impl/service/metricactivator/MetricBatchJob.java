@@ -0,0 +1,179 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.metricactivator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.exception.LockAcquisitionException;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
+import eu.sqooss.service.abstractmetric.MetricMismatchException;
+import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DAObject;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.scheduler.Job;
+
+/**
+ * Runs a metric on a batch of DAOs of the same type in a single
+ * transaction, in the order they were given. The session is flushed
+ * every {@link #FLUSH_INTERVAL} DAOs to keep it small. 
+ * <p>
+ * A DAO on which the metric fails does not fail the batch: the
+ * transaction is rolled back and the batch is run again without it.
+ * The DAOs already processed in the rolled back transaction are
+ * processed again. DAOs locked by another job are rescheduled by the
+ * metric, as with {@link MetricActivatorJob}.
+ */
+public class MetricBatchJob extends Job {
+
+    /** Number of DAOs after which the session is flushed */
+    static final int FLUSH_INTERVAL = 50;
+
+    private Logger logger;
+    private DBService dbs;
+    private AbstractMetric metric;
+    private List<Long> daoIDs;
+    private Class<? extends DAObject> daoType;
+    private long priority;
+    private boolean fastSync = false;
+
+    MetricBatchJob(AbstractMetric m, List<Long> daoIDs, Logger l,
+            Class<? extends DAObject> daoType, long priority,
+            boolean fastSync) {
+        this.metric = m;
+        this.daoIDs = new ArrayList<Long>(daoIDs);
+        this.logger = l;
+        this.daoType = daoType;
+        this.priority = priority;
+        this.fastSync = fastSync;
+        this.dbs = AlitheiaCore.getInstance().getDBService();
+    }
+
+    @Override
+    public long priority() {
+        return priority;
+    }
+
+    @Override
+    protected void run() throws Exception {
+        dbs.startDBSession();
+        metric.setJob(this);
+        List<Metric> metrics = metric.getSupportedMetrics(daoType);
+        /* See MetricActivatorJob */
+        if (fastSync)
+            metrics = metrics.subList(0, 1);
+
+        try {
+            /* Skip the DAOs that have results for all metrics in bulk */
+            Map<Long, List<Result>> existing = 
+                metric.getResultsIfAlreadyCalculated(daoType, daoIDs, metrics);
+            for (Map.Entry<Long, List<Result>> e : existing.entrySet()) {
+                if (e.getValue().size() >= metrics.size())
+                    daoIDs.remove(e.getKey());
+            }
+        } catch (MetricMismatchException e) {
+            logger.warn("Metric " + metric.getName() + " failed");
+            dbs.rollbackDBSession();
+            return;
+        }
+
+        while (true) {
+            int failed = -1;
+            for (int i = 0; i < daoIDs.size(); i++) {
+                if (!runOne(daoIDs.get(i), metrics)) {
+                    failed = i;
+                    break;
+                }
+                if ((i + 1) % FLUSH_INTERVAL == 0)
+                    dbs.flushDBSession();
+            }
+
+            if (failed < 0)
+                break;
+
+            /* Drop the failed DAO and run the batch again */
+            dbs.rollbackDBSession();
+            daoIDs.remove(failed);
+            dbs.startDBSession();
+            metric.setJob(this);
+        }
+
+        if (!dbs.commitDBSession()) {
+            logger.warn("commit failed - restarting metric job");
+            restart();
+        }
+    }
+
+    /**
+     * Runs the metric on one DAO.
+     * 
+     * @return false if the transaction must be rolled back
+     */
+    private boolean runOne(Long id, List<Metric> metrics) {
+        DAObject obj = dbs.findObjectById(daoType, id);
+        if (obj == null)
+            return true;
+        try {
+            metric.getResult(obj, metrics);
+        } catch (MetricMismatchException e) {
+            logger.warn("Metric " + metric.getName() + " failed");
+        } catch (AlreadyProcessingException ape) {
+            logger.warn("DAO id " + id + " is locked, it has been " +
+                    "rescheduled");
+            return false;
+        } catch (LockAcquisitionException lae) {
+            logger.warn("DAO id " + id + ": " + lae.getMessage());
+            return false;
+        } catch (Exception e) {
+            logger.warn("Metric " + metric.getName() + " failed on DAO id " 
+                    + id + ": " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricBatchJob: Metric:{" + metric.getName() + "} Activator:{" 
+            + daoType.getSimpleName() + "} DAOs:{" + daoIDs.size() + "}";
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
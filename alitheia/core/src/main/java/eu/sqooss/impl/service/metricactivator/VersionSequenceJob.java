@@ -0,0 +1,148 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.metricactivator;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.exception.LockAcquisitionException;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
+import eu.sqooss.service.abstractmetric.IncrementalVersionMetric;
+import eu.sqooss.service.abstractmetric.MetricMismatchException;
+import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.scheduler.Job;
+
+/**
+ * Runs a {@link IncrementalVersionMetric} on the versions of a project
+ * one after the other, in sequence order, so that the results of each
+ * version can be derived from those of the previous one. Each version is
+ * processed in its own transaction.
+ */
+public class VersionSequenceJob extends Job {
+
+    private Logger logger;
+    private DBService dbs;
+    private AbstractMetric metric;
+    private Long projectId;
+    private Set<Long> versionIds;
+    private long priority;
+
+    VersionSequenceJob(AbstractMetric m, Long projectId, Set<Long> versionIds,
+            Logger l, long priority) {
+        this.metric = m;
+        this.projectId = projectId;
+        this.versionIds = versionIds;
+        this.logger = l;
+        this.priority = priority;
+        this.dbs = AlitheiaCore.getInstance().getDBService();
+    }
+
+    @Override
+    public long priority() {
+        return priority;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void run() throws Exception {
+        dbs.startDBSession();
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("project", projectId);
+        List<Long> ids = (List<Long>) dbs.doHQL("select pv.id " +
+        		"from ProjectVersion pv where pv.project.id = :project " +
+        		"order by pv.sequence", params);
+
+        /* Skip the versions that have results for all metrics in bulk */
+        List<Metric> supported = metric.getSupportedMetrics(ProjectVersion.class);
+        try {
+            Map<Long, List<Result>> existing = metric.getResultsIfAlreadyCalculated(
+                    ProjectVersion.class, versionIds, supported);
+            for (Map.Entry<Long, List<Result>> e : existing.entrySet()) {
+                if (e.getValue().size() >= supported.size())
+                    versionIds.remove(e.getKey());
+            }
+        } catch (MetricMismatchException e) {
+            logger.warn("Metric " + metric.getName() + " failed");
+        }
+        dbs.commitDBSession();
+
+        for (Long id : ids) {
+            if (!versionIds.contains(id))
+                continue;
+
+            dbs.startDBSession();
+            metric.setJob(this);
+            ProjectVersion pv = dbs.findObjectById(ProjectVersion.class, id);
+
+            try {
+                metric.getResult(pv, metric.getSupportedMetrics(ProjectVersion.class));
+            } catch (MetricMismatchException e) {
+                logger.warn("Metric " + metric.getName() + " failed");
+            } catch (AlreadyProcessingException ape) {
+                logger.warn("Version id " + id + " is locked, it has been " +
+                        "rescheduled");
+                dbs.rollbackDBSession();
+                continue;
+            } catch (LockAcquisitionException lae) {
+                dbs.rollbackDBSession();
+                continue;
+            }
+
+            if (!dbs.commitDBSession()) {
+                logger.warn("commit failed - restarting metric job");
+                restart();
+                return;
+            }
+            /* Restarts continue with the remaining versions */
+            versionIds.remove(id);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "VersionSequenceJob: Metric:{" + metric.getName() + 
+            "} Project:{" + projectId + "} Versions:{" + versionIds.size() + "}";
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
@@ -99,6 +99,14 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
     private ConcurrentHashMap<String, PluginInfo> registeredPlugins =
         new ConcurrentHashMap<String, PluginInfo>();
 
+    /**
+     * Installed plug-ins, indexed by the mnemonics of the metrics they
+     * implement. Filled in by getImplementingPlugin() and cleared whenever
+     * a plug-in is registered, installed, updated or removed.
+     */
+    private ConcurrentHashMap<String, PluginInfo> pluginsByMnemonic =
+        new ConcurrentHashMap<String, PluginInfo>();
+
     public PAServiceImpl () { }
 
     /**
@@ -345,6 +353,7 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
         else {
             // Store the info object into the info object's list
             registeredPlugins.put(pluginInfo.getHashcode(), pluginInfo);
+            pluginsByMnemonic.clear();
             logger.info(
                     "Plug-in service (" + pluginInfo.getPluginName() + ")"
                     + " was registered.");
@@ -369,6 +378,7 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
         else {
             // Remove the info object from the info object's list
             registeredPlugins.remove(pluginInfo.getHashcode());
+            pluginsByMnemonic.clear();
             logger.info(
                     "Plug-in service (" + pluginInfo.getPluginName() + ")"
                     + " is unregistering.");
@@ -474,6 +484,7 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
                             // Store the info object
                             registeredPlugins.put(
                                     pluginInfo.getHashcode(), pluginInfo);
+                            pluginsByMnemonic.clear();
                             return true;
                         }
                     }
@@ -582,6 +593,7 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
             pi = createInstalledPI(srefPlugin, pDao);
             if (pi != null) {
                 registeredPlugins.put(pi.getHashcode(), pi);
+                pluginsByMnemonic.clear();
                 logger.info("Plug-in (" + pi.getPluginName()
                         + ") successfuly updated");
                 // TODO: Not sure, if this is the correct plug-in method
@@ -598,20 +610,33 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
     }
 
     public AlitheiaPlugin getImplementingPlugin(String mnemonic) {
+        PluginInfo found = pluginsByMnemonic.get(mnemonic);
+        // Use the index entry unless the plug-in has changed meanwhile
+        if (found != null && found.installed
+                && registeredPlugins.get(found.getHashcode()) == found) {
+            return getPlugin(found);
+        }
+
+        found = null;
         Iterator<String> i = registeredPlugins.keySet().iterator();
 
         while (i.hasNext()) {
             PluginInfo pi = registeredPlugins.get(i.next());
             // Skip metric plug-ins that are registered but not installed
-            if (pi.installed) {
+            if (pi != null && pi.installed) {
                 ServiceReference sr = pi.getServiceRef();
                 Plugin p = pluginRefToPluginDAO(sr);
+                if (p == null)
+                    continue;
                 Set<Metric> lm = p.getSupportedMetrics();
                 for (Metric m : lm){
+                    pluginsByMnemonic.put(m.getMnemonic(), pi);
                     if (m.getMnemonic().equals(mnemonic)) {
-                        return getPlugin(pi);
+                        found = pi;
                     }
                 }
+                if (found != null)
+                    return getPlugin(found);
             }
         }
         // No plug-ins found
@@ -672,9 +697,12 @@ public class PAServiceImpl implements PluginAdmin, ServiceListener {
                         // Store the info object
                         registeredPlugins.put(
                                 pluginInfo.getHashcode(), pluginInfo);
+                        pluginsByMnemonic.clear();
                     }
                 }
                 dbs.commitDBSession();
+                // The plug-in's metrics are gone
+                dbs.evictCaches();
             } catch (Exception e) {
                 logger.warn(UNINSTALL_FAILED, e);
             }
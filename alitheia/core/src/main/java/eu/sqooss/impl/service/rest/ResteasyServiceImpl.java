@@ -96,6 +96,7 @@ public class ResteasyServiceImpl implements RestService {
     public boolean startUp() {
         addResource(eu.sqooss.rest.api.StoredProjectResource.class);
         addResource(eu.sqooss.rest.api.MetricsResource.class);
+        addResource(eu.sqooss.rest.api.SchedulerResource.class);
         return true;
     }
 
@@ -0,0 +1,387 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.impl.service.scheduler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import eu.sqooss.service.scheduler.Job;
+
+/**
+ * Book-keeping of the jobs known to the scheduler. Each job is represented
+ * by a node that counts the dependencies that have not finished yet and
+ * lists the nodes of the jobs waiting for it. When a job finishes, the
+ * counters of its dependees are decremented; a dependee whose counter drops
+ * to zero is pushed to the ready queue. None of the operations scan the
+ * queues, so their cost does not depend on the number of queued jobs.
+ * <p>
+ * Jobs are never removed from the ready queue directly. Instead, each push
+ * creates a new {@link Ticket} and removing a job invalidates its current
+ * ticket; invalid tickets are discarded when they reach the queue head.
+ * How ready jobs are handed out to the workers is left to a
+ * {@link ReadyQueue} implementation.
+ */
+class JobDependencyGraph {
+
+    /** Position of a job in the scheduler */
+    enum NodeState {
+        /** Known only because another job depends on it */
+        Unqueued,
+        /** Queued, waiting for dependencies or for a resume */
+        Blocked,
+        /** In the ready queue */
+        Ready,
+        /** Taken from the ready queue by a worker */
+        Taken
+    }
+
+    /**
+     * A job's entry in the dependency graph.
+     */
+    static class Node {
+        final Job job;
+        NodeState state = NodeState.Unqueued;
+        /** Unfinished jobs this job waits for; its size is the counter */
+        final Set<Node> blockers = new HashSet<Node>(2);
+        /** Jobs waiting for this job to finish */
+        List<Node> dependees = null;
+        /** The currently valid entry in the ready queue, if any */
+        volatile Ticket ticket = null;
+        boolean removed = false;
+        /** Hint of the ready queue about where the job last ran */
+        volatile Object affinity = null;
+
+        Node(Job job) {
+            this.job = job;
+        }
+    }
+
+    /**
+     * An entry in the ready queue.
+     */
+    static class Ticket {
+        final Node node;
+        final long seq;
+
+        Ticket(Node node, long seq) {
+            this.node = node;
+            this.seq = seq;
+        }
+
+        /**
+         * @return false if the job was taken or removed after this ticket
+         * was issued. Can be checked without holding the graph's lock.
+         */
+        boolean isValid() {
+            return node.ticket == this;
+        }
+    }
+
+    /**
+     * Orders tickets by job priority, then by queueing order.
+     */
+    static class TicketComparator implements Comparator<Ticket> {
+        private final Comparator<Job> prio = new JobPriorityComparator();
+
+        public int compare(Ticket lhs, Ticket rhs) {
+            int result = prio.compare(lhs.node.job, rhs.node.job);
+            if (result != 0)
+                return result;
+            return (lhs.seq < rhs.seq) ? -1 : ((lhs.seq == rhs.seq) ? 0 : 1);
+        }
+    }
+
+    private final Map<Job, Node> nodes = new HashMap<Job, Node>();
+    private final ReadyQueue readyQueue;
+    private long seq = 0;
+    private int blocked = 0;
+
+    /**
+     * Creates a graph handing out jobs through a single priority queue.
+     */
+    JobDependencyGraph() {
+        this(new PriorityReadyQueue());
+    }
+
+    JobDependencyGraph(ReadyQueue readyQueue) {
+        this.readyQueue = readyQueue;
+    }
+
+    /**
+     * @return The queue ready jobs are pushed to.
+     */
+    ReadyQueue getReadyQueue() {
+        return readyQueue;
+    }
+
+    /**
+     * Registers a job which must wait for {@link #update(Job)} before
+     * being considered for execution.
+     */
+    synchronized void addBlocked(Job job) {
+        Node n = node(job);
+        setNodeState(n, NodeState.Blocked);
+    }
+
+    /**
+     * Registers a job and makes it immediately available for execution,
+     * regardless of its dependencies.
+     */
+    synchronized void addReady(Job job) {
+        makeReady(node(job));
+    }
+
+    /**
+     * Moves a job back to the blocked set, without evaluating its
+     * dependencies. Used when a job yields.
+     */
+    synchronized void block(Job job) {
+        Node n = node(job);
+        n.ticket = null;
+        setNodeState(n, NodeState.Blocked);
+    }
+
+    /**
+     * Synchronises the node of a job with the job's dependency list and
+     * moves the job to the ready queue if it is blocked and all its
+     * dependencies have been resolved. The cost is proportional to the
+     * number of dependencies of the job.
+     */
+    synchronized void update(Job job) {
+        Node n = nodes.get(job);
+        if (n == null || n.removed)
+            return;
+
+        List<Job> deps = job.dependencies();
+        Set<Node> current = new HashSet<Node>(deps.size() * 2);
+        for (Job dep : deps) {
+            if (isResolved(dep))
+                continue;
+            Node d = node(dep);
+            current.add(d);
+            if (n.blockers.add(d)) {
+                if (d.dependees == null)
+                    d.dependees = new ArrayList<Node>(2);
+                d.dependees.add(n);
+            }
+        }
+        /* Dependencies removed or finished since the last update */
+        for (Iterator<Node> i = n.blockers.iterator(); i.hasNext(); ) {
+            Node d = i.next();
+            if (!current.contains(d)) {
+                i.remove();
+                unlink(d, n);
+            }
+        }
+
+        if (n.state == NodeState.Blocked && n.blockers.isEmpty()) {
+            makeReady(n);
+        } else if (n.state == NodeState.Ready && !n.blockers.isEmpty()) {
+            /* A dependency was added to a job waiting for execution */
+            n.ticket = null;
+            setNodeState(n, NodeState.Blocked);
+        }
+    }
+
+    /**
+     * Called when a job has finished or failed. Decrements the counters
+     * of the jobs depending on it and releases those that become ready.
+     */
+    synchronized void resolved(Job job) {
+        Node n = nodes.remove(job);
+        if (n == null)
+            return;
+        setNodeState(n, NodeState.Unqueued);
+        n.removed = true;
+        n.ticket = null;
+        unlinkBlockers(n);
+
+        if (n.dependees == null)
+            return;
+        for (Node d : n.dependees) {
+            if (d.removed)
+                continue;
+            if (d.blockers.remove(n) && d.blockers.isEmpty()
+                    && d.state == NodeState.Blocked)
+                makeReady(d);
+        }
+        n.dependees = null;
+    }
+
+    /**
+     * Forgets about a job that has not been executed.
+     * @return false if the job was not queued.
+     */
+    synchronized boolean remove(Job job) {
+        Node n = nodes.get(job);
+        if (n == null || n.state == NodeState.Unqueued)
+            return false;
+        n.ticket = null;
+        setNodeState(n, NodeState.Unqueued);
+        unlinkBlockers(n);
+        /* Keep the node if other jobs still wait for this one */
+        if (n.dependees == null || n.dependees.isEmpty()) {
+            nodes.remove(job);
+            n.removed = true;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the next job to be executed, blocking until one is
+     * available.
+     */
+    Job take() throws InterruptedException {
+        while (true) {
+            Ticket t = readyQueue.take();
+            synchronized (this) {
+                if (claim(t))
+                    return t.node.job;
+            }
+        }
+    }
+
+    /**
+     * Takes a specific job out of the ready queue.
+     * @return The job or null if it is not ready for execution.
+     */
+    synchronized Job take(Job job) {
+        Node n = nodes.get(job);
+        if (n == null || n.ticket == null)
+            return null;
+        claim(n.ticket);
+        return job;
+    }
+
+    /**
+     * @return Whether the job is queued, blocked or ready.
+     */
+    synchronized boolean contains(Job job) {
+        Node n = nodes.get(job);
+        return n != null && n.state != NodeState.Unqueued;
+    }
+
+    /** Number of jobs known, including those only waited on */
+    synchronized int size() {
+        return nodes.size();
+    }
+
+    /** Number of jobs ready to be executed */
+    int readyJobs() {
+        return readyQueue.size();
+    }
+
+    /** Number of jobs waiting for dependencies or resumption */
+    synchronized int blockedJobs() {
+        return blocked;
+    }
+
+    /**
+     * Drops stale tickets from the ready queue. Only needed if lots of
+     * jobs are removed without ever being executed.
+     */
+    synchronized void purge() {
+        readyQueue.purge();
+    }
+
+    private boolean claim(Ticket t) {
+        Node n = t.node;
+        if (n.removed || n.ticket != t)
+            return false;
+        n.ticket = null;
+        setNodeState(n, NodeState.Taken);
+        return true;
+    }
+
+    private void makeReady(Node n) {
+        setNodeState(n, NodeState.Ready);
+        n.ticket = new Ticket(n, seq++);
+        readyQueue.offer(n.ticket);
+    }
+
+    private void setNodeState(Node n, NodeState s) {
+        if (n.state == NodeState.Blocked)
+            blocked--;
+        if (s == NodeState.Blocked)
+            blocked++;
+        n.state = s;
+    }
+
+    /**
+     * Drops the edges to the jobs a job no longer waits for.
+     */
+    private void unlinkBlockers(Node n) {
+        for (Node d : n.blockers)
+            unlink(d, n);
+        n.blockers.clear();
+    }
+
+    /**
+     * Drops the edge from a dependency to a job that no longer waits for
+     * it. A dependency that is not queued itself is forgotten when the
+     * last job waiting for it is gone, otherwise the nodes of jobs that
+     * are never queued would pile up.
+     */
+    private void unlink(Node dep, Node dependee) {
+        if (dep.dependees != null)
+            dep.dependees.remove(dependee);
+        if (dep.removed || dep.state != NodeState.Unqueued)
+            return;
+        if (dep.dependees == null || dep.dependees.isEmpty()) {
+            nodes.remove(dep.job);
+            dep.removed = true;
+        }
+    }
+
+    private Node node(Job job) {
+        Node n = nodes.get(job);
+        if (n == null) {
+            n = new Node(job);
+            nodes.put(job, n);
+        }
+        return n;
+    }
+
+    private static boolean isResolved(Job j) {
+        return j.state() == Job.State.Finished || j.state() == Job.State.Error;
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
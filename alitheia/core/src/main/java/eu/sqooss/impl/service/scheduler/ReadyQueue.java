@@ -0,0 +1,70 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.impl.service.scheduler;
+
+import eu.sqooss.impl.service.scheduler.JobDependencyGraph.Ticket;
+
+/**
+ * The part of the scheduler that hands ready jobs out to worker threads.
+ * Implementations may keep stale tickets around (see
+ * {@link Ticket#isValid()}); the dependency graph discards them when they
+ * are taken.
+ */
+interface ReadyQueue {
+
+    /**
+     * Adds a ticket for a job that has become ready. Called while the
+     * dependency graph is locked, so this must not block.
+     */
+    void offer(Ticket t);
+
+    /**
+     * Removes and returns the ticket of the most important job available
+     * to the calling thread, blocking until one is available.
+     */
+    Ticket take() throws InterruptedException;
+
+    /**
+     * @return The number of tickets in the queue, including stale ones.
+     */
+    int size();
+
+    /**
+     * Drops all stale tickets.
+     */
+    void purge();
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
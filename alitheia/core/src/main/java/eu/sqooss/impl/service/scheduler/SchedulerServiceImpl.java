@@ -34,18 +34,19 @@
 package eu.sqooss.impl.service.scheduler;
 
 import java.util.Deque;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
 
 import org.osgi.framework.BundleContext;
 
 import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.JobGroup;
+import eu.sqooss.service.scheduler.JobGroupListener;
 import eu.sqooss.service.scheduler.ResumePoint;
 import eu.sqooss.service.scheduler.Scheduler;
 import eu.sqooss.service.scheduler.SchedulerException;
@@ -55,6 +56,7 @@ import eu.sqooss.service.scheduler.WorkerThread;
 public class SchedulerServiceImpl implements Scheduler {
 
     private static final String START_THREADS_PROPERTY = "eu.sqooss.scheduler.numthreads";
+    private static final String WORK_STEALING_PROPERTY = "eu.sqooss.scheduler.workstealing";
     private static final String PERF_LOG_PROPERTY = "eu.sqooss.log.perf";
     
     private Logger logger = null;
@@ -62,11 +64,10 @@ public class SchedulerServiceImpl implements Scheduler {
 
     private SchedulerStats stats = new SchedulerStats();
 
-    // thread safe job queue
-    private PriorityQueue<Job> blockedQueue = new PriorityQueue<Job>(1,
-            new JobPriorityComparator());
-    private BlockingQueue<Job> workQueue = new PriorityBlockingQueue<Job>(1,
-            new JobPriorityComparator());
+    // blocked jobs, ready queue and dependency counters. The ready queue
+    // is chosen here, as jobs may be enqueued before startUp()
+    private final JobDependencyGraph jobs =
+        new JobDependencyGraph(createReadyQueue());
 
     private BlockingQueue<Job> failedQueue = new ArrayBlockingQueue<Job>(1000);
 
@@ -75,81 +76,68 @@ public class SchedulerServiceImpl implements Scheduler {
     public SchedulerServiceImpl() { }
 
     public void enqueue(Job job) throws SchedulerException {
-        synchronized (this) {
-            if (logger != null)
-                logger.debug("SchedulerServiceImpl: queuing job " + job.toString());
-            job.callAboutToBeEnqueued(this);
-            blockedQueue.add(job);
-            stats.addWaitingJob(job.getClass().toString());
-            stats.incTotalJobs();
-        }
+        if (logger != null)
+            logger.debug("SchedulerServiceImpl: queuing job " + job.toString());
+        job.callAboutToBeEnqueued(this);
+        stats.addWaitingJob(job);
+        stats.incTotalJobs();
+        jobs.addBlocked(job);
         jobDependenciesChanged(job);
     }
     
     public void enqueueNoDependencies(Set<Job> jobs) throws SchedulerException {
-        synchronized (this) {
-            for (Job job : jobs) {
-                logger.debug("Scheduler ServiceImpl: queuing job "
-                        + job.toString());
-                job.callAboutToBeEnqueued(this);
-                workQueue.add(job);
-                stats.addWaitingJob(job.getClass().toString());
-                stats.incTotalJobs();
-            }
+        for (Job job : jobs) {
+            logger.debug("Scheduler ServiceImpl: queuing job "
+                    + job.toString());
+            job.callAboutToBeEnqueued(this);
+            stats.addWaitingJob(job);
+            stats.incTotalJobs();
+            this.jobs.addReady(job);
         }
     }
     
     public void enqueueBlock(List<Job> jobs) throws SchedulerException {
-        synchronized (this) {
-            for (Job job : jobs) {
-                logger.debug("SchedulerServiceImpl: queuing job " + job.toString());
-                job.callAboutToBeEnqueued(this);
-                blockedQueue.add(job);
-                stats.addWaitingJob(job.getClass().toString());
-                stats.incTotalJobs();
-            }
+        for (Job job : jobs) {
+            logger.debug("SchedulerServiceImpl: queuing job " + job.toString());
+            job.callAboutToBeEnqueued(this);
+            stats.addWaitingJob(job);
+            stats.incTotalJobs();
+            this.jobs.addBlocked(job);
         }
         for (Job job : jobs)
             jobDependenciesChanged(job);
     }
 
+    public void enqueueGroup(JobGroup g) throws SchedulerException {
+        enqueueNoDependencies(new LinkedHashSet<Job>(g.callAboutToBeEnqueued()));
+    }
+
     public void dequeue(Job job) {
-        synchronized (this) {
-            if (!blockedQueue.contains(job) && !workQueue.contains(job)) {
-                if (logger != null) {
-                    logger.info("SchedulerServiceImpl: job " + job.toString()
-                            + " not found in the queue.");
-                }
-                return;
+        if (!jobs.remove(job)) {
+            if (logger != null) {
+                logger.info("SchedulerServiceImpl: job " + job.toString()
+                        + " not found in the queue.");
             }
-            job.callAboutToBeDequeued(this);
-            blockedQueue.remove(job);
-            workQueue.remove(job);
-        }
-        if (logger != null) {
-            logger.warn("SchedulerServiceImpl: job " + job.toString()
-                    + " not found in the queue.");
+            return;
         }
+        job.callAboutToBeDequeued(this);
     }
 
     public Job takeJob() throws java.lang.InterruptedException {
         /*
-         * no synchronize needed here, the queue is doing that adding
-         * synchronize here would actually dead-lock this, since no new items
-         * can be added as long someone is waiting for items
+         * no synchronize needed here, the dependency graph is doing that;
+         * synchronizing here would dead-lock, since no new items could be
+         * added as long someone is waiting for items
          */
-        return workQueue.take();
+        return jobs.take();
     }
 
     public Job takeJob(Job job) throws SchedulerException {
-        synchronized (workQueue) {
-            if (!workQueue.contains(job)) {
-                throw new SchedulerException("Can't take job " + job
-                        + ": It is not in the scheduler's queue right now.");
-            }
-            workQueue.remove(job);
-            return job;
+        if (jobs.take(job) == null) {
+            throw new SchedulerException("Can't take job " + job
+                    + ": It is not in the scheduler's queue right now.");
         }
+        return job;
     }
     
     public void jobStateChanged(Job job, Job.State state) {
@@ -157,15 +145,19 @@ public class SchedulerServiceImpl implements Scheduler {
             logger.debug("Job " + job + " changed to state " + state);
         }
 
+        if (state == Job.State.Finished || state == Job.State.Error) {
+            jobs.resolved(job);
+        }
+
         if (state == Job.State.Finished) {
             stats.removeRunJob(job);
-            stats.incFinishedJobs();
+            stats.addFinishedJob(job);
         } else if (state == Job.State.Running) {
-            stats.removeWaitingJob(job.getClass().toString());
+            stats.removeWaitingJob(job);
             stats.addRunJob(job);
         } else if (state == Job.State.Yielded) {
             stats.removeRunJob(job);
-            stats.addWaitingJob(job.getClass().toString());
+            stats.addYieldedJob(job);
         } else if (state == Job.State.Error) {
 
             if (failedQueue.remainingCapacity() == 1)
@@ -173,20 +165,12 @@ public class SchedulerServiceImpl implements Scheduler {
             failedQueue.add(job);
             
             stats.removeRunJob(job);
-            stats.addFailedJob(job.getClass().toString());
+            stats.addFailedJob(job);
         }
     }
 
     public void jobDependenciesChanged(Job job) {
-        synchronized (this) {
-            if (workQueue.contains(job) && !job.canExecute()) {
-                workQueue.remove(job);
-                blockedQueue.add(job);
-            } else if (job.canExecute()) {
-                blockedQueue.remove(job);
-                workQueue.add(job);
-            }
-        }
+        jobs.update(job);
     }
 
     public void startExecute(int n) {
@@ -197,8 +181,13 @@ public class SchedulerServiceImpl implements Scheduler {
                 myWorkerThreads = new LinkedList<WorkerThread>();
             }
 
+            ReadyQueue q = jobs.getReadyQueue();
             for (int i = 0; i < n; ++i) {
-                WorkerThread t = new WorkerThreadImpl(this, i);
+                WorkerThread t;
+                if (q instanceof WorkStealingReadyQueue)
+                    t = new StealingWorkerThread(this, (WorkStealingReadyQueue) q, i);
+                else
+                    t = new WorkerThreadImpl(this, i);
                 t.start();
                 myWorkerThreads.add(t);
                 stats.incWorkerThreads();
@@ -271,6 +260,9 @@ public class SchedulerServiceImpl implements Scheduler {
                 logger.warn("Invalid number of threads to start:" + threadsProperty);
             }
         }
+        
+        if (jobs.getReadyQueue() instanceof WorkStealingReadyQueue)
+            logger.info("Using work-stealing worker threads");
         startExecute(numThreads);
         
         String perfLog = System.getProperty(PERF_LOG_PROPERTY);
@@ -300,12 +292,47 @@ public class SchedulerServiceImpl implements Scheduler {
     }
 
     @Override
-    public synchronized void yield(Job j, ResumePoint p) throws SchedulerException {
+    public void yield(Job j, ResumePoint p) throws SchedulerException {
         
         if (j.state() != Job.State.Yielded)
             j.yield(p);
-        workQueue.remove(j);
-        blockedQueue.add(j);
+        jobs.block(j);
+    }
+
+    /**
+     * The job is blocked without dependencies and made ready again by the
+     * group's listener, instead of depending on every job of the group.
+     */
+    @Override
+    public void yield(JobGroup g, ResumePoint p) throws SchedulerException {
+        Job j = null;
+        if (Thread.currentThread() instanceof WorkerThread)
+            j = ((WorkerThread) Thread.currentThread()).executedJob();
+
+        if (j == null) {
+            try {
+                g.waitForDone();
+            } catch (InterruptedException e) {
+                throw new SchedulerException("Interrupted while waiting for " + g);
+            }
+            p.resume();
+            return;
+        }
+
+        final Job waiting = j;
+        yield(waiting, p);
+        g.addListener(new JobGroupListener() {
+            public void groupDone(JobGroup group) {
+                jobs.update(waiting);
+            }
+        });
+    }
+
+    private static ReadyQueue createReadyQueue() {
+        String stealing = System.getProperty(WORK_STEALING_PROPERTY);
+        if (stealing != null && stealing.equals("true"))
+            return new WorkStealingReadyQueue();
+        return new PriorityReadyQueue();
     }
 }
 
@@ -0,0 +1,301 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.impl.service.scheduler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import eu.sqooss.impl.service.scheduler.JobDependencyGraph.Ticket;
+import eu.sqooss.impl.service.scheduler.JobDependencyGraph.TicketComparator;
+
+/**
+ * Ready queue with one local queue per worker thread. Jobs made ready by a
+ * worker (for example the sub-jobs of an auxiliary queue) are put on that
+ * worker's local queue, and a job that ran before goes back to the queue of
+ * the worker that last ran it. Jobs made ready by other threads are put on
+ * a shared queue. A worker that runs out of local work takes jobs from the
+ * shared queue or steals a batch from another worker.
+ * <p>
+ * Each queue is ordered by priority. Before taking a local job, a worker
+ * checks whether the shared queue holds a more important one, so
+ * priorities are respected within a worker and between a worker and the
+ * shared queue, but not across workers.
+ */
+class WorkStealingReadyQueue implements ReadyQueue {
+
+    /** Maximum number of tickets moved by one steal */
+    private static final int STEAL_BATCH = 32;
+    /** Upper bound for idle waits, in case a wake-up gets lost */
+    private static final long IDLE_WAIT = 500;
+
+    private static final Comparator<Ticket> order = new TicketComparator();
+
+    /**
+     * A priority ordered queue owned by a single worker thread.
+     */
+    static class LocalQueue {
+        private final PriorityQueue<Ticket> queue =
+            new PriorityQueue<Ticket>(11, order);
+        private volatile int count = 0;
+        private boolean attached = true;
+
+        /** @return false if the owner has detached from the queue. */
+        synchronized boolean add(Ticket t) {
+            if (!attached)
+                return false;
+            queue.add(t);
+            count++;
+            return true;
+        }
+
+        synchronized Ticket poll() {
+            Ticket t = queue.poll();
+            if (t != null)
+                count--;
+            return t;
+        }
+
+        synchronized Ticket peek() {
+            return queue.peek();
+        }
+
+        /**
+         * Removes the head of the queue if it precedes <tt>other</tt>.
+         */
+        synchronized Ticket pollBefore(Ticket other) {
+            Ticket t = queue.peek();
+            if (t == null || order.compare(t, other) >= 0)
+                return null;
+            count--;
+            return queue.poll();
+        }
+
+        /**
+         * Removes up to half of the tickets, most important first.
+         */
+        synchronized List<Ticket> pollHalf(int max) {
+            int n = Math.min(max, (count + 1) / 2);
+            List<Ticket> result = new ArrayList<Ticket>(n);
+            for (int i = 0; i < n; i++)
+                result.add(queue.poll());
+            count -= n;
+            return result;
+        }
+
+        /**
+         * Marks the queue as orphaned and removes all tickets from it.
+         */
+        synchronized List<Ticket> detach() {
+            attached = false;
+            List<Ticket> result = new ArrayList<Ticket>(queue);
+            queue.clear();
+            count = 0;
+            return result;
+        }
+
+        /** @return The number of stale tickets removed */
+        synchronized int purge() {
+            int removed = 0;
+            Iterator<Ticket> i = queue.iterator();
+            while (i.hasNext()) {
+                if (!i.next().isValid()) {
+                    i.remove();
+                    removed++;
+                }
+            }
+            count -= removed;
+            return removed;
+        }
+
+        synchronized boolean isAttached() {
+            return attached;
+        }
+    }
+
+    private final LocalQueue shared = new LocalQueue();
+    private final List<LocalQueue> locals = new CopyOnWriteArrayList<LocalQueue>();
+    private final ThreadLocal<LocalQueue> current = new ThreadLocal<LocalQueue>();
+
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger idle = new AtomicInteger();
+    private final AtomicInteger nextVictim = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    /**
+     * Creates a local queue for the calling thread. Must be called by
+     * a worker thread before it starts taking jobs.
+     */
+    void attach() {
+        LocalQueue l = new LocalQueue();
+        current.set(l);
+        locals.add(l);
+    }
+
+    /**
+     * Removes the local queue of the calling thread and moves its
+     * remaining tickets to the shared queue.
+     */
+    void detach() {
+        LocalQueue l = current.get();
+        if (l == null)
+            return;
+        current.remove();
+        locals.remove(l);
+        for (Ticket t : l.detach())
+            shared.add(t);
+        signal();
+    }
+
+    public void offer(Ticket t) {
+        LocalQueue target = null;
+        Object hint = t.node.affinity;
+        if (hint instanceof LocalQueue)
+            target = (LocalQueue) hint;
+        else
+            target = current.get();
+
+        if (target == null || !target.add(t))
+            shared.add(t);
+        size.incrementAndGet();
+
+        if (idle.get() > 0)
+            signal();
+    }
+
+    public Ticket take() throws InterruptedException {
+        LocalQueue own = current.get();
+        while (true) {
+            Ticket t = poll(own);
+            if (t != null) {
+                size.decrementAndGet();
+                if (own != null)
+                    t.node.affinity = own;
+                return t;
+            }
+
+            lock.lockInterruptibly();
+            try {
+                idle.incrementAndGet();
+                try {
+                    if (size.get() == 0)
+                        available.await(IDLE_WAIT, TimeUnit.MILLISECONDS);
+                } finally {
+                    idle.decrementAndGet();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public void purge() {
+        int removed = shared.purge();
+        for (LocalQueue l : locals)
+            removed += l.purge();
+        size.addAndGet(-removed);
+    }
+
+    private Ticket poll(LocalQueue own) {
+        if (own != null && own.count > 0) {
+            Ticket head = own.peek();
+            if (head != null && shared.count > 0) {
+                Ticket t = shared.pollBefore(head);
+                if (t != null)
+                    return t;
+            }
+            Ticket t = own.poll();
+            if (t != null)
+                return t;
+        }
+
+        if (shared.count > 0) {
+            Ticket t = shared.poll();
+            if (t != null)
+                return t;
+        }
+
+        return steal(own);
+    }
+
+    private Ticket steal(LocalQueue own) {
+        Object[] victims = locals.toArray();
+        if (victims.length == 0)
+            return null;
+
+        int start = (nextVictim.getAndIncrement() & Integer.MAX_VALUE)
+            % victims.length;
+        for (int i = 0; i < victims.length; i++) {
+            LocalQueue victim = (LocalQueue) victims[(start + i) % victims.length];
+            if (victim == own || victim.count == 0)
+                continue;
+
+            /* Threads without a local queue only take what they run */
+            List<Ticket> loot = victim.pollHalf(own == null ? 1 : STEAL_BATCH);
+            if (loot.isEmpty())
+                continue;
+
+            for (int j = 1; j < loot.size(); j++) {
+                if (!own.add(loot.get(j)))
+                    shared.add(loot.get(j));
+            }
+            return loot.get(0);
+        }
+        return null;
+    }
+
+    private void signal() {
+        lock.lock();
+        try {
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
@@ -112,6 +112,8 @@ public class ProjectDeleteJob extends Job {
 
         if (success) {
             dbs.commitDBSession();
+            dbs.evictCaches();
+            core.getFDSService().dropFileTreeIndex(sp);
         } else {
             dbs.rollbackDBSession();
         }
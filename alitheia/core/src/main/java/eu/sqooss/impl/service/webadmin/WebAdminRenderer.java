@@ -33,6 +33,8 @@
 
 package eu.sqooss.impl.service.webadmin;
 
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -41,6 +43,8 @@ import org.apache.velocity.VelocityContext;
 import org.osgi.framework.BundleContext;
 
 import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.JobTypeStats;
+import eu.sqooss.service.util.Histogram;
 import eu.sqooss.service.util.StringUtils;
 
 /**
@@ -262,6 +266,68 @@ public class WebAdminRenderer  extends AbstractView {
         result.append("</ul>\n");
         return result.toString();
     }
+
+    /**
+     * Creates an HTML table with the queue wait time, run time and yield
+     * statistics of each job type, the types with the largest total run
+     * time first.
+     */
+    public static String renderJobTypeStats() {
+        StringBuilder result = new StringBuilder();
+        List<JobTypeStats> types = sobjSched.getSchedulerStats().getJobTypeStats();
+        Collections.sort(types, new Comparator<JobTypeStats>() {
+            public int compare(JobTypeStats a, JobTypeStats b) {
+                long ta = a.getRunTime().getSum();
+                long tb = b.getRunTime().getSum();
+                return (ta > tb) ? -1 : ((ta == tb) ? 0 : 1);
+            }
+        });
+        result.append("<table width=\"100%\" cellpadding=\"0\" cellspacing=\"0\">\n");
+        result.append("\t<thead>\n");
+        result.append("\t\t<tr>\n");
+        result.append("\t\t\t<td>Job Type</td>\n");
+        result.append("\t\t\t<td>Finished</td>\n");
+        result.append("\t\t\t<td>Failed</td>\n");
+        result.append("\t\t\t<td>Total run time (ms)</td>\n");
+        result.append("\t\t\t<td>Run time mean/p90/p99/max (ms)</td>\n");
+        result.append("\t\t\t<td>Queue wait mean/p90/p99/max (ms)</td>\n");
+        result.append("\t\t\t<td>Yields mean/max</td>\n");
+        result.append("\t\t</tr>\n");
+        result.append("\t</thead>\n");
+        result.append("\t<tbody>\n");
+
+        if (types.isEmpty()) {
+            result.append("<tr><td colspan=\"7\">No jobs run yet.</td></tr>");
+        }
+        for (JobTypeStats t : types) {
+            result.append("\t\t<tr>\n\t\t\t<td>");
+            result.append(t.getType());
+            result.append("</td>\n\t\t\t<td>");
+            result.append(t.getFinished());
+            result.append("</td>\n\t\t\t<td>");
+            result.append(t.getFailed());
+            result.append("</td>\n\t\t\t<td>");
+            result.append(t.getRunTime().getSum());
+            result.append("</td>\n\t\t\t<td>");
+            renderHistogram(result, t.getRunTime());
+            result.append("</td>\n\t\t\t<td>");
+            renderHistogram(result, t.getQueueWait());
+            result.append("</td>\n\t\t\t<td>");
+            result.append(t.getYields().getMean()).append("/");
+            result.append(t.getYields().getMax());
+            result.append("\t\t\t</td>\n\t\t</tr>");
+        }
+        result.append("\t</tbody>\n");
+        result.append("</table>");
+        return result.toString();
+    }
+
+    private static void renderHistogram(StringBuilder b, Histogram.Snapshot h) {
+        b.append(h.getMean()).append("/");
+        b.append(h.getP90()).append("/");
+        b.append(h.getP99()).append("/");
+        b.append(h.getMax());
+    }
 }
 
 //vi: ai nosi sw=4 ts=4 expandtab
@@ -33,6 +33,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.ws.rs.GET;
@@ -48,6 +49,7 @@ import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.Metric;
 import eu.sqooss.service.db.MetricType;
 import eu.sqooss.service.db.MetricType.Type;
+import eu.sqooss.service.logging.Logger;
 
 /**
  *  @author Georgios Gousios <gousiosg@gmail.com>
@@ -129,6 +131,19 @@ public class MetricsResource {
         
         List<Result> result = new ArrayList<Result>();
         
+        Logger log = AlitheiaCore.getInstance().getLogManager().createLogger(
+                Logger.NAME_SQOOSS_WEB_SERVICES);
+        try {
+            Map<Long, List<Result>> r = 
+                ap.getResultsIfAlreadyCalculated(clazz, ids, metricList);
+            for (List<Result> l : r.values())
+                result.addAll(l);
+            ids.clear();
+        } catch (Exception e) {
+            log.warn("Cannot get results of metric " + m.getMnemonic()
+                    + " in bulk, getting them one by one: " + e.getMessage());
+        }
+
         for (Long daoId : ids) {
             try {
                 DAObject dao = DAObject.loadDAObyId(daoId, clazz);
@@ -137,9 +152,12 @@ public class MetricsResource {
                     continue;
                 
                 List<Result> r = ap.getResultIfAlreadyCalculated(dao, metricList);
-                result.addAll(r);
+                if (r != null)
+                    result.addAll(r);
             } catch (Exception e) {
-                e.printStackTrace();
+                log.warn("Cannot get result of metric " + m.getMnemonic()
+                        + " for " + clazz.getSimpleName() + " " + daoId
+                        + ": " + e.getMessage());
             }
         }
         
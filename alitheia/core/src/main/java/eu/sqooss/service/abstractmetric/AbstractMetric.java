@@ -39,6 +39,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -48,7 +49,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.osgi.framework.Bundle;
@@ -58,21 +58,31 @@ import org.osgi.framework.ServiceReference;
 import eu.sqooss.core.AlitheiaCore;
 import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.EncapsulationUnit;
 import eu.sqooss.service.db.EncapsulationUnitMeasurement;
+import eu.sqooss.service.db.ExecutionUnit;
 import eu.sqooss.service.db.ExecutionUnitMeasurement;
+import eu.sqooss.service.db.MailMessage;
 import eu.sqooss.service.db.MailMessageMeasurement;
+import eu.sqooss.service.db.MailingListThread;
 import eu.sqooss.service.db.MailingListThreadMeasurement;
 import eu.sqooss.service.db.Metric;
 import eu.sqooss.service.db.MetricMeasurement;
 import eu.sqooss.service.db.MetricType;
+import eu.sqooss.service.db.NameSpace;
 import eu.sqooss.service.db.NameSpaceMeasurement;
 import eu.sqooss.service.db.Plugin;
 import eu.sqooss.service.db.PluginConfiguration;
+import eu.sqooss.service.db.ProjectDirectory;
+import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.db.ProjectFileMeasurement;
+import eu.sqooss.service.db.ProjectFileState;
+import eu.sqooss.service.db.ProjectVersion;
 import eu.sqooss.service.db.ProjectVersionMeasurement;
 import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.db.StoredProjectMeasurement;
 import eu.sqooss.service.db.MetricType.Type;
+import eu.sqooss.service.fds.FileTypeMatcher;
 import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.metricactivator.MetricActivationException;
 import eu.sqooss.service.metricactivator.MetricActivator;
@@ -126,6 +136,45 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
     private Map<Metric, List<Class<? extends DAObject>>> metricActType =
     	new HashMap<Metric, List<Class<? extends DAObject>>>();
     
+    /** Number of results converted per transaction by {@link #migrateResults()} */
+    protected static final int MIGRATION_BATCH_SIZE = 1000;
+
+    /** File results of a project, used by {@link #aggregateFileResults(ProjectVersion, Metric...)} */
+    private static final String QRY_FILE_RESULTS =
+            "from ProjectFileMeasurement pfm " +
+            "    join pfm.projectFile pf " +
+            "    join pf.validFrom vf " +
+            "    left join pf.validUntil vu " +
+            "where pfm.metric.id in (:metrics) " +
+            "and vf.project = :project " +
+            "and pf.isDirectory = :isDirectory " +
+            "and pf.state <> :deleted ";
+
+    /** Files live at version :to */
+    private static final String COND_LIVE =
+            "and vf.sequence <= :to " +
+            "and (vu.id is null or vu.sequence >= :to) ";
+
+    /** Files live at version :to, but not at version :from */
+    private static final String COND_ADDED =
+            "and vf.sequence > :from and vf.sequence <= :to " +
+            "and (vu.id is null or vu.sequence >= :to) ";
+
+    /** Files live at version :from, but not at version :to */
+    private static final String COND_REMOVED =
+            "and vf.sequence <= :from " +
+            "and vu.sequence >= :from and vu.sequence < :to ";
+
+    private static final String QRY_AGGREGATE_FILE_RESULTS =
+            "select pf.name, pfm.metric.id, count(pfm), sum(pfm.intResult), " +
+            "    sum(pfm.doubleResult), count(pfm.result) " +
+            QRY_FILE_RESULTS;
+
+    private static final String QRY_STRING_FILE_RESULTS =
+            "select pf.name, pfm.metric.id, pfm.result " +
+            QRY_FILE_RESULTS +
+            "and pfm.result is not null ";
+
     protected static final String QRY_SYNC_PV = "select pv.id from ProjectVersion pv " +
     		"where pv.project = :project and not exists(" +
     		"	select pvm.projectVersion from ProjectVersionMeasurement pvm " +
@@ -255,6 +304,7 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
 				m.setDescription(metric.descr());
 				m.setMnemonic(metric.mnemonic());
 				m.setMetricType(new MetricType(MetricType.fromActivator(metric.activators()[0])));
+				m.setResultType(metric.type());
 			
 				List<Class<? extends DAObject>> activs = new ArrayList<Class<? extends DAObject>>();				
 				for (Class<? extends DAObject> o : metric.activators()) {
@@ -272,6 +322,12 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
 		} else {
 			log.warn("Plug-in " + getName() + " declares no metrics");
 		}
+
+		/*Look up the methods for the activators once*/
+		for (Class<? extends DAObject> activator : activators) {
+		    getResultMethods.add(activator);
+		    runMethods.add(activator);
+		}
      }
 
     /**
@@ -317,6 +373,11 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         return Plugin.getPluginByHashcode(getUniqueKey()).getInstalldate();
     }
 
+    /** The getResult() and run() methods of the plug-in, per activator */
+    private DispatchTable getResultMethods =
+        new DispatchTable(getClass(), "getResult", Metric.class);
+    private DispatchTable runMethods = new DispatchTable(getClass(), "run");
+
     Map<Long,Pair<Object,Long>> blockerObjects = new ConcurrentHashMap<Long,Pair<Object,Long>>();
 
     /**
@@ -339,6 +400,7 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         boolean found = false;        
         List<Result> result = new ArrayList<Result>();
         
+        Method method = null;
         for (Metric m : l) {
             if (!metrics.containsKey(m.getMnemonic())) {
                 throw new MetricMismatchException("Metric " + m.getMnemonic()
@@ -347,7 +409,8 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
             }
             List<Result> re = null;
             try {
-                Method method = findGetResultMethod(o.getClass());
+                if (method == null)
+                    method = getResultMethods.find(o.getClass());
                 re = (List<Result>) method.invoke(this, o, m);
             } catch (SecurityException e) {
                 logErr("getResult", o, e);
@@ -369,23 +432,6 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         return result;
     }
 
-     private Method findGetResultMethod(Class<?> clazz) 
-     throws NoSuchMethodException {
-     Method m = null;
-     
-     try {
-         m = this.getClass().getMethod("getResult", clazz, Metric.class);                
-     } catch (NoSuchMethodException nsme) {
-         try {
-             m = this.getClass().getMethod("getResult", clazz.getSuperclass(), Metric.class);
-         } catch (NoSuchMethodException nsme1) {
-             throw nsme;
-         }
-     }
-
-     return m;
-     }
-     
     /**
      * Call the appropriate getResult() method according to
      * the type of the entity that is measured.
@@ -437,53 +483,42 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         return r;
     }
 
-    private Map<Long,Pair<Object,Integer>> locks = new HashMap<Long,Pair<Object,Integer>>();
+    private DAOLockManager locks = new DAOLockManager();
     
     private Object lockObject(DAObject o) throws AlreadyProcessingException {
-    	synchronized (locks) {
-            if (!locks.containsKey(o.getId())) {
-                locks.put(o.getId(), 
-                        new Pair<Object, Integer>(new Object(),0));
-            }
-            Pair<Object, Integer> p = locks.get(o.getId());
-            if (p.second + 1 > 1) {
-                /*
-                 * Break and reschedule the calculation of each call to the
-                 * getResult method if it originates from another thread than
-                 * the thread that has currently locked the DAO object. 
-                 * This is required for the DB transaction in the stopped
-                 * job to see the results of the calculation of the original
-                 * job.
-                 */ 
-                log.debug("DAO Id:" + o.getId() + 
-                        " Already locked - failing job");
-                try {
-                    throw new AlreadyProcessingException();
-                } finally {
-                    MetricActivator ma = AlitheiaCore.getInstance().getMetricActivator();
-                    ma.runMetric(o, this);
-                }
+        Object lock = locks.lock(o);
+        if (lock == null) {
+            /*
+             * Break and reschedule the calculation of each call to the
+             * getResult method if it originates from another thread than
+             * the thread that has currently locked the DAO object. 
+             * This is required for the DB transaction in the stopped
+             * job to see the results of the calculation of the original
+             * job.
+             */ 
+            log.debug("DAO " + o.getClass().getSimpleName() + " Id:" 
+                    + o.getId() + " Already locked - failing job");
+            try {
+                throw new AlreadyProcessingException();
+            } finally {
+                AlitheiaCore core = AlitheiaCore.getInstance();
+                core.getScheduler().getSchedulerStats().addRescheduledJob();
+                core.getMetricActivator().runMetric(o, this);
             }
-            p.second = p.second + 1;
-            return p.first;
         }
+        return lock;
     }
     
     private void unlockObject(DAObject o) {
-    	synchronized(locks) {
-    		Pair<Object,Integer> p = locks.get(o.getId());
-    		p.second = p.second - 1;
-    		if (p.second == 0) {
-    			locks.remove(o.getId());
-    		} else {
-    		log.debug("Unlocking DAO Id:" + o.getId());
-    		}
-    	}
+        locks.unlock(o);
+        log.debug("Unlocking DAO Id:" + o.getId());
     }
     
     /**
      * Call the appropriate run() method according to the type of the entity
-     * that is measured.
+     * that is measured. Plug-ins implementing {@link IncrementalVersionMetric}
+     * are first asked to derive the results of a version from those of the
+     * previous version.
      *
      * @param o
      *                DAO which determines which sub-interface run method is
@@ -500,8 +535,16 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
             return;
         }
 
+        if (o instanceof ProjectVersion && this instanceof IncrementalVersionMetric) {
+            ProjectVersion v = (ProjectVersion) o;
+            ProjectVersion previous = v.getPreviousVersion();
+            if (previous != null && 
+                    ((IncrementalVersionMetric) this).runIncremental(previous, v))
+                return;
+        }
+
         try {
-            Method m = findRunMethod("run", o.getClass());
+            Method m = runMethods.find(o.getClass());
             m.invoke(this, o);
         } catch (SecurityException e) {
             logErr("run", o, e);
@@ -527,23 +570,6 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         }
     }
     
-    private Method findRunMethod(String name, Class<?> clazz) 
-        throws NoSuchMethodException {
-        Method m = null;
-        
-        try {
-            m = this.getClass().getMethod(name, clazz);                
-        } catch (NoSuchMethodException nsme) {
-            try {
-                m = this.getClass().getMethod(name, clazz.getSuperclass());
-            } catch (NoSuchMethodException nsme1) {
-                throw nsme;
-            }
-        }
-       
-        return m;
-    }
-    
     private void logErr(String method, DAObject o, Exception e) {
         log.error("Plugin:" + this.getClass().toString() + 
                 "\nDAO id: " + o.getId() + 
@@ -656,8 +682,15 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         return true; 
     }
 
-    /**{@inheritDoc}}*/
+    /**
+     * Stores the results of metrics declared with a numeric result type,
+     * which were stored as strings by earlier versions of the plug-in, in
+     * numeric columns and then synchronises the metric results.
+     * {@inheritDoc}
+     */
     public boolean update() {
+        migrateResults();
+
         ServiceReference serviceRef = null;
         serviceRef = bc.getServiceReference(AlitheiaCore.class.getName());
 
@@ -673,6 +706,88 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         return true;
     }
 
+    /**
+     * Moves the results of metrics declared with a numeric result type
+     * from the string column to the numeric one, and stores the declared
+     * type with the metric. The stored type tells which metrics have been
+     * migrated, so the results of each metric are only converted once,
+     * after an update of the plug-in changed the metric's type.
+     * Results are converted in batches of {@link #MIGRATION_BATCH_SIZE}.
+     * If no session was active when the method was called, each batch is
+     * committed separately; otherwise all changes become part of the
+     * caller's transaction, and the session is flushed and cleared after
+     * each batch. Results that cannot be parsed are left as they are.
+     */
+    protected void migrateResults() {
+        boolean sessionActive = db.isDBSessionActive();
+        if (!sessionActive)
+            db.startDBSession();
+
+        for (Metric decl : metrics.values()) {
+            if (decl.getResultType() == Result.ResultType.STRING)
+                continue;
+
+            Metric m = Metric.getMetricByMnemonic(decl.getMnemonic());
+            if (m == null || m.getResultType() == decl.getResultType())
+                continue;
+
+            int migrated = 0;
+            for (Class<? extends MetricMeasurement> clazz : resultFieldNames.keySet())
+                migrated += migrateResults(m.getId(), decl, clazz, !sessionActive);
+
+            /* The batches have detached the metric */
+            m = Metric.getMetricByMnemonic(decl.getMnemonic());
+            m.setResultType(decl.getResultType());
+            if (migrated > 0)
+                log.info("Converted " + migrated + " results of metric "
+                        + m.getMnemonic() + " to " + m.getResultType());
+        }
+
+        if (!sessionActive)
+            db.commitDBSession();
+    }
+
+    /**
+     * Converts the string results of a metric in one measurement table.
+     *
+     * @param metricId The id of the stored metric
+     * @param decl The metric as declared by the plug-in, with the type to
+     *      convert to
+     */
+    @SuppressWarnings("unchecked")
+    private int migrateResults(long metricId, Metric decl,
+            Class<? extends MetricMeasurement> clazz, boolean ownSession) {
+        String hql = "from " + clazz.getSimpleName() + " mm " +
+                "where mm.metric.id = :metric and mm.result is not null " +
+                "and mm.id > :last order by mm.id";
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("metric", metricId);
+        params.put("last", -1L);
+
+        int migrated = 0;
+        while (true) {
+            List<MetricMeasurement> batch =
+                (List<MetricMeasurement>) db.doHQL(hql, params, MIGRATION_BATCH_SIZE);
+            if (batch.isEmpty())
+                break;
+
+            for (MetricMeasurement mm : batch) {
+                if (mm.setResult(decl, mm.getResult()))
+                    migrated++;
+                params.put("last", mm.getId());
+            }
+
+            /* Never commit a transaction the caller started */
+            if (ownSession) {
+                db.commitDBSession();
+                db.startDBSession();
+            } else {
+                db.flushDBSession();
+            }
+        }
+        return migrated;
+    }
+
     /**{@inheritDoc}*/
     public final Set<Class<? extends DAObject>> getActivationTypes() {    
         return activators;
@@ -839,6 +954,149 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         resultFieldNames.put(NameSpaceMeasurement.class, "namespace");
     }
 
+    private static Map<Class<? extends DAObject>, Class<? extends MetricMeasurement>> measurementClasses =
+        new HashMap<Class<? extends DAObject>, Class<? extends MetricMeasurement>>();
+
+    static {
+        measurementClasses.put(StoredProject.class, StoredProjectMeasurement.class);
+        measurementClasses.put(ProjectVersion.class, ProjectVersionMeasurement.class);
+        measurementClasses.put(ProjectFile.class, ProjectFileMeasurement.class);
+        measurementClasses.put(ProjectDirectory.class, ProjectFileMeasurement.class);
+        measurementClasses.put(MailMessage.class, MailMessageMeasurement.class);
+        measurementClasses.put(MailingListThread.class, MailingListThreadMeasurement.class);
+        measurementClasses.put(ExecutionUnit.class, ExecutionUnitMeasurement.class);
+        measurementClasses.put(EncapsulationUnit.class, EncapsulationUnitMeasurement.class);
+        measurementClasses.put(NameSpace.class, NameSpaceMeasurement.class);
+    }
+
+    /** Maximum number of object ids per query of {@link #getResultsIfAlreadyCalculated(Class, Collection, List)} */
+    protected static final int RESULT_BATCH_SIZE = 500;
+
+    /**
+     * Tells whether the results of a metric for objects of the given type
+     * are read by a plain lookup in the activator's measurement table, as
+     * {@link #getResult(DAObject, Class, Metric, Result.ResultType)} does,
+     * and with which type getResult() reports them. The results of such
+     * metrics are read for many objects at once by
+     * {@link #getResultsIfAlreadyCalculated(Class, Collection, List)}.
+     * <p>
+     * The default implementation returns null, so results are read one
+     * object at a time through the plug-in's getResult() methods.
+     * Plug-ins whose getResult() methods are such lookups should override
+     * this.
+     *
+     * @param activator The type of the measured objects
+     * @param m The metric
+     * @return The type of the results, or null if getResult() does more
+     *         than a measurement table lookup
+     */
+    protected Result.ResultType getStoredResultType(
+            Class<? extends DAObject> activator, Metric m) {
+        return null;
+    }
+
+    /**
+     * Reads the results of metrics for which
+     * {@link #getStoredResultType(Class, Metric)} returns a type from the
+     * measurement table of the activator type, with one query per
+     * {@link #RESULT_BATCH_SIZE} objects. The results of the other metrics
+     * are retrieved one object at a time, through the plug-in's
+     * getResult() methods.
+     * {@inheritDoc}
+     */
+    public Map<Long, List<Result>> getResultsIfAlreadyCalculated(
+            Class<? extends DAObject> activator, Collection<Long> ids,
+            List<Metric> l) throws MetricMismatchException {
+        Map<Long, List<Result>> result = new HashMap<Long, List<Result>>();
+        Class<? extends MetricMeasurement> clazz = measurementClasses.get(activator);
+        Map<Long, Result.ResultType> types = new HashMap<Long, Result.ResultType>();
+        List<Metric> other = new ArrayList<Metric>();
+
+        for (Metric m : l) {
+            if (!metrics.containsKey(m.getMnemonic())) {
+                throw new MetricMismatchException("Metric " + m.getMnemonic()
+                        + " not defined by plugin "
+                        + Plugin.getPluginByHashcode(getUniqueKey()).getName());
+            }
+            Result.ResultType type = (clazz == null) ? null
+                    : getStoredResultType(activator, m);
+            if (type == null) {
+                other.add(m);
+            } else {
+                types.put(m.getId(), type);
+            }
+        }
+        if (ids.isEmpty())
+            return result;
+
+        if (!other.isEmpty()) {
+            for (Long id : ids) {
+                DAObject o = db.findObjectById(activator, id);
+                if (o == null)
+                    continue;
+                List<Result> r = getResultIfAlreadyCalculated(o, other);
+                if (r != null)
+                    for (Result res : r)
+                        addResult(result, id, res);
+            }
+        }
+
+        if (!types.isEmpty())
+            getStoredResults(result, clazz, ids, types);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void getStoredResults(Map<Long, List<Result>> result,
+            Class<? extends MetricMeasurement> clazz, Collection<Long> ids,
+            Map<Long, Result.ResultType> types) {
+        String field = resultFieldNames.get(clazz);
+        String hql = "select mm." + field + ".id, mm.metric.id, mm " +
+                "from " + clazz.getSimpleName() + " mm " +
+                "where mm." + field + ".id in (:ids) " +
+                "and mm.metric.id in (:metrics)";
+        Map<String, Collection> params = new HashMap<String, Collection>();
+        params.put("metrics", types.keySet());
+
+        List<Long> batch = new ArrayList<Long>(RESULT_BATCH_SIZE);
+        Iterator<Long> i = ids.iterator();
+        while (i.hasNext()) {
+            batch.add(i.next());
+            if (batch.size() < RESULT_BATCH_SIZE && i.hasNext())
+                continue;
+
+            params.put("ids", batch);
+            List<Object[]> rows = (List<Object[]>) db.doHQL(hql, null, params);
+            /* Like getResult(), report a single result per object and metric */
+            Set<String> seen = new HashSet<String>();
+            for (Object[] row : rows) {
+                Long id = (Long) row[0];
+                Long metricId = (Long) row[1];
+                if (!seen.add(id + ":" + metricId))
+                    continue;
+                MetricMeasurement mm = (MetricMeasurement) row[2];
+
+                Result r = new Result();
+                r.setArtifactId(id);
+                r.setMetricId(metricId);
+                r.setResult(mm.getResult());
+                r.setType(types.get(metricId));
+                addResult(result, id, r);
+            }
+            batch = new ArrayList<Long>(RESULT_BATCH_SIZE);
+        }
+    }
+
+    private static void addResult(Map<Long, List<Result>> result, Long id,
+            Result r) {
+        List<Result> rs = result.get(id);
+        if (rs == null) {
+            rs = new ArrayList<Result>();
+            result.put(id, rs);
+        }
+        rs.add(r);
+    }
+
     /**
      * Convenience method to get the measurement for a single metric.
      */
@@ -860,6 +1118,135 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         
     }
 
+    /**
+     * Aggregates the results of file level metrics over the files that are
+     * live in a project version, grouped by the type of the files as
+     * determined by {@link FileTypeMatcher}. The results are summed up by
+     * the database, per file name and metric, without loading any
+     * measurement or file objects. Results stored as strings are parsed,
+     * which requires one more query.
+     *
+     * @param v The version whose files to aggregate
+     * @param metrics The file level metrics to aggregate
+     * @return The counts and sums of the metric results per file type
+     */
+    protected FileTypeAggregate aggregateFileResults(ProjectVersion v,
+            Metric... metrics) {
+        FileTypeAggregate result = new FileTypeAggregate();
+        Map<String, Object> params = fileResultParams(v);
+        params.put("to", v.getSequence());
+        aggregateFileResults(result, COND_LIVE, params, 1, metrics);
+        return result;
+    }
+
+    /**
+     * Aggregates the changes of the results of file level metrics between
+     * two versions of a project, grouped by file type. The counts and sums
+     * of the results of files that were removed or changed after version
+     * <code>from</code> are subtracted from those of the files that were
+     * added or changed up to version <code>to</code>. Adding them to the
+     * counts and sums of version <code>from</code> gives those of version
+     * <code>to</code>, as returned by
+     * {@link #aggregateFileResults(ProjectVersion, Metric...)}.
+     *
+     * @param from The earlier version
+     * @param to The later version
+     * @param metrics The file level metrics to aggregate
+     * @return The differences of the counts and sums per file type,
+     *      which may be negative
+     */
+    protected FileTypeAggregate aggregateFileResultChanges(ProjectVersion from,
+            ProjectVersion to, Metric... metrics) {
+        FileTypeAggregate result = new FileTypeAggregate();
+        Map<String, Object> params = fileResultParams(to);
+        params.put("from", from.getSequence());
+        params.put("to", to.getSequence());
+        aggregateFileResults(result, COND_ADDED, params, 1, metrics);
+        aggregateFileResults(result, COND_REMOVED, params, -1, metrics);
+        return result;
+    }
+
+    private Map<String, Object> fileResultParams(ProjectVersion v) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("project", v.getProject());
+        params.put("isDirectory", Boolean.FALSE);
+        params.put("deleted", ProjectFileState.deleted());
+        return params;
+    }
+
+    private void aggregateFileResults(FileTypeAggregate result, String cond,
+            Map<String, Object> params, int sign, Metric... metrics) {
+        if (metrics.length == 0)
+            return;
+
+        FileTypeMatcher ftm = FileTypeMatcher.getInstance();
+        List<Long> ids = new ArrayList<Long>();
+        for (Metric m : metrics)
+            ids.add(m.getId());
+        Map<String, Collection> collParams = new HashMap<String, Collection>();
+        collParams.put("metrics", ids);
+
+        boolean hasStrings = false;
+        List<?> rows = db.doHQL(QRY_AGGREGATE_FILE_RESULTS + cond +
+                "group by pf.name, pfm.metric.id", params, collParams);
+        for (Object o : rows) {
+            Object[] row = (Object[]) o;
+            long strings = ((Number) row[5]).longValue();
+            long count = ((Number) row[2]).longValue() - strings;
+            double sum = 0;
+            if (row[3] != null)
+                sum += ((Number) row[3]).doubleValue();
+            if (row[4] != null)
+                sum += ((Number) row[4]).doubleValue();
+            result.add((Long) row[1], ftm.getFileType((String) row[0]),
+                    sign * count, sign * sum);
+            hasStrings |= (strings > 0);
+        }
+
+        /* Results stored before the metric declared a numeric type */
+        if (hasStrings) {
+            rows = db.doHQL(QRY_STRING_FILE_RESULTS + cond, params, collParams);
+            for (Object o : rows) {
+                Object[] row = (Object[]) o;
+                try {
+                    double value = Double.parseDouble(((String) row[2]).trim());
+                    result.add((Long) row[1], ftm.getFileType((String) row[0]),
+                            sign, sign * value);
+                } catch (NumberFormatException e) {
+                    // Not a number, not counted
+                }
+            }
+        }
+    }
+
+    /**
+     * Convenience method to get the result of a version level metric
+     * returning integer values.
+     *
+     * @return The result, or null if the metric has no result for the
+     *      version or the result is not a number
+     */
+    protected Long getIntResult(ProjectVersion v, Metric m) {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("projectVersion", v);
+        props.put("metric", m);
+        List<ProjectVersionMeasurement> l =
+            db.findObjectsByProperties(ProjectVersionMeasurement.class, props);
+        if (l.isEmpty())
+            return null;
+
+        ProjectVersionMeasurement pvm = l.get(0);
+        if (pvm.getIntResult() != null)
+            return pvm.getIntResult();
+        if (pvm.getResult() == null)
+            return null;
+        try {
+            return Long.valueOf(pvm.getResult().trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     /**{@inheritDoc}*/
     @Override
     public final List<Class<? extends DAObject>> getMetricActivationTypes (Metric m) {
@@ -929,10 +1316,7 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
 	    		throw new MetricActivationException("Metric synchronisation with GENERIC objects not implemented");
 	    	}
 	    	
-	    	List<Long> objectIds = (List<Long>) db.doHQL(q, params);
-	    	TreeSet<Long> ids = new TreeSet<Long>();
-	    	ids.addAll(objectIds);
-	    	IDs.put(MetricType.fromActivator(at), ids);
+	    	IDs.put(MetricType.fromActivator(at), db.doHQLIds(q, params));
     	}
     	return IDs;
     }
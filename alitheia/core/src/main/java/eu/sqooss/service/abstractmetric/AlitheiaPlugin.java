@@ -33,6 +33,7 @@
 
 package eu.sqooss.service.abstractmetric;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -149,6 +150,23 @@ public interface AlitheiaPlugin {
     List<Result> getResultIfAlreadyCalculated(DAObject o, List<Metric> l)
     	throws MetricMismatchException;
 
+    /**
+     * Get the existing results of a list of metrics for many objects of the
+     * same type at once, without triggering a metric recalculation. This
+     * takes a few queries instead of one per object and metric.
+     *
+     * @param activator The type of the objects
+     * @param ids The ids of the objects
+     * @param l A list of metrics bound to the type of the objects
+     * @return The results per object id. Objects without results are not
+     *          included.
+     * @throws MetricMismatchException if a metric is not provided by this
+     *          plug-in.
+     */
+    Map<Long, List<Result>> getResultsIfAlreadyCalculated(
+            Class<? extends DAObject> activator, Collection<Long> ids,
+            List<Metric> l) throws MetricMismatchException;
+
     /**
      * Get a metric result. 
      * If the result was not calculated yet, the plugin's run method is called,
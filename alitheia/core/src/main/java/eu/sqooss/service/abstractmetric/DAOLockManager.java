@@ -0,0 +1,110 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.abstractmetric;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import eu.sqooss.service.db.DAObject;
+
+/**
+ * Per DAO locks of a metric plug-in. A DAO can be locked by one caller at
+ * a time; locking a DAO that is already locked fails instead of waiting.
+ * Locks are kept in a concurrent map, so locking and unlocking different
+ * DAOs never contend on a common monitor.
+ * <p>
+ * Locks are keyed on the DAO's table and id, as ids of different tables
+ * overlap. The table is identified by the class directly extending
+ * {@link DAObject}, so that Hibernate proxies and subclasses stored in the
+ * same table, such as {@link eu.sqooss.service.db.ProjectDirectory}, map
+ * to the same lock.
+ */
+class DAOLockManager {
+
+    private final ConcurrentHashMap<Key, Object> locks =
+        new ConcurrentHashMap<Key, Object>();
+
+    /**
+     * Locks a DAO.
+     *
+     * @return An object private to the lock holder, or null if the DAO is
+     * already locked.
+     */
+    Object lock(DAObject o) {
+        Object lock = new Object();
+        if (locks.putIfAbsent(new Key(o), lock) != null)
+            return null;
+        return lock;
+    }
+
+    /**
+     * Unlocks a DAO locked by {@link #lock(DAObject)}.
+     */
+    void unlock(DAObject o) {
+        locks.remove(new Key(o));
+    }
+
+    /** @return Number of DAOs currently locked */
+    int size() {
+        return locks.size();
+    }
+
+    private static final class Key {
+        final Class<?> table;
+        final long id;
+
+        Key(DAObject o) {
+            Class<?> c = o.getClass();
+            while (c.getSuperclass() != null
+                    && c.getSuperclass() != DAObject.class)
+                c = c.getSuperclass();
+            this.table = c;
+            this.id = o.getId();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key k = (Key) obj;
+            return id == k.id && table == k.table;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * table.hashCode() + (int) (id ^ (id >>> 32));
+        }
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
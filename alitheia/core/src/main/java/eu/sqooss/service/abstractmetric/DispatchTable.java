@@ -0,0 +1,123 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.abstractmetric;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the methods of a class that have the same name and are
+ * overloaded on the type of their first argument, such as the
+ * getResult() and run() methods of metric plug-ins, so that dispatching
+ * on the type of an activator does not look up the method every time.
+ * <p>
+ * As in the uncached lookup, a method for the superclass of the argument
+ * type is used if there is none for the type itself. This is the case for
+ * Hibernate proxies of activator objects.
+ */
+public class DispatchTable {
+
+    private final Class<?> target;
+    private final String name;
+    private final Class<?>[] extraArgs;
+    private final ConcurrentHashMap<Class<?>, Method> methods =
+        new ConcurrentHashMap<Class<?>, Method>();
+
+    /**
+     * @param target The class whose methods to look up
+     * @param name The name of the methods
+     * @param extraArgs The types of the arguments following the first one
+     */
+    public DispatchTable(Class<?> target, String name, Class<?>... extraArgs) {
+        this.target = target;
+        this.name = name;
+        this.extraArgs = extraArgs;
+    }
+
+    /**
+     * Looks up the method for an argument type in advance.
+     *
+     * @return false if there is no such method
+     */
+    public boolean add(Class<?> argType) {
+        try {
+            find(argType);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the method taking an argument of the given type, or of its
+     * superclass.
+     *
+     * @throws NoSuchMethodException If there is neither
+     */
+    public Method find(Class<?> argType) throws NoSuchMethodException {
+        Method m = methods.get(argType);
+        if (m != null)
+            return m;
+
+        try {
+            m = target.getMethod(name, args(argType));
+        } catch (NoSuchMethodException nsme) {
+            if (argType.getSuperclass() == null)
+                throw nsme;
+            try {
+                m = target.getMethod(name, args(argType.getSuperclass()));
+            } catch (NoSuchMethodException nsme1) {
+                throw nsme;
+            }
+        }
+
+        /* Skip the access checks on every invocation */
+        try {
+            m.setAccessible(true);
+        } catch (SecurityException e) {
+            // Invocations will be checked
+        }
+        methods.put(argType, m);
+        return m;
+    }
+
+    private Class<?>[] args(Class<?> argType) {
+        Class<?>[] args = new Class<?>[extraArgs.length + 1];
+        args[0] = argType;
+        System.arraycopy(extraArgs, 0, args, 1, extraArgs.length);
+        return args;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
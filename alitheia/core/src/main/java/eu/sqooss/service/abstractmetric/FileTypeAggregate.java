@@ -0,0 +1,128 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.abstractmetric;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.fds.FileTypeMatcher.FileType;
+
+/**
+ * Sums and counts of the results of file level metrics over the files of a
+ * project version, grouped by the type of the files. Returned by
+ * {@link AbstractMetric#aggregateFileResults(eu.sqooss.service.db.ProjectVersion, Metric...)}.
+ * <p>
+ * Files without a result for a metric, or with a result that is not a
+ * number, are not counted for that metric.
+ */
+public class FileTypeAggregate {
+
+    private Map<Long, long[]> counts = new HashMap<Long, long[]>();
+    private Map<Long, double[]> sums = new HashMap<Long, double[]>();
+
+    FileTypeAggregate() {}
+
+    /**
+     * @return The number of files of the given type with a result for the
+     * given metric.
+     */
+    public long getCount(Metric m, FileType type) {
+        long[] c = counts.get(m.getId());
+        return (c == null) ? 0 : c[type.ordinal()];
+    }
+
+    /**
+     * @return The number of files of any type with a result for the given
+     * metric.
+     */
+    public long getCount(Metric m) {
+        long total = 0;
+        for (FileType type : FileType.values())
+            total += getCount(m, type);
+        return total;
+    }
+
+    /**
+     * @return The sum of the results of the given metric over the files of
+     * the given type.
+     */
+    public double getSum(Metric m, FileType type) {
+        double[] s = sums.get(m.getId());
+        return (s == null) ? 0 : s[type.ordinal()];
+    }
+
+    /**
+     * @return The sum of the results of the given metric over all files.
+     */
+    public double getSum(Metric m) {
+        double total = 0;
+        for (FileType type : FileType.values())
+            total += getSum(m, type);
+        return total;
+    }
+
+    /**
+     * @return The average of the results of the given metric over the files
+     * of the given type, or 0 if there are none.
+     */
+    public double getAverage(Metric m, FileType type) {
+        long count = getCount(m, type);
+        return (count == 0) ? 0 : getSum(m, type) / count;
+    }
+
+    /**
+     * @return The average of the results of the given metric over all
+     * files, or 0 if there are none.
+     */
+    public double getAverage(Metric m) {
+        long count = getCount(m);
+        return (count == 0) ? 0 : getSum(m) / count;
+    }
+
+    void add(long metricId, FileType type, long count, double sum) {
+        long[] c = counts.get(metricId);
+        double[] s = sums.get(metricId);
+        if (c == null) {
+            c = new long[FileType.values().length];
+            s = new double[FileType.values().length];
+            counts.put(metricId, c);
+            sums.put(metricId, s);
+        }
+        c[type.ordinal()] += count;
+        s[type.ordinal()] += sum;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
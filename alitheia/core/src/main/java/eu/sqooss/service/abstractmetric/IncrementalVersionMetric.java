@@ -0,0 +1,74 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.abstractmetric;
+
+import eu.sqooss.service.db.ProjectVersion;
+
+/**
+ * Implemented by metric plug-ins whose version level results can be
+ * derived from the results of the previous version and the results of the
+ * files that changed in between, as returned by
+ * {@link AbstractMetric#aggregateFileResultChanges(ProjectVersion, ProjectVersion, eu.sqooss.service.db.Metric...)}.
+ * This takes time proportional to the number of changed files instead of
+ * the number of files in the version.
+ * <p>
+ * The metric activator calculates the version level results of such
+ * plug-ins in a single job per project, one version after the other in
+ * sequence order, so that the results of the previous version are
+ * available when a version is processed. The job is queued when the
+ * other jobs of the plug-in's sync are done, so that the results of the
+ * changed files are available too; a file without a result would count
+ * as zero in all later versions.
+ */
+public interface IncrementalVersionMetric {
+
+    /**
+     * Calculates and stores the results of a version from the results of
+     * the previous version. Called before the plug-in's
+     * run(ProjectVersion) method, which is not called if this method
+     * succeeds.
+     *
+     * @param previous The version preceding <code>v</code>
+     * @param v The version to calculate the results for
+     * @return true if the results were stored, false if they could not be
+     *      derived, for example because there are no results for the
+     *      previous version
+     * @throws AlreadyProcessingException If a result this calculation
+     *      depends on is being calculated by another job
+     */
+    boolean runIncremental(ProjectVersion previous, ProjectVersion v)
+        throws AlreadyProcessingException;
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
@@ -74,4 +74,11 @@ public @interface MetricDecl {
 	 * A list of metrics that this metric depends upon.
 	 */
 	String[] dependencies() default {};
+
+	/**
+	 * The type of the values the metric calculates. Results of integer and
+	 * floating point metrics are stored in numeric columns, which can be
+	 * aggregated in queries.
+	 */
+	Result.ResultType type() default Result.ResultType.STRING;
 }
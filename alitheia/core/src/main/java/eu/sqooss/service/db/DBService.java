@@ -36,6 +36,7 @@ package eu.sqooss.service.db;
 import eu.sqooss.core.AlitheiaCoreService;
 import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.util.LongSortedSet;
 
 import java.sql.SQLException;
 import java.util.Collection;
@@ -138,6 +139,15 @@ public interface DBService extends AlitheiaCoreService {
      */
     public boolean flushDBSession();
     
+    /**
+     * Drops all entities and query results held in the second-level and
+     * query caches. Changes made through the DB service keep the caches
+     * up to date; this is only needed after the database has been
+     * changed by other means, or by actions that change many cached
+     * entities at once.
+     */
+    public void evictCaches();
+
     /**
      * Returns the state of the work session for the current thread.
      * @return true if a session was started and is still active,
@@ -184,6 +194,8 @@ public interface DBService extends AlitheiaCoreService {
      * If any property in the map isn't valid (either an unknown name or a value of the wrong type)
      * the call will fail and an empty list will be returned.
      * It uses its own session.
+     * For classes with a second-level cache region, the results are kept
+     * in the query cache.
      * 
      * @param daoClass the actual class of the DAObjects
      * @param properties a map of property name/value pairs corresponding to properties
@@ -465,6 +477,23 @@ public interface DBService extends AlitheiaCoreService {
                          int start, int limit
                          )
         throws QueryException;
+
+    /**
+     * Executes an HQL query returning a single id column, such as
+     * <code>select pf.id from ProjectFile pf where ...</code>, and returns
+     * the ids as a sorted set of primitive longs. The rows are read with a
+     * forward only cursor, so queries returning millions of ids need
+     * neither a result list nor a boxed Long per row.
+     *
+     * @param hql HQL query string
+     * @param params the map of parameters to be substituted in the HQL query
+     * @return the ids returned by the query. If the query is invalid or a
+     *         database access error occurs, an empty set is returned.
+     * @throws QueryException if the query is invalid or if params contains
+     *                        invalid entries
+     */
+    public LongSortedSet doHQLIds(String hql, Map<String, Object> params)
+        throws QueryException;
     
     /**
      * Executes a DML-type query. The query forms that HQL supports 
@@ -476,7 +505,9 @@ public interface DBService extends AlitheiaCoreService {
      * </ul> 
      * 
      * @param hql The HQL statement to execute 
-     * @param params the map of parameters to be substituted in the HQL query
+     * @param params the map of parameters to be substituted in the HQL query.
+     *          Collection values are expanded, for use in <code>in (:param)</code>
+     *          clauses.
      * @return The number of rows updated or deleted or -1 in case of error
      */
     public int executeUpdate(String hql, Map<String, Object> params);
@@ -37,6 +37,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -117,6 +118,10 @@ public class Directory extends DAObject {
         return false;
     }
 
+    /** Directory ids by path, filled in by getDirectory() */
+    private static ConcurrentHashMap<String, Long> idsByPath = 
+        new ConcurrentHashMap<String, Long>();
+
     /**
      * Return the entry in the Directory table that corresponds to the
      * passed argument. If the entry does not exist, it will optionally be 
@@ -127,7 +132,24 @@ public class Directory extends DAObject {
      * not found. If true, it will be created.
      * @return A Directory record for the specified path or null on failure
      */
-    public static synchronized Directory getDirectory(String path, boolean create) {
+    public static Directory getDirectory(String path, boolean create) {
+        
+        DBService dbs = AlitheiaCore.getInstance().getDBService();
+
+        /* Known paths are loaded by id, from the cache if possible */
+        Long id = idsByPath.get(path);
+        if (id != null) {
+            Directory d = dbs.findObjectById(Directory.class, id);
+            if (d != null && path.equals(d.getPath()))
+                return d;
+            idsByPath.remove(path, id);
+        }
+
+        return findDirectory(path, create);
+    }
+
+    private static synchronized Directory findDirectory(String path, 
+            boolean create) {
         
         DBService dbs = AlitheiaCore.getInstance().getDBService();
         Map<String,Object> parameterMap = new HashMap<String,Object>();
@@ -138,6 +160,7 @@ public class Directory extends DAObject {
         
         /* Dir path in table, return it */
         if ( !dirs.isEmpty() ) {
+            idsByPath.put(path, dirs.get(0).getId());
             return dirs.get(0);
         }
         
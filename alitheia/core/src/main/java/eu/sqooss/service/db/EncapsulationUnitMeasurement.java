@@ -55,7 +55,7 @@ public class EncapsulationUnitMeasurement extends MetricMeasurement {
     public EncapsulationUnitMeasurement(EncapsulationUnit eu, Metric m, String result) {
         this.encapsulationUnit = eu;
         this.metric = m;
-        this.result = result;
+        setResult(m, result);
     }
     
     public long getId() {
@@ -83,6 +83,8 @@ public class EncapsulationUnitMeasurement extends MetricMeasurement {
     }
 
     public String getResult() {
+        if (result == null)
+            return getTypedResult();
         return result;
     }
 
@@ -56,7 +56,7 @@ public class ExecutionUnitMeasurement extends MetricMeasurement {
     public ExecutionUnitMeasurement(ExecutionUnit eu, Metric m, String result) {
         this.executionUnit = eu;
         this.metric = m;
-        this.result = result;
+        setResult(m, result);
     }
     
     public long getId() {
@@ -84,6 +84,8 @@ public class ExecutionUnitMeasurement extends MetricMeasurement {
     }
 
     public String getResult() {
+        if (result == null)
+            return getTypedResult();
         return result;
     }
 
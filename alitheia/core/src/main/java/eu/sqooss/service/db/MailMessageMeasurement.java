@@ -97,7 +97,7 @@ public class MailMessageMeasurement extends MetricMeasurement {
         super();
         setMetric(m);
         setMail(mail);
-        setResult(value);
+        setResult(m, value);
     }
 
     public long getId() {
@@ -125,6 +125,8 @@ public class MailMessageMeasurement extends MetricMeasurement {
     }
 
     public String getResult() {
+        if (result == null)
+            return getTypedResult();
         return result;
     }
 
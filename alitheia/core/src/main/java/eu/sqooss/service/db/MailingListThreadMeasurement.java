@@ -97,7 +97,7 @@ public class MailingListThreadMeasurement extends MetricMeasurement {
         super();
         setMetric(m);
         setThread(mt);
-        setResult(value);
+        setResult(m, value);
     }
     
     public long getId() {
@@ -125,6 +125,8 @@ public class MailingListThreadMeasurement extends MetricMeasurement {
     }
 
     public String getResult() {
+        if (result == null)
+            return getTypedResult();
         return result;
     }
 
@@ -37,10 +37,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
@@ -53,6 +56,7 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 
 import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.abstractmetric.Result.ResultType;
 
 /**
  * Instances of this object type represent the basic information on Metrics
@@ -110,6 +114,14 @@ public class Metric extends DAObject {
 	@XmlElement
 	@Column(name="DESCRIPTION")
 	private String description;
+
+	/**
+	 * The type of the values the metric calculates, which determines the
+	 * column its measurements are stored in
+	 */
+	@Enumerated(EnumType.STRING)
+	@Column(name="RESULT_TYPE")
+	private ResultType resultType;
 	
 	@OneToMany(mappedBy="metric", cascade = CascadeType.ALL, orphanRemoval = true)
 	private Set<StoredProjectMeasurement> projectMeasurements;
@@ -163,6 +175,18 @@ public class Metric extends DAObject {
 		this.description = description;
 	}
 
+	/**
+	 * @return The type of the metric's results. Metrics installed before
+	 * result types were recorded return {@link ResultType#STRING}.
+	 */
+	public ResultType getResultType() {
+		return (resultType == null) ? ResultType.STRING : resultType;
+	}
+
+	public void setResultType(ResultType resultType) {
+		this.resultType = resultType;
+	}
+
 	public Plugin getPlugin() {
 		return plugin;
 	}
@@ -334,6 +358,10 @@ public class Metric extends DAObject {
 		return "Metric(" + getId() + ",\"" + getMnemonic() + "\")";
 	}
 
+	/** Metric ids by mnemonic, filled in by getMetricByMnemonic() */
+	private static ConcurrentHashMap<String, Long> idsByMnemonic = 
+		new ConcurrentHashMap<String, Long>();
+
 	/**
 	 * Get a metric from its mnemonic name
 	 * 
@@ -345,6 +373,15 @@ public class Metric extends DAObject {
 	public static Metric getMetricByMnemonic(String mnem) {
 		DBService dbs = AlitheiaCore.getInstance().getDBService();
 
+		/* Known mnemonics are loaded by id, from the session if possible */
+		Long id = idsByMnemonic.get(mnem);
+		if (id != null) {
+			Metric m = dbs.findObjectById(Metric.class, id);
+			if (m != null && mnem.equals(m.getMnemonic()))
+				return m;
+			idsByMnemonic.remove(mnem, id);
+		}
+
 		Map<String, Object> properties = new HashMap<String, Object>();
 		properties.put("mnemonic", mnem);
 
@@ -354,6 +391,7 @@ public class Metric extends DAObject {
 		if (result.size() <= 0)
 			return null;
 
+		idsByMnemonic.put(mnem, result.get(0).getId());
 		return result.get(0);
 	}
 
@@ -33,15 +33,116 @@
 
 package eu.sqooss.service.db;
 
+import javax.persistence.Column;
+import javax.persistence.MappedSuperclass;
+
+import eu.sqooss.service.abstractmetric.Result.ResultType;
+
 /**
  * Instances of this class represent the result of a metric
  * calculation as stored in the database. This class is extended by
  * other DAO to show results related to specific entities: project,
  * files etc.
+ * <p>
+ * Results of metrics declared as {@link ResultType#INTEGER} or
+ * {@link ResultType#DOUBLE} are stored in numeric columns, so that they
+ * can be summed up or compared in queries, while other results are
+ * stored as strings. {@link #getResult()} returns the string
+ * representation of the result in both cases.
  */
+@MappedSuperclass
 public abstract class MetricMeasurement extends DAObject {
 
+    /**
+     * The result of metrics returning integer values
+     */
+    @Column(name="INT_RESULT")
+    private Long intResult;
+
+    /**
+     * The result of metrics returning floating point values
+     */
+    @Column(name="DOUBLE_RESULT")
+    private Double doubleResult;
+
+    public abstract Metric getMetric();
+
+    /**
+     * @return The result as a string, whatever the column it is stored in
+     */
     public abstract String getResult();
+
+    /**
+     * Stores a result as a string.
+     */
+    public abstract void setResult(String result);
+
+    public Long getIntResult() {
+        return intResult;
+    }
+
+    public void setIntResult(Long intResult) {
+        this.intResult = intResult;
+        if (intResult != null) {
+            this.doubleResult = null;
+            setResult((String) null);
+        }
+    }
+
+    public Double getDoubleResult() {
+        return doubleResult;
+    }
+
+    public void setDoubleResult(Double doubleResult) {
+        this.doubleResult = doubleResult;
+        if (doubleResult != null) {
+            this.intResult = null;
+            setResult((String) null);
+        }
+    }
+
+    /**
+     * Stores a result in the column matching the result type of the
+     * given metric. Values that cannot be parsed as the metric's type
+     * are stored as strings.
+     *
+     * @param m The metric the result was calculated by
+     * @param value The string representation of the result
+     * @return true if the value was stored in a numeric column
+     */
+    public boolean setResult(Metric m, String value) {
+        ResultType type = (m == null) ? ResultType.STRING : m.getResultType();
+        if (value != null) {
+            try {
+                switch (type) {
+                case INTEGER:
+                    setIntResult(Long.valueOf(value.trim()));
+                    return true;
+                case FLOAT:
+                case DOUBLE:
+                    setDoubleResult(Double.valueOf(value.trim()));
+                    return true;
+                default:
+                    break;
+                }
+            } catch (NumberFormatException e) {
+                // Keep it as a string
+            }
+        }
+        setResult(value);
+        return false;
+    }
+
+    /**
+     * @return The result stored in a numeric column as a string, or null
+     */
+    protected String getTypedResult() {
+        if (intResult != null)
+            return intResult.toString();
+        if (doubleResult != null)
+            return doubleResult.toString();
+        return null;
+    }
 }
 
 // vi: ai nosi sw=4 ts=4 expandtab
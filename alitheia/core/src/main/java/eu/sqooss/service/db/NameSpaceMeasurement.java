@@ -67,6 +67,8 @@ public class NameSpaceMeasurement extends MetricMeasurement {
     }
 
     public String getResult() {
+        if (result == null)
+            return getTypedResult();
         return result;
     }
 
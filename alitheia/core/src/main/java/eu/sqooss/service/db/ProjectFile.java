@@ -34,6 +34,7 @@
 package eu.sqooss.service.db;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -57,6 +58,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 import org.hibernate.annotations.Index;
 
 import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.fds.FileTreeIndex;
 import eu.sqooss.service.util.FileUtils;
 
 /**
@@ -73,7 +75,11 @@ public class ProjectFile extends DAObject{
     
     private static final String qPrevVersion = "select pf from ProjectVersion pv, ProjectFile pf where pf.projectVersion = pv.id and pv.project.id = :paramProject and pv.sequence < :paramsequence and  pf.name = :paramFile and pf.dir.id = :paramDir order by pv.sequence desc";
     private static final String qPrevVersionCopy = "select pf from ProjectVersion pv, ProjectFile pf where pf.projectVersion = pv.id and pv.project.id = :paramProject and pv.sequence < :paramsequence and ((pf.name = :paramFile and pf.dir.id = :paramDir) or ( pf.name = :paramCopyFromName and pf.dir.id = :paramCopyFromDir)) order by pv.sequence desc";
+    private static final String qFilesById = "from ProjectFile pf where pf.id in (:ids)";
     private static final String qChangedMethods = "from ExecutionUnit eu where eu.file = :file and eu.changed = true";
+
+    /** Maximum number of ids per query of {@link #findFilesById(long[])} */
+    private static final int FIND_BATCH_SIZE = 500;
     
 	@Id
 	@GeneratedValue(strategy=GenerationType.AUTO)
@@ -393,6 +399,24 @@ public class ProjectFile extends DAObject{
             return null;
         }
         
+        FileTreeIndex index = FileTreeIndex.getIndex(
+                this.getProjectVersion().getProject());
+        long sequence = this.getProjectVersion().getSequence();
+        if (index != null && index.covers(sequence - 1)) {
+            long id;
+            if (this.copyFrom == null) {
+                id = index.findPreviousFile(this.getDir().getPath(),
+                        this.getName(), null, null, sequence);
+            } else {
+                id = index.findPreviousFile(this.getDir().getPath(),
+                        this.getName(), this.getCopyFrom().getDir().getPath(),
+                        this.getCopyFrom().getName(), sequence);
+            }
+            ProjectFile pf = (id == -1) ? null : dbs.findObjectById(ProjectFile.class, id);
+            if (pf != null)
+                return pf;
+        }
+        
         String query = null;
         
         if (this.copyFrom == null)
@@ -604,6 +628,20 @@ public class ProjectFile extends DAObject{
             return null;
         }
         
+        StoredProject sp = dbs.findObjectById(StoredProject.class, projectId);
+        FileTreeIndex index = FileTreeIndex.getIndex(sp);
+        if (index != null) {
+            ProjectVersion pv = ProjectVersion.getVersionByRevision(sp, version);
+            if (pv != null && index.covers(pv.getSequence())) {
+                long id = index.findFile(path, name, pv.getSequence(), inclDeleted);
+                if (id == -1)
+                    return null;
+                ProjectFile pf = dbs.findObjectById(ProjectFile.class, id);
+                if (pf != null)
+                    return pf;
+            }
+        }
+        
         String paramProjectId = "paramProjectId";
         String paramName = "paramName";
         String paramVersion = "paramVersion";
@@ -642,6 +680,31 @@ public class ProjectFile extends DAObject{
         return pfs.get(0);
     }
     
+    /**
+     * Loads the file entries with the given ids, with one query per
+     * {@link #FIND_BATCH_SIZE} ids.
+     *
+     * @param ids The ProjectFile ids
+     * @return The entries found, in no particular order. Ids without a
+     *  matching entry are ignored.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<ProjectFile> findFilesById(long[] ids) {
+        DBService dbs = AlitheiaCore.getInstance().getDBService();
+        List<ProjectFile> result = new ArrayList<ProjectFile>(ids.length);
+        Map<String, Collection> params = new HashMap<String, Collection>();
+
+        for (int i = 0; i < ids.length; i += FIND_BATCH_SIZE) {
+            int end = Math.min(ids.length, i + FIND_BATCH_SIZE);
+            List<Long> batch = new ArrayList<Long>(end - i);
+            for (int j = i; j < end; j++)
+                batch.add(ids[j]);
+            params.put("ids", batch);
+            result.addAll((List<ProjectFile>) dbs.doHQL(qFilesById, null, params));
+        }
+        return result;
+    }
+
     public List<ExecutionUnit> getChangedExecutionUnits() {
         DBService dbs = AlitheiaCore.getInstance().getDBService();
         Map<String, Object> params = new HashMap<String, Object>();
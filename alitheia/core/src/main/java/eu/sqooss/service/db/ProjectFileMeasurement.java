@@ -98,7 +98,21 @@ public class ProjectFileMeasurement extends MetricMeasurement {
         super();
         setMetric(m);
         setProjectFile(f);
-        setResult(value);
+        setResult(m, value);
+    }
+
+    /**
+     * Convenience constructor for metrics returning integer values.
+     *
+     * @param m Metric this measurement is from
+     * @param f File this measurement is for
+     * @param value The value of the measurement
+     */
+    public ProjectFileMeasurement(Metric m, ProjectFile f, long value) {
+        super();
+        setMetric(m);
+        setProjectFile(f);
+        setIntResult(value);
     }
     
     public long getId() {
@@ -127,6 +141,8 @@ public class ProjectFileMeasurement extends MetricMeasurement {
     }
 
     public String getResult() {
+        if (result == null)
+            return getTypedResult();
         return result;
     }
 
@@ -64,6 +64,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 import org.hibernate.annotations.Index;
 
 import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.fds.FileTreeIndex;
 
 /**
  * Instances of this class represent the data about a version of a
@@ -712,6 +713,16 @@ public class ProjectVersion extends DAObject {
     private List<ProjectFile> getVersionFiles(Directory d, int mask) {
         DBService dbs = AlitheiaCore.getInstance().getDBService();
 
+        FileTreeIndex index = FileTreeIndex.getIndex(this.project);
+        if (index != null && index.covers(this.sequence)) {
+            long[] ids = index.listFiles((d == null) ? null : d.getPath(),
+                    this.sequence, mask);
+            List<ProjectFile> files = ProjectFile.findFilesById(ids);
+            /* Some entries were deleted after they were indexed */
+            if (files.size() == ids.length)
+                return files;
+        }
+
         String paramDirectory = "paramDirectory";
         String paramIsDirectory = "is_directory";
         String paramVersionId = "paramVersionId";
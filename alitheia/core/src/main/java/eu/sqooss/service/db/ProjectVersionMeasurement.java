@@ -96,7 +96,20 @@ public class ProjectVersionMeasurement extends MetricMeasurement {
         this();
         setMetric(m);
         setProjectVersion(p);
-        setResult(v);
+        setResult(m, v);
+    }
+
+    /**
+     * Convenience constructor for metrics returning integer values.
+     * @param m Metric the measurement is for
+     * @param p Project version the metric was applied to
+     * @param v Resulting value
+     */
+    public ProjectVersionMeasurement(Metric m, ProjectVersion p, long v) {
+        this();
+        setMetric(m);
+        setProjectVersion(p);
+        setIntResult(v);
     }
     
     public long getId() {
@@ -133,6 +146,8 @@ public class ProjectVersionMeasurement extends MetricMeasurement {
      * @return the result
      */
     public String getResult() {
+        if (result == null)
+            return getTypedResult();
         return result;
     }
     
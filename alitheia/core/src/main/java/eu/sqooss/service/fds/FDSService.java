@@ -66,6 +66,9 @@ import eu.sqooss.service.db.StoredProject;
  *       </li>
  *       <li>{@link eu.sqooss.service.fds.Timeline} - A chronological view of
  *       the project events accross all supported data sources.</li>
+ *       <li>{@link eu.sqooss.service.fds.FileTreeIndex} - An in-memory index
+ *       of the file tree of a project in all of its versions, used to
+ *       look up files by path without querying the database.</li>
  * </ul>
  * 
  * 
@@ -162,6 +165,46 @@ public interface FDSService extends AlitheiaCoreService {
      * @return the file contents or null if none.
      */
     InputStream getFileContents(ProjectFile pf);
+
+    /**
+     * Read the contents of all files changed in the given project version
+     * into the file contents cache, so that subsequent calls to
+     * {@link #getFileContents(ProjectFile)} for those files do not have to
+     * access the repository. Stops when the project's cache budget is
+     * full. Does nothing if the cache is disabled.
+     *
+     * @param pv The project version whose files to read
+     */
+    void preloadFileContents(ProjectVersion pv);
+
+    /**
+     * Returns the file tree index of a project. The first call for a
+     * project schedules a job to build the index and returns null, as do
+     * all calls until the index is built. Returns null if indexes are
+     * disabled.
+     *
+     * @param sp The project whose index to return
+     * @return The index or null if not available
+     */
+    FileTreeIndex getFileTreeIndex(StoredProject sp);
+
+    /**
+     * Adds the files of newly committed versions to the file tree index of
+     * a project, if it has one. Updaters should call this after every
+     * commit, with a new DB session started, so that the following
+     * lookups are answered by the index.
+     *
+     * @param sp The project whose index to update
+     */
+    void updateFileTreeIndex(StoredProject sp);
+
+    /**
+     * Discards the file tree index of a project, for example when the
+     * project's versions have been deleted.
+     *
+     * @param sp The project whose index to discard
+     */
+    void dropFileTreeIndex(StoredProject sp);
 }
 
 // vi: ai nosi sw=4 ts=4 expandtab
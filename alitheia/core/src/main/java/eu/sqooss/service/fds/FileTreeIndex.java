@@ -0,0 +1,397 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.fds;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.ProjectFileState;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.StoredProject;
+
+/**
+ * In-memory index of the file tree of a project across all its versions.
+ * It answers which file entry a path refers to in a given version, and
+ * which entries a directory contains, without querying the database.
+ * <p>
+ * For every path, the index keeps the ids of all its file entries in
+ * version order. The entry of a path in a version is the last entry added
+ * in that version or before it, so each lookup is a binary search on the
+ * path's history. Entries are never changed once added, so an index built
+ * once is updated by appending the entries of newer versions.
+ * <p>
+ * The index covers the versions up to {@link #getSequence()}. Lookups for
+ * later versions must be answered from the database. Lookups return the
+ * ids of the matching ProjectFile entries, or -1 if there are none.
+ * <p>
+ * Indexes are maintained by the {@link FDSService}.
+ */
+public class FileTreeIndex {
+
+    private static final String qMaxSequence = "select max(pv.sequence) " +
+    		"from ProjectVersion pv where pv.project.id = :project";
+
+    private static final String qEntries = "select pv.sequence, pf.id, " +
+    		"d.path, pf.name, pf.state.status, pf.isDirectory " +
+    		"from ProjectFile pf, ProjectVersion pv, Directory d " +
+    		"where pf.projectVersion = pv.id and pf.dir = d.id " +
+    		"and pv.project.id = :project and pv.sequence <= :to " +
+    		"and (pv.sequence > :sequence " +
+    		"or (pv.sequence = :sequence and pf.id > :id)) " +
+    		"order by pv.sequence, pf.id";
+
+    /** Number of file entries read per query when updating */
+    private static final int LOAD_BATCH = 10000;
+
+    private static final byte DELETED = 0x1;
+    private static final byte DIRECTORY = 0x2;
+
+    private final long projectId;
+
+    /** Path histories, by directory path and name */
+    private final Map<String, Map<String, History>> dirs =
+        new HashMap<String, Map<String, History>>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /** Serialises updates */
+    private final Object updateLock = new Object();
+
+    private volatile long sequence = -1;
+    private volatile boolean built = false;
+    private int entries = 0;
+
+    public FileTreeIndex(long projectId) {
+        this.projectId = projectId;
+    }
+
+    /**
+     * Returns the index of a project, if the FDS has one ready.
+     *
+     * @return The index or null if the project is not indexed (yet).
+     */
+    public static FileTreeIndex getIndex(StoredProject sp) {
+        FDSService fds = AlitheiaCore.getInstance().getFDSService();
+        if (fds == null || sp == null)
+            return null;
+        return fds.getFileTreeIndex(sp);
+    }
+
+    public long getProjectId() {
+        return projectId;
+    }
+
+    /**
+     * @return The sequence number of the latest version covered by the
+     * index, -1 if none.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return True if the index covers the version with the given sequence
+     * number.
+     */
+    public boolean covers(long sequence) {
+        return built && sequence <= this.sequence;
+    }
+
+    /**
+     * @return True once the index has been read from the database.
+     */
+    public boolean isBuilt() {
+        return built;
+    }
+
+    /** @return The number of file entries in the index */
+    public int getEntries() {
+        lock.readLock().lock();
+        try {
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the file entries of versions committed since the last update.
+     * Must be called with an active database session. Lookups can go on
+     * while the index is updated.
+     *
+     * @return False if a query failed. The DB session has then been
+     * terminated and the index may be incomplete, so it must be discarded.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean update(DBService dbs) {
+        synchronized (updateLock) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("project", projectId);
+            List<?> max = dbs.doHQL(qMaxSequence, params);
+            if (!dbs.isDBSessionActive())
+                return false;
+            if (max.isEmpty() || max.get(0) == null || 
+                    ((Number) max.get(0)).longValue() <= sequence) {
+                built = true;
+                return true;
+            }
+            long to = ((Number) max.get(0)).longValue();
+
+            long lastSequence = sequence;
+            long lastId = Long.MAX_VALUE;
+            params.put("to", to);
+            while (true) {
+                params.put("sequence", lastSequence);
+                params.put("id", lastId);
+                List<Object[]> rows = (List<Object[]>) dbs.doHQL(qEntries,
+                        params, LOAD_BATCH);
+                if (!dbs.isDBSessionActive())
+                    return false;
+
+                lock.writeLock().lock();
+                try {
+                    for (Object[] row : rows) {
+                        byte flags = 0;
+                        if (((Integer) row[4]) == ProjectFileState.STATE_DELETED)
+                            flags |= DELETED;
+                        if ((Boolean) row[5])
+                            flags |= DIRECTORY;
+                        add((String) row[2], (String) row[3],
+                                (Long) row[0], (Long) row[1], flags);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+
+                if (rows.size() < LOAD_BATCH)
+                    break;
+                Object[] last = rows.get(rows.size() - 1);
+                lastSequence = (Long) last[0];
+                lastId = (Long) last[1];
+            }
+            sequence = to;
+            built = true;
+            return true;
+        }
+    }
+
+    /**
+     * Returns the entry of a path in a version: the latest entry added in
+     * that version or before it.
+     *
+     * @param path The directory path
+     * @param name The file name
+     * @param sequence The sequence number of the version
+     * @param inclDeleted If false, skip entries recording a deletion, so
+     * that the last live entry is returned
+     * @return The ProjectFile id, -1 if the path had no entries
+     */
+    public long findFile(String path, String name, long sequence,
+            boolean inclDeleted) {
+        lock.readLock().lock();
+        try {
+            History h = history(path, name);
+            if (h == null)
+                return -1;
+            int i = h.find(sequence, inclDeleted);
+            return i < 0 ? -1 : h.ids[i];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the latest entry of a path added before a version, or the
+     * latest entry of either of two paths in the case of copies, as
+     * {@link eu.sqooss.service.db.ProjectFile#getPreviousFileVersion()}.
+     *
+     * @param copyPath The directory the file was copied from, or null
+     * @param copyName The name of the file was copied from, or null
+     * @return The ProjectFile id, -1 if the paths had no entries before
+     */
+    public long findPreviousFile(String path, String name, String copyPath,
+            String copyName, long sequence) {
+        lock.readLock().lock();
+        try {
+            long result = -1;
+            long resultSequence = -1;
+            History h = history(path, name);
+            int i = (h == null) ? -1 : h.find(sequence - 1, true);
+            if (i >= 0) {
+                result = h.ids[i];
+                resultSequence = h.sequences[i];
+            }
+            if (copyPath != null) {
+                h = history(copyPath, copyName);
+                i = (h == null) ? -1 : h.find(sequence - 1, true);
+                if (i >= 0 && h.sequences[i] > resultSequence)
+                    result = h.ids[i];
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lists the live entries of a directory in a version, not recursively,
+     * as {@link ProjectVersion#getFiles(eu.sqooss.service.db.Directory, int)}.
+     *
+     * @param path The directory path, or null to list all directories
+     * @param sequence The sequence number of the version
+     * @param mask One of the ProjectVersion.MASK_* constants
+     * @return The ids of the ProjectFile entries, in no particular order
+     */
+    public long[] listFiles(String path, long sequence, int mask) {
+        lock.readLock().lock();
+        try {
+            Ids result = new Ids();
+            if (path != null) {
+                Map<String, History> dir = dirs.get(path);
+                if (dir != null)
+                    list(dir, sequence, mask, result);
+            } else {
+                for (Map<String, History> dir : dirs.values())
+                    list(dir, sequence, mask, result);
+            }
+            return Arrays.copyOf(result.ids, result.size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileTreeIndex[project=" + projectId + ", sequence="
+                + sequence + ", entries=" + getEntries() + "]";
+    }
+
+    private History history(String path, String name) {
+        Map<String, History> dir = dirs.get(path);
+        return (dir == null) ? null : dir.get(name);
+    }
+
+    /**
+     * Adds the entries of a directory that are live in a version, that is
+     * the paths whose latest entry does not record a deletion.
+     */
+    private static void list(Map<String, History> dir, long sequence,
+            int mask, Ids result) {
+        for (History h : dir.values()) {
+            int i = h.find(sequence, true);
+            if (i < 0 || (h.flags[i] & DELETED) != 0)
+                continue;
+            int type = ((h.flags[i] & DIRECTORY) != 0) ?
+                    ProjectVersion.MASK_DIRECTORIES : ProjectVersion.MASK_FILES;
+            if ((mask & type) != 0)
+                result.add(h.ids[i]);
+        }
+    }
+
+    private void add(String path, String name, long sequence, long id,
+            byte flags) {
+        Map<String, History> dir = dirs.get(path);
+        if (dir == null) {
+            dir = new HashMap<String, History>();
+            dirs.put(path, dir);
+        }
+        History h = dir.get(name);
+        if (h == null) {
+            h = new History();
+            dir.put(name, h);
+        }
+        h.add(sequence, id, flags);
+        entries++;
+    }
+
+    /** A growing array of ids */
+    private static class Ids {
+        long[] ids = new long[16];
+        int size = 0;
+
+        void add(long id) {
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * The entries of a path, in the order they were added.
+     */
+    private static class History {
+        long[] sequences = new long[2];
+        long[] ids = new long[2];
+        byte[] flags = new byte[2];
+        int size = 0;
+
+        void add(long sequence, long id, byte flag) {
+            if (size == ids.length) {
+                sequences = Arrays.copyOf(sequences, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+                flags = Arrays.copyOf(flags, size * 2);
+            }
+            sequences[size] = sequence;
+            ids[size] = id;
+            flags[size] = flag;
+            size++;
+        }
+
+        /**
+         * @return The position of the last entry added up to the version
+         * with the given sequence number, -1 if none
+         */
+        int find(long sequence, boolean inclDeleted) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sequences[mid] <= sequence)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            int i = lo - 1;
+            if (!inclDeleted) {
+                while (i >= 0 && (flags[i] & DELETED) != 0)
+                    i--;
+            }
+            return i;
+        }
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
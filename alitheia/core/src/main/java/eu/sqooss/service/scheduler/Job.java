@@ -100,6 +100,16 @@ public abstract class Job implements Comparable<Job> {
     private int restarts = 0;
     
     private ResumePoint resumePoint;
+
+    /* Number of times the job has yielded, to tell whether run() or the
+     * resume point yielded before returning */
+    private volatile int yields = 0;
+    
+    /* Book-keeping of the scheduler's statistics, see SchedulerStats */
+    long statsTimestamp;
+    long statsWaitTime;
+    long statsRunTime;
+    int statsYields;
     
     public void setWorkerThread(WorkerThread worker) {
     	m_worker = worker;
@@ -217,6 +227,7 @@ public abstract class Job implements Comparable<Job> {
     final public long execute() throws Exception {
         DBService dbs = AlitheiaCore.getInstance().getDBService();
         long timer = System.currentTimeMillis();
+        int y = yields;
         try {
             setState(State.Running);
             restart();
@@ -227,7 +238,9 @@ public abstract class Job implements Comparable<Job> {
                 dbs.rollbackDBSession();
                 setState(State.Error); //No uncommitted sessions are tolerated
             } else {
-                if (state() != State.Yielded)
+                /* A yielded job may have been resumed by another worker
+                 * thread already, which then finishes it */
+                if (yields == y)
                     setState(State.Finished);
             }   
         } catch(Exception e) {
@@ -483,6 +496,7 @@ public abstract class Job implements Comparable<Job> {
             if (m_state == State.Running) {
                 setState(State.Yielded);
                 this.resumePoint = p;
+                yields++;
                 m_scheduler.yield(this, p);
             } else {
                 throw new SchedulerException("Cannot yield non-running job: " 
@@ -501,6 +515,7 @@ public abstract class Job implements Comparable<Job> {
         if (resumePoint == null)
             throw new SchedulerException("Resume point is null");
         
+        int y = yields;
         try {
             setState(State.Running);
             resumePoint.resume();
@@ -510,7 +525,9 @@ public abstract class Job implements Comparable<Job> {
                 dbs.rollbackDBSession();
                 setState(State.Error); //No uncommitted sessions are tolerated
             } else {
-                setState(State.Finished);
+                /* The resume point may yield again */
+                if (yields == y)
+                    setState(State.Finished);
             }   
         } catch(Exception e) {
             
@@ -0,0 +1,188 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A set of jobs queued together, which is done when all of them have
+ * finished or failed. Jobs are added to the group before it is queued
+ * with {@link Scheduler#enqueueGroup(JobGroup)}. A job waiting for the
+ * group, usually the one that created it, pauses with
+ * {@link Scheduler#yield(JobGroup, ResumePoint)} and is resumed by the
+ * scheduler when the group is done, so it does not hold a worker thread
+ * in the meantime.
+ */
+public class JobGroup implements JobStateListener {
+
+    private final String name;
+    private final List<Job> jobs = new ArrayList<Job>();
+    private final Set<Job> done =
+        Collections.newSetFromMap(new ConcurrentHashMap<Job, Boolean>());
+    private final AtomicInteger failed = new AtomicInteger();
+    private final List<JobGroupListener> listeners =
+        new ArrayList<JobGroupListener>();
+
+    /* Guarded by this */
+    private boolean queued = false;
+    private boolean complete = false;
+
+    public JobGroup(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Adds a job to the group.
+     *
+     * @throws SchedulerException If the group has already been queued.
+     */
+    public synchronized void add(Job j) throws SchedulerException {
+        if (queued)
+            throw new SchedulerException("Cannot add jobs to queued group "
+                    + this);
+        jobs.add(j);
+        j.addJobStateListener(this);
+    }
+
+    /**
+     * Marks the group as queued and returns its jobs. This method should
+     * only be called by Scheduler.enqueueGroup.
+     *
+     * @throws SchedulerException If the group is already queued.
+     */
+    public final List<Job> callAboutToBeEnqueued() throws SchedulerException {
+        List<Job> result;
+        synchronized (this) {
+            if (queued)
+                throw new SchedulerException("Group " + this
+                        + " is already queued");
+            queued = true;
+            result = new ArrayList<Job>(jobs);
+        }
+        /* An empty group is done right away */
+        checkDone();
+        return result;
+    }
+
+    public synchronized List<Job> getJobs() {
+        return new ArrayList<Job>(jobs);
+    }
+
+    public synchronized int size() {
+        return jobs.size();
+    }
+
+    /** @return Number of jobs that finished successfully */
+    public int getFinished() {
+        return done.size() - failed.get();
+    }
+
+    /** @return Number of jobs that failed */
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /** @return Percentage of jobs that are done */
+    public float getProgress() {
+        int size = size();
+        if (size == 0)
+            return isDone() ? 100 : 0;
+        return (100f * done.size()) / size;
+    }
+
+    /** @return Whether all jobs of the group have finished or failed */
+    public synchronized boolean isDone() {
+        return complete;
+    }
+
+    /**
+     * Adds a listener to call when the group is done. The listener is
+     * called immediately if the group is already done.
+     */
+    public void addListener(JobGroupListener l) {
+        synchronized (this) {
+            if (!complete) {
+                listeners.add(l);
+                return;
+            }
+        }
+        l.groupDone(this);
+    }
+
+    /**
+     * Blocks the calling thread until the group is done. Worker threads
+     * should yield instead, see {@link Scheduler#yield(JobGroup, ResumePoint)}.
+     */
+    public synchronized void waitForDone() throws InterruptedException {
+        while (!complete)
+            wait();
+    }
+
+    public void jobStateChanged(Job j, Job.State newState) {
+        if (newState != Job.State.Finished && newState != Job.State.Error)
+            return;
+        if (!done.add(j))
+            return;
+        if (newState == Job.State.Error)
+            failed.incrementAndGet();
+        checkDone();
+    }
+
+    @Override
+    public String toString() {
+        return "JobGroup[" + name + ", " + done.size() + "/" + size()
+                + " done, " + failed.get() + " failed]";
+    }
+
+    private void checkDone() {
+        List<JobGroupListener> toCall;
+        synchronized (this) {
+            if (complete || !queued || done.size() < jobs.size())
+                return;
+            complete = true;
+            toCall = new ArrayList<JobGroupListener>(listeners);
+            listeners.clear();
+            notifyAll();
+        }
+        for (JobGroupListener l : toCall)
+            l.groupDone(this);
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
@@ -0,0 +1,130 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.service.scheduler;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import eu.sqooss.service.util.Histogram;
+
+/**
+ * Statistics for all jobs of one class, as copied from the
+ * {@link SchedulerStats} at some point in time. Times are in milliseconds
+ * and cover the whole life of each job: the queue wait time includes the
+ * time spent waiting after yielding, and the run time is the sum of all
+ * execution slices. Jobs are added to the histograms when they finish or
+ * fail.
+ */
+@XmlRootElement(name="jobtype")
+@XmlAccessorType(XmlAccessType.NONE)
+public class JobTypeStats {
+
+    @XmlElement
+    private String type;
+
+    @XmlElement
+    private long waiting;
+
+    @XmlElement
+    private long running;
+
+    @XmlElement
+    private long finished;
+
+    @XmlElement
+    private long failed;
+
+    @XmlElement
+    private Histogram.Snapshot queueWait;
+
+    @XmlElement
+    private Histogram.Snapshot runTime;
+
+    @XmlElement
+    private Histogram.Snapshot yields;
+
+    public JobTypeStats() {}
+
+    JobTypeStats(String type, long waiting, long running, long finished,
+            long failed, Histogram.Snapshot queueWait,
+            Histogram.Snapshot runTime, Histogram.Snapshot yields) {
+        this.type = type;
+        this.waiting = waiting;
+        this.running = running;
+        this.finished = finished;
+        this.failed = failed;
+        this.queueWait = queueWait;
+        this.runTime = runTime;
+        this.yields = yields;
+    }
+
+    /** @return The job's class name */
+    public String getType() {
+        return type;
+    }
+
+    public long getWaiting() {
+        return waiting;
+    }
+
+    public long getRunning() {
+        return running;
+    }
+
+    public long getFinished() {
+        return finished;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /** @return Time spent in the scheduler's queues per job */
+    public Histogram.Snapshot getQueueWait() {
+        return queueWait;
+    }
+
+    /** @return Time spent executing per job */
+    public Histogram.Snapshot getRunTime() {
+        return runTime;
+    }
+
+    /** @return Number of times each job yielded */
+    public Histogram.Snapshot getYields() {
+        return yields;
+    }
+}
@@ -63,6 +63,12 @@ public interface Scheduler extends AlitheiaCoreService {
      * jobs are queued.  
      */
     void enqueueBlock(List<Job> jobs) throws SchedulerException;
+
+    /**
+     * Queue the jobs of a group without checking their dependencies. No
+     * jobs can be added to the group afterwards.
+     */
+    void enqueueGroup(JobGroup g) throws SchedulerException;
     
     /**
      * This method is called, when the state of the job \a job changes to 
@@ -148,5 +154,17 @@ public interface Scheduler extends AlitheiaCoreService {
      * @throws SchedulerException 
      */
     void yield(Job j, ResumePoint p) throws SchedulerException;
+
+    /**
+     * Pause the job executed by the calling worker thread until all jobs
+     * of the group are done, then continue it at the resume point. This
+     * must be the last thing the job's run() method does, and no database
+     * session may be open. If not called from a worker thread, blocks
+     * until the group is done and calls the resume point directly.
+     *
+     * @throws SchedulerException If the calling job cannot yield or the
+     * wait was interrupted
+     */
+    void yield(JobGroup g, ResumePoint p) throws SchedulerException;
     
 }
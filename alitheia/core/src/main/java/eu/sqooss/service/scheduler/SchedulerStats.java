@@ -34,143 +34,260 @@
 package eu.sqooss.service.scheduler;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Vector;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.collections.list.SynchronizedList;
+import eu.sqooss.service.util.Histogram;
+import eu.sqooss.service.util.StripedCounter;
 
+/**
+ * Job and worker thread counters of a scheduler, overall and per job
+ * class. All updates are lock free and reading never blocks the threads
+ * updating the counters; as a consequence, the values returned by the
+ * getters are not a consistent snapshot while jobs are being processed.
+ */
 public class SchedulerStats {
     // the number of jobs currently in the scheduler
-    private long totalJobs = 0;
+    private StripedCounter totalJobs = new StripedCounter();
     // the number of jobs which were finished
-    private long finishedJobs = 0;
+    private StripedCounter finishedJobs = new StripedCounter();
     // the number of jobs currently waiting
-    private long waitingJobs = 0;
+    private StripedCounter waitingJobs = new StripedCounter();
     // the number of jobs currently running
-    private long runningJobs = 0;
+    private StripedCounter runningJobs = new StripedCounter();
     // the total number of threads available for scheduling
-    private long workerThreads = 0;
+    private AtomicLong workerThreads = new AtomicLong();
     // the number of threads being idle at the moment
-    private long idleWorkerThreads = 0;
+    private AtomicLong idleWorkerThreads = new AtomicLong();
     // the number of jobs which failed
-    private long failedJobs = 0;
-    //Classname->Failed Jobs 
-    private HashMap<String, Integer> failedJobTypes = new HashMap<String, Integer>();
-    //Classname->Num jobs waiting
-    private HashMap<String, Integer> waitingJobTypes = new HashMap<String, Integer>();
+    private StripedCounter failedJobs = new StripedCounter();
+    // the number of metric jobs abandoned because their DAO was locked
+    private StripedCounter rescheduledJobs = new StripedCounter();
+    //Job class->counters
+    private ConcurrentMap<Class<?>, TypeCounters> jobTypes = 
+        new ConcurrentHashMap<Class<?>, TypeCounters>();
     //Running jobs
-    private List<Job> runJobs = new Vector<Job>();
-    
-    public synchronized void incTotalJobs() {
-        totalJobs++;
+    private Set<Job> runJobs = 
+        Collections.newSetFromMap(new ConcurrentHashMap<Job, Boolean>());
+
+    /**
+     * Live counters for one job class.
+     */
+    private static class TypeCounters {
+        final String name;
+        final AtomicLong waiting = new AtomicLong();
+        final AtomicLong running = new AtomicLong();
+        final AtomicLong finished = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final Histogram queueWait = new Histogram();
+        final Histogram runTime = new Histogram();
+        final Histogram yields = new Histogram();
+
+        TypeCounters(Class<?> clazz) {
+            this.name = clazz.getName();
+        }
+
+        JobTypeStats snapshot() {
+            return new JobTypeStats(name, waiting.get(), running.get(),
+                    finished.get(), failed.get(), queueWait.snapshot(),
+                    runTime.snapshot(), yields.snapshot());
+        }
     }
 
-    public synchronized void decTotalJobs() {
-        totalJobs--;
+    public void incTotalJobs() {
+        totalJobs.increment();
     }
-   
-    public synchronized void incFinishedJobs() {
-        finishedJobs++;
+
+    public void decTotalJobs() {
+        totalJobs.decrement();
     }
     
-    public synchronized void incWorkerThreads() {
-        workerThreads++;
+    public void incWorkerThreads() {
+        workerThreads.incrementAndGet();
     }
     
-    public synchronized void decWorkerThreads() {
-        workerThreads--;
+    public void decWorkerThreads() {
+        workerThreads.decrementAndGet();
     }
     
-    public synchronized void incIdleWorkerThreads() {
-        idleWorkerThreads++;
+    public void incIdleWorkerThreads() {
+        idleWorkerThreads.incrementAndGet();
     }
     
-    public synchronized void decIdleWorkerThreads() {
-        idleWorkerThreads--;
+    public void decIdleWorkerThreads() {
+        idleWorkerThreads.decrementAndGet();
     }
-    
-    public synchronized void addFailedJob(String classname) {
-        this.failedJobs++;
-        if (failedJobTypes.containsKey(classname))
-            failedJobTypes.put(classname, (failedJobTypes.get(classname) + 1));
-        else
-            failedJobTypes.put(classname, 1);
+
+    /**
+     * A job was queued.
+     */
+    public void addWaitingJob(Job j) {
+        waitingJobs.increment();
+        counters(j).waiting.incrementAndGet();
+        j.statsTimestamp = System.currentTimeMillis();
     }
 
-    public synchronized void addWaitingJob(String classname) {
-        this.waitingJobs++;
-        if (waitingJobTypes.containsKey(classname))
-            waitingJobTypes.put(classname, (waitingJobTypes.get(classname) + 1));
-        else
-            waitingJobTypes.put(classname, 1);
+    /**
+     * A job left the queue to be executed.
+     */
+    public void removeWaitingJob(Job j) {
+        waitingJobs.decrement();
+        counters(j).waiting.decrementAndGet();
+        long now = System.currentTimeMillis();
+        j.statsWaitTime += now - j.statsTimestamp;
+        j.statsTimestamp = now;
     }
-    
-    public synchronized void removeWaitingJob(String classname) {
-        this.waitingJobs --;
-        if (waitingJobTypes.containsKey(classname)) {
-            int jobs = waitingJobTypes.get(classname) - 1;
-            if (jobs == 0) {
-                waitingJobTypes.remove(classname);
-            }
-            
-            waitingJobTypes.put(classname, jobs);
-        }
+
+    /**
+     * A job started or resumed execution.
+     */
+    public void addRunJob(Job j) {
+        runningJobs.increment();
+        counters(j).running.incrementAndGet();
+        runJobs.add(j);
+        j.statsTimestamp = System.currentTimeMillis();
     }
- 
-    public synchronized void addRunJob(Job j) {
-        this.runningJobs++;
-        this.runJobs.add(j);
+
+    /**
+     * A job stopped executing, because it finished, failed or yielded.
+     */
+    public void removeRunJob(Job j) {
+        if (!runJobs.remove(j))
+            return;
+        runningJobs.decrement();
+        counters(j).running.decrementAndGet();
+        long now = System.currentTimeMillis();
+        j.statsRunTime += now - j.statsTimestamp;
+        j.statsTimestamp = now;
     }
-    
-    public synchronized void removeRunJob(Job j) {
-        this.runningJobs--;
-        this.runJobs.remove(j);
+
+    /**
+     * A running job yielded and went back to the queue.
+     */
+    public void addYieldedJob(Job j) {
+        j.statsYields++;
+        addWaitingJob(j);
     }
-    
+
+    public void addFinishedJob(Job j) {
+        finishedJobs.increment();
+        TypeCounters c = counters(j);
+        c.finished.incrementAndGet();
+        record(c, j);
+    }
+
+    public void addFailedJob(Job j) {
+        failedJobs.increment();
+        TypeCounters c = counters(j);
+        c.failed.incrementAndGet();
+        record(c, j);
+    }
+
+    /**
+     * A metric job gave up its work because another job was processing the
+     * same DAO, and the work was scheduled again.
+     */
+    public void addRescheduledJob() {
+        rescheduledJobs.increment();
+    }
+
     public long getTotalJobs() {
-        return totalJobs;
+        return totalJobs.sum();
     }
 
     public long getWaitingJobs() {
-        return waitingJobs;
+        return waitingJobs.sum();
     }
 
     public long getFinishedJobs() {
-        return finishedJobs;
+        return finishedJobs.sum();
     }
 
     public long getRunningJobs() {
-        return runningJobs;
+        return runningJobs.sum();
     }
 
     public long getWorkerThreads() {
-        return workerThreads;
+        return workerThreads.get();
     }
 
     public long getIdleWorkerThreads() {
-        return idleWorkerThreads;
+        return idleWorkerThreads.get();
     }
 
     public long getFailedJobs() {
-        return failedJobs;
+        return failedJobs.sum();
+    }
+
+    public long getRescheduledJobs() {
+        return rescheduledJobs.sum();
     }
     
+    /**
+     * @return Class name->number of failed jobs
+     */
     public HashMap<String, Integer> getFailedJobTypes() {
-        return failedJobTypes;
+        HashMap<String, Integer> result = new HashMap<String, Integer>();
+        for (TypeCounters c : jobTypes.values()) {
+            long failed = c.failed.get();
+            if (failed > 0)
+                result.put(c.name, (int) failed);
+        }
+        return result;
     }
     
+    /**
+     * @return Class name->number of waiting jobs
+     */
     public HashMap<String, Integer> getWaitingJobTypes() {
-        return waitingJobTypes;
+        HashMap<String, Integer> result = new HashMap<String, Integer>();
+        for (TypeCounters c : jobTypes.values()) {
+            long waiting = c.waiting.get();
+            if (waiting > 0)
+                result.put(c.name, (int) waiting);
+        }
+        return result;
+    }
+
+    /**
+     * @return Counters and time histograms for each job class the
+     * scheduler has seen.
+     */
+    public List<JobTypeStats> getJobTypeStats() {
+        List<JobTypeStats> result = new ArrayList<JobTypeStats>();
+        for (TypeCounters c : jobTypes.values())
+            result.add(c.snapshot());
+        return result;
     }
     
-    public synchronized List<String> getRunJobs() {
-        Job[] jobs = new Job[runJobs.size()];
-        runJobs.toArray(jobs);
+    public List<String> getRunJobs() {
         List<String> jobDescr = new ArrayList<String>();
-        for (Job j : jobs) {
+        for (Job j : runJobs) {
             jobDescr.add(j.toString());
         }
         return jobDescr;
     }
+
+    private void record(TypeCounters c, Job j) {
+        c.queueWait.record(j.statsWaitTime);
+        c.runTime.record(j.statsRunTime);
+        c.yields.record(j.statsYields);
+    }
+
+    private TypeCounters counters(Job j) {
+        Class<?> clazz = j.getClass();
+        TypeCounters c = jobTypes.get(clazz);
+        if (c == null) {
+            c = new TypeCounters(clazz);
+            TypeCounters old = jobTypes.putIfAbsent(clazz, c);
+            if (old != null)
+                c = old;
+        }
+        return c;
+    }
 }
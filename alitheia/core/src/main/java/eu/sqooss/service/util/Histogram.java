@@ -0,0 +1,189 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.service.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * A histogram of non-negative values with power of two bucket sizes.
+ * Bucket 0 counts zeros and bucket <tt>i</tt> counts values in
+ * <tt>[2<sup>i-1</sup>, 2<sup>i</sup>)</tt>. Recording and reading are
+ * lock free; percentiles are reported as the upper bound of the bucket
+ * they fall in.
+ */
+public class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Adds a value to the histogram. Negative values are counted as 0.
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        buckets.incrementAndGet(bucket(value));
+        sum.addAndGet(value);
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value))
+            m = max.get();
+    }
+
+    /**
+     * @return A copy of the current contents of the histogram.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        int last = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            count += counts[i];
+            if (counts[i] > 0)
+                last = i;
+        }
+        long[] trimmed = new long[last + 1];
+        System.arraycopy(counts, 0, trimmed, 0, last + 1);
+        return new Snapshot(trimmed, count, sum.get(), max.get());
+    }
+
+    static int bucket(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * @return The largest value counted in bucket <tt>i</tt>.
+     */
+    static long upperBound(int i) {
+        if (i == 0)
+            return 0;
+        if (i >= 63)
+            return Long.MAX_VALUE;
+        return (1L << i) - 1;
+    }
+
+    /**
+     * Immutable copy of a histogram's state.
+     */
+    @XmlRootElement(name="histogram")
+    @XmlAccessorType(XmlAccessType.NONE)
+    public static class Snapshot {
+
+        @XmlElement
+        private long count;
+
+        @XmlElement
+        private long sum;
+
+        @XmlElement
+        private long max;
+
+        @XmlElement(name="bucket")
+        private long[] buckets;
+
+        public Snapshot() {}
+
+        Snapshot(long[] buckets, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /** @return Number of recorded values */
+        public long getCount() {
+            return count;
+        }
+
+        /** @return Sum of recorded values */
+        public long getSum() {
+            return sum;
+        }
+
+        /** @return Largest recorded value */
+        public long getMax() {
+            return max;
+        }
+
+        public long getMean() {
+            return (count == 0) ? 0 : sum / count;
+        }
+
+        public long getP50() {
+            return percentile(0.50);
+        }
+
+        public long getP90() {
+            return percentile(0.90);
+        }
+
+        public long getP99() {
+            return percentile(0.99);
+        }
+
+        /**
+         * @return Counts per bucket, trailing empty buckets omitted.
+         */
+        public long[] getBuckets() {
+            return buckets;
+        }
+
+        /**
+         * @param p A fraction between 0 and 1
+         * @return An upper bound for the <tt>p</tt>-th percentile
+         */
+        public long percentile(double p) {
+            if (count == 0)
+                return 0;
+            long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank)
+                    return Math.min(upperBound(i), max);
+            }
+            return max;
+        }
+    }
+}
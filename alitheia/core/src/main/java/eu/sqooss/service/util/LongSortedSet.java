@@ -0,0 +1,198 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.util;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+
+/**
+ * An immutable sorted set of longs, stored in a sorted array of primitive
+ * longs. It takes 8 bytes per element, a tenth of a TreeSet of Longs, and
+ * is meant for the large sets of object ids handled during metric
+ * synchronisation. Longs are only boxed as they are read through the
+ * {@link SortedSet} interface.
+ */
+public class LongSortedSet extends AbstractSet<Long> implements SortedSet<Long> {
+
+    private final long[] values;
+    private final int from;
+    private final int to;
+
+    /**
+     * @param values The elements, in any order and possibly repeated. The
+     * array is sorted in place and should not be used by the caller
+     * afterwards.
+     */
+    public LongSortedSet(long[] values) {
+        this(values, values.length);
+    }
+
+    /**
+     * @param values An array whose first <code>length</code> elements are
+     * the elements of the set, in any order and possibly repeated. The
+     * array is sorted in place and should not be used by the caller
+     * afterwards.
+     * @param length The number of elements in the array to use
+     */
+    public LongSortedSet(long[] values, int length) {
+        Arrays.sort(values, 0, length);
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            if (n == 0 || values[i] != values[n - 1])
+                values[n++] = values[i];
+        }
+        this.values = values;
+        this.from = 0;
+        this.to = n;
+    }
+
+    private LongSortedSet(long[] values, int from, int to) {
+        this.values = values;
+        this.from = from;
+        this.to = Math.max(from, to);
+    }
+
+    /**
+     * @return The union of two sets sorted in their natural order.
+     */
+    public static LongSortedSet union(SortedSet<Long> a, SortedSet<Long> b) {
+        long[] x = toArray(a), y = toArray(b);
+        long[] result = new long[x.length + y.length];
+        int i = 0, j = 0, n = 0;
+        while (i < x.length || j < y.length) {
+            long v;
+            if (j == y.length || (i < x.length && x[i] <= y[j]))
+                v = x[i++];
+            else
+                v = y[j++];
+            if (n == 0 || result[n - 1] != v)
+                result[n++] = v;
+        }
+        return new LongSortedSet(result, 0, n);
+    }
+
+    /**
+     * @return The elements of a set sorted in their natural order, as an
+     * array in ascending order.
+     */
+    public static long[] toArray(SortedSet<Long> s) {
+        if (s instanceof LongSortedSet)
+            return ((LongSortedSet) s).toLongArray();
+        long[] result = new long[s.size()];
+        int i = 0;
+        for (Long l : s)
+            result[i++] = l;
+        return result;
+    }
+
+    /** @return A copy of the elements in ascending order */
+    public long[] toLongArray() {
+        return Arrays.copyOfRange(values, from, to);
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Long))
+            return false;
+        return Arrays.binarySearch(values, from, to, (Long) o) >= 0;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+            int next = from;
+
+            public boolean hasNext() {
+                return next < to;
+            }
+
+            public Long next() {
+                if (next >= to)
+                    throw new NoSuchElementException();
+                return values[next++];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public Comparator<? super Long> comparator() {
+        return null;
+    }
+
+    public Long first() {
+        if (from == to)
+            throw new NoSuchElementException();
+        return values[from];
+    }
+
+    public Long last() {
+        if (from == to)
+            throw new NoSuchElementException();
+        return values[to - 1];
+    }
+
+    public SortedSet<Long> headSet(Long toElement) {
+        return new LongSortedSet(values, from, index(toElement));
+    }
+
+    public SortedSet<Long> tailSet(Long fromElement) {
+        return new LongSortedSet(values, index(fromElement), to);
+    }
+
+    public SortedSet<Long> subSet(Long fromElement, Long toElement) {
+        if (fromElement > toElement)
+            throw new IllegalArgumentException("fromElement > toElement");
+        return new LongSortedSet(values, index(fromElement), index(toElement));
+    }
+
+    /** Index of the first element not less than v */
+    private int index(long v) {
+        int i = Arrays.binarySearch(values, from, to, v);
+        return i >= 0 ? i : -(i + 1);
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
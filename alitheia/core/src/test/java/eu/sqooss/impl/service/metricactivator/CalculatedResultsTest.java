@@ -0,0 +1,118 @@
+package eu.sqooss.impl.service.metricactivator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.abstractmetric.MetricDecl;
+import eu.sqooss.service.abstractmetric.MetricDeclarations;
+import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DAObject;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.ProjectVersionMeasurement;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.test.service.db.TestDB;
+
+/**
+ * Tests the lookup of the DAOs a metric sync does not create jobs for,
+ * because the metric has already measured them. Lives in the metric
+ * activator's package, as the lookup is package private.
+ */
+public class CalculatedResultsTest {
+
+    @MetricDeclarations(metrics = {
+        @MetricDecl(mnemonic = "CALCA", activators = {ProjectVersion.class},
+                descr = "Test metric", type = Result.ResultType.INTEGER),
+        @MetricDecl(mnemonic = "CALCB", activators = {ProjectVersion.class},
+                descr = "Test metric", type = Result.ResultType.INTEGER)
+    })
+    public static class VersionMetric extends AbstractMetric {
+
+        public VersionMetric() {
+            super(null);
+        }
+
+        public String getName() {
+            return "Calculated results test metric";
+        }
+
+        public String getVersion() {
+            return "1.0";
+        }
+
+        @Override
+        protected Result.ResultType getStoredResultType(
+                Class<? extends DAObject> activator, Metric m) {
+            return Result.ResultType.INTEGER;
+        }
+
+        public List<Result> getResult(ProjectVersion v, Metric m) {
+            return getResult(v, ProjectVersionMeasurement.class, m,
+                    Result.ResultType.INTEGER);
+        }
+
+        public void run(ProjectVersion v) {
+        }
+    }
+
+    static DBService db;
+    static AbstractMetric metric;
+    /** Measured by both metrics, by one metric, by none */
+    static List<Long> ids = new ArrayList<Long>();
+
+    @BeforeClass
+    public static void setUp() {
+        db = TestDB.start();
+        metric = new VersionMetric();
+
+        db.startDBSession();
+        assertTrue(metric.install());
+        StoredProject sp = new StoredProject("calculated");
+        db.addRecord(sp);
+        List<ProjectVersion> versions = new ArrayList<ProjectVersion>();
+        for (int i = 1; i <= 3; i++) {
+            ProjectVersion v = new ProjectVersion(sp);
+            v.setRevisionId(String.valueOf(i));
+            v.setSequence(i);
+            v.setTimestamp(i * 1000L);
+            db.addRecord(v);
+            versions.add(v);
+            ids.add(v.getId());
+        }
+        Metric a = Metric.getMetricByMnemonic("CALCA");
+        Metric b = Metric.getMetricByMnemonic("CALCB");
+        db.addRecord(new ProjectVersionMeasurement(a, versions.get(0), 1));
+        db.addRecord(new ProjectVersionMeasurement(b, versions.get(0), 2));
+        db.addRecord(new ProjectVersionMeasurement(a, versions.get(1), 3));
+        db.commitDBSession();
+    }
+
+    @Test
+    public void testMeasuredSkipped() {
+        Set<Long> done = MetricActivatorImpl.calculated(metric,
+                ProjectVersion.class, ids, false, db, TestDB.logger());
+        assertEquals(Collections.singleton(ids.get(0)), done);
+        assertFalse(db.isDBSessionActive());
+    }
+
+    @Test
+    public void testCallerSession() {
+        db.startDBSession();
+        Set<Long> done = MetricActivatorImpl.calculated(metric,
+                ProjectVersion.class, ids, false, db, TestDB.logger());
+        assertEquals(Collections.singleton(ids.get(0)), done);
+        assertTrue(db.isDBSessionActive());
+        db.rollbackDBSession();
+    }
+}
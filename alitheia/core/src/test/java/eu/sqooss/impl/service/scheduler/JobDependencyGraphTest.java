@@ -0,0 +1,265 @@
+package eu.sqooss.impl.service.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.SchedulerException;
+
+/**
+ * Tests the dependency counters of the scheduler without running any jobs.
+ * Lives in the scheduler's package, as the graph is package private.
+ */
+public class JobDependencyGraphTest {
+
+    JobDependencyGraph graph;
+
+    @Before
+    public void setUp() {
+        graph = new JobDependencyGraph();
+    }
+
+    @Test
+    public void testUpdateWhileReady() throws Exception {
+        GraphJob a = new GraphJob();
+        GraphJob b = new GraphJob();
+
+        graph.addBlocked(b);
+        graph.update(b);
+        assertEquals(0, graph.blockedJobs());
+        assertEquals(1, graph.readyJobs());
+
+        /* A dependency added while b waits for a worker blocks it again */
+        b.addDependency(a);
+        graph.update(b);
+        assertEquals(1, graph.blockedJobs());
+        assertNull(graph.take(b));
+
+        /* Removing it makes b ready with a new ticket */
+        b.removeDependency(a);
+        graph.update(b);
+        assertEquals(0, graph.blockedJobs());
+        assertSame(b, graph.take());
+        assertFalse(graph.contains(a));
+    }
+
+    @Test
+    public void testResolvedReleasesDependees() throws Exception {
+        GraphJob a = new GraphJob();
+        GraphJob b = new GraphJob();
+        GraphJob c = new GraphJob();
+        c.addDependency(a);
+        c.addDependency(b);
+
+        graph.addBlocked(a);
+        graph.update(a);
+        graph.addBlocked(c);
+        graph.update(c);
+        assertEquals(1, graph.blockedJobs());
+
+        assertSame(a, graph.take());
+        a.finish();
+        graph.resolved(a);
+        assertEquals(1, graph.blockedJobs());
+        assertNull(graph.take(c));
+
+        /* b was never queued, only known as a dependency of c */
+        b.finish();
+        graph.resolved(b);
+        assertEquals(0, graph.blockedJobs());
+        assertSame(c, graph.take());
+        assertFalse(graph.contains(a));
+    }
+
+    @Test
+    public void testRemoveWaitedOn() throws Exception {
+        GraphJob a = new GraphJob();
+        GraphJob b = new GraphJob();
+        b.addDependency(a);
+
+        graph.addBlocked(a);
+        graph.addBlocked(b);
+        graph.update(b);
+        assertEquals(2, graph.blockedJobs());
+
+        assertTrue(graph.remove(a));
+        assertFalse(graph.contains(a));
+        assertFalse(graph.remove(a));
+        assertEquals(1, graph.blockedJobs());
+
+        /* b keeps waiting on the removed job until it is resolved */
+        graph.update(b);
+        assertNull(graph.take(b));
+        a.finish();
+        graph.resolved(a);
+        assertSame(b, graph.take());
+    }
+
+    @Test
+    public void testRemoveUnreferenced() {
+        GraphJob a = new GraphJob();
+        graph.addReady(a);
+        assertTrue(graph.contains(a));
+        assertTrue(graph.remove(a));
+        assertFalse(graph.contains(a));
+        assertFalse(graph.remove(a));
+        assertNull(graph.take(a));
+    }
+
+    @Test
+    public void testUnqueuedDependencyForgotten() throws Exception {
+        GraphJob a = new GraphJob();
+        GraphJob b = new GraphJob();
+        GraphJob c = new GraphJob();
+        c.addDependency(a);
+        c.addDependency(b);
+
+        /* a and b are never queued, only known as dependencies of c */
+        graph.addBlocked(c);
+        graph.update(c);
+        assertEquals(3, graph.size());
+
+        /* Gone when c no longer depends on them */
+        c.removeDependency(a);
+        graph.update(c);
+        assertEquals(2, graph.size());
+        assertTrue(graph.remove(c));
+        assertEquals(0, graph.size());
+    }
+
+    @Test
+    public void testSharedDependencyKept() throws Exception {
+        GraphJob a = new GraphJob();
+        GraphJob b = new GraphJob();
+        GraphJob c = new GraphJob();
+        b.addDependency(a);
+        c.addDependency(a);
+
+        graph.addBlocked(b);
+        graph.update(b);
+        graph.addBlocked(c);
+        graph.update(c);
+        assertEquals(3, graph.size());
+
+        /* c still waits for a */
+        graph.remove(b);
+        assertEquals(2, graph.size());
+        a.finish();
+        graph.resolved(a);
+        assertSame(c, graph.take());
+        assertEquals(1, graph.size());
+    }
+
+    @Test
+    public void testResolvedForgetsDependencies() throws Exception {
+        GraphJob a = new GraphJob();
+        GraphJob b = new GraphJob();
+        b.addDependency(a);
+
+        /* Queued regardless of its dependencies, as by enqueueNoDependencies */
+        graph.addReady(b);
+        assertSame(b, graph.take(b));
+        graph.update(b);
+        assertEquals(2, graph.size());
+        b.finish();
+        graph.resolved(b);
+        assertEquals(0, graph.size());
+    }
+
+    @Test
+    public void testQueuedDependencyKept() throws Exception {
+        GraphJob a = new GraphJob();
+        GraphJob b = new GraphJob();
+        b.addDependency(a);
+
+        graph.addBlocked(a);
+        graph.addBlocked(b);
+        graph.update(b);
+        graph.remove(b);
+        assertTrue(graph.contains(a));
+        assertEquals(1, graph.size());
+    }
+
+    @Test
+    public void testBlockedJobs() throws Exception {
+        GraphJob a = new GraphJob();
+        GraphJob b = new GraphJob();
+        GraphJob c = new GraphJob();
+        GraphJob d = new GraphJob();
+        d.addDependency(c);
+
+        graph.addBlocked(a);
+        graph.addBlocked(b);
+        graph.addBlocked(c);
+        graph.addBlocked(d);
+        assertEquals(4, graph.blockedJobs());
+
+        graph.update(a);
+        graph.update(d);
+        assertEquals(3, graph.blockedJobs());
+
+        /* A taken job that yields is blocked again */
+        assertSame(a, graph.take());
+        assertEquals(3, graph.blockedJobs());
+        graph.block(a);
+        assertEquals(4, graph.blockedJobs());
+        graph.block(a);
+        assertEquals(4, graph.blockedJobs());
+
+        graph.remove(b);
+        assertEquals(3, graph.blockedJobs());
+
+        c.finish();
+        graph.resolved(c);
+        assertEquals(1, graph.blockedJobs());
+        graph.resolved(a);
+        assertEquals(0, graph.blockedJobs());
+    }
+
+    @Test
+    public void testTakeSkipsInvalidTickets() throws Exception {
+        GraphJob a = new GraphJob();
+        GraphJob b = new GraphJob();
+        GraphJob c = new GraphJob();
+        GraphJob d = new GraphJob();
+
+        graph.addReady(a);
+        graph.addReady(b);
+        graph.addReady(c);
+        graph.addReady(d);
+        graph.remove(a);
+        graph.block(b);
+        assertSame(c, graph.take(c));
+        assertEquals(4, graph.readyJobs());
+
+        assertSame(d, graph.take());
+        assertEquals(0, graph.readyJobs());
+
+        /* Stale tickets are dropped by purge() as well */
+        graph.addReady(a);
+        graph.remove(a);
+        assertEquals(1, graph.readyJobs());
+        graph.purge();
+        assertEquals(0, graph.readyJobs());
+    }
+
+    static class GraphJob extends Job {
+
+        public long priority() {
+            return 0;
+        }
+
+        protected void run() {
+        }
+
+        void finish() {
+            setState(State.Finished);
+        }
+    }
+}
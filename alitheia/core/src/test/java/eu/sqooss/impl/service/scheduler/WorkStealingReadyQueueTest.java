@@ -0,0 +1,200 @@
+package eu.sqooss.impl.service.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import eu.sqooss.impl.service.scheduler.JobDependencyGraph.Node;
+import eu.sqooss.impl.service.scheduler.JobDependencyGraph.Ticket;
+import eu.sqooss.impl.service.scheduler.JobDependencyGraphTest.GraphJob;
+import eu.sqooss.impl.service.scheduler.WorkStealingReadyQueue.LocalQueue;
+import eu.sqooss.service.scheduler.Job;
+
+public class WorkStealingReadyQueueTest {
+
+    static Ticket ticket(int seq) {
+        return new Ticket(new Node(new GraphJob()), seq);
+    }
+
+    /** Runs r in a new thread and waits for it to finish */
+    static void inThread(final Runnable r) throws Exception {
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    r.run();
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }
+        };
+        t.start();
+        t.join();
+        if (!errors.isEmpty())
+            throw new Exception(errors.get(0));
+    }
+
+    @Test
+    public void testSteal() throws Exception {
+        final WorkStealingReadyQueue q = new WorkStealingReadyQueue();
+        final List<Ticket> tickets = new ArrayList<Ticket>();
+        for (int i = 0; i < 10; i++)
+            tickets.add(ticket(i));
+
+        /* A worker makes jobs ready on its own queue and leaves them there */
+        inThread(new Runnable() {
+            public void run() {
+                q.attach();
+                for (Ticket t : tickets)
+                    q.offer(t);
+            }
+        });
+        assertEquals(10, q.size());
+
+        /* A thread without a local queue steals one job, the first one */
+        assertSame(tickets.get(0), q.take());
+        assertEquals(9, q.size());
+
+        /* A worker steals half of the rest and keeps the surplus locally */
+        final List<Ticket> taken = new ArrayList<Ticket>();
+        inThread(new Runnable() {
+            public void run() {
+                q.attach();
+                try {
+                    taken.add(q.take());
+                    taken.add(q.take());
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        assertSame(tickets.get(1), taken.get(0));
+        assertSame(tickets.get(2), taken.get(1));
+        assertEquals(7, q.size());
+
+        /* Everything left can still be taken, in priority order per queue */
+        List<Ticket> rest = new ArrayList<Ticket>();
+        for (int i = 0; i < 7; i++)
+            rest.add(q.take());
+        assertEquals(0, q.size());
+        assertTrue(rest.containsAll(tickets.subList(3, 10)));
+    }
+
+    @Test
+    public void testAffinity() throws Exception {
+        final WorkStealingReadyQueue q = new WorkStealingReadyQueue();
+        final Ticket first = ticket(0);
+        final LocalQueue[] worker = new LocalQueue[1];
+
+        /* Offered by a non-worker thread, goes to the shared queue */
+        q.offer(first);
+        assertNull(first.node.affinity);
+        inThread(new Runnable() {
+            public void run() {
+                q.attach();
+                try {
+                    assertSame(first, q.take());
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                worker[0] = (LocalQueue) first.node.affinity;
+            }
+        });
+        assertNotNull(worker[0]);
+
+        /* The job runs again: its new ticket goes to the worker that ran it */
+        Ticket second = new Ticket(first.node, 1);
+        q.offer(second);
+        assertSame(second, worker[0].peek());
+        assertSame(second, q.take());
+
+        /* Once the worker is gone, its queue refuses new tickets */
+        worker[0].detach();
+        assertFalse(worker[0].isAttached());
+        Ticket third = new Ticket(first.node, 2);
+        q.offer(third);
+        assertNull(worker[0].peek());
+        assertSame(third, q.take());
+    }
+
+    @Test
+    public void testTakeRemoveRace() throws Exception {
+        final JobDependencyGraph graph =
+            new JobDependencyGraph(new WorkStealingReadyQueue());
+        final ConcurrentMap<Job, AtomicInteger> taken =
+            new ConcurrentHashMap<Job, AtomicInteger>();
+        final int jobs = 20000;
+
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread t = new Thread() {
+                public void run() {
+                    ((WorkStealingReadyQueue) graph.getReadyQueue()).attach();
+                    try {
+                        while (true)
+                            count(taken, graph.take());
+                    } catch (InterruptedException e) {
+                        ((WorkStealingReadyQueue) graph.getReadyQueue()).detach();
+                    }
+                }
+            };
+            workers.add(t);
+            t.start();
+        }
+
+        /* Take some jobs directly and remove others while the workers
+         * compete for them */
+        List<Job> all = new ArrayList<Job>();
+        Set<Job> removed = new HashSet<Job>();
+        for (int i = 0; i < jobs; i++) {
+            Job j = new GraphJob();
+            all.add(j);
+            graph.addReady(j);
+            if (i % 3 == 1) {
+                Job t = graph.take(j);
+                if (t != null)
+                    count(taken, t);
+            } else if (i % 3 == 2 && graph.remove(j)) {
+                removed.add(j);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (graph.readyJobs() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        for (Thread t : workers)
+            t.interrupt();
+        for (Thread t : workers)
+            t.join();
+
+        assertEquals(0, graph.readyJobs());
+        for (Job j : all) {
+            AtomicInteger n = taken.get(j);
+            int count = (n == null) ? 0 : n.get();
+            if (removed.contains(j))
+                assertTrue(count <= 1);
+            else
+                assertEquals(1, count);
+        }
+    }
+
+    static void count(ConcurrentMap<Job, AtomicInteger> taken, Job j) {
+        AtomicInteger n = taken.putIfAbsent(j, new AtomicInteger(1));
+        if (n != null)
+            n.incrementAndGet();
+    }
+}
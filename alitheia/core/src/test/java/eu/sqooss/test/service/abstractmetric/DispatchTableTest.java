@@ -0,0 +1,116 @@
+package eu.sqooss.test.service.abstractmetric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.junit.Test;
+
+import eu.sqooss.service.abstractmetric.DispatchTable;
+import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DAObject;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.ProjectFile;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.StoredProject;
+
+/**
+ * Checks that a {@link DispatchTable} finds the same getResult() and run()
+ * methods as the lookup AbstractMetric did on every call.
+ */
+public class DispatchTableTest {
+
+    /** A plug-in with the methods of a file and version metric */
+    public static class TestMetric {
+
+        public List<Result> getResult(ProjectFile pf, Metric m) {
+            return null;
+        }
+
+        public List<Result> getResult(ProjectVersion pv, Metric m) {
+            return null;
+        }
+
+        public void run(ProjectFile pf) {}
+
+        public void run(ProjectVersion pv) {}
+    }
+
+    /** Like a Hibernate proxy, a subclass of the activator */
+    static class ProjectFileProxy extends ProjectFile {}
+
+    /** A subclass of a proxy, two levels below the activator */
+    static class ProjectFileProxyProxy extends ProjectFileProxy {}
+
+    static final Class<?>[] TYPES = {
+        ProjectFile.class, ProjectFileProxy.class, ProjectFileProxyProxy.class,
+        ProjectVersion.class, StoredProject.class, DAObject.class, Metric.class
+    };
+
+    /* The lookup AbstractMetric did before the dispatch tables */
+    static Method lookup(Class<?> target, String name, Class<?> argType,
+            Class<?>... extraArgs) throws NoSuchMethodException {
+        Class<?>[] args = new Class<?>[extraArgs.length + 1];
+        System.arraycopy(extraArgs, 0, args, 1, extraArgs.length);
+        try {
+            args[0] = argType;
+            return target.getMethod(name, args);
+        } catch (NoSuchMethodException e) {
+            args[0] = argType.getSuperclass();
+            return target.getMethod(name, args);
+        }
+    }
+
+    private void assertSameLookup(DispatchTable t, String name,
+            Class<?>... extraArgs) throws Exception {
+        for (Class<?> type : TYPES) {
+            Method expected = null;
+            try {
+                expected = lookup(TestMetric.class, name, type, extraArgs);
+            } catch (NoSuchMethodException e) {
+                // The table should not find one either
+            }
+
+            if (expected == null) {
+                assertFalse(type.getName(), t.add(type));
+                try {
+                    t.find(type);
+                    fail("Found " + name + "() for " + type.getName());
+                } catch (NoSuchMethodException e) {
+                    // Expected
+                }
+            } else {
+                assertTrue(type.getName(), t.add(type));
+                assertEquals(type.getName(), expected, t.find(type));
+            }
+        }
+    }
+
+    @Test
+    public void testGetResult() throws Exception {
+        DispatchTable t = new DispatchTable(TestMetric.class, "getResult", Metric.class);
+        assertSameLookup(t, "getResult", Metric.class);
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        DispatchTable t = new DispatchTable(TestMetric.class, "run");
+        assertSameLookup(t, "run");
+    }
+
+    @Test
+    public void testSuperclassFallback() throws Exception {
+        DispatchTable t = new DispatchTable(TestMetric.class, "run");
+        Method m = TestMetric.class.getMethod("run", ProjectFile.class);
+        assertEquals(m, t.find(ProjectFileProxy.class));
+        /* Only the direct superclass is tried */
+        assertFalse(t.add(ProjectFileProxyProxy.class));
+        /* Cached per argument type */
+        assertSame(t.find(ProjectFileProxy.class), t.find(ProjectFileProxy.class));
+    }
+}
@@ -0,0 +1,175 @@
+package eu.sqooss.test.service.abstractmetric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.abstractmetric.FileTypeAggregate;
+import eu.sqooss.service.abstractmetric.MetricDecl;
+import eu.sqooss.service.abstractmetric.MetricDeclarations;
+import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Directory;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.ProjectFile;
+import eu.sqooss.service.db.ProjectFileMeasurement;
+import eu.sqooss.service.db.ProjectFileState;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.service.fds.FileTypeMatcher.FileType;
+import eu.sqooss.test.service.db.TestDB;
+
+/**
+ * Checks that adding up the changes of file results between versions, as
+ * incremental version metrics do, gives the same totals as aggregating
+ * the results of all files of each version.
+ */
+public class FileResultChangesTest {
+
+    @MetricDeclarations(metrics = {
+        @MetricDecl(mnemonic = "CHGLOC", activators = {ProjectFile.class},
+                descr = "Test metric", type = Result.ResultType.INTEGER)
+    })
+    public static class FileMetric extends AbstractMetric {
+
+        public FileMetric() {
+            super(null);
+        }
+
+        public String getName() {
+            return "File result changes test metric";
+        }
+
+        public String getVersion() {
+            return "1.0";
+        }
+
+        public List<Result> getResult(ProjectFile f, Metric m) {
+            return getResult(f, ProjectFileMeasurement.class, m,
+                    Result.ResultType.INTEGER);
+        }
+
+        public void run(ProjectFile f) {
+        }
+
+        FileTypeAggregate total(ProjectVersion v, Metric m) {
+            return aggregateFileResults(v, m);
+        }
+
+        FileTypeAggregate changes(ProjectVersion from, ProjectVersion to,
+                Metric m) {
+            return aggregateFileResultChanges(from, to, m);
+        }
+    }
+
+    static DBService db;
+    static FileMetric metric;
+    static StoredProject project;
+    static List<ProjectVersion> versions = new ArrayList<ProjectVersion>();
+
+    @BeforeClass
+    public static void setUp() {
+        db = TestDB.start();
+        metric = new FileMetric();
+
+        db.startDBSession();
+        assertTrue(metric.install());
+        Metric loc = Metric.getMetricByMnemonic("CHGLOC");
+        project = new StoredProject("changes");
+        db.addRecord(project);
+        for (int i = 1; i <= 4; i++) {
+            ProjectVersion v = new ProjectVersion(project);
+            v.setRevisionId(String.valueOf(i));
+            v.setSequence(i);
+            v.setTimestamp(i * 1000L);
+            db.addRecord(v);
+            versions.add(v);
+        }
+
+        ProjectFile a1 = add("a.java", 1, ProjectFileState.added(), loc, 10L);
+        ProjectFile b1 = add("b.java", 1, ProjectFileState.added(), loc, 20L);
+        ProjectFile r1 = add("README.txt", 1, ProjectFileState.added(), loc, 5L);
+
+        /* Changed, added, and a binary file that is never measured */
+        until(a1, 1);
+        ProjectFile a2 = add("a.java", 2, ProjectFileState.modified(), loc, 15L);
+        ProjectFile c2 = add("c.java", 2, ProjectFileState.added(), loc, 7L);
+        add("logo.png", 2, ProjectFileState.added(), loc, null);
+
+        /* Deleted, changed */
+        until(b1, 2);
+        add("b.java", 3, ProjectFileState.deleted(), loc, null);
+        until(r1, 2);
+        add("README.txt", 3, ProjectFileState.modified(), loc, 6L);
+
+        /* Changed, deleted */
+        until(a2, 3);
+        add("a.java", 4, ProjectFileState.modified(), loc, 12L);
+        until(c2, 3);
+        add("c.java", 4, ProjectFileState.deleted(), loc, null);
+        db.commitDBSession();
+    }
+
+    private static ProjectFile add(String name, int version,
+            ProjectFileState state, Metric m, Long result) {
+        ProjectFile pf = new ProjectFile(versions.get(version - 1));
+        pf.setName(name);
+        pf.setState(state);
+        pf.setDir(Directory.getDirectory("/", true));
+        db.addRecord(pf);
+        if (result != null)
+            db.addRecord(new ProjectFileMeasurement(m, pf, result));
+        return pf;
+    }
+
+    private static void until(ProjectFile pf, int version) {
+        pf.setValidUntil(versions.get(version - 1));
+    }
+
+    @Test
+    public void testChangesAddUpToTotals() {
+        db.startDBSession();
+        Metric loc = Metric.getMetricByMnemonic("CHGLOC");
+        int types = FileType.values().length;
+        long[] count = new long[types];
+        double[] sum = new double[types];
+
+        ProjectVersion previous = null;
+        for (ProjectVersion stored : versions) {
+            ProjectVersion v = db.findObjectById(ProjectVersion.class,
+                    stored.getId());
+            FileTypeAggregate total = metric.total(v, loc);
+            if (previous == null) {
+                for (FileType t : FileType.values()) {
+                    count[t.ordinal()] = total.getCount(loc, t);
+                    sum[t.ordinal()] = total.getSum(loc, t);
+                }
+            } else {
+                FileTypeAggregate delta = metric.changes(previous, v, loc);
+                for (FileType t : FileType.values()) {
+                    count[t.ordinal()] += delta.getCount(loc, t);
+                    sum[t.ordinal()] += delta.getSum(loc, t);
+                }
+            }
+
+            for (FileType t : FileType.values()) {
+                String msg = "Version " + v.getSequence() + ", " + t;
+                assertEquals(msg, total.getCount(loc, t), count[t.ordinal()]);
+                assertEquals(msg, total.getSum(loc, t), sum[t.ordinal()], 0);
+            }
+            previous = v;
+        }
+
+        /* a.java, README.txt; c.java and b.java are gone */
+        FileTypeAggregate last = metric.total(previous, loc);
+        assertEquals(2, last.getCount(loc));
+        assertEquals(18.0, last.getSum(loc), 0);
+        db.rollbackDBSession();
+    }
+}
@@ -0,0 +1,184 @@
+package eu.sqooss.test.service.abstractmetric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.abstractmetric.MetricDecl;
+import eu.sqooss.service.abstractmetric.MetricDeclarations;
+import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.ProjectVersionMeasurement;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.test.service.db.TestDB;
+
+/**
+ * Tests the conversion of results stored as strings by plug-ins that did
+ * not declare a result type into the numeric columns.
+ */
+public class MigrateResultsTest {
+
+    public static abstract class VersionMetric extends AbstractMetric {
+
+        public VersionMetric() {
+            super(null);
+        }
+
+        public String getVersion() {
+            return "1.0";
+        }
+
+        public List<Result> getResult(ProjectVersion v, Metric m) {
+            return getResult(v, ProjectVersionMeasurement.class, m,
+                    Result.ResultType.INTEGER);
+        }
+
+        public void run(ProjectVersion v) {
+        }
+
+        public void migrate() {
+            migrateResults();
+        }
+    }
+
+    @MetricDeclarations(metrics = {
+        @MetricDecl(mnemonic = "MIGINT", activators = {ProjectVersion.class},
+                descr = "Test metric", type = Result.ResultType.INTEGER),
+        @MetricDecl(mnemonic = "MIGDBL", activators = {ProjectVersion.class},
+                descr = "Test metric", type = Result.ResultType.DOUBLE),
+        @MetricDecl(mnemonic = "MIGSTR", activators = {ProjectVersion.class},
+                descr = "Test metric")
+    })
+    public static class OwnSessionMetric extends VersionMetric {
+        public String getName() {
+            return "Migration test metric";
+        }
+    }
+
+    @MetricDeclarations(metrics = {
+        @MetricDecl(mnemonic = "MIGCALLER", activators = {ProjectVersion.class},
+                descr = "Test metric", type = Result.ResultType.INTEGER)
+    })
+    public static class CallerSessionMetric extends VersionMetric {
+        public String getName() {
+            return "Migration test metric, caller session";
+        }
+    }
+
+    static DBService db;
+    static ProjectVersion version;
+
+    @BeforeClass
+    public static void setUp() {
+        db = TestDB.start();
+        db.startDBSession();
+        StoredProject sp = new StoredProject("migration");
+        db.addRecord(sp);
+        version = new ProjectVersion(sp);
+        version.setRevisionId("1");
+        version.setSequence(1);
+        version.setTimestamp(1000L);
+        db.addRecord(version);
+        db.commitDBSession();
+    }
+
+    /**
+     * Installs the plug-in as an earlier version that declared no result
+     * types, which stored all results as strings.
+     */
+    private static void installUntyped(VersionMetric metric) {
+        db.startDBSession();
+        assertTrue(metric.install());
+        db.commitDBSession();
+
+        /* In a new session, as install() stores the declared metrics */
+        db.startDBSession();
+        for (Metric m : metric.getAllSupportedMetrics())
+            m.setResultType(null);
+        db.commitDBSession();
+    }
+
+    /** Stores a result as a string, whatever the metric's type */
+    private static long store(String mnemonic, String result) {
+        ProjectVersionMeasurement pvm = new ProjectVersionMeasurement();
+        pvm.setMetric(Metric.getMetricByMnemonic(mnemonic));
+        pvm.setProjectVersion(
+                db.findObjectById(ProjectVersion.class, version.getId()));
+        pvm.setResult(result);
+        db.addRecord(pvm);
+        return pvm.getId();
+    }
+
+    private static ProjectVersionMeasurement load(long id) {
+        return db.findObjectById(ProjectVersionMeasurement.class, id);
+    }
+
+    @Test
+    public void testMigrate() {
+        VersionMetric metric = new OwnSessionMetric();
+        installUntyped(metric);
+
+        db.startDBSession();
+        long i1 = store("MIGINT", "42");
+        long i2 = store("MIGINT", " 7 ");
+        long nan = store("MIGINT", "n/a");
+        long d = store("MIGDBL", "2.5");
+        long s = store("MIGSTR", "12");
+        db.commitDBSession();
+
+        metric.migrate();
+
+        db.startDBSession();
+        assertEquals(Long.valueOf(42), load(i1).getIntResult());
+        assertNull(load(i1).getDoubleResult());
+        assertEquals("42", load(i1).getResult());
+        assertEquals(Long.valueOf(7), load(i2).getIntResult());
+        assertNull(load(nan).getIntResult());
+        assertEquals("n/a", load(nan).getResult());
+        assertEquals(Double.valueOf(2.5), load(d).getDoubleResult());
+        assertNull(load(s).getIntResult());
+        assertEquals("12", load(s).getResult());
+
+        assertEquals(Result.ResultType.INTEGER,
+                Metric.getMetricByMnemonic("MIGINT").getResultType());
+        assertEquals(Result.ResultType.DOUBLE,
+                Metric.getMetricByMnemonic("MIGDBL").getResultType());
+
+        /* Migrated metrics are not converted again */
+        long later = store("MIGINT", "5");
+        db.commitDBSession();
+        metric.migrate();
+        db.startDBSession();
+        assertNull(load(later).getIntResult());
+        db.rollbackDBSession();
+    }
+
+    @Test
+    public void testMigrateInCallerSession() {
+        VersionMetric metric = new CallerSessionMetric();
+        installUntyped(metric);
+
+        db.startDBSession();
+        long id = store("MIGCALLER", "3");
+        db.commitDBSession();
+
+        db.startDBSession();
+        metric.migrate();
+        assertTrue(db.isDBSessionActive());
+        db.commitDBSession();
+
+        db.startDBSession();
+        assertEquals(Long.valueOf(3), load(id).getIntResult());
+        assertEquals(Result.ResultType.INTEGER,
+                Metric.getMetricByMnemonic("MIGCALLER").getResultType());
+        db.rollbackDBSession();
+    }
+}
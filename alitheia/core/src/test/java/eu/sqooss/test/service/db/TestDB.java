@@ -0,0 +1,50 @@
+package eu.sqooss.test.service.db;
+
+import java.net.URL;
+import java.util.Properties;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.impl.service.db.DBServiceImpl;
+import eu.sqooss.impl.service.logging.LogManagerImpl;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.logging.LogManager;
+import eu.sqooss.service.logging.Logger;
+
+/**
+ * Starts the DB service on an in-memory H2 database, with the schema of
+ * the core's hibernate.cfg.xml, and a test instance of the core holding
+ * it, for tests that need to store DAOs.
+ */
+public class TestDB {
+
+    private static DBService db;
+    private static Logger logger;
+
+    public static synchronized DBService start() {
+        if (db != null)
+            return db;
+
+        Properties conProp = new Properties();
+        conProp.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        conProp.setProperty("hibernate.connection.url",
+                "jdbc:h2:mem:alitheia;DB_CLOSE_DELAY=-1");
+        conProp.setProperty("hibernate.connection.username", "sa");
+        conProp.setProperty("hibernate.connection.password", "");
+        conProp.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        conProp.setProperty("hibernate.connection.provider_class",
+                "org.hibernate.connection.DriverManagerConnectionProvider");
+
+        URL config = TestDB.class.getResource("/hibernate.cfg.xml");
+        LogManager lm = new LogManagerImpl(true);
+        logger = lm.createLogger("sqooss.db");
+
+        db = new DBServiceImpl(conProp, config, logger);
+        AlitheiaCore.testInstance();
+        return db;
+    }
+
+    public static Logger logger() {
+        start();
+        return logger;
+    }
+}
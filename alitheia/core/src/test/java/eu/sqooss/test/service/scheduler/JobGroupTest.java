@@ -0,0 +1,205 @@
+package eu.sqooss.test.service.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import eu.sqooss.impl.service.scheduler.SchedulerServiceImpl;
+import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.JobGroup;
+import eu.sqooss.service.scheduler.JobGroupListener;
+import eu.sqooss.service.scheduler.ResumePoint;
+import eu.sqooss.service.scheduler.SchedulerException;
+import eu.sqooss.test.service.db.TestDB;
+
+/**
+ * Tests job groups and the jobs yielding until a group is done.
+ */
+public class JobGroupTest {
+
+    static SchedulerServiceImpl sched;
+
+    /** Does nothing, or fails */
+    static class QuickJob extends Job {
+        final boolean fail;
+
+        QuickJob(boolean fail) {
+            this.fail = fail;
+        }
+
+        public long priority() {
+            return 0;
+        }
+
+        protected void run() throws Exception {
+            if (fail)
+                throw new Exception("Failing on purpose");
+        }
+    }
+
+    /** Counts the calls of a group listener */
+    static class CountingListener implements JobGroupListener {
+        final AtomicInteger calls = new AtomicInteger();
+
+        public void groupDone(JobGroup g) {
+            calls.incrementAndGet();
+        }
+    }
+
+    /**
+     * Queues a group and yields until it is done. The group is done
+     * before the job yields, so the scheduler's listener is added to a
+     * complete group.
+     */
+    static class YieldingJob extends Job {
+        final JobGroup group;
+        final AtomicInteger resumed = new AtomicInteger();
+        final ResumePoint afterGroup = new ResumePoint() {
+            public void resume() {
+                resumed.incrementAndGet();
+            }
+        };
+
+        YieldingJob(JobGroup group) {
+            this.group = group;
+        }
+
+        public long priority() {
+            return 0;
+        }
+
+        protected void run() throws Exception {
+            getScheduler().enqueueGroup(group);
+            group.waitForDone();
+            getScheduler().yield(group, afterGroup);
+        }
+    }
+
+    @BeforeClass
+    public static void setUp() {
+        /* Jobs look up the DB service through the core */
+        TestDB.start();
+        sched = new SchedulerServiceImpl();
+        sched.setInitParams(null, TestDB.logger());
+        sched.startExecute(2);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        sched.stopExecute();
+    }
+
+    @Test
+    public void testEmptyGroup() throws SchedulerException {
+        JobGroup g = new JobGroup("empty");
+        assertFalse(g.isDone());
+        sched.enqueueGroup(g);
+        assertTrue(g.isDone());
+        assertEquals(100f, g.getProgress(), 0);
+        assertEquals(0, g.getFinished());
+        assertEquals(0, g.getFailed());
+    }
+
+    @Test(expected = SchedulerException.class)
+    public void testAddAfterQueued() throws SchedulerException {
+        JobGroup g = new JobGroup("queued");
+        sched.enqueueGroup(g);
+        g.add(new QuickJob(false));
+    }
+
+    @Test(timeout = 10000)
+    public void testListenerAfterCompletion() throws Exception {
+        JobGroup g = new JobGroup("listeners");
+        g.add(new QuickJob(false));
+        g.add(new QuickJob(false));
+        CountingListener before = new CountingListener();
+        g.addListener(before);
+        sched.enqueueGroup(g);
+        g.waitForDone();
+        /* Listeners are called after waiting threads are woken up */
+        while (before.calls.get() == 0)
+            Thread.sleep(10);
+
+        /* Called by the adding thread, before addListener returns */
+        CountingListener after = new CountingListener();
+        g.addListener(after);
+        assertEquals(1, after.calls.get());
+        assertEquals(1, before.calls.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testCounts() throws Exception {
+        JobGroup g = new JobGroup("counts");
+        g.add(new QuickJob(false));
+        g.add(new QuickJob(true));
+        g.add(new QuickJob(false));
+        g.add(new QuickJob(true));
+        g.add(new QuickJob(false));
+        assertEquals(5, g.size());
+        sched.enqueueGroup(g);
+        g.waitForDone();
+
+        assertEquals(3, g.getFinished());
+        assertEquals(2, g.getFailed());
+        assertEquals(100f, g.getProgress(), 0);
+        for (Job j : g.getJobs())
+            assertTrue(j.state() == Job.State.Finished
+                    || j.state() == Job.State.Error);
+    }
+
+    @Test(timeout = 10000)
+    public void testYieldAfterGroupDone() throws Exception {
+        JobGroup g = new JobGroup("yield");
+        g.add(new QuickJob(false));
+        YieldingJob j = new YieldingJob(g);
+        sched.enqueue(j);
+        waitForState(j, Job.State.Finished);
+        assertEquals(1, j.resumed.get());
+
+        /* Nothing resumes the job a second time */
+        Thread.sleep(200);
+        assertEquals(1, j.resumed.get());
+        assertEquals(Job.State.Finished, j.state());
+    }
+
+    @Test(timeout = 10000)
+    public void testYieldEmptyGroup() throws Exception {
+        YieldingJob j = new YieldingJob(new JobGroup("yield empty"));
+        sched.enqueue(j);
+        waitForState(j, Job.State.Finished);
+        assertEquals(1, j.resumed.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testYieldOutsideWorker() throws Exception {
+        JobGroup g = new JobGroup("outside");
+        g.add(new QuickJob(false));
+        sched.enqueueGroup(g);
+        final AtomicInteger resumed = new AtomicInteger();
+
+        /* Blocks until the group is done, then resumes in this thread */
+        sched.yield(g, new ResumePoint() {
+            public void resume() {
+                resumed.incrementAndGet();
+            }
+        });
+        assertTrue(g.isDone());
+        assertEquals(1, resumed.get());
+    }
+
+    private static void waitForState(Job j, Job.State s)
+            throws InterruptedException {
+        while (j.state() != s) {
+            if (j.state() == Job.State.Error)
+                fail("Job failed: " + j.getErrorException());
+            Thread.sleep(10);
+        }
+    }
+}
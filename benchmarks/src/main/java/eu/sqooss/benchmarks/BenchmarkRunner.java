@@ -0,0 +1,24 @@
+package eu.sqooss.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the benchmarks with the JMH command line, writing the results to
+ * jmh-result.json unless another result format or file is given, so that
+ * runs can be compared by tools.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        List<String> argv = new ArrayList<String>(Arrays.asList(args));
+        if (!argv.contains("-rf"))
+            argv.addAll(0, Arrays.asList("-rf", "json"));
+        if (!argv.contains("-rff"))
+            argv.addAll(0, Arrays.asList("-rff", "jmh-result.json"));
+        Main.main(argv.toArray(new String[argv.size()]));
+    }
+}
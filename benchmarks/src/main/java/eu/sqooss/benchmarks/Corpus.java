@@ -0,0 +1,105 @@
+package eu.sqooss.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The sources the benchmarks run on, loaded from the corpus directory on
+ * the classpath. The files are listed in corpus/index, one path per line,
+ * relative to the corpus directory.
+ */
+public class Corpus {
+
+    private static final String ROOT = "/corpus/";
+
+    /** A corpus file and its contents */
+    public static class Source {
+        public final String name;
+        public final byte[] data;
+
+        Source(String name, byte[] data) {
+            this.name = name;
+            this.data = data;
+        }
+
+        /** @return The file name extension, without the dot */
+        public String extension() {
+            return name.substring(name.lastIndexOf('.') + 1);
+        }
+
+        public String text() {
+            try {
+                return new String(data, "UTF-8");
+            } catch (IOException e) {
+                throw new RuntimeException(e); // Required by the JRE spec
+            }
+        }
+    }
+
+    /**
+     * Loads the files of a corpus directory, e.g. "java" or "diff".
+     */
+    public static List<Source> load(String dir) throws IOException {
+        List<Source> sources = new ArrayList<Source>();
+        for (String path : index()) {
+            if (path.startsWith(dir + "/"))
+                sources.add(new Source(path, read(ROOT + path)));
+        }
+        if (sources.isEmpty())
+            throw new IOException("No corpus files in " + dir);
+        return sources;
+    }
+
+    /**
+     * Loads the files of several corpus directories.
+     */
+    public static List<Source> load(String... dirs) throws IOException {
+        List<Source> sources = new ArrayList<Source>();
+        for (String dir : dirs)
+            sources.addAll(load(dir));
+        return sources;
+    }
+
+    private static List<String> index() throws IOException {
+        InputStream in = open(ROOT + "index");
+        List<String> paths = new ArrayList<String>();
+        try {
+            BufferedReader r = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            String line;
+            while ((line = r.readLine()) != null) {
+                line = line.trim();
+                if (line.length() > 0 && !line.startsWith("#"))
+                    paths.add(line);
+            }
+        } finally {
+            in.close();
+        }
+        return paths;
+    }
+
+    private static byte[] read(String resource) throws IOException {
+        InputStream in = open(resource);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(16384);
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1)
+                out.write(buf, 0, n);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static InputStream open(String resource) throws IOException {
+        InputStream in = Corpus.class.getResourceAsStream(resource);
+        if (in == null)
+            throw new IOException("Missing corpus resource " + resource);
+        return in;
+    }
+}
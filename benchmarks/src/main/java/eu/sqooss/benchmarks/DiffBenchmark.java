@@ -0,0 +1,56 @@
+package eu.sqooss.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import eu.sqooss.impl.service.tds.diff.UnifiedDiffParser;
+
+/**
+ * Parsing of the unified diffs the TDS returns for a revision, over the
+ * diffs in the corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DiffBenchmark {
+
+    List<String> diffs;
+
+    @Setup
+    public void setup() throws IOException {
+        diffs = new ArrayList<String>();
+        for (Corpus.Source s : Corpus.load("diff")) {
+            String diff = s.text();
+            UnifiedDiffParser p = new UnifiedDiffParser(null, null, "/", diff);
+            if (!p.parseDiff())
+                throw new IOException(s.name + ": " + p.getError());
+            diffs.add(diff);
+        }
+    }
+
+    @Benchmark
+    public void parseDiff(Blackhole bh) {
+        for (String diff : diffs) {
+            UnifiedDiffParser p = new UnifiedDiffParser(null, null, "/", diff);
+            bh.consume(p.parseDiff());
+            bh.consume(p.getDiffChunks());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package eu.sqooss.benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import eu.sqooss.service.abstractmetric.DispatchTable;
+import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.ProjectFile;
+import eu.sqooss.service.db.ProjectVersion;
+
+/**
+ * Dispatch of the getResult() and run() calls of a metric plug-in on the
+ * type of the activator: the method lookup AbstractMetric did on every
+ * call, against the lookups cached in a {@link DispatchTable}. The proxy
+ * activator, like a Hibernate proxy, is a subclass of ProjectFile and
+ * takes the superclass fallback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    /** A plug-in with the methods of a file and version metric */
+    public static class FileMetric {
+
+        public List<Result> getResult(ProjectFile pf, Metric m) {
+            return null;
+        }
+
+        public List<Result> getResult(ProjectVersion pv, Metric m) {
+            return null;
+        }
+
+        public void run(ProjectFile pf) {}
+
+        public void run(ProjectVersion pv) {}
+    }
+
+    /** Like a Hibernate proxy, a subclass of the activator */
+    public static class ProjectFileProxy extends ProjectFile {}
+
+    @Param({"file", "proxy"})
+    String activator;
+
+    FileMetric metric;
+    Object o;
+    Metric m;
+    DispatchTable getResult;
+    DispatchTable run;
+
+    @Setup
+    public void setup() {
+        metric = new FileMetric();
+        o = activator.equals("proxy") ? new ProjectFileProxy() : new ProjectFile();
+        m = new Metric();
+        getResult = new DispatchTable(FileMetric.class, "getResult", Metric.class);
+        run = new DispatchTable(FileMetric.class, "run");
+        getResult.add(ProjectFile.class);
+        run.add(ProjectFile.class);
+    }
+
+    /** What AbstractMetric did before the dispatch tables */
+    @Benchmark
+    public void lookup(Blackhole bh) throws Exception {
+        Method get;
+        try {
+            get = metric.getClass().getMethod("getResult", o.getClass(), Metric.class);
+        } catch (NoSuchMethodException e) {
+            get = metric.getClass().getMethod("getResult",
+                    o.getClass().getSuperclass(), Metric.class);
+        }
+        bh.consume(get.invoke(metric, o, m));
+
+        Method r;
+        try {
+            r = metric.getClass().getMethod("run", o.getClass());
+        } catch (NoSuchMethodException e) {
+            r = metric.getClass().getMethod("run", o.getClass().getSuperclass());
+        }
+        bh.consume(r.invoke(metric, o));
+    }
+
+    @Benchmark
+    public void dispatchTable(Blackhole bh) throws Exception {
+        bh.consume(getResult.find(o.getClass()).invoke(metric, o, m));
+        bh.consume(run.find(o.getClass()).invoke(metric, o));
+    }
+}
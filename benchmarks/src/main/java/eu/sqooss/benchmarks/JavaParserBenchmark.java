@@ -0,0 +1,136 @@
+package eu.sqooss.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.runtime.ANTLRInputStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.tree.Tree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import eu.sqooss.parsers.java.ASTWalker;
+import eu.sqooss.parsers.java.CBOCalculator;
+import eu.sqooss.parsers.java.EntityExtractor;
+import eu.sqooss.parsers.java.InheritanceExtractor;
+import eu.sqooss.parsers.java.JavaTreeLexer;
+import eu.sqooss.parsers.java.JavaTreeParser;
+import eu.sqooss.parsers.java.LCOMCalculator;
+import eu.sqooss.parsers.java.McCabeCalculator;
+import eu.sqooss.parsers.java.ParseResults;
+import eu.sqooss.parsers.java.SpanningNodeAdaptor;
+
+/**
+ * The stages JavaUpdaterJob and the Java metrics run for every changed
+ * file: lexing, parsing to a tree, walking the tree with all processors,
+ * and encoding the results for the parse cache. Each operation processes
+ * the whole Java corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class JavaParserBenchmark {
+
+    List<Corpus.Source> sources;
+    List<Tree> trees;
+    List<ParseResults> results;
+    List<byte[]> encoded;
+
+    @Setup
+    public void setup() throws Exception {
+        sources = Corpus.load("java");
+        trees = new ArrayList<Tree>();
+        results = new ArrayList<ParseResults>();
+        encoded = new ArrayList<byte[]>();
+        for (Corpus.Source s : sources) {
+            trees.add(parseTree(s.data));
+            ParseResults r = ParseResults.parse(new ByteArrayInputStream(s.data));
+            results.add(r);
+            encoded.add(r.toBytes());
+        }
+    }
+
+    @Benchmark
+    public void lex(Blackhole bh) throws IOException {
+        for (Corpus.Source s : sources) {
+            JavaTreeLexer lexer = new JavaTreeLexer(
+                    new ANTLRInputStream(new ByteArrayInputStream(s.data)));
+            CommonTokenStream tokens = new CommonTokenStream(lexer);
+            tokens.fill();
+            bh.consume(tokens.size());
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh) throws IOException, RecognitionException {
+        for (Corpus.Source s : sources)
+            bh.consume(parseTree(s.data));
+    }
+
+    @Benchmark
+    public void walk(Blackhole bh) {
+        for (Tree t : trees) {
+            ASTWalker walker = new ASTWalker();
+            EntityExtractor entityExtractor = new EntityExtractor();
+            walker.addProcessor(entityExtractor);
+            McCabeCalculator mcCabeCalculator = new McCabeCalculator(entityExtractor);
+            walker.addProcessor(mcCabeCalculator);
+            InheritanceExtractor inheritanceExtractor = new InheritanceExtractor(entityExtractor);
+            walker.addProcessor(inheritanceExtractor);
+            LCOMCalculator lcomCalculator = new LCOMCalculator(entityExtractor);
+            walker.addProcessor(lcomCalculator);
+            CBOCalculator cboCalculator = new CBOCalculator(inheritanceExtractor);
+            walker.addProcessor(cboCalculator);
+            walker.walk(t);
+
+            bh.consume(entityExtractor.getResults());
+            bh.consume(mcCabeCalculator.getResults());
+            bh.consume(lcomCalculator.getResults());
+            bh.consume(cboCalculator.getResults());
+        }
+    }
+
+    /** Parsing and walking, as done on a parse cache miss */
+    @Benchmark
+    public void parseAndWalk(Blackhole bh) throws IOException, RecognitionException {
+        for (Corpus.Source s : sources)
+            bh.consume(ParseResults.parse(new ByteArrayInputStream(s.data)));
+    }
+
+    @Benchmark
+    public void encodeResults(Blackhole bh) throws IOException {
+        for (ParseResults r : results)
+            bh.consume(r.toBytes());
+    }
+
+    /** Decoding cached results, as done on a parse cache hit */
+    @Benchmark
+    public void decodeResults(Blackhole bh) throws IOException {
+        for (byte[] data : encoded)
+            bh.consume(ParseResults.fromBytes(data));
+    }
+
+    static Tree parseTree(byte[] source) throws IOException, RecognitionException {
+        JavaTreeLexer lexer = new JavaTreeLexer(
+                new ANTLRInputStream(new ByteArrayInputStream(source)));
+        JavaTreeParser parser = new JavaTreeParser(new CommonTokenStream(lexer));
+        parser.setTreeAdaptor(new SpanningNodeAdaptor());
+        return (Tree) parser.compilationUnit().getTree();
+    }
+}
@@ -0,0 +1,69 @@
+package eu.sqooss.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import eu.sqooss.metrics.structural.Structural;
+
+/**
+ * The method declaration matching of the structural metric, with the
+ * patterns from its language configuration. The sources are used with
+ * their comments, the metric strips them first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StructuralBenchmark {
+
+    @Param({"java", "c"})
+    String language;
+
+    List<Corpus.Source> sources;
+    Pattern methodMatch;
+
+    @Setup
+    public void setup() throws IOException {
+        sources = Corpus.load(language);
+
+        Properties p = new Properties();
+        InputStream in = Structural.class.getResourceAsStream("/config.properties");
+        if (in == null)
+            throw new IOException("Structural language configuration not found");
+        try {
+            p.load(in);
+        } finally {
+            in.close();
+        }
+
+        String regexp = p.getProperty(language + ".method.regexp");
+        if (regexp == null)
+            throw new IOException("No method pattern for " + language);
+        methodMatch = Pattern.compile(regexp, Pattern.MULTILINE);
+    }
+
+    @Benchmark
+    public void methodStartLines(Blackhole bh) {
+        for (Corpus.Source s : sources)
+            bh.consume(Structural.methodStartLines(methodMatch, s.data));
+    }
+}
@@ -0,0 +1,51 @@
+package eu.sqooss.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import eu.sqooss.metrics.wc.WcImplementation;
+
+/**
+ * Line, comment and word counting of the wc metric, over the corpus
+ * files of each language.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class WcBenchmark {
+
+    @Param({"java", "c", "python"})
+    String language;
+
+    List<Corpus.Source> sources;
+
+    @Setup
+    public void setup() throws IOException {
+        sources = Corpus.load(language);
+    }
+
+    @Benchmark
+    public void processStream(Blackhole bh) throws IOException {
+        for (Corpus.Source s : sources)
+            bh.consume(WcImplementation.processStream(s.extension(),
+                    new ByteArrayInputStream(s.data)));
+    }
+}
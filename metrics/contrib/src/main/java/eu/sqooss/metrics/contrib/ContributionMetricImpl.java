@@ -42,7 +42,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -179,22 +178,13 @@ public class ContributionMetricImpl extends AbstractMetric {
     	params.put("sp", sp);
     	
     	String qVersionIDs = "select pv.id from ProjectVersion pv where pv.id not in (select ca.changedResourceId from ContribAction ca where developer.storedProject =:sp and ca.contribActionType.actionCategory='C') and pv.project = :sp order by pv.sequence";
-    	List<Long> objectIds = (List<Long>) db.doHQL(qVersionIDs, params);
-    	TreeSet<Long> ids = new TreeSet<Long>();
-    	ids.addAll(objectIds);
-    	IDs.put(MetricType.Type.PROJECT_VERSION, ids);
+    	IDs.put(MetricType.Type.PROJECT_VERSION, db.doHQLIds(qVersionIDs, params));
     	
     	String qThreadIDs = "select mlt.id from MailingListThread mlt where mlt.id not in (select ca.changedResourceId from ContribAction ca where developer.storedProject =:sp and ca.contribActionType.actionCategory='M') and mlt.list.storedProject = :sp order by mlt.lastUpdated";
-    	objectIds = (List<Long>) db.doHQL(qThreadIDs, params);
-    	ids = new TreeSet<Long>();
-    	ids.addAll(objectIds);
-    	IDs.put(MetricType.Type.MAILTHREAD, ids);
+    	IDs.put(MetricType.Type.MAILTHREAD, db.doHQLIds(qThreadIDs, params));
     	
     	String qBugIDs = "select b.id from Bug b where b.id not in (select ca.changedResourceId from ContribAction ca where developer.storedProject =:sp and ca.contribActionType.actionCategory='B') and b.project = :sp order by b.updateRun";
-    	objectIds = (List<Long>) db.doHQL(qBugIDs, params);
-    	ids = new TreeSet<Long>();
-    	ids.addAll(objectIds);
-    	IDs.put(MetricType.Type.BUG, ids);
+    	IDs.put(MetricType.Type.BUG, db.doHQLIds(qBugIDs, params));
     	
     	return IDs;
     }
@@ -43,6 +43,7 @@ import eu.sqooss.service.abstractmetric.MetricDecl;
 import eu.sqooss.service.abstractmetric.MetricDeclarations;
 import eu.sqooss.service.abstractmetric.Result;
 import eu.sqooss.service.abstractmetric.Result.ResultType;
+import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.Developer;
 import eu.sqooss.service.db.Directory;
 import eu.sqooss.service.db.Metric;
@@ -133,6 +134,15 @@ public class Developermetrics extends AbstractMetric {
         return getResult(pf, ProjectFileMeasurement.class, m, ResultType.INTEGER);
     }
 
+    @Override
+    protected ResultType getStoredResultType(
+            Class<? extends DAObject> activator, Metric m) {
+        if (activator.equals(ProjectFile.class)
+                || activator.equals(ProjectVersion.class))
+            return ResultType.INTEGER;
+        return null;
+    }
+
     public void run(ProjectFile a) throws AlreadyProcessingException {
         int eyeballs = 0;
         Metric m = null;
@@ -47,6 +47,7 @@ import eu.sqooss.service.abstractmetric.MetricDecl;
 import eu.sqooss.service.abstractmetric.MetricDeclarations;
 import eu.sqooss.service.abstractmetric.MetricMismatchException;
 import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.MailMessage;
 import eu.sqooss.service.db.MailingListThread;
@@ -101,6 +102,15 @@ public class DiscussionHeat extends AbstractMetric {
     public List<Result> getResult(ProjectVersion pv, Metric m) {
         return getResult(pv, ProjectVersionMeasurement.class, m, Result.ResultType.INTEGER);
     }
+
+    @Override
+    protected Result.ResultType getStoredResultType(
+            Class<? extends DAObject> activator, Metric m) {
+        if (activator.equals(MailingListThread.class)
+                || activator.equals(ProjectVersion.class))
+            return Result.ResultType.INTEGER;
+        return null;
+    }
     
     public void run(MailingListThread m) throws AlreadyProcessingException {
         
@@ -149,6 +149,15 @@ public class FindbugsMetrics extends AbstractMetric {
                 m, Result.ResultType.INTEGER);
     }
 
+    @Override
+    protected Result.ResultType getStoredResultType(
+            Class<? extends DAObject> activator, Metric m) {
+        if (activator.equals(ProjectFile.class)
+                || activator.equals(ProjectVersion.class))
+            return Result.ResultType.INTEGER;
+        return null;
+    }
+
     public void run(ProjectVersion pv) {
 
         List<ProjectFile> files = pv.getFiles();
@@ -9,9 +9,6 @@ import java.util.regex.Pattern;
 
 import eu.sqooss.parsers.java.*;
 import eu.sqooss.service.fds.FDSService;
-import org.antlr.runtime.ANTLRInputStream;
-import org.antlr.runtime.CommonTokenStream;
-import org.antlr.runtime.tree.Tree;
 import org.osgi.framework.BundleContext;
 
 import eu.sqooss.core.AlitheiaCore;
@@ -20,6 +17,8 @@ import eu.sqooss.service.abstractmetric.MetricDecl;
 import eu.sqooss.service.abstractmetric.MetricDeclarations;
 import eu.sqooss.service.abstractmetric.Result;
 import eu.sqooss.service.abstractmetric.SchedulerHints;
+import eu.sqooss.service.cache.CacheService;
+import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.EncapsulationUnit;
 import eu.sqooss.service.db.EncapsulationUnitMeasurement;
@@ -47,6 +46,21 @@ import eu.sqooss.service.scheduler.SchedulerException;
 @SchedulerHints(activationOrder = {ProjectVersion.class, EncapsulationUnit.class})
 public class JavaMetrics extends AbstractMetric {
 
+    /** Results of files parsed before, shared with the Java parser updater */
+    private static final ParseResultCache parseCache = new ParseResultCache(
+            new ParseResultCache.Store() {
+                public byte[] get(String key) {
+                    CacheService cache = cacheService();
+                    return (cache == null) ? null : cache.get(key);
+                }
+
+                public void set(String key, byte[] data) {
+                    CacheService cache = cacheService();
+                    if (cache != null)
+                        cache.set(key, data);
+                }
+            });
+
     private List<ProjectFile> changedFiles;
     private ProjectVersion pv;
     //Class -> Base 
@@ -75,6 +89,15 @@ public class JavaMetrics extends AbstractMetric {
                 m, Result.ResultType.INTEGER);
     }
 
+    @Override
+    protected Result.ResultType getStoredResultType(
+            Class<? extends DAObject> activator, Metric m) {
+        if (activator.equals(ExecutionUnit.class)
+                || activator.equals(EncapsulationUnit.class))
+            return Result.ResultType.INTEGER;
+        return null;
+    }
+
     public void run(ProjectFile pf) throws Exception {
     }
 
@@ -146,6 +169,13 @@ public class JavaMetrics extends AbstractMetric {
         }
 
         db.commitDBSession();
+        debug("Parse results: ", parseCache.toString());
+    }
+
+    /* The cache service is optional and may start after this bundle */
+    private static CacheService cacheService() {
+        AlitheiaCore core = AlitheiaCore.getInstance();
+        return (core == null) ? null : core.getService(CacheService.class);
     }
 
     protected void parseFile(ProjectFile pf) throws Exception {
@@ -162,54 +192,36 @@ public class JavaMetrics extends AbstractMetric {
             return;
         }
 
-        // Parse the input file
-        ANTLRInputStream input = new ANTLRInputStream(in);
-        JavaTreeLexer lexer = new JavaTreeLexer(input);
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
-        JavaTreeParser parser = new JavaTreeParser(tokens);
-        SpanningNodeAdaptor adaptor = new SpanningNodeAdaptor();
-        parser.setTreeAdaptor(adaptor);
-
-        JavaTreeParser.compilationUnit_return result = parser.compilationUnit();
-
-        Tree t = (Tree) result.getTree();
-
-        // Walkers for resulting tree
-        ASTWalker walker = new ASTWalker();
-        EntityExtractor entityExtractor = new EntityExtractor();
-        walker.addProcessor(entityExtractor);
-        McCabeCalculator mcCabeCalculator = new McCabeCalculator(entityExtractor);
-        walker.addProcessor(mcCabeCalculator);
-        InheritanceExtractor inheritanceExtractor = new InheritanceExtractor(entityExtractor);
-        walker.addProcessor(inheritanceExtractor);
-        LCOMCalculator lcomCalculator = new LCOMCalculator(entityExtractor);
-        walker.addProcessor(lcomCalculator);
-        CBOCalculator cboCalculator = new CBOCalculator(inheritanceExtractor);
-        walker.addProcessor(cboCalculator);
-        walker.walk(t);
+        // Parse the input file, unless its contents were seen before
+        ParseResults results;
+        try {
+            results = parseCache.parse(in);
+        } finally {
+            in.close();
+        }
 
         //Data for associated classes/methods
         List<ExecutionUnit> methods = pf.getChangedExecutionUnits();
         Set<EncapsulationUnit> classes = pf.getEncapsulationUnits();
-        Set<String> foundClasses = entityExtractor.getResults().keySet();
+        Set<String> foundClasses = results.getEntities().keySet();
 
         //Make class graph
         Deque<InheritanceExtractor.ClassInheritance> classInheritance =
-                inheritanceExtractor.getResults();
+                results.getInheritance();
 
         for (InheritanceExtractor.ClassInheritance ci : classInheritance) {
             reducer.put(ci.className, ci.superClass);
         }
 
         // LCOM results
-        writeClassResults(classes, lcomCalculator.getResults(), Metric.getMetricByMnemonic("LCOM"));
+        writeClassResults(classes, results.getLCOM(), Metric.getMetricByMnemonic("LCOM"));
 
         // CBO results
-        writeClassResults(classes, cboCalculator.getResults(), Metric.getMetricByMnemonic("CBO"));
+        writeClassResults(classes, results.getCBO(), Metric.getMetricByMnemonic("CBO"));
 
         // WMC + MCCABE results in one go
         Metric m = Metric.getMetricByMnemonic("WMC");
-        SortedMap<String, Integer> MCCABEresults = mcCabeCalculator.getResults();
+        SortedMap<String, Integer> MCCABEresults = results.getMcCabe();
         for (EncapsulationUnit clazz : classes) {
             Integer wmc = 0;
 
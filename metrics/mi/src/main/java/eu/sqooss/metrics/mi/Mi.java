@@ -215,6 +215,18 @@ public class Mi extends AbstractMetric {
         return getResult(pv, ProjectVersionMeasurement.class, m, Result.ResultType.DOUBLE);
     }
 
+    /**
+     * Only version results are a plain lookup, getResult() has no results
+     * for files that are not directories.
+     */
+    @Override
+    protected Result.ResultType getStoredResultType(
+            Class<? extends DAObject> activator, Metric m) {
+        if (activator.equals(ProjectVersion.class))
+            return Result.ResultType.DOUBLE;
+        return null;
+    }
+
     public void run(ProjectVersion pv) throws AlreadyProcessingException {
         
         String paramIsDirectory = "is_directory";
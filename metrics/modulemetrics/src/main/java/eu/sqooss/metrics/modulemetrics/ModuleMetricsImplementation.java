@@ -48,6 +48,7 @@ import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
 import eu.sqooss.service.abstractmetric.MetricDecl;
 import eu.sqooss.service.abstractmetric.MetricDeclarations;
 import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.Directory;
 import eu.sqooss.service.db.Metric;
 import eu.sqooss.service.db.ProjectDirectory;
@@ -101,6 +102,16 @@ public class ModuleMetricsImplementation extends AbstractMetric {
         return getResult(pv, ProjectVersionMeasurement.class, m, Result.ResultType.FLOAT);
     }
 
+    @Override
+    protected Result.ResultType getStoredResultType(
+            Class<? extends DAObject> activator, Metric m) {
+        if (activator.equals(ProjectFile.class))
+            return Result.ResultType.INTEGER;
+        if (activator.equals(ProjectVersion.class))
+            return Result.ResultType.FLOAT;
+        return null;
+    }
+
     public void run(ProjectFile pf) throws AlreadyProcessingException {
         if (! pf.getIsDirectory()) {
             return;
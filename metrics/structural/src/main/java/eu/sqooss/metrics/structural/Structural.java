@@ -57,6 +57,7 @@ import eu.sqooss.service.abstractmetric.AbstractMetric;
 import eu.sqooss.service.abstractmetric.MetricDecl;
 import eu.sqooss.service.abstractmetric.MetricDeclarations;
 import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.Metric;
 import eu.sqooss.service.db.ProjectFile;
@@ -170,6 +171,15 @@ public class Structural extends AbstractMetric {
         
         return getResult(a, ProjectFileMeasurement.class, m, type);
     }
+
+    @Override
+    protected Result.ResultType getStoredResultType(
+            Class<? extends DAObject> activator, Metric m) {
+        if (!activator.equals(ProjectFile.class))
+            return null;
+        return mimeTypeDouble.contains(m.getMnemonic())?
+                Result.ResultType.DOUBLE: Result.ResultType.INTEGER;
+    }
     
     public void run(ProjectFile pf) {
         if (pf.isDeleted() || pf.getIsDirectory() || 
@@ -347,32 +357,7 @@ public class Structural extends AbstractMetric {
         Pattern methodMatch = Pattern.compile(pattern, Pattern.MULTILINE);
 
         /* Try to detect method/function declaration lines*/
-        String contents = new String(fileNoComments);
-        Matcher m = methodMatch.matcher(contents);
-        
-        List<Integer> methodStart = new ArrayList<Integer>();
-        
-        /*
-         * Since we are working on a byte array version of the file, we need to
-         * take care of CR/LF/CR+LF line endings when counting lines.
-         */
-        while (m.find()) {
-            int numLines = 1;
-            byte prev = 0;
-            for (int i = 0; i < m.end(); i++) {
-                if (fileNoComments[i] == '\r')
-                        numLines++;
-
-                if (fileNoComments[i] == '\n') {
-                    if (prev != '\r')
-                        numLines++;
-                }
-                
-                prev = fileNoComments[i];
-            }
-            
-            methodStart.add(numLines);
-        }
+        List<Integer> methodStart = methodStartLines(methodMatch, fileNoComments);
 
         if (methodStart.isEmpty()) {
             log.warn("Structural: " + fileDAO.get() + 
@@ -392,6 +377,7 @@ public class Structural extends AbstractMetric {
         boolean inFunction = false;
         String line = "";
         int blockDepth = 0;
+        Matcher m = null;
         
         try {
             while ((line = lnr.readLine()) != null) {
@@ -485,6 +471,44 @@ public class Structural extends AbstractMetric {
         addRecord(MNEM_ECC_T, fileDAO.get(), String.valueOf(etotal));
     }
     
+    /**
+     * Returns the lines, starting from 1, on which matches of a method
+     * declaration pattern end, in ascending order.
+     *
+     * @param methodMatch The method declaration pattern for the language
+     * @param fileNoComments The file contents, stripped of comments
+     */
+    public static List<Integer> methodStartLines(Pattern methodMatch, 
+            byte[] fileNoComments) {
+        String contents = new String(fileNoComments);
+        Matcher m = methodMatch.matcher(contents);
+        
+        List<Integer> methodStart = new ArrayList<Integer>();
+        
+        /*
+         * Since we are working on a byte array version of the file, we need to
+         * take care of CR/LF/CR+LF line endings when counting lines.
+         */
+        while (m.find()) {
+            int numLines = 1;
+            byte prev = 0;
+            for (int i = 0; i < m.end(); i++) {
+                if (fileNoComments[i] == '\r')
+                        numLines++;
+
+                if (fileNoComments[i] == '\n') {
+                    if (prev != '\r')
+                        numLines++;
+                }
+                
+                prev = fileNoComments[i];
+            }
+            
+            methodStart.add(numLines);
+        }
+        return methodStart;
+    }
+    
     private void incResult(HashMap<String, Integer> result, int value,  String key) {
         if (result.containsKey(key)) {
             int res = result.get(key);
@@ -51,6 +51,7 @@ import eu.sqooss.service.abstractmetric.AbstractMetric;
 import eu.sqooss.service.abstractmetric.MetricDecl;
 import eu.sqooss.service.abstractmetric.MetricDeclarations;
 import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.Metric;
 import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.db.ProjectFileMeasurement;
@@ -80,6 +81,14 @@ public class TestabilityImplementation extends AbstractMetric {
         return getResult(a, ProjectFileMeasurement.class, m, Result.ResultType.INTEGER);
     }
 
+    @Override
+    protected Result.ResultType getStoredResultType(
+            Class<? extends DAObject> activator, Metric m) {
+        if (activator.equals(ProjectFile.class))
+            return Result.ResultType.INTEGER;
+        return null;
+    }
+
     /** Concrete testability scanners that we support. */
     private static HashMap <String, LinkedList<TestabilityScanner> > allScanners =
             new HashMap<String, LinkedList<TestabilityScanner> >();
@@ -39,7 +39,6 @@ import java.io.LineNumberReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -50,32 +49,47 @@ import org.osgi.framework.ServiceReference;
 import eu.sqooss.core.AlitheiaCore;
 import eu.sqooss.service.abstractmetric.AbstractMetric;
 import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
+import eu.sqooss.service.abstractmetric.FileTypeAggregate;
+import eu.sqooss.service.abstractmetric.IncrementalVersionMetric;
 import eu.sqooss.service.abstractmetric.MetricDecl;
 import eu.sqooss.service.abstractmetric.MetricDeclarations;
 import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.Metric;
 import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.db.ProjectFileMeasurement;
-import eu.sqooss.service.db.ProjectFileState;
 import eu.sqooss.service.db.ProjectVersion;
 import eu.sqooss.service.db.ProjectVersionMeasurement;
 import eu.sqooss.service.fds.FDSService;
 import eu.sqooss.service.fds.FileTypeMatcher;
+import eu.sqooss.service.fds.FileTypeMatcher.FileType;
 
 @MetricDeclarations(metrics= {
-	@MetricDecl(mnemonic="Wc.loc", activators={ProjectFile.class}, descr="Total lines"),
-	@MetricDecl(mnemonic="Wc.locom", activators={ProjectFile.class}, descr="Comment lines"),
-	@MetricDecl(mnemonic="Wc.lonb", activators={ProjectFile.class}, descr="Non-blank lines"),
-	@MetricDecl(mnemonic="Wc.words", activators={ProjectFile.class}, descr="Total words"),
-	@MetricDecl(mnemonic="NOF", activators={ProjectVersion.class}, descr="Number of Files"),
-	@MetricDecl(mnemonic="NOSF", activators={ProjectVersion.class}, descr="Number of Source Code Files"),
-	@MetricDecl(mnemonic="NODF", activators={ProjectVersion.class}, descr="Number of Documentation Files"),
-	@MetricDecl(mnemonic="TL", activators={ProjectVersion.class}, descr="Total Number of Lines"),
-	@MetricDecl(mnemonic="TLOC", activators={ProjectVersion.class}, descr="Total Lines of Code"),
-	@MetricDecl(mnemonic="TLOCOM", activators={ProjectVersion.class}, descr="Total Lines of Comments"),
-	@MetricDecl(mnemonic="TLDOC", activators={ProjectVersion.class}, descr="Total Number of Documentation Lines")
+	@MetricDecl(mnemonic="Wc.loc", activators={ProjectFile.class}, descr="Total lines",
+		type=Result.ResultType.INTEGER),
+	@MetricDecl(mnemonic="Wc.locom", activators={ProjectFile.class}, descr="Comment lines",
+		type=Result.ResultType.INTEGER),
+	@MetricDecl(mnemonic="Wc.lonb", activators={ProjectFile.class}, descr="Non-blank lines",
+		type=Result.ResultType.INTEGER),
+	@MetricDecl(mnemonic="Wc.words", activators={ProjectFile.class}, descr="Total words",
+		type=Result.ResultType.INTEGER),
+	@MetricDecl(mnemonic="NOF", activators={ProjectVersion.class}, descr="Number of Files",
+		type=Result.ResultType.INTEGER),
+	@MetricDecl(mnemonic="NOSF", activators={ProjectVersion.class}, descr="Number of Source Code Files",
+		type=Result.ResultType.INTEGER),
+	@MetricDecl(mnemonic="NODF", activators={ProjectVersion.class}, descr="Number of Documentation Files",
+		type=Result.ResultType.INTEGER),
+	@MetricDecl(mnemonic="TL", activators={ProjectVersion.class}, descr="Total Number of Lines",
+		type=Result.ResultType.INTEGER),
+	@MetricDecl(mnemonic="TLOC", activators={ProjectVersion.class}, descr="Total Lines of Code",
+		type=Result.ResultType.INTEGER),
+	@MetricDecl(mnemonic="TLOCOM", activators={ProjectVersion.class}, descr="Total Lines of Comments",
+		type=Result.ResultType.INTEGER),
+	@MetricDecl(mnemonic="TLDOC", activators={ProjectVersion.class}, descr="Total Number of Documentation Lines",
+		type=Result.ResultType.INTEGER)
 })
-public class WcImplementation extends AbstractMetric {
+public class WcImplementation extends AbstractMetric 
+    implements IncrementalVersionMetric {
     
     private FDSService fds;
     private FileTypeMatcher ftm = FileTypeMatcher.getInstance();
@@ -93,7 +107,19 @@ public class WcImplementation extends AbstractMetric {
     private static final String MNEMONIC_WC_PV_TLOCOM = "TLOCOM";
     private static final String MNEMONIC_WC_PV_TLDOC = "TLDOC";
     
-    private static HashMap<String,String[]> commentDelimiters;
+    private static final HashMap<String,String[]> commentDelimiters =
+        new HashMap<String,String[]>(10);
+    
+    /* Filled in statically, so that processStream() can be used without
+     * an instance */
+    static {
+        // Fill up the comment delimiters hash with a collection
+        // of delimiters for various languages.
+        addCommentDelimiters("cpp|C|cc|java|hpp|h",new String[]{"//","/\\*","\\*/"});
+        addCommentDelimiters("c",new String[]{null,"/\\*","\\*/"});
+        addCommentDelimiters("py|sh|pl|rb",new String[]{"#",null,null});
+        addCommentDelimiters("html|xml|xsl",new String[]{null,"<!--","-->"});
+    }
     
     /*Implements Ohloh in 500 lines*/
     public WcImplementation(BundleContext bc) {
@@ -103,29 +129,19 @@ public class WcImplementation extends AbstractMetric {
         serviceRef = bc.getServiceReference(AlitheiaCore.class.getName());
        
         fds = ((AlitheiaCore)bc.getService(serviceRef)).getFDSService();
-        commentDelimiters = new HashMap<String,String[]>(10);
-        // Fill up the comment delimiters hash with a collection
-        // of delimiters for various languages.
-        addCommentDelimiters("cpp|C|cc|java|hpp|h",new String[]{"//","/\\*","\\*/"});
-        addCommentDelimiters("c",new String[]{null,"/\\*","\\*/"});
-        addCommentDelimiters("py|sh|pl|rb",new String[]{"#",null,null});
-        addCommentDelimiters("html|xml|xsl",new String[]{null,"<!--","-->"});
     }
 
     public List<Result> getResult(ProjectFile a, Metric m) {
-        
-        List<Result> results = new ArrayList<Result>();
-        // Search for a matching project file measurement
-        HashMap<String, Object> filter = new HashMap<String, Object>();
-        filter.put("projectFile", a);
-        filter.put("metric", m);
-        List<ProjectFileMeasurement> measurement =
-            db.findObjectsByProperties(ProjectFileMeasurement.class, filter);
-        
-        for (ProjectFileMeasurement pfm : measurement) 
-            results.add(new Result(a, m, pfm.getResult(), Result.ResultType.INTEGER));
-        
-    	return results;
+        return getResult(a, ProjectFileMeasurement.class, m, Result.ResultType.INTEGER);
+    }
+
+    @Override
+    protected Result.ResultType getStoredResultType(
+            Class<? extends DAObject> activator, Metric m) {
+        if (activator.equals(ProjectFile.class)
+                || activator.equals(ProjectVersion.class))
+            return Result.ResultType.INTEGER;
+        return null;
     }
 
     /**
@@ -251,25 +267,25 @@ public class WcImplementation extends AbstractMetric {
         List<Metric> toUpdate = new ArrayList<Metric>();
         Metric metric = Metric.getMetricByMnemonic(MNEMONIC_WC_LOC);
         ProjectFileMeasurement locm = new ProjectFileMeasurement(
-                metric,pf,String.valueOf(results[0]));
+                metric,pf,results[0]);
         db.addRecord(locm);
         toUpdate.add(metric);
 
         metric = Metric.getMetricByMnemonic(MNEMONIC_WC_LOCOM);
         ProjectFileMeasurement locc = new ProjectFileMeasurement(
-                metric,pf,String.valueOf(results[1]));
+                metric,pf,results[1]);
         db.addRecord(locc);
         toUpdate.add(metric);
         
         metric = Metric.getMetricByMnemonic(MNEMONIC_WC_LONB);
         ProjectFileMeasurement lonb = new ProjectFileMeasurement(
-                metric,pf,String.valueOf(results[2]));
+                metric,pf,results[2]);
         db.addRecord(lonb);
         toUpdate.add(metric);
 
         metric = Metric.getMetricByMnemonic(MNEMONIC_WC_WORDS);
         ProjectFileMeasurement words_measure = new ProjectFileMeasurement(
-                metric,pf,String.valueOf(results[3]));
+                metric,pf,results[3]);
         db.addRecord(words_measure);
         toUpdate.add(metric);
     }
@@ -280,16 +296,14 @@ public class WcImplementation extends AbstractMetric {
      * comment matching, this will be used to power the multi-line
      * matcher and the single-line comment matchers.
      * 
-     * (Not static because we want to be able to log errors)
-     * 
      * @param extensions String listing file extensions separated by |
      * @param delimiters Three-element array of delimiter regexps; any
      *          one or more of these may be null.
      */
-    private void addCommentDelimiters(String extensions, String[] delimiters) {
+    private static void addCommentDelimiters(String extensions, String[] delimiters) {
         if (delimiters.length != 3) {
-            log.error("The number of delimiters for languages <" + extensions + "> is wrong (must be 3)");
-            return;
+            throw new IllegalArgumentException("The number of delimiters for languages <" 
+                    + extensions + "> is wrong (must be 3)");
         }
         
         String[] l = extensions.split("|");
@@ -384,94 +398,22 @@ public class WcImplementation extends AbstractMetric {
     }
 
     public List<Result> getResult(ProjectVersion p, Metric m) {
-        ArrayList<Result> results = new ArrayList<Result>();
-        // Search for a matching project version measurement
-        HashMap<String, Object> filter = new HashMap<String, Object>();
-        filter.put("projectVersion", p);
-        filter.put("metric", m);
-        List<ProjectVersionMeasurement> measurement =
-            db.findObjectsByProperties(ProjectVersionMeasurement.class, filter);
-        
-        for (ProjectVersionMeasurement pfm : measurement) 
-            results.add(new Result(p, m, pfm.getResult(), Result.ResultType.INTEGER));
-        
-        return results;
+        return getResult(p, ProjectVersionMeasurement.class, m, Result.ResultType.INTEGER);
     }
 
     public void run(ProjectVersion v) throws AlreadyProcessingException {
-        
-        String paramVersionId = "paramVersion";
-        String paramMetricLoC = "paramMetricLoC";
-        String paramMetricLoCom = "paramMetricLoCom";
-        String paramIsDirectory = "paramIsDirectory";
-        String paramProjectId = "paramProjectId";
-        String paramState = "paramState";
-        Map<String, Object> params = new HashMap<String, Object>();
-       
-        /* Get all measurements for live version files for metrics LoC and LoCom*/ 
-        StringBuffer q = new StringBuffer("select pfm ");
-        if (v.getSequence() == ProjectVersion.getLastProjectVersion(v.getProject()).getSequence()) {
-            q.append(" from ProjectFile pf, ProjectFileMeasurement pfm");
-            q.append(" where pf.validUntil is null ");
-        } else {
-            q.append(" from ProjectVersion pv, ProjectVersion pv2,");
-            q.append(" ProjectVersion pv3, ProjectFile pf, ProjectFileMeasurement pfm ");
-            q.append(" where pv.project.id = :").append(paramProjectId);
-            q.append(" and pv.id = :").append(paramVersionId);
-            q.append(" and pv2.project.id = :").append(paramProjectId);
-            q.append(" and pv3.project.id = :").append(paramProjectId);
-            q.append(" and pf.validFrom.id = pv2.id");
-            q.append(" and pf.validUntil.id = pv3.id");
-            q.append(" and pv2.sequence <= pv.sequence");
-            q.append(" and pv3.sequence >= pv.sequence");
-            
-            params.put(paramProjectId, v.getProject().getId());
-            params.put(paramVersionId, v.getId());
-        }
-        q.append(" and pfm.projectFile = pf ");
-        q.append(" and pf.state <> :").append(paramState);
-        q.append(" and pf.isDirectory = :").append(paramIsDirectory);
-        q.append(" and (pfm.metric.id = :").append(paramMetricLoC);
-        q.append(" or pfm.metric.id = :").append(paramMetricLoCom).append(")");
-
-        params.put(paramMetricLoC, Metric.getMetricByMnemonic(MNEMONIC_WC_LOC).getId());
-        params.put(paramMetricLoCom, Metric.getMetricByMnemonic(MNEMONIC_WC_LOCOM).getId());
-        params.put(paramIsDirectory, Boolean.FALSE);
-        params.put(paramState, ProjectFileState.deleted());
-        
-        List<ProjectFileMeasurement> results = 
-            (List<ProjectFileMeasurement>) db.doHQL(q.toString(), params);
-        
-        long nof = 0;            //Number of files
-        int nosf = 0;           //Number of source code files
-        int nodf = 0;           //Number of documentation files
-        int totalLoC = 0;       //Total Lines of code
-        int totalLoComm = 0;    //Total Lines of comments
-        int totalLocDoc = 0;    //Total Lines of doc
-        
-        params.remove(paramMetricLoCom);
-        params.remove(paramMetricLoC);
-        nof = v.getLiveFilesCount();
-        
-        for (ProjectFileMeasurement pfm : results) {
-            String fname = pfm.getProjectFile().getName();
-            int result = Integer.parseInt(pfm.getResult());
-            if (ftm.getFileType(fname).equals(
-                            FileTypeMatcher.FileType.SRC)) {
-                nosf ++;
-                if (pfm.getMetric().getMnemonic().equals(MNEMONIC_WC_LOC)) {
-                    totalLoC += result;
-                } else {
-                    totalLoComm += result;
-                }
-            }
-            
-            if (ftm.getFileType(fname).equals(
-                            FileTypeMatcher.FileType.DOC)) {
-                nodf ++;
-                totalLocDoc += result;
-            }
-        }
+        Metric loc = Metric.getMetricByMnemonic(MNEMONIC_WC_LOC);
+        Metric locom = Metric.getMetricByMnemonic(MNEMONIC_WC_LOCOM);
+
+        /* Sum up LoC and LoCom over the live version files, per file type */
+        FileTypeAggregate agg = aggregateFileResults(v, loc, locom);
+
+        long nof = v.getLiveFilesCount();                           //Number of files
+        int nosf = (int) agg.getCount(loc, FileType.SRC);           //Number of source code files
+        int nodf = (int) agg.getCount(loc, FileType.DOC);           //Number of documentation files
+        int totalLoC = (int) agg.getSum(loc, FileType.SRC);         //Total Lines of code
+        int totalLoComm = (int) agg.getSum(locom, FileType.SRC);    //Total Lines of comments
+        int totalLocDoc = (int) agg.getSum(loc, FileType.DOC);      //Total Lines of doc
         
         List<Metric> toUpdate = new ArrayList<Metric>();
         
@@ -484,10 +426,47 @@ public class WcImplementation extends AbstractMetric {
         toUpdate.add(addPVMeasurement(MNEMONIC_WC_PV_TLOCOM, v, totalLoComm));
     }
     
+    /**
+     * Adds the changes of the LoC and LoCom results of the files changed
+     * since the previous version to the previous version's totals.
+     */
+    public boolean runIncremental(ProjectVersion previous, ProjectVersion v) {
+        Long nosf = getIntResult(previous, MNEMONIC_WC_PV_NOSF);
+        Long nodf = getIntResult(previous, MNEMONIC_WC_PV_NODF);
+        Long totalLoC = getIntResult(previous, MNEMONIC_WC_PV_TLOC);
+        Long totalLoComm = getIntResult(previous, MNEMONIC_WC_PV_TLOCOM);
+        Long totalLocDoc = getIntResult(previous, MNEMONIC_WC_PV_TLDOC);
+        if (nosf == null || nodf == null || totalLoC == null
+                || totalLoComm == null || totalLocDoc == null)
+            return false;
+
+        Metric loc = Metric.getMetricByMnemonic(MNEMONIC_WC_LOC);
+        Metric locom = Metric.getMetricByMnemonic(MNEMONIC_WC_LOCOM);
+        FileTypeAggregate delta = aggregateFileResultChanges(previous, v, loc, locom);
+
+        nosf += delta.getCount(loc, FileType.SRC);
+        nodf += delta.getCount(loc, FileType.DOC);
+        totalLoC += (long) delta.getSum(loc, FileType.SRC);
+        totalLoComm += (long) delta.getSum(locom, FileType.SRC);
+        totalLocDoc += (long) delta.getSum(loc, FileType.DOC);
+
+        addPVMeasurement(MNEMONIC_WC_PV_NODF, v, nodf.intValue());
+        addPVMeasurement(MNEMONIC_WC_PV_NOF, v, (int) v.getLiveFilesCount());
+        addPVMeasurement(MNEMONIC_WC_PV_NOSF, v, nosf.intValue());
+        addPVMeasurement(MNEMONIC_WC_PV_TL, v, (int) (totalLocDoc + totalLoC));
+        addPVMeasurement(MNEMONIC_WC_PV_TLDOC, v, totalLocDoc.intValue());
+        addPVMeasurement(MNEMONIC_WC_PV_TLOC, v, totalLoC.intValue());
+        addPVMeasurement(MNEMONIC_WC_PV_TLOCOM, v, totalLoComm.intValue());
+        return true;
+    }
+
+    private Long getIntResult(ProjectVersion pv, String mnemonic) {
+        return getIntResult(pv, Metric.getMetricByMnemonic(mnemonic));
+    }
+
     private Metric addPVMeasurement(String s, ProjectVersion pv, int value) {
         Metric m = Metric.getMetricByMnemonic(s); 
-        ProjectVersionMeasurement pvm = new ProjectVersionMeasurement(m , pv, 
-                String.valueOf(value));
+        ProjectVersionMeasurement pvm = new ProjectVersionMeasurement(m , pv, value);
         db.addRecord(pvm);
         return m;
     }
@@ -0,0 +1,144 @@
+package eu.sqooss.parsers.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.antlr.runtime.RecognitionException;
+
+/**
+ * Parses compilation units through a cache of {@link ParseResults} keyed by
+ * the SHA-1 hash of the source. Most files do not change between versions,
+ * and copies of a file on other branches or paths have the same contents,
+ * so each distinct source is parsed only once. The results are stored
+ * through a {@link Store}, so the cache can be shared by all users of the
+ * same backing store. Thread safe if the store is.
+ */
+public class ParseResultCache {
+
+    /**
+     * The storage used by the cache. The Alitheia cache service has the
+     * same methods.
+     */
+    public interface Store {
+        byte[] get(String key);
+        void set(String key, byte[] data);
+    }
+
+    private static final String KEY_PREFIX = "java-parse:" + ParseResults.VERSION + ":";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Store store;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong bytesStored = new AtomicLong();
+
+    /**
+     * @param store Where to keep the results, or null to always parse.
+     */
+    public ParseResultCache(Store store) {
+        this.store = store;
+    }
+
+    /**
+     * Returns the results for a source, parsing it only if no results for
+     * the same contents are stored. The stream is read to its end but not
+     * closed. Sources that fail to parse are not cached.
+     */
+    public ParseResults parse(InputStream in)
+        throws IOException, RecognitionException {
+        byte[] source = readAll(in);
+        if (store == null) {
+            misses.incrementAndGet();
+            return ParseResults.parse(new ByteArrayInputStream(source));
+        }
+
+        String key = key(source);
+        byte[] cached = store.get(key);
+        if (cached != null) {
+            try {
+                ParseResults r = ParseResults.fromBytes(cached);
+                hits.incrementAndGet();
+                bytesSaved.addAndGet(source.length);
+                return r;
+            } catch (IOException e) {
+                /* Damaged entry, parse again and replace it */
+            }
+        }
+
+        misses.incrementAndGet();
+        ParseResults r = ParseResults.parse(new ByteArrayInputStream(source));
+        try {
+            byte[] data = r.toBytes();
+            store.set(key, data);
+            bytesStored.addAndGet(data.length);
+        } catch (IOException e) {
+            /* Names too long to encode, leave it uncached */
+        }
+        return r;
+    }
+
+    /** @return Number of sources whose results were found in the store */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** @return Number of sources parsed */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** @return Percentage of sources whose results were found in the store */
+    public float getHitRate() {
+        long h = hits.get(), total = h + misses.get();
+        return (total == 0) ? 0 : (100f * h) / total;
+    }
+
+    /** @return Bytes of source that did not need to be parsed */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /** @return Bytes of encoded results written to the store */
+    public long getBytesStored() {
+        return bytesStored.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ParseResultCache[hits=" + getHits() + ", misses="
+                + getMisses() + ", hitrate=" + (int) getHitRate()
+                + "%, saved=" + getBytesSaved() + " bytes, stored="
+                + getBytesStored() + " bytes]";
+    }
+
+    private static String key(byte[] source) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e); // Required by the JRE spec
+        }
+        byte[] digest = md.digest(source);
+        StringBuilder b = new StringBuilder(KEY_PREFIX.length() + 2 * digest.length);
+        b.append(KEY_PREFIX);
+        for (byte d : digest)
+            b.append(HEX[(d >> 4) & 0xf]).append(HEX[d & 0xf]);
+        return b.toString();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1)
+            out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,283 @@
+package eu.sqooss.parsers.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.antlr.runtime.ANTLRInputStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.tree.Tree;
+
+/**
+ * The results of all processors for a compilation unit, without the tree
+ * they were extracted from. Results can be converted to a compact binary
+ * form and back, so they can be stored instead of parsing the same
+ * source again.
+ */
+public class ParseResults {
+
+    /** Format of {@link #toBytes()}, change when the extractors change */
+    public static final int VERSION = 1;
+
+    private String packageName;
+    private Map<String, Deque<CodeFragment>> entities;
+    private SortedMap<String, Integer> mcCabe;
+    private Deque<InheritanceExtractor.ClassInheritance> inheritance;
+    private Map<String, Integer> lcom;
+    private Map<String, Integer> cbo;
+
+    private ParseResults() {}
+
+    /**
+     * Parses a compilation unit and runs all processors on it.
+     */
+    public static ParseResults parse(InputStream in)
+        throws IOException, RecognitionException {
+        ANTLRInputStream input = new ANTLRInputStream(in);
+        JavaTreeLexer lexer = new JavaTreeLexer(input);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        JavaTreeParser parser = new JavaTreeParser(tokens);
+        SpanningNodeAdaptor adaptor = new SpanningNodeAdaptor();
+        parser.setTreeAdaptor(adaptor);
+
+        JavaTreeParser.compilationUnit_return result = parser.compilationUnit();
+        Tree t = (Tree) result.getTree();
+
+        ASTWalker walker = new ASTWalker();
+        EntityExtractor entityExtractor = new EntityExtractor();
+        walker.addProcessor(entityExtractor);
+        McCabeCalculator mcCabeCalculator = new McCabeCalculator(entityExtractor);
+        walker.addProcessor(mcCabeCalculator);
+        InheritanceExtractor inheritanceExtractor = new InheritanceExtractor(entityExtractor);
+        walker.addProcessor(inheritanceExtractor);
+        LCOMCalculator lcomCalculator = new LCOMCalculator(entityExtractor);
+        walker.addProcessor(lcomCalculator);
+        CBOCalculator cboCalculator = new CBOCalculator(inheritanceExtractor);
+        walker.addProcessor(cboCalculator);
+        walker.walk(t);
+
+        ParseResults r = new ParseResults();
+        r.packageName = entityExtractor.getPackageName();
+        r.entities = entityExtractor.getResults();
+        r.mcCabe = mcCabeCalculator.getResults();
+        r.inheritance = inheritanceExtractor.getResults();
+        r.lcom = lcomCalculator.getResults();
+        r.cbo = cboCalculator.getResults();
+        return r;
+    }
+
+    /** @see EntityExtractor#getPackageName() */
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /** @see EntityExtractor#getResults() */
+    public Map<String, Deque<CodeFragment>> getEntities() {
+        return entities;
+    }
+
+    /** @see McCabeCalculator#getResults() */
+    public SortedMap<String, Integer> getMcCabe() {
+        return mcCabe;
+    }
+
+    /** @see InheritanceExtractor#getResults() */
+    public Deque<InheritanceExtractor.ClassInheritance> getInheritance() {
+        return inheritance;
+    }
+
+    /** @see LCOMCalculator#getResults() */
+    public Map<String, Integer> getLCOM() {
+        return lcom;
+    }
+
+    /** @see CBOCalculator#getResults() */
+    public Map<String, Integer> getCBO() {
+        return cbo;
+    }
+
+    /**
+     * Encodes the results. Names are written once and referred to by
+     * index afterwards, as the same class and method names appear in the
+     * results of several processors.
+     */
+    public byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        Writer out = new Writer(new DataOutputStream(bytes));
+
+        out.writeInt(VERSION);
+        out.writeString(packageName);
+
+        out.writeInt(entities.size());
+        for (Map.Entry<String, Deque<CodeFragment>> e : entities.entrySet()) {
+            out.writeString(e.getKey());
+            out.writeInt(e.getValue().size());
+            for (CodeFragment f : e.getValue()) {
+                out.writeString(f.getFullyQualifiedName());
+                out.writeInt(f.getStartLine());
+                out.writeInt(f.getEndLine());
+            }
+        }
+
+        out.writeInt(inheritance.size());
+        for (InheritanceExtractor.ClassInheritance ci : inheritance) {
+            out.writeString(ci.className);
+            out.writeString(ci.superClass);
+            out.writeInt(ci.interfaces.size());
+            for (String i : ci.interfaces)
+                out.writeString(i);
+        }
+
+        out.writeMap(mcCabe);
+        out.writeMap(lcom);
+        out.writeMap(cbo);
+        out.out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes results encoded with {@link #toBytes()}.
+     *
+     * @throws IOException If the data is truncated or was written in a
+     * different format version.
+     */
+    public static ParseResults fromBytes(byte[] data) throws IOException {
+        Reader in = new Reader(new DataInputStream(new ByteArrayInputStream(data)));
+
+        int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported parse results version " + version);
+
+        ParseResults r = new ParseResults();
+        r.packageName = in.readString();
+
+        int n = in.readInt();
+        r.entities = new LinkedHashMap<String, Deque<CodeFragment>>(n * 2);
+        for (int i = 0; i < n; i++) {
+            String clazz = in.readString();
+            int fragments = in.readInt();
+            Deque<CodeFragment> d = new LinkedList<CodeFragment>();
+            for (int j = 0; j < fragments; j++)
+                d.add(new CodeFragment(in.readString(), in.readInt(), in.readInt()));
+            r.entities.put(clazz, d);
+        }
+
+        n = in.readInt();
+        r.inheritance = new LinkedList<InheritanceExtractor.ClassInheritance>();
+        for (int i = 0; i < n; i++) {
+            InheritanceExtractor.ClassInheritance ci =
+                new InheritanceExtractor.ClassInheritance();
+            ci.className = in.readString();
+            ci.superClass = in.readString();
+            int interfaces = in.readInt();
+            for (int j = 0; j < interfaces; j++)
+                ci.interfaces.add(in.readString());
+            r.inheritance.add(ci);
+        }
+
+        r.mcCabe = in.readMap();
+        r.lcom = in.readMap();
+        r.cbo = in.readMap();
+        return r;
+    }
+
+    /*
+     * Strings are encoded as a variable length number: 0 for null, 1 for
+     * a new string that follows, n + 2 for the nth string seen before.
+     */
+    private static class Writer {
+        final DataOutputStream out;
+        final Map<String, Integer> seen = new HashMap<String, Integer>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeInt(int v) throws IOException {
+            /* Unsigned LEB128, line numbers and sizes are small */
+            while ((v & ~0x7f) != 0) {
+                out.writeByte((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            out.writeByte(v);
+        }
+
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                writeInt(0);
+                return;
+            }
+            Integer idx = seen.get(s);
+            if (idx != null) {
+                writeInt(idx + 2);
+                return;
+            }
+            seen.put(s, seen.size());
+            writeInt(1);
+            out.writeUTF(s);
+        }
+
+        void writeMap(Map<String, Integer> m) throws IOException {
+            writeInt(m.size());
+            for (Map.Entry<String, Integer> e : m.entrySet()) {
+                writeString(e.getKey());
+                writeInt(e.getValue());
+            }
+        }
+    }
+
+    private static class Reader {
+        final DataInputStream in;
+        final List<String> seen = new ArrayList<String>();
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        int readInt() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = in.readByte();
+                v |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0)
+                    return v;
+            }
+            throw new IOException("Malformed number");
+        }
+
+        String readString() throws IOException {
+            int idx = readInt();
+            if (idx == 0)
+                return null;
+            if (idx == 1) {
+                String s = in.readUTF();
+                seen.add(s);
+                return s;
+            }
+            if (idx < 0 || idx - 2 >= seen.size())
+                throw new IOException("Malformed string reference " + idx);
+            return seen.get(idx - 2);
+        }
+
+        SortedMap<String, Integer> readMap() throws IOException {
+            int n = readInt();
+            SortedMap<String, Integer> m = new TreeMap<String, Integer>();
+            for (int i = 0; i < n; i++)
+                m.put(readString(), readInt());
+            return m;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package eu.sqooss.parsers.java;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the binary form of the parse results of a compilation unit.
+ */
+public class ParseResultsTest {
+
+    static final String SOURCE =
+        "package eu.sqooss.test;\n" +
+        "\n" +
+        "import java.util.List;\n" +
+        "import java.util.ArrayList;\n" +
+        "\n" +
+        "public class Shapes extends Base implements Comparable<Shapes>, Cloneable {\n" +
+        "    private List<String> names = new ArrayList<String>();\n" +
+        "    private int count;\n" +
+        "\n" +
+        "    public Shapes(int count) {\n" +
+        "        this.count = count;\n" +
+        "    }\n" +
+        "\n" +
+        "    public int compareTo(Shapes other) {\n" +
+        "        if (count < other.count)\n" +
+        "            return -1;\n" +
+        "        else if (count > other.count)\n" +
+        "            return 1;\n" +
+        "        return 0;\n" +
+        "    }\n" +
+        "\n" +
+        "    public String name(int i) {\n" +
+        "        for (String n : names)\n" +
+        "            if (n.length() == i && count > 0)\n" +
+        "                return n;\n" +
+        "        return null;\n" +
+        "    }\n" +
+        "\n" +
+        "    static class Circle extends Shapes {\n" +
+        "        double radius;\n" +
+        "\n" +
+        "        Circle() {\n" +
+        "            super(1);\n" +
+        "        }\n" +
+        "\n" +
+        "        double area() {\n" +
+        "            return radius > 0 ? Math.PI * radius * radius : 0;\n" +
+        "        }\n" +
+        "    }\n" +
+        "}\n" +
+        "\n" +
+        "interface Named {\n" +
+        "    String name(int i);\n" +
+        "}\n";
+
+    ParseResults parsed;
+    byte[] bytes;
+
+    @BeforeClass
+    public void parse() throws Exception {
+        parsed = ParseResults.parse(new ByteArrayInputStream(SOURCE.getBytes("UTF-8")));
+        bytes = parsed.toBytes();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        ParseResults read = ParseResults.fromBytes(bytes);
+
+        assertEquals(read.getPackageName(), "eu.sqooss.test");
+        assertEquals(read.getPackageName(), parsed.getPackageName());
+        assertEquals(fragments(read.getEntities()), fragments(parsed.getEntities()));
+        assertEquals(inheritance(read.getInheritance()),
+                inheritance(parsed.getInheritance()));
+        assertEquals(read.getMcCabe(), parsed.getMcCabe());
+        assertEquals(read.getLCOM(), parsed.getLCOM());
+        assertEquals(read.getCBO(), parsed.getCBO());
+
+        /* Encoding the decoded results gives the same bytes */
+        assertEquals(read.toBytes(), bytes);
+    }
+
+    @Test
+    public void testResultsNotEmpty() {
+        if (parsed.getEntities().isEmpty() || parsed.getInheritance().isEmpty()
+                || parsed.getMcCabe().isEmpty())
+            fail("The test source should give results for all processors");
+    }
+
+    @Test
+    public void testNoPackage() throws Exception {
+        ParseResults r = ParseResults.parse(new ByteArrayInputStream(
+                "class Plain { void run() {} }".getBytes("UTF-8")));
+        ParseResults read = ParseResults.fromBytes(r.toBytes());
+        assertNull(read.getPackageName());
+        assertEquals(fragments(read.getEntities()), fragments(r.getEntities()));
+        assertEquals(read.getMcCabe(), r.getMcCabe());
+    }
+
+    @Test
+    public void testTruncated() {
+        for (int len = 0; len < bytes.length; len++) {
+            try {
+                ParseResults.fromBytes(Arrays.copyOf(bytes, len));
+                fail("Read " + len + " of " + bytes.length + " bytes");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testWrongVersion() throws IOException {
+        byte[] data = bytes.clone();
+        /* The version is the first number, small enough for one byte */
+        assertEquals(data[0], ParseResults.VERSION);
+        data[0] = ParseResults.VERSION + 1;
+        ParseResults.fromBytes(data);
+    }
+
+    /** CodeFragment has no equals(), compare the printed forms */
+    private static String fragments(Map<String, Deque<CodeFragment>> entities) {
+        StringBuilder b = new StringBuilder();
+        for (Map.Entry<String, Deque<CodeFragment>> e : entities.entrySet())
+            b.append(e.getKey()).append('=').append(e.getValue()).append('\n');
+        return b.toString();
+    }
+
+    private static List<String> inheritance(
+            Deque<InheritanceExtractor.ClassInheritance> classes) {
+        List<String> result = new ArrayList<String>();
+        Iterator<InheritanceExtractor.ClassInheritance> i = classes.iterator();
+        while (i.hasNext()) {
+            InheritanceExtractor.ClassInheritance ci = i.next();
+            result.add(ci.className + " extends " + ci.superClass
+                    + " implements " + ci.interfaces);
+        }
+        return result;
+    }
+}
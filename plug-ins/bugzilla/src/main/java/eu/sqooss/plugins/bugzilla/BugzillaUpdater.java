@@ -33,19 +33,15 @@
 
 package eu.sqooss.plugins.bugzilla;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import eu.sqooss.core.AlitheiaCore;
 import eu.sqooss.service.db.Bug;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.logging.Logger;
-import eu.sqooss.service.scheduler.Job;
-import eu.sqooss.service.scheduler.Job.State;
-import eu.sqooss.service.scheduler.JobStateListener;
+import eu.sqooss.service.scheduler.JobGroup;
+import eu.sqooss.service.scheduler.ResumePoint;
 import eu.sqooss.service.scheduler.Scheduler;
 import eu.sqooss.service.tds.BTSAccessor;
 import eu.sqooss.service.updater.MetadataUpdater;
@@ -54,21 +50,20 @@ import eu.sqooss.service.updater.UpdaterService.UpdaterStage;
 
 /**
  * Bug updater. Reads data from the TDS and updates the bug metadata
- * database. 
+ * database. Each bug is processed by its own job; the updater job yields
+ * until all of them are done.
  */
 @Updater(descr = "Processes Bugzilla XML data", 
         mnem = "BUGZXML", 
         protocols = {"bugzilla-xml"}, 
         stage = UpdaterStage.IMPORT)
-public class BugzillaUpdater implements MetadataUpdater, JobStateListener  {
+public class BugzillaUpdater implements MetadataUpdater, ResumePoint {
 
     private BTSAccessor bts;
     private StoredProject project;
     private Logger logger;
     private DBService dbs;
-    private float progress;
-    private AtomicInteger jobCounter;
-    int numbugs;
+    private JobGroup group;
     
     public BugzillaUpdater() {}
 
@@ -81,12 +76,11 @@ public class BugzillaUpdater implements MetadataUpdater, JobStateListener  {
 	
 	@Override
     public int progress() {
-        return (int)progress;
+        return (group == null) ? 0 : (int) group.getProgress();
     }
 
 	@Override
     public void update() throws Exception {
-	    jobCounter = new AtomicInteger();
         dbs.startDBSession();
         project = dbs.attachObjectToDBSession(project);
         
@@ -105,37 +99,24 @@ public class BugzillaUpdater implements MetadataUpdater, JobStateListener  {
         logger.info(project.getName() + ": Got " + bugIds.size() + " new bugs");
         logger.info(project.getName() + ": Spawing jobs");
 
-        Set<Job> jobs = new HashSet<Job>();
-        
-        // Update
-        for (String bugID : bugIds) {
-            BugzillaXMLJob job = new BugzillaXMLJob(project, bugID, logger);
-            job.addJobStateListener(this);
-            jobs.add(job);
-            numbugs++;
-        }
-        jobCounter.set(jobs.size());
-        s.enqueueNoDependencies(jobs);
+        group = new JobGroup("Bugzilla " + project);
+        for (String bugID : bugIds)
+            group.add(new BugzillaXMLJob(project, bugID, logger));
+        dbs.commitDBSession();
 
-      //Poor man's synchronization
-        while (jobCounter.intValue() > 0) {
-            try {
-                Thread.sleep(1000);
-            } catch(InterruptedException ignored){}
-        }
-        
-        if (dbs.isDBSessionActive())
-            dbs.commitDBSession();
+        s.enqueueGroup(group);
+        s.yield(group, this);
     }
-        
+
+    /** Called when all bugs have been processed */
     @Override
-    public String toString() {
-        return "BugzilaUpdater - Project:{" + project +"}, " + progress + "%";
+    public void resume() {
+        logger.info(project.getName() + ": Processed " + group.getFinished()
+                + " bugs, " + group.getFailed() + " failed");
     }
 
     @Override
-    public void jobStateChanged(Job j, State newState) {
-        if (newState == State.Error || newState == State.Finished)
-            progress = 100 - (float) (((double)jobCounter.decrementAndGet() / (double)numbugs) * 100); 
+    public String toString() {
+        return "BugzilaUpdater - Project:{" + project +"}, " + progress() + "%";
     }
 }
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.plugins.tds.git;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectIdSubclassMap;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * The tags and the parent to child relationships of the commits reachable
+ * from HEAD. The graph is built by a single walk of the history and
+ * extended with the commits added since, when HEAD moves.
+ * <p>
+ * Each commit gets an int index on first sight. Children are kept in
+ * int arrays as linked lists of edges, so a lookup costs one hash probe
+ * plus the number of children and the graph needs a few dozen bytes per
+ * commit.
+ */
+class CommitGraph {
+
+    private final Repository git;
+
+    /** Index of each known commit */
+    private final ObjectIdSubclassMap<Node> nodes = new ObjectIdSubclassMap<Node>();
+    /** Commit by index */
+    private Node[] ids = new Node[1024];
+    /** Author time of each commit in seconds, by index */
+    private int[] time = new int[1024];
+    /** First edge to a child of each commit, -1 if none */
+    private int[] firstEdge = new int[1024];
+    /** Commits whose parents have been recorded */
+    private final BitSet walked = new BitSet();
+    private int size = 0;
+
+    /** Child commit of each edge */
+    private int[] edgeChild = new int[1024];
+    /** Next edge from the same parent, -1 if last */
+    private int[] edgeNext = new int[1024];
+    private int edges = 0;
+
+    private ObjectId head = null;
+    private Map<String, String> tags = null;
+
+    /** A commit id with its index in the arrays */
+    private static class Node extends ObjectId {
+        final int index;
+
+        Node(AnyObjectId id, int index) {
+            super(id);
+            this.index = index;
+        }
+    }
+
+    CommitGraph(Repository git) {
+        this.git = git;
+    }
+
+    /**
+     * Adds the commits reachable from HEAD that are not in the graph yet
+     * and reloads the tags. Does nothing if HEAD has not moved since the
+     * last call.
+     */
+    synchronized void refresh() throws IOException {
+        ObjectId id = git.resolve(Constants.HEAD);
+        if (id == null || id.equals(head))
+            return;
+
+        RevWalk rw = new RevWalk(git);
+        try {
+            rw.markStart(rw.parseCommit(id));
+            if (head != null) {
+                try {
+                    rw.markUninteresting(rw.parseCommit(head));
+                } catch (MissingObjectException e) {
+                    // Previous head is gone, commits already walked are skipped below
+                }
+            }
+
+            RevCommit c;
+            while ((c = rw.next()) != null) {
+                int child = index(c);
+                if (walked.get(child))
+                    continue;
+                walked.set(child);
+                time[child] = (int) (c.getAuthorIdent().getWhen().getTime() / 1000);
+                for (RevCommit parent : c.getParents())
+                    addEdge(index(parent), child);
+            }
+        } finally {
+            rw.release();
+        }
+
+        tags = readTags();
+        head = id.copy();
+    }
+
+    /**
+     * @return Whether the commit has been seen by the last refresh.
+     */
+    synchronized boolean contains(AnyObjectId commit) {
+        return nodes.get(commit) != null;
+    }
+
+    /**
+     * Returns the ids of the children of a commit, ordered by author time.
+     *
+     * @return The children, or null if the commit is unknown.
+     */
+    synchronized String[] children(AnyObjectId commit) {
+        Node n = nodes.get(commit);
+        if (n == null)
+            return null;
+
+        int count = 0;
+        for (int e = firstEdge[n.index]; e != -1; e = edgeNext[e])
+            count++;
+
+        /* Edges are prepended, restore insertion order while sorting */
+        int[] children = new int[count];
+        int i = count;
+        for (int e = firstEdge[n.index]; e != -1; e = edgeNext[e])
+            children[--i] = edgeChild[e];
+
+        for (i = 1; i < count; i++) {
+            int c = children[i];
+            int j = i - 1;
+            while (j >= 0 && time[children[j]] > time[c]) {
+                children[j + 1] = children[j];
+                j--;
+            }
+            children[j + 1] = c;
+        }
+
+        String[] result = new String[count];
+        for (i = 0; i < count; i++)
+            result[i] = ids[children[i]].name();
+        return result;
+    }
+
+    /**
+     * @return The tag names by the id of the tagged object, as of the
+     * last refresh.
+     */
+    synchronized Map<String, String> tags() {
+        return tags;
+    }
+
+    /** @return Number of commits in the graph */
+    synchronized int size() {
+        return size;
+    }
+
+    private Map<String, String> readTags() {
+        Map<String, Ref> all = git.getAllRefs();
+        Map<String, String> result = new HashMap<String, String>();
+
+        for (String ref : all.keySet()) {
+            if (!ref.contains("/tags/"))
+                continue;
+            String tagname = ref.substring(ref.lastIndexOf('/') + 1);
+            result.put(all.get(ref).getObjectId().getName(), tagname);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private int index(AnyObjectId id) {
+        Node n = nodes.get(id);
+        if (n != null)
+            return n.index;
+
+        if (size == ids.length) {
+            int len = size * 2;
+            ids = Arrays.copyOf(ids, len);
+            time = Arrays.copyOf(time, len);
+            firstEdge = Arrays.copyOf(firstEdge, len);
+        }
+        n = new Node(id, size);
+        nodes.add(n);
+        ids[size] = n;
+        firstEdge[size] = -1;
+        return size++;
+    }
+
+    private void addEdge(int parent, int child) {
+        if (edges == edgeChild.length) {
+            edgeChild = Arrays.copyOf(edgeChild, edges * 2);
+            edgeNext = Arrays.copyOf(edgeNext, edges * 2);
+        }
+        edgeChild[edges] = child;
+        edgeNext[edges] = firstEdge[parent];
+        firstEdge[parent] = edges;
+        edges++;
+    }
+}
@@ -37,7 +37,6 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -51,7 +50,6 @@ import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
-import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryBuilder;
 import org.eclipse.jgit.revwalk.RevCommit;
@@ -102,7 +100,7 @@ public class GitAccessor implements SCMAccessor {
     private Repository git = null;
     private Logger logger = null;
     
-    private Map<String, List<String>> childrenOf;
+    private CommitGraph graph;
     
     static {
         supportedSchemes = new ArrayList<URI>();
@@ -440,22 +438,43 @@ public class GitAccessor implements SCMAccessor {
     
     /*Methods available only to clients GitAccessor clients*/
     
+    /**
+     * Brings the tags and the commit children returned by 
+     * {@link #allTags()} and {@link #getCommitChidren(String)} up to date 
+     * with the repository. Only the commits added since the last refresh
+     * are examined; nothing is done if HEAD has not moved. 
+     * 
+     * @throws AccessorException When an error occurs while walking the history
+     */
+    public void refresh() throws AccessorException {
+    	long start = System.currentTimeMillis();
+    	try {
+    		graph.refresh();
+    	} catch (Exception e) {
+    		throw new AccessorException(this.getClass(), "Error getting " +
+    				"commit children: " + e.getMessage());
+    	}
+    	debug("refresh(): " + (System.currentTimeMillis() - start) + " msec, " 
+    			+ graph.size() + " commits");
+    }
+    
     /**
      * Get a Map <code>{revisionId -> tagname}</code> for all revisions that 
-     * are marked with a tag 
+     * are marked with a tag. The map is read once and reused until HEAD
+     * moves, see {@link #refresh()}.
      */
     public Map<String, String> allTags() {
-    	Map<String, Ref> all = git.getAllRefs();
-		Map<String, String> result = new HashMap<String, String>();
-		
-		for (String ref : all.keySet()) {
-			if (!ref.contains("/tags/"))
-				continue;
-			String tagname = ref.substring(ref.lastIndexOf('/') + 1);
-			result.put(all.get(ref).getObjectId().getName(), tagname);
-		}
-		
-		return result;
+    	Map<String, String> tags = graph.tags();
+    	if (tags == null) {
+    		try {
+    			refresh();
+    		} catch (AccessorException e) {
+    			warn(e.getMessage());
+    			return Collections.emptyMap();
+    		}
+    		tags = graph.tags();
+    	}
+    	return tags;
     }
     
     /**
@@ -464,62 +483,28 @@ public class GitAccessor implements SCMAccessor {
      * first entry corresponds to the first commit that is the immediate
      * child of the provided commit.
      * 
-     * <b>Warning:</b> This method can cause the accessor to use a lot 
-     * of memory in very large repositories, as it calculates and 
-     * caches all parent-childrelationships beforehand. 
+     * The parent-child relationships of all commits are calculated on
+     * first use and extended when a commit added later is asked for, 
+     * so a lookup does not depend on the size of the repository.
      * 
      * @throws AccessorException When an error occurs during 
      */
     public String[] getCommitChidren(String revisionId) throws AccessorException {
-    	if (childrenOf == null) {
-            childrenOf = new HashMap<String, List<String>>();
-    		resolveChildren();
-    	}
-    	
-    	Revision[] children = new Revision[childrenOf.get(revisionId).size()];
-    	int i = 0;
-    	for (String childid : childrenOf.get(revisionId)) {
-    		children[i] = getRevision(resolveGitRev(childid), false);
-    		i++;
+    	ObjectId id;
+    	try {
+    		id = ObjectId.fromString(revisionId);
+    	} catch (IllegalArgumentException e) {
+    		RevCommit c = resolveGitRev(revisionId);
+    		if (c == null)
+    			return new String[0];
+    		id = c.getId();
     	}
     	
-    	Arrays.sort(children, children[0]);
-    	
-    	String[] chIds = new String[children.length];
-    	i = 0;
-    	for (Revision r : children) {
-    		chIds[i] = r.getUniqueId();
-    		i++;
-    	}
+    	if (!graph.contains(id))
+    		refresh();
     	
-    	return chIds;
-    }
-    
-    private void resolveChildren() throws AccessorException {
-    	Long start = System.currentTimeMillis();
-    	RevWalk rw = new RevWalk(git);
-    	try {
-    		ObjectId revId = git.resolve(Constants.HEAD);
-            rw.sort(RevSort.COMMIT_TIME_DESC); //Doesn't really do anything
-            rw.markStart(rw.parseCommit(revId));
-            RevCommit c;
-            
-            while((c = rw.next()) != null) {
-            	for (RevCommit parent : c.getParents()) {
-            		if (!childrenOf.containsKey(parent.getName())) {
-            			childrenOf.put(parent.getName(), new ArrayList<String>());
-            		}
-            		childrenOf.get(parent.getName()).add(c.getName());
-            	}
-            }
-    	} catch (Exception e) {
-    		throw new AccessorException(this.getClass(), "Error getting " +
-    				"commit children: " + e.getMessage());
-		} finally {
-    		rw.release();
-    	}
-    	Long msec = System.currentTimeMillis() - start;
-    	debug("resolveChildren(): " + msec + " msec");
+    	String[] children = graph.children(id);
+    	return (children == null) ? new String[0] : children;
     }
     
     /* Accessor internal methods*/
@@ -543,6 +528,7 @@ public class GitAccessor implements SCMAccessor {
             git = builder.setGitDir(toGitRepo(uri))
                 .findGitDir() // scan up the file system tree
                 .build();
+            graph = new CommitGraph(git);
 
         } catch (IOException e) {
             throw new AccessorException(this.getClass(), 
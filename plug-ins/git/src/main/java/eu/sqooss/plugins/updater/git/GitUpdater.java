@@ -52,6 +52,7 @@ import eu.sqooss.service.db.ProjectVersion;
 import eu.sqooss.service.db.ProjectVersionParent;
 import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.db.Tag;
+import eu.sqooss.service.fds.FDSService;
 import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.tds.AccessorException;
 import eu.sqooss.service.tds.CommitCopyEntry;
@@ -77,12 +78,43 @@ import eu.sqooss.service.util.Pair;
         stage = UpdaterStage.IMPORT)
 public class GitUpdater implements MetadataUpdater {
     
+    /** Number of revisions to import per database transaction */
+    public static final String BATCH_SIZE_PROPERTY = "eu.sqooss.updater.git.batchsize";
+    
     private StoredProject project;
     private Logger log;
     private GitAccessor git;
     private DBService dbs;
+    private FDSService fds;
     private float progress;
     
+    /*
+     * Import state, rebuilt on every call to updateFromTo().
+     */
+    
+    /* The last imported version */
+    private ProjectVersion previous;
+    
+    /* Versions created in the current transaction, by revision id */
+    private Map<String, ProjectVersion> batchVersions = new HashMap<String, ProjectVersion>();
+    
+    /* 
+     * The latest entry for each path up to the previous version, 
+     * including deletions. Paths missing from the tree are looked up in 
+     * the database, unless the tree was built from the first version on. 
+     */
+    private Map<String, TreeEntry> tree = new HashMap<String, TreeEntry>();
+    private boolean treeComplete = false;
+    
+    /* Tree entries created in the current transaction */
+    private List<TreeEntry> batchEntries = new ArrayList<TreeEntry>();
+    
+    /* Entries for each path added in the version being processed */
+    private Map<String, ProjectFile> current = new HashMap<String, ProjectFile>();
+    
+    /* Directory DAOs by path, they are never deleted */
+    private Map<String, Directory> dirs = new HashMap<String, Directory>();
+    
     /*
      * Possible set of valid file state transitions
      */
@@ -146,6 +178,7 @@ public class GitUpdater implements MetadataUpdater {
             e.printStackTrace();
         }
         dbs = AlitheiaCore.getInstance().getDBService();
+        fds = AlitheiaCore.getInstance().getFDSService();
     }
 
     public void update() throws Exception {
@@ -187,35 +220,118 @@ public class GitUpdater implements MetadataUpdater {
             return;
         int numRevisions = 0;
 
+        int batchSize = getBatchSize();
+        int inBatch = 0;
+
         CommitLog commitLog = git.getCommitLog("", from, to);
         if(!dbs.isDBSessionActive()) dbs.startDBSession();
+        
+        /* Tags and branch points are looked up for every revision */
+        git.refresh();
+
+        /* 
+         * Revisions are committed in batches, so after a failure the
+         * database contains all revisions up to the last successful batch.
+         * The next update continues from there.
+         */
+        Set<String> processed = initImportState();
 
         for (Revision entry : commitLog) {
-        	if (ProjectVersion.getVersionByRevision(project, entry.getUniqueId()) != null) {
+        	if (processed.contains(entry.getUniqueId())) {
         		info("Skipping processed revision: " + entry.getUniqueId());
         		continue;
         	}
         	
             ProjectVersion pv = processOneRevision(entry);
             
-            processCopiedFiles(git, entry, pv, pv.getPreviousVersion());
+            processCopiedFiles(git, entry, pv, previous);
             
             processRevisionFiles(git, entry, pv);
             
             replayLog(pv);
             
             updateValidUntil(pv, pv.getVersionFiles());
+            
+            updateTree(pv);
+            previous = pv;
+            processed.add(pv.getRevisionId());
 
-            if (!dbs.commitDBSession()) {
-                warn("Intermediate commit failed, failing update");
-                return;
+            if (++inBatch >= batchSize) {
+                if (!commitBatch())
+                    return;
+                inBatch = 0;
             }
             
-            dbs.startDBSession();
             progress = (float) (((double)numRevisions / (double)commitLog.size()) * 100);
             
             numRevisions++;
         }
+        
+        if (inBatch > 0)
+            commitBatch();
+    }
+    
+    /**
+     * Resets the import state to the last imported version.
+     * 
+     * @return The revision ids imported so far.
+     */
+    private Set<String> initImportState() {
+        batchVersions.clear();
+        batchEntries.clear();
+        tree.clear();
+        current.clear();
+        dirs.clear();
+        
+        previous = ProjectVersion.getLastProjectVersion(project);
+        treeComplete = (previous == null);
+        
+        Set<String> processed = new HashSet<String>();
+        if (previous != null) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("project", project);
+            List<?> revs = dbs.doHQL("select pv.revisionId from ProjectVersion pv " +
+            		"where pv.project = :project", params);
+            for (Object rev : revs)
+                processed.add((String) rev);
+        }
+        return processed;
+    }
+    
+    /**
+     * Commits the revisions imported since the last commit.
+     */
+    private boolean commitBatch() {
+        if (!dbs.commitDBSession()) {
+            warn("Intermediate commit failed, failing update");
+            return false;
+        }
+        
+        dbs.startDBSession();
+        if (fds != null)
+            fds.updateFileTreeIndex(project);
+        batchVersions.clear();
+        
+        /* Let go of the committed objects, they reference the whole history */
+        for (TreeEntry e : batchEntries) {
+            e.id = e.file.getId();
+            e.file = null;
+        }
+        batchEntries.clear();
+        previous = dbs.findObjectById(ProjectVersion.class, previous.getId());
+        return true;
+    }
+    
+    private int getBatchSize() {
+        String size = System.getProperty(BATCH_SIZE_PROPERTY);
+        if (size == null)
+            return 1;
+        try {
+            return Math.max(Integer.parseInt(size.trim()), 1);
+        } catch (NumberFormatException e) {
+            warn("Not correct value for property " + BATCH_SIZE_PROPERTY);
+            return 1;
+        }
     }
 
     private ProjectVersion processOneRevision(Revision entry) 
@@ -237,6 +353,7 @@ public class GitUpdater implements MetadataUpdater {
         pv.setCommitMsg(commitMsg);
         pv.setSequence(Integer.MAX_VALUE);
         dbs.addRecord(pv);
+        batchVersions.put(pv.getRevisionId(), pv);
         
         //Tags
         String tag = git.allTags().get(entry.getUniqueId());
@@ -248,15 +365,14 @@ public class GitUpdater implements MetadataUpdater {
         }
         
         //Sequencing
-        ProjectVersion prev = pv.getPreviousVersion();
-        if (prev != null)
-            pv.setSequence(prev.getSequence() + 1);
+        if (previous != null)
+            pv.setSequence(previous.getSequence() + 1);
         else 
             pv.setSequence(1);
               
         //Branches and parent-child relationships
         for (String parentId : entry.getParentIds()) {
-            ProjectVersion parent = ProjectVersion.getVersionByRevision(project, parentId);
+            ProjectVersion parent = getVersion(parentId);
             ProjectVersionParent pvp = new ProjectVersionParent(pv, parent);
             pv.getParents().add(pvp);
             
@@ -343,6 +459,76 @@ public class GitUpdater implements MetadataUpdater {
         return d;
     }
     
+    /**
+     * Returns the version of a revision, without a database query if it
+     * was imported in the current transaction.
+     */
+    private ProjectVersion getVersion(String revisionId) {
+        ProjectVersion pv = batchVersions.get(revisionId);
+        if (pv == null)
+            pv = ProjectVersion.getVersionByRevision(project, revisionId);
+        return pv;
+    }
+    
+    /**
+     * Returns the directory DAO for a path, creating it if requested.
+     */
+    private Directory getDirectory(String path, boolean create) {
+        Directory d = dirs.get(path);
+        if (d == null) {
+            d = Directory.getDirectory(path, create);
+            if (d != null)
+                dirs.put(path, d);
+        }
+        return d;
+    }
+    
+    private static String key(String path, String name) {
+        if (path.endsWith("/"))
+            return path + name;
+        return path + "/" + name;
+    }
+    
+    /**
+     * Returns the latest entry of a path before the version being
+     * processed, including deleted entries.
+     */
+    private TreeEntry getLastEntry(String path, String name) {
+        String key = key(path, name);
+        TreeEntry e = tree.get(key);
+        if (e != null || treeComplete || tree.containsKey(key))
+            return e;
+        
+        ProjectFile pf = ProjectFile.findFile(project.getId(), name, path, 
+                previous.getRevisionId(), true);
+        if (pf != null) {
+            e = new TreeEntry(pf);
+            e.id = pf.getId();
+            e.file = null;
+        }
+        tree.put(key, e);
+        return e;
+    }
+    
+    /**
+     * Records the entry of a path in the version being processed.
+     */
+    private void addEntry(ProjectFile pf) {
+        current.put(key(pf.getDir().getPath(), pf.getName()), pf);
+    }
+    
+    /**
+     * Moves the entries of a processed version to the file tree.
+     */
+    private void updateTree(ProjectVersion pv) {
+        for (ProjectFile pf : pv.getVersionFiles()) {
+            TreeEntry e = new TreeEntry(pf);
+            tree.put(key(pf.getDir().getPath(), pf.getName()), e);
+            batchEntries.add(e);
+        }
+        current.clear();
+    }
+    
     /*
      * Copy operations copy or move files or directories accross
      * the virtual filetree generated by the SCM.
@@ -402,16 +588,15 @@ public class GitUpdater implements MetadataUpdater {
             debug("copyFiles(): Copying " + cce.fromPath() + "->" + cce.toPath());
             if (copyFrom.getIsDirectory()) {
                     
-                Directory from = Directory.getDirectory(cce.fromPath(), false);
-                Directory to = Directory.getDirectory(cce.toPath(), true);
+                Directory from = getDirectory(cce.fromPath(), false);
+                Directory to = getDirectory(cce.toPath(), true);
 
                 /*
                  * Recursively copy contents and mark files as modified
                  * and directories as added
                  */
                 handleDirCopy(curVersion, 
-                        ProjectVersion.getVersionByRevision(curVersion.getProject(),
-                        cce.fromRev().getUniqueId()), from, to, copyFrom);
+                        getVersion(cce.fromRev().getUniqueId()), from, to, copyFrom);
             } else {
                 /*
                  * Create a new entry at the new location and mark the new 
@@ -458,13 +643,15 @@ public class GitUpdater implements MetadataUpdater {
              * entry, it may be shared with another project; this case is
              * examined upon entering
              */
-            if (file.isDeleted() && (Directory.getDirectory(chPath, false) != null)) {
+            if (file.isDeleted() && (getDirectory(chPath, false) != null)) {
                 /*
                  * Directories, when they are deleted, do not have type DIR,
                  * but something else. So we need to check on deletes
                  * whether this name was most recently a directory.
                  */
-                ProjectFile lastVersion = file.getPreviousFileVersion();
+                TreeEntry last = getLastEntry(file.getDir().getPath(), 
+                        file.getName());
+                boolean wasDirectory = (last != null && last.isDirectory);
                 
                 /*
                  * If a directory is deleted and its previous incarnation cannot
@@ -474,12 +661,12 @@ public class GitUpdater implements MetadataUpdater {
                  * revision files then.
                  */
                 boolean delAfterCopy = false;
-                if (lastVersion == null) {
+                if (last == null) {
                     for (ProjectFile pf : curVersion.getVersionFiles()) {
                         if (pf.getFileName().equals(file.getFileName())
                                 && pf.getIsDirectory()
                                 && pf.isAdded()) {
-                            lastVersion = pf;
+                            wasDirectory = true;
                             delAfterCopy = true;
                             break;
                         }
@@ -487,8 +674,7 @@ public class GitUpdater implements MetadataUpdater {
                 }
                     
                 /* If a dir was deleted, mark all children as deleted */
-                if (lastVersion != null
-                        && lastVersion.getIsDirectory()) {
+                if (wasDirectory) {
                     // In spite of it not being marked as a directory
                     // in the node tree right now.
                     file.setIsDirectory(true);
@@ -609,24 +795,30 @@ public class GitUpdater implements MetadataUpdater {
 
         version.getVersionFiles().addAll(mkdirs(version, path));
         
-        /* cur can point to either the current file version if the
-         * file has been processed before whithin this revision
-         * or the previous file version
+        /* cur points to the current file version if the file has been 
+         * processed before whithin this revision, last to the previous
+         * file version otherwise
          */
-        ProjectFile cur = ProjectFile.findFile(project.getId(), fname,
-        		path, version.getRevisionId(), true);
-
-        if (cur != null && 
-        	!cur.getProjectVersion().getRevisionId().equals(version.getRevisionId()) &&
-        	!isValidStateTransition(cur.getState(), status)) {
-        	ProjectFileState newstatus = ProjectFileState.fromStatus(invTransitionFix.get(cur.getState().getStatus()));
-        	debug("addFile(): Invalid state transition (" + cur.getState() + 
-        			"->" + status + ") for path " + fPath + ". Setting " + 
-        			"status to " + newstatus);
-        	status = newstatus;
+        ProjectFile cur = current.get(key(path, fname));
+        TreeEntry last = null;
+        boolean wasDirectory;
+        
+        if (cur != null) {
+            wasDirectory = cur.getIsDirectory();
+        } else {
+            last = getLastEntry(path, fname);
+            wasDirectory = (last != null && last.isDirectory);
+            
+            if (last != null && !isValidStateTransition(last.state, status)) {
+                ProjectFileState newstatus = ProjectFileState.fromStatus(invTransitionFix.get(last.state.getStatus()));
+                debug("addFile(): Invalid state transition (" + last.state + 
+                        "->" + status + ") for path " + fPath + ". Setting " + 
+                        "status to " + newstatus);
+                status = newstatus;
+            }
         }
         
-        Directory dir = Directory.getDirectory(path, true);
+        Directory dir = getDirectory(path, true);
         pf.setName(fname);
         pf.setDir(dir);
         pf.setState(status);
@@ -638,7 +830,7 @@ public class GitUpdater implements MetadataUpdater {
         
 		if (t == SCMNodeType.UNKNOWN) {
 			if (status.getStatus() == ProjectFileState.STATE_DELETED)
-				decided = (cur.getIsDirectory() == true ? 
+				decided = (wasDirectory ? 
 						SCMNodeType.DIR : SCMNodeType.FILE);
 			else 
 				decided = SCMNodeType.DIR;
@@ -654,6 +846,7 @@ public class GitUpdater implements MetadataUpdater {
         
         debug("addFile(): Adding entry " + pf + "(" + decided + ")");
         version.getVersionFiles().add(pf);
+        addEntry(pf);
 
         return pf;
     }
@@ -667,18 +860,18 @@ public class GitUpdater implements MetadataUpdater {
     	String pathname = FileUtils.dirname(path);
     	String filename = FileUtils.basename(path);
     	
-    	ProjectVersion previous = pv.getPreviousVersion();
-
+    	boolean exists;
         if (previous == null) { // Special case for first version
-            previous = pv;
+            exists = current.containsKey(key(pathname, filename));
+        } else {
+            TreeEntry prev = getLastEntry(pathname, filename);
+            exists = (prev != null && 
+                    prev.state.getStatus() != ProjectFileState.STATE_DELETED);
         }
-        
-    	ProjectFile prev = ProjectFile.findFile(project.getId(),
-    			filename, pathname, previous.getRevisionId());
     	
     	ProjectFile pf = new ProjectFile(pv);
     	
-    	if (prev == null) {
+    	if (!exists) {
             pf.setState(ProjectFileState.added());
             //Recursion reached the root directory
             if (!(pathname.equals("/") && filename.equals(""))) 
@@ -689,32 +882,53 @@ public class GitUpdater implements MetadataUpdater {
     	}
 
         pf.setDirectory(true);
-        pf.setDir(Directory.getDirectory(pathname, true));
+        pf.setDir(getDirectory(pathname, true));
         pf.setName(filename);
         pf.setValidFrom(pv);
         
         files.add(pf);
+        addEntry(pf);
         debug("mkdirs(): Adding directory " + pf);
     	return files;
     }
     
     /**
      * Update the validUntil field after all files have been processed.
+     * Entries committed in earlier transactions are updated with a 
+     * single query.
      */
     private void updateValidUntil(ProjectVersion pv, Set<ProjectFile> versionFiles) {
-
-        ProjectVersion previous = pv.getPreviousVersion();
-
+        List<Long> committed = new ArrayList<Long>();
+        
         for (ProjectFile pf : versionFiles) {
             if (!pf.isAdded()) {
-                ProjectFile old = pf.getPreviousFileVersion();
-                old.setValidUntil(previous);
+                if (pf.getCopyFrom() == null) {
+                    TreeEntry old = getLastEntry(pf.getDir().getPath(), pf.getName());
+                    if (old == null)
+                        warn("No previous version for " + pf);
+                    else if (old.file != null)
+                        old.file.setValidUntil(previous);
+                    else
+                        committed.add(old.id);
+                } else {
+                    ProjectFile old = pf.getPreviousFileVersion();
+                    if (old != null)
+                        old.setValidUntil(previous);
+                }
             }
 
             if (pf.isDeleted()) {
                 pf.setValidUntil(pv);
             }
         }
+        
+        if (!committed.isEmpty()) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("version", previous);
+            params.put("ids", committed);
+            dbs.executeUpdate("update ProjectFile pf set pf.validUntil = :version " +
+            		"where pf.id in (:ids)", params);
+        }
     }
     
     /**
@@ -726,7 +940,7 @@ public class GitUpdater implements MetadataUpdater {
     private Set<ProjectFile> handleDirDeletion(final ProjectFile pf, final ProjectVersion pv) {
     	Set<ProjectFile> files = new HashSet<ProjectFile>();
 
-		if (pf == null || pv == null) {
+		if (pf == null || pv == null || previous == null) {
 			return files;
 		}
         
@@ -736,7 +950,7 @@ public class GitUpdater implements MetadataUpdater {
         
         debug("Deleting directory " + pf.getFileName() + " ID "
                 + pf.getId());
-        Directory d = Directory.getDirectory(pf.getFileName(), false);
+        Directory d = getDirectory(pf.getFileName(), false);
         if (d == null) {
             warn("Directory entry " + pf.getFileName() + " in project "
                     + pf.getProjectVersion().getProject().getName()
@@ -744,9 +958,7 @@ public class GitUpdater implements MetadataUpdater {
             return files;
         }
 
-        ProjectVersion prev = pv.getPreviousVersion();
-        
-        List<ProjectFile> dirFiles = prev.getFiles(d);
+        List<ProjectFile> dirFiles = previous.getFiles(d);
         
         for (ProjectFile f : dirFiles) {
             if (f.getIsDirectory()) {
@@ -755,6 +967,7 @@ public class GitUpdater implements MetadataUpdater {
             ProjectFile deleted = new ProjectFile(f, pv);
             deleted.setState(ProjectFileState.deleted());
             files.add(deleted);
+            addEntry(deleted);
         }
         return files;
     }
@@ -787,8 +1000,8 @@ public class GitUpdater implements MetadataUpdater {
         List<ProjectFile> fromPF = fromVersion.getFiles(from, ProjectVersion.MASK_DIRECTORIES);
         
         for (ProjectFile f : fromPF) {
-            handleDirCopy(pv, fromVersion, Directory.getDirectory(f.getFileName(), false), 
-            		Directory.getDirectory(to.getPath() + "/" + f.getName(), true), f);
+            handleDirCopy(pv, fromVersion, getDirectory(f.getFileName(), false), 
+            		getDirectory(to.getPath() + "/" + f.getName(), true), f);
         }
         
         fromPF = fromVersion.getFiles(from, ProjectVersion.MASK_FILES);
@@ -799,6 +1012,24 @@ public class GitUpdater implements MetadataUpdater {
         }
     }
     
+    /**
+     * The latest entry of a path in the file tree. The entry's DAO is
+     * only kept until it is committed, as it references its version and
+     * through it the rest of the imported history.
+     */
+    private static class TreeEntry {
+        ProjectFile file;
+        long id;
+        final ProjectFileState state;
+        final boolean isDirectory;
+        
+        TreeEntry(ProjectFile pf) {
+            this.file = pf;
+            this.state = pf.getState();
+            this.isDirectory = pf.getIsDirectory();
+        }
+    }
+    
     /**
      * This method should return a sensible representation of progress. 
      */
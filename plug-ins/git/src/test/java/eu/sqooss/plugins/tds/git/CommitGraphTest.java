@@ -0,0 +1,199 @@
+package eu.sqooss.plugins.tds.git;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.storage.file.FileRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the commit graph on a small repository built commit by commit.
+ * Lives in the accessor's package, as the graph is package private.
+ */
+public class CommitGraphTest {
+
+    File dir;
+    FileRepository repo;
+    ObjectId tree;
+
+    @Before
+    public void createRepo() throws IOException {
+        dir = File.createTempFile("commitgraph", "");
+        dir.delete();
+        dir.mkdirs();
+        repo = new FileRepository(new File(dir, Constants.DOT_GIT));
+        repo.create();
+
+        ObjectInserter ins = repo.newObjectInserter();
+        try {
+            tree = ins.insert(Constants.OBJ_TREE, new byte[0]);
+            ins.flush();
+        } finally {
+            ins.release();
+        }
+    }
+
+    @After
+    public void deleteRepo() {
+        repo.close();
+        delete(dir);
+    }
+
+    @Test
+    public void testChildrenOrder() throws IOException {
+        ObjectId root = commit(100, "Root");
+        /* Written in this order, but c is older than b */
+        ObjectId b = commit(300, "B", root);
+        ObjectId c = commit(200, "C", root);
+        ObjectId d = commit(400, "D", root);
+        setHead(commit(500, "Merge", b, c, d));
+
+        CommitGraph graph = new CommitGraph(repo);
+        graph.refresh();
+        assertArrayEquals(names(c, b, d), graph.children(root));
+        assertEquals(5, graph.size());
+    }
+
+    @Test
+    public void testMergeParents() throws IOException {
+        ObjectId root = commit(100, "Root");
+        ObjectId left = commit(200, "Left", root);
+        ObjectId right = commit(300, "Right", root);
+        ObjectId merge = commit(400, "Merge", left, right);
+        setHead(merge);
+
+        CommitGraph graph = new CommitGraph(repo);
+        graph.refresh();
+        assertArrayEquals(names(merge), graph.children(left));
+        assertArrayEquals(names(merge), graph.children(right));
+        assertArrayEquals(names(left, right), graph.children(root));
+        assertArrayEquals(new String[0], graph.children(merge));
+    }
+
+    @Test
+    public void testUnknownCommit() throws IOException {
+        ObjectId root = commit(100, "Root");
+        /* Not reachable from HEAD */
+        ObjectId other = commit(200, "Other");
+        setHead(root);
+
+        CommitGraph graph = new CommitGraph(repo);
+        graph.refresh();
+        assertTrue(graph.contains(root));
+        assertFalse(graph.contains(other));
+        assertNull(graph.children(other));
+    }
+
+    @Test
+    public void testTags() throws IOException {
+        ObjectId root = commit(100, "Root");
+        ObjectId next = commit(200, "Next", root);
+        setHead(next);
+        updateRef(Constants.R_TAGS + "v1.0", root);
+        updateRef(Constants.R_TAGS + "release/v1.1", next);
+
+        CommitGraph graph = new CommitGraph(repo);
+        graph.refresh();
+        assertEquals(2, graph.tags().size());
+        assertEquals("v1.0", graph.tags().get(root.name()));
+        assertEquals("v1.1", graph.tags().get(next.name()));
+    }
+
+    @Test
+    public void testRefresh() throws IOException {
+        ObjectId root = commit(100, "Root");
+        ObjectId first = commit(200, "First", root);
+        setHead(first);
+
+        CommitGraph graph = new CommitGraph(repo);
+        graph.refresh();
+        assertEquals(2, graph.size());
+        assertArrayEquals(new String[0], graph.children(first));
+
+        /* Tags are only reloaded when HEAD moves */
+        updateRef(Constants.R_TAGS + "v1.0", first);
+        graph.refresh();
+        assertNull(graph.tags().get(first.name()));
+
+        /* A side branch off the old history, merged in by the new HEAD */
+        ObjectId side = commit(300, "Side", root);
+        ObjectId second = commit(400, "Second", first);
+        ObjectId merge = commit(500, "Merge", second, side);
+        setHead(merge);
+        graph.refresh();
+
+        assertEquals(5, graph.size());
+        assertTrue(graph.contains(merge));
+        assertArrayEquals(names(first, side), graph.children(root));
+        assertArrayEquals(names(second), graph.children(first));
+        assertArrayEquals(names(merge), graph.children(second));
+        assertArrayEquals(names(merge), graph.children(side));
+        assertEquals("v1.0", graph.tags().get(first.name()));
+    }
+
+    private ObjectId commit(long time, String msg, ObjectId... parents)
+            throws IOException {
+        PersonIdent ident = new PersonIdent("Papa Smurf",
+                "pm@smurfvillage.com", new Date(time * 1000),
+                TimeZone.getTimeZone("UTC"));
+        CommitBuilder cb = new CommitBuilder();
+        cb.setTreeId(tree);
+        cb.setParentIds(Arrays.asList(parents));
+        cb.setAuthor(ident);
+        cb.setCommitter(ident);
+        cb.setMessage(msg);
+
+        ObjectInserter ins = repo.newObjectInserter();
+        try {
+            ObjectId id = ins.insert(Constants.OBJ_COMMIT, cb.build());
+            ins.flush();
+            return id;
+        } finally {
+            ins.release();
+        }
+    }
+
+    private void setHead(ObjectId id) throws IOException {
+        updateRef(Constants.R_HEADS + Constants.MASTER, id);
+    }
+
+    private void updateRef(String name, ObjectId id) throws IOException {
+        RefUpdate u = repo.updateRef(name);
+        u.setNewObjectId(id);
+        u.forceUpdate();
+    }
+
+    private static String[] names(ObjectId... ids) {
+        List<String> names = new ArrayList<String>();
+        for (ObjectId id : ids)
+            names.add(id.name());
+        return names.toArray(new String[names.size()]);
+    }
+
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if (files != null)
+            for (File c : files)
+                delete(c);
+        f.delete();
+    }
+}
@@ -1,5 +1,10 @@
 package eu.sqooss.plugins.javaparser;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 
@@ -9,8 +14,26 @@ import eu.sqooss.service.updater.UpdaterService;
 
 public class Activator implements BundleActivator {
 
+    /** Threads parsing the files of all Java updater jobs */
+    private static volatile ExecutorService parsers;
+
+    /** @return The parser threads, or null if the bundle is stopped */
+    static ExecutorService getParsers() {
+        return parsers;
+    }
+
     public void start(BundleContext bc) throws Exception {
-        
+        parsers = Executors.newFixedThreadPool(JavaUpdaterJob.PARSER_THREADS,
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "Java parser " + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
         /*
          * Register the plug-in to the updater service
          */
@@ -21,6 +44,12 @@ public class Activator implements BundleActivator {
     public void stop(BundleContext context) throws Exception {
         UpdaterService us = AlitheiaCore.getInstance().getUpdater();
         us.unregisterUpdaterService(JavaUpdater.class);
+
+        /* Running jobs fail on their next file */
+        ExecutorService p = parsers;
+        parsers = null;
+        if (p != null)
+            p.shutdownNow();
     }
 }
 
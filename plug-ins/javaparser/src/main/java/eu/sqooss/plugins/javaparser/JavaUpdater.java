@@ -1,11 +1,8 @@
 package eu.sqooss.plugins.javaparser;
 
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import eu.sqooss.core.AlitheiaCore;
 import eu.sqooss.service.db.DBService;
@@ -13,9 +10,9 @@ import eu.sqooss.service.db.Language;
 import eu.sqooss.service.db.ProjectVersion;
 import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.logging.Logger;
-import eu.sqooss.service.scheduler.Job;
-import eu.sqooss.service.scheduler.Job.State;
-import eu.sqooss.service.scheduler.JobStateListener;
+import eu.sqooss.service.scheduler.JobGroup;
+import eu.sqooss.service.scheduler.ResumePoint;
+import eu.sqooss.service.scheduler.Scheduler;
 import eu.sqooss.service.updater.MetadataUpdater;
 import eu.sqooss.service.updater.Parser;
 import eu.sqooss.service.updater.Updater;
@@ -24,6 +21,9 @@ import eu.sqooss.service.updater.UpdaterService.UpdaterStage;
 /**
  * Extracts method, function and namespace information and fills in the 
  * corresponding tables in the database, for Java projects.
+ * <p>
+ * Each version is parsed by its own job. The updater job yields until
+ * all of them are done, instead of keeping a worker thread busy.
  * 
  * @author Georgios Gousios <gousiosg@gmail.com>
  */
@@ -31,7 +31,7 @@ import eu.sqooss.service.updater.UpdaterService.UpdaterStage;
         stage = UpdaterStage.PARSE, 
         mnem = "JAVA")
 @Parser(languages={Language.JAVA})
-public class JavaUpdater implements MetadataUpdater, JobStateListener {
+public class JavaUpdater implements MetadataUpdater, ResumePoint {
     
     private static final String notProcessed = "select pv " +
     		"from ProjectVersion pv " +
@@ -44,9 +44,7 @@ public class JavaUpdater implements MetadataUpdater, JobStateListener {
     private StoredProject sp;
     private Logger log;
     private DBService db;
-    private float progress;
-    private AtomicInteger jobCounter;
-    private long numVersions = 1;
+    private JobGroup group;
     
     public JavaUpdater() {}
    
@@ -54,7 +52,6 @@ public class JavaUpdater implements MetadataUpdater, JobStateListener {
         this.sp = sp;
         this.log = l;
         db = AlitheiaCore.getInstance().getDBService();
-        jobCounter = new AtomicInteger();
     }
 
     public void update() throws Exception {
@@ -66,42 +63,34 @@ public class JavaUpdater implements MetadataUpdater, JobStateListener {
 
         if (toProcess.size() == 0) {
             log.info("No versions to process");
+            db.commitDBSession();
             return;
         }
 
-        Set<Job> jobs = new HashSet<Job>();
-        for (ProjectVersion pv : toProcess) {
-            JavaUpdaterJob juj = new JavaUpdaterJob(sp, pv, log);
-            juj.addJobStateListener(this);
-            jobs.add(juj);
-        }
-        
-        numVersions = jobs.size();
-        jobCounter.set(jobs.size());
-        AlitheiaCore.getInstance().getScheduler().enqueueNoDependencies(jobs);
-        
-        //Poor man's synchronization
-        while (jobCounter.intValue() > 0) {
-            try {
-                Thread.sleep(1000);
-            } catch(InterruptedException ignored){}
-        }
-        
-        if (db.isDBSessionActive())db.commitDBSession();
+        group = new JobGroup("Java parser " + sp);
+        for (ProjectVersion pv : toProcess)
+            group.add(new JavaUpdaterJob(sp, pv, log));
+        db.commitDBSession();
+
+        Scheduler s = AlitheiaCore.getInstance().getScheduler();
+        s.enqueueGroup(group);
+        s.yield(group, this);
     }
 
-    public void jobStateChanged(Job j, State newState) {
-        if (newState == State.Error || newState == State.Finished)
-            progress = 100 - (float) (((double)jobCounter.decrementAndGet() / (double)numVersions) * 100); 
+    /** Called when all versions have been parsed */
+    public void resume() {
+        log.info(sp.getName() + ": Parsed " + group.getFinished()
+                + " versions, " + group.getFailed() + " failed, "
+                + JavaUpdaterJob.getParseCache());
     }
 
     public int progress() {
-        return (int) progress;
+        return (group == null) ? 0 : (int) group.getProgress();
     }
 
     @Override
     public String toString() {
-        return "JavaUpdater - Project:{" + sp + "}, " + progress + "%";
+        return "JavaUpdater - Project:{" + sp + "}, " + progress() + "%";
     }
 }
 
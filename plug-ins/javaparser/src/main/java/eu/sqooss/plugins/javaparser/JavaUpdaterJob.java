@@ -3,23 +3,26 @@ package eu.sqooss.plugins.javaparser;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.antlr.runtime.ANTLRInputStream;
-import org.antlr.runtime.CommonTokenStream;
-import org.antlr.runtime.tree.Tree;
-
-import eu.sqooss.parsers.java.ASTWalker;
 import eu.sqooss.parsers.java.CodeFragment;
-import eu.sqooss.parsers.java.EntityExtractor;
-import eu.sqooss.parsers.java.JavaTreeLexer;
-import eu.sqooss.parsers.java.JavaTreeParser;
-import eu.sqooss.parsers.java.SpanningNodeAdaptor;
+import eu.sqooss.parsers.java.ParseResultCache;
+import eu.sqooss.parsers.java.ParseResults;
 
 import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.cache.CacheService;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.EncapsulationUnit;
 import eu.sqooss.service.db.ExecutionUnit;
@@ -33,19 +36,52 @@ import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.scheduler.Job;
 import eu.sqooss.service.tds.Diff;
 import eu.sqooss.service.tds.DiffChunk;
-import eu.sqooss.service.tds.InvalidAccessorException;
 import eu.sqooss.service.tds.InvalidProjectRevisionException;
 import eu.sqooss.service.tds.InvalidRepositoryException;
 import eu.sqooss.service.tds.SCMAccessor;
 
+/**
+ * Parses the Java files changed in a project version and records their
+ * classes and methods. The files are lexed, parsed and diffed in parallel
+ * on a pool shared by all jobs and owned by the bundle's {@link Activator},
+ * while the database work stays on the job's thread: the job looks up the
+ * previous version of each file, submits it for parsing and writes the
+ * records of all files in one batch at the end.
+ * Files whose contents were parsed before, in this or another version, are
+ * not parsed again; their results are taken from a {@link ParseResultCache}
+ * stored in the cache service.
+ */
 public class JavaUpdaterJob extends Job {
 
+    /** Number of threads parsing files, shared by all jobs */
+    static final int PARSER_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /** Number of files submitted for parsing ahead of the one being stored */
+    static final int MAX_PENDING = 4 * PARSER_THREADS;
+
+    /** Results of files parsed before, shared with other users of the cache service */
+    private static final ParseResultCache parseCache = new ParseResultCache(
+            new ParseResultCache.Store() {
+                public byte[] get(String key) {
+                    CacheService cache = cacheService();
+                    return (cache == null) ? null : cache.get(key);
+                }
+
+                public void set(String key, byte[] data) {
+                    CacheService cache = cacheService();
+                    if (cache != null)
+                        cache.set(key, data);
+                }
+            });
+
     StoredProject sp;
     ProjectVersion pv;
     Logger log;
     DBService db;
     float progress = 0;
     Pattern functionname = Pattern.compile("^.*::([a-zA-Z0-9:\\[\\]\\,\\ ]*)$");
+    /* Set before parsing starts, as the DAOs cannot be used by the parsers */
+    private String msgPrefix = "JavaUpdater:";
     
     public JavaUpdaterJob(StoredProject sp, 
             ProjectVersion pv, Logger log) {
@@ -55,6 +91,17 @@ public class JavaUpdaterJob extends Job {
         db = AlitheiaCore.getInstance().getDBService();
     }
     
+    /** @return The parse result cache, for its statistics */
+    static ParseResultCache getParseCache() {
+        return parseCache;
+    }
+
+    /* The cache service is optional and may start after this bundle */
+    private static CacheService cacheService() {
+        AlitheiaCore core = AlitheiaCore.getInstance();
+        return (core == null) ? null : core.getService(CacheService.class);
+    }
+
     @Override
     public long priority() {
         return 0;
@@ -62,154 +109,240 @@ public class JavaUpdaterJob extends Job {
 
     @Override
     protected void run() throws Exception {
+        ExecutorService parsers = Activator.getParsers();
+        if (parsers == null)
+            throw new IllegalStateException("The Java parser bundle is stopped");
+
         db.startDBSession();
         sp = db.attachObjectToDBSession(sp);
         pv = db.attachObjectToDBSession(pv);
+        msgPrefix = "JavaUpdater:" + pv + ":";
         Pattern p = Pattern.compile(".*\\.java$");
         FDSService fds = AlitheiaCore.getInstance().getFDSService();
+        SCMAccessor scm = AlitheiaCore.getInstance().getTDSService().getAccessor(
+                sp.getId()).getSCMAccessor();
 
         debug("Parsing files in version ", pv.toString());
         Set<ProjectFile> files = pv.getVersionFiles(p);
         int processed = 0;
         
-        for (ProjectFile pf : files) {
-            if (pf.getIsDirectory() || pf.isDeleted())
-                continue;
-            debug("Parsing file ", pf.toString());
-            processed++;
-            progress = (float) (((double)processed / (double)files.size()) * 100);
-            
-            if (pf.isDeleted() || pf.getIsDirectory() == true)
-                continue;
-
-            Long ts = System.currentTimeMillis();
-            InputStream is = fds.getFileContents(pf);
-
-            if (is == null) {
-                err("Null contents for file ", pf.toString());
-                continue;
-            }
-            // Parse the input file
-            Tree t = null;
-            JavaTreeLexer lexer = null;
-            try {
-                ANTLRInputStream input = new ANTLRInputStream(is);
-                lexer = new JavaTreeLexer(input);
-                CommonTokenStream tokens = new CommonTokenStream(lexer);
-                JavaTreeParser parser = new JavaTreeParser(tokens);
-                SpanningNodeAdaptor adaptor = new SpanningNodeAdaptor();
-                parser.setTreeAdaptor(adaptor);
-
-                JavaTreeParser.compilationUnit_return result =
-                        parser.compilationUnit();
-                t = (Tree) result.getTree();
-            } catch (Exception e) {
-                warn("Cannot parse file ", pf.toString(), ": ", e.getMessage());
-            } finally {
-
-                debug("parseSource(", pf.toString() ,"): ", String.valueOf(System.currentTimeMillis() - ts),
-                        " ms, lines: ", String.valueOf(lexer.getLine()));
+        LinkedList<ProjectFile> pendingFiles = new LinkedList<ProjectFile>();
+        LinkedList<Future<ParsedFile>> pending = new LinkedList<Future<ParsedFile>>();
+        Records records = new Records();
+        
+        try {
+            for (ProjectFile pf : files) {
+                processed++;
+                progress = (float) (((double)processed / (double)files.size()) * 100);
+                
+                if (pf.isDeleted() || pf.getIsDirectory() == true)
+                    continue;
+                
+                InputStream is = fds.getFileContents(pf);
+                if (is == null) {
+                    err("Null contents for file ", pf.toString());
+                    continue;
+                }
+                
+                ProjectFile prev = pf.getPreviousFileVersion();
+                if (prev == null && !pf.isAdded())
+                    warn("Cannot find previous version for file ", pf.toString());
+                
+                debug("Parsing file ", pf.toString());
+                pendingFiles.add(pf);
+                pending.add(parsers.submit(new FileParser(pf.toString(),
+                        pf.getFileName(), is, scm,
+                        (prev == null) ? null : prev.getProjectVersion().getRevisionId(),
+                        pv.getRevisionId())));
+                
+                if (pending.size() >= MAX_PENDING)
+                    addRecords(pendingFiles.removeFirst(), pending.removeFirst(), records);
             }
-
-            // Walk resulting tree
-            ASTWalker walker = new ASTWalker();
-            EntityExtractor ee = new EntityExtractor();
-            walker.addProcessor(ee);
-            walker.walk(t);
-
-            NameSpace ns = NameSpace.findByVersionName(pf.getProjectVersion(), 
-                    ee.getPackageName());
             
-            if (ns == null) {
-                ns = new NameSpace();
-                ns.setName(ee.getPackageName());
-                ns.setChangeVersion(pf.getProjectVersion());
-                ns.setLang(Language.JAVA);
-                db.addRecord(ns);
-            }
+            while (!pending.isEmpty())
+                addRecords(pendingFiles.removeFirst(), pending.removeFirst(), records);
+        } finally {
+            for (Future<ParsedFile> f : pending)
+                f.cancel(true);
+        }
+        
+        db.addRecords(records.namespaces);
+        db.addRecords(records.classes);
+        db.addRecords(records.methods);
+        db.commitDBSession();
+    }
+    
+    /**
+     * Waits for a file to be parsed and creates the records for its
+     * classes and methods.
+     */
+    private void addRecords(ProjectFile pf, Future<ParsedFile> f,
+            Records records) throws Exception {
+        ParsedFile parsed;
+        try {
+            parsed = f.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            throw e;
+        }
+        if (parsed == null)
+            return;
+        
+        NameSpace ns = records.namespace(pf.getProjectVersion(), 
+                parsed.packageName);
+        
+        for (String clazz : parsed.classes.keySet()) {
+            EncapsulationUnit eu = new EncapsulationUnit(pf);
+            eu.setName(clazz);
+            eu.setNamespace(ns);
+            eu.setFile(pf);
+            records.classes.add(eu);
             
-            for (String clazz : ee.getResults().keySet()) {
-                List<String> changedMethods = getChangedMethods(ee, pf, clazz);
-                EncapsulationUnit eu = new EncapsulationUnit(pf);
-                eu.setName(clazz);
-                eu.setNamespace(ns);
-                eu.setFile(pf);
-                db.addRecord(eu);
+            for (CodeFragment fragment : parsed.classes.get(clazz)) {
+                ExecutionUnit exu = new ExecutionUnit(eu);
+                exu.setName(getMethodName(fragment, pf));
+                exu.setFile(pf);
+                exu.setNamespace(ns);
+                exu.setEncapsulationUnit(eu);
 
-                for (CodeFragment fragment : ee.getResults().get(clazz)) {
-                    ExecutionUnit exu = new ExecutionUnit(eu);
-                    exu.setName(getMethodName(fragment, pf));
-                    exu.setFile(pf);
-                    exu.setNamespace(ns);
-                    exu.setEncapsulationUnit(eu);
-
-                    if (changedMethods.contains(fragment.getFullyQualifiedName())) {
-                        debug("Method " , fragment.toString() , " changed in rev ", 
-                                pf.getProjectVersion().toString());
-                        exu.setChanged(true);
-                    }
-                    db.addRecord(exu);
+                if (parsed.changedMethods.contains(fragment.getFullyQualifiedName())) {
+                    debug("Method " , fragment.toString() , " changed in rev ", 
+                            pf.getProjectVersion().toString());
+                    exu.setChanged(true);
                 }
+                records.methods.add(exu);
             }
         }
-        db.commitDBSession();
     }
     
-    private List<String> getChangedMethods(EntityExtractor ee, ProjectFile pf, 
-            String clazz) 
-        throws InvalidAccessorException, InvalidProjectRevisionException, 
-               InvalidRepositoryException, FileNotFoundException {
-        Long ts = System.currentTimeMillis();
-        List<String> changedMethods = new ArrayList<String>();
-        ProjectFile prev = pf.getPreviousFileVersion();
+    /**
+     * The records created for a version, written at the end of the job.
+     */
+    private static class Records {
+        List<NameSpace> namespaces = new ArrayList<NameSpace>();
+        List<EncapsulationUnit> classes = new ArrayList<EncapsulationUnit>();
+        List<ExecutionUnit> methods = new ArrayList<ExecutionUnit>();
+        Map<String, NameSpace> byName = new HashMap<String, NameSpace>();
         
-        if (prev == null) {
-            if (!pf.isAdded())
-                warn("Cannot find previous version for file ", pf.toString());
-                
-            for (CodeFragment method : ee.getResults().get(clazz)) {
-                
-                if (method.getFullyQualifiedName() == null) {
-                    warn("Name from fragment [" + method.getStartLine() + ","
-                            + method.getEndLine() + "] in file: " + pf + " is null");
-                    continue; //TODO: This is a bug
-                }
-                
-                if (!method.getFullyQualifiedName().contains("::"))
-                    continue; //Class fragment
+        NameSpace namespace(ProjectVersion pv, String name) {
+            NameSpace ns = byName.get(name);
+            if (ns != null)
+                return ns;
             
-                changedMethods.add(method.getFullyQualifiedName());
+            ns = NameSpace.findByVersionName(pv, name);
+            if (ns == null) {
+                ns = new NameSpace();
+                ns.setName(name);
+                ns.setChangeVersion(pv);
+                ns.setLang(Language.JAVA);
+                namespaces.add(ns);
             }
-            return changedMethods;
+            byName.put(name, ns);
+            return ns;
         }
-
-        SCMAccessor scm = AlitheiaCore.getInstance().getTDSService().getAccessor(
-                pf.getProjectVersion().getProject().getId()).getSCMAccessor();
+    }
+    
+    /**
+     * The classes and methods of a file and the methods changed since its
+     * previous version.
+     */
+    private static class ParsedFile {
+        String packageName;
+        Map<String, Deque<CodeFragment>> classes;
+        Set<String> changedMethods;
+    }
+    
+    /**
+     * Parses one file and diffs it against its previous version. Runs on
+     * the parser pool, so it must not touch any DAOs.
+     */
+    private class FileParser implements Callable<ParsedFile> {
+        private String name;
+        private String path;
+        private InputStream is;
+        private SCMAccessor scm;
+        private String prevRevision;
+        private String revision;
         
-        Diff diff = scm.getDiff(pf.getFileName(),
-                scm.newRevision(prev.getProjectVersion().getRevisionId()),
-                scm.newRevision(pf.getProjectVersion().getRevisionId()));
-
-        for (DiffChunk d : diff.getDiffChunks().get(pf.getFileName())) {
-            for (CodeFragment fragment : ee.getResults().get(clazz)) {
+        FileParser(String name, String path, InputStream is, SCMAccessor scm,
+                String prevRevision, String revision) {
+            this.name = name;
+            this.path = path;
+            this.is = is;
+            this.scm = scm;
+            this.prevRevision = prevRevision;
+            this.revision = revision;
+        }
+        
+        public ParsedFile call() throws Exception {
+            // Parse the input file, unless its contents were seen before
+            Long ts = System.currentTimeMillis();
+            ParseResults results = null;
+            try {
+                results = getParseCache().parse(is);
+            } catch (Exception e) {
+                warn("Cannot parse file ", name, ": ", e.getMessage());
+                return null;
+            } finally {
+                is.close();
+                debug("parseSource(", name ,"): ", String.valueOf(System.currentTimeMillis() - ts),
+                        " ms");
+            }
 
-                if (fragment.getFullyQualifiedName() == null) {
-                    warn("Name from fragment [" + fragment.getStartLine() + ","
-                            + fragment.getEndLine() + "] in file: " + pf + " is null");
-                    continue; //TODO: This is a bug
+            ParsedFile parsed = new ParsedFile();
+            parsed.packageName = results.getPackageName();
+            parsed.classes = results.getEntities();
+            parsed.changedMethods = getChangedMethods(parsed.classes);
+            return parsed;
+        }
+        
+        /**
+         * Returns the methods of all classes in the file that changed since
+         * the file's previous version, with one diff for the whole file.
+         */
+        private Set<String> getChangedMethods(Map<String, Deque<CodeFragment>> classes) 
+            throws InvalidProjectRevisionException, InvalidRepositoryException, 
+                   FileNotFoundException {
+            Long ts = System.currentTimeMillis();
+            Set<String> changedMethods = new HashSet<String>();
+            List<CodeFragment> methods = new ArrayList<CodeFragment>();
+            
+            for (Deque<CodeFragment> fragments : classes.values()) {
+                for (CodeFragment fragment : fragments) {
+                    if (fragment.getFullyQualifiedName() == null) {
+                        warn("Name from fragment [" + fragment.getStartLine() + ","
+                                + fragment.getEndLine() + "] in file: " + name + " is null");
+                        continue; //TODO: This is a bug
+                    }
+                    
+                    if (!fragment.getFullyQualifiedName().contains("::"))
+                        continue; // Class fragment
+                    
+                    methods.add(fragment);
                 }
-                
-                if (!fragment.getFullyQualifiedName().contains("::"))
-                    continue; // Class fragment
+            }
+            
+            if (prevRevision == null) {
+                for (CodeFragment method : methods)
+                    changedMethods.add(method.getFullyQualifiedName());
+                return changedMethods;
+            }
+
+            Diff diff = scm.getDiff(path, scm.newRevision(prevRevision),
+                    scm.newRevision(revision));
 
-                if (d.getTargetStartLine() > fragment.getStartLine()
-                        && d.getTargetStartLine() < fragment.getEndLine()) {
-                    changedMethods.add(fragment.getFullyQualifiedName());
+            for (DiffChunk d : diff.getDiffChunks().get(path)) {
+                for (CodeFragment fragment : methods) {
+                    if (d.getTargetStartLine() > fragment.getStartLine()
+                            && d.getTargetStartLine() < fragment.getEndLine()) {
+                        changedMethods.add(fragment.getFullyQualifiedName());
+                    }
                 }
             }
+            debug("getChangedMethods(): ", String.valueOf(System.currentTimeMillis() - ts), " ms");
+            return changedMethods;
         }
-        debug("getChangedMethods(): ", String.valueOf(System.currentTimeMillis() - ts), " ms");
-        return changedMethods;
     }
     
     public String getMethodName(CodeFragment fragment, ProjectFile pf) {
@@ -257,7 +390,7 @@ public class JavaUpdaterJob extends Job {
     
     private String getMsg(String...strings) {
         StringBuffer b = new StringBuffer();
-        b.append("JavaUpdater:").append(pv).append(":");
+        b.append(msgPrefix);
         for (String str : strings) {
             b.append(str);
         }
@@ -53,6 +53,7 @@ import eu.sqooss.service.db.ProjectVersionParent;
 import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.db.ConfigOption;
 import eu.sqooss.service.db.Tag;
+import eu.sqooss.service.fds.FDSService;
 import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.tds.CommitCopyEntry;
 import eu.sqooss.service.tds.CommitLog;
@@ -95,6 +96,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
     /* References to Alitheia Core services*/
     private TDSService tds;
     private DBService dbs;
+    private FDSService fds;
     private Logger logger;
     private float progress;
     
@@ -160,6 +162,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
     public void setUpdateParams(StoredProject sp, Logger l) {
         this.dbs = AlitheiaCore.getInstance().getDBService();
         this.tds = AlitheiaCore.getInstance().getTDSService();
+        this.fds = AlitheiaCore.getInstance().getFDSService();
         this.project = sp;
         this.logger = l;
     }
@@ -296,6 +299,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
                     return;
                 }
                 dbs.startDBSession();
+                fds.updateFileTreeIndex(project);
                 progress = (float) (((double)numRevisions / (double)commitLog.size()) * 100);
             }
             info("Processed " + numRevisions + " revisions");